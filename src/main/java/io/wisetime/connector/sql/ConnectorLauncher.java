@@ -15,6 +15,7 @@ import io.wisetime.connector.sql.queries.QueryProvider;
 import io.wisetime.connector.sql.queries.TagQuery;
 import io.wisetime.connector.sql.queries.TagQueryProvider;
 import io.wisetime.connector.sql.sync.ConnectedDatabase;
+import io.wisetime.connector.sql.sync.DatabaseGovernor;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
@@ -32,7 +33,8 @@ public class ConnectorLauncher {
   }
 
   public static ConnectorController buildConnectorController() {
-    final ConnectedDatabase database = new ConnectedDatabase(buildDataSource());
+    final DatabaseGovernor databaseGovernor = DatabaseGovernor.fromConfig();
+    final ConnectedDatabase database = new ConnectedDatabase(buildDataSource(), databaseGovernor);
 
     final Path tagSqlPath = Paths.get(
         RuntimeConfig.getString(SqlConnectorConfigKey.TAG_SQL_FILE)
@@ -46,7 +48,8 @@ public class ConnectorLauncher {
             .map(path -> (QueryProvider<ActivityTypeQuery>) new ActivityTypeQueryProvider(path))
             .orElseGet(QueryProvider::noOp);
 
-    SqlConnector sqlConnector = new SqlConnector(database, tagQueryProvider, activityTypeQueryProvider);
+    SqlConnector sqlConnector =
+        new SqlConnector(database, databaseGovernor, tagQueryProvider, activityTypeQueryProvider);
     return ConnectorController.newBuilder()
         .withWiseTimeConnector(sqlConnector)
         .disableActivityTypesScan()
@@ -64,7 +67,35 @@ public class ConnectorLauncher {
     JDBC_PASSWORD("JDBC_PASSWORD"),
     TAG_UPSERT_PATH("TAG_UPSERT_PATH"),
     TAG_SQL_FILE("TAG_SQL_FILE"),
-    ACTIVITY_TYPE_SQL_FILE("ACTIVITY_TYPE_SQL_FILE");
+    ACTIVITY_TYPE_SQL_FILE("ACTIVITY_TYPE_SQL_FILE"),
+    DB_MAX_QUERIES_PER_SECOND("DB_MAX_QUERIES_PER_SECOND"),
+    DB_MAX_CONCURRENT_STATEMENTS("DB_MAX_CONCURRENT_STATEMENTS"),
+    DB_HEAVY_WORK_WINDOW("DB_HEAVY_WORK_WINDOW"),
+    DB_BATCH_TAG_QUERIES("DB_BATCH_TAG_QUERIES"),
+    TAG_SYNC_PARALLELISM("TAG_SYNC_PARALLELISM"),
+    TAG_UPSERT_CONCURRENCY("TAG_UPSERT_CONCURRENCY"),
+    TAG_UPSERT_MAX_BATCH_SIZE("TAG_UPSERT_MAX_BATCH_SIZE"),
+    TAG_UPSERT_MAX_BATCH_BYTES("TAG_UPSERT_MAX_BATCH_BYTES"),
+    API_MAX_ATTEMPTS("API_MAX_ATTEMPTS"),
+    TAG_SKIP_UNCHANGED_UPSERTS("TAG_SKIP_UNCHANGED_UPSERTS"),
+    TAG_FORCED_RESEND_RATIO("TAG_FORCED_RESEND_RATIO"),
+    TAG_OUTBOX_ENABLED("TAG_OUTBOX_ENABLED"),
+    TAG_OUTBOX_MAX_BYTES("TAG_OUTBOX_MAX_BYTES"),
+    API_MAX_REQUESTS_PER_SECOND("API_MAX_REQUESTS_PER_SECOND"),
+    API_BURST("API_BURST"),
+    API_LANE_WEIGHTS("API_LANE_WEIGHTS"),
+    TAG_UPSERT_COALESCING("TAG_UPSERT_COALESCING"),
+    TAG_UPSERT_COALESCE_MAX_SIZE("TAG_UPSERT_COALESCE_MAX_SIZE"),
+    TAG_UPSERT_COALESCE_MAX_AGE("TAG_UPSERT_COALESCE_MAX_AGE"),
+    TAG_METADATA_MAX_KEYS("TAG_METADATA_MAX_KEYS"),
+    TAG_METADATA_MAX_VALUE_LENGTH("TAG_METADATA_MAX_VALUE_LENGTH"),
+    SYNC_STATE_GROUP_COMMIT("SYNC_STATE_GROUP_COMMIT"),
+    SYNC_STATE_GROUP_COMMIT_MAX_COMMITS("SYNC_STATE_GROUP_COMMIT_MAX_COMMITS"),
+    SYNC_STATE_GROUP_COMMIT_MAX_AGE("SYNC_STATE_GROUP_COMMIT_MAX_AGE"),
+    SYNC_STATE_BACKEND("SYNC_STATE_BACKEND"),
+    SYNC_STATE_LOG_MAX_BYTES("SYNC_STATE_LOG_MAX_BYTES"),
+    // Also read by the connector library, for the connector store
+    DATA_DIR("DATA_DIR");
 
     private final String configKey;
 
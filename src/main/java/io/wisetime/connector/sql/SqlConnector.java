@@ -8,24 +8,46 @@ import static io.wisetime.connector.sql.format.LogFormatter.formatTags;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Try;
 import io.wisetime.connector.ConnectorModule;
 import io.wisetime.connector.WiseTimeConnector;
 import io.wisetime.connector.api_client.PostResult;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
 import io.wisetime.connector.sql.queries.ActivityTypeQuery;
 import io.wisetime.connector.sql.queries.DrainRun;
 import io.wisetime.connector.sql.queries.QueryProvider;
 import io.wisetime.connector.sql.queries.TagQuery;
+import io.wisetime.connector.sql.sync.ApiRateLimiter.Lane;
+import io.wisetime.connector.sql.sync.ChangeCaptureSync;
 import io.wisetime.connector.sql.sync.ConnectApi;
 import io.wisetime.connector.sql.sync.ConnectedDatabase;
+import io.wisetime.connector.sql.sync.ConnectedDatabase.TagPage;
+import io.wisetime.connector.sql.sync.DatabaseGovernor;
+import io.wisetime.connector.sql.sync.ParallelRuns;
+import io.wisetime.connector.sql.sync.RelaxedOrderingDrain;
+import io.wisetime.connector.sql.sync.SyncPosition;
+import io.wisetime.connector.sql.sync.SyncStateCache;
+import io.wisetime.connector.sql.sync.TagChangeProbe;
+import io.wisetime.connector.sql.sync.TagQueryHealth;
+import io.wisetime.connector.sql.sync.TagScanCoverage;
 import io.wisetime.connector.sql.sync.TagSyncRecord;
 import io.wisetime.connector.sql.sync.TagSyncStore;
+import io.wisetime.connector.sql.sync.TagUpsertCoalescer;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeSyncService;
 import io.wisetime.connector.sql.sync.activity_type.hash.ActivityTypeSyncWithHashService;
 import io.wisetime.connector.sql.sync.activity_type.marker.ActivityTypeSyncWithMarkerService;
 import io.wisetime.generated.connect.TimeGroup;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -41,6 +63,10 @@ import org.apache.commons.lang3.StringUtils;
 public class SqlConnector implements WiseTimeConnector {
 
   private final ConnectedDatabase database;
+  private final DatabaseGovernor databaseGovernor;
+  private final TagChangeProbe tagChangeProbe;
+  private final RelaxedOrderingDrain relaxedOrderingDrain;
+  private final ChangeCaptureSync changeCaptureSync;
   private final QueryProvider<TagQuery> tagQueryProvider;
   private final QueryProvider<ActivityTypeQuery> activityTypeQueryProvider;
 
@@ -50,6 +76,26 @@ public class SqlConnector implements WiseTimeConnector {
   @VisibleForTesting
   @Setter(AccessLevel.PACKAGE)
   private TagSyncStore tagRefreshSyncStore;
+  @VisibleForTesting
+  @Setter(AccessLevel.PACKAGE)
+  private TagScanCoverage tagScanCoverage = new TagScanCoverage();
+  @VisibleForTesting
+  @Setter(AccessLevel.PACKAGE)
+  private boolean batchTagQueries = RuntimeConfig.getString(SqlConnectorConfigKey.DB_BATCH_TAG_QUERIES)
+      .map(Boolean::parseBoolean)
+      .orElse(false);
+  @VisibleForTesting
+  @Setter(AccessLevel.PACKAGE)
+  private int tagSyncParallelism = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_SYNC_PARALLELISM)
+      .map(Integer::parseInt)
+      .orElse(1);
+
+  @VisibleForTesting
+  @Setter(AccessLevel.PACKAGE)
+  private TagUpsertCoalescer tagUpsertCoalescer;
+  @VisibleForTesting
+  @Setter(AccessLevel.PACKAGE)
+  private TagQueryHealth tagQueryHealth = new TagQueryHealth();
 
   @VisibleForTesting
   @Setter(AccessLevel.PACKAGE)
@@ -59,29 +105,50 @@ public class SqlConnector implements WiseTimeConnector {
   private ActivityTypeSyncService activityTypeSyncWithMarkerService;
 
   private ConnectApi connectApi;
+  private SyncStateCache syncStateCache;
   private final AtomicBoolean isPerformingTagUpdate = new AtomicBoolean();
+  private final AtomicBoolean tagQueriesNeedWarmUp = new AtomicBoolean();
+  // Set when a batched tag sync fails, until the tag queries are reloaded
+  private final AtomicBoolean batchedTagSyncFailed = new AtomicBoolean();
   private final AtomicBoolean isPerformingTagSlowResync = new AtomicBoolean();
   private final AtomicBoolean isPerformingActivityTypeSync = new AtomicBoolean();
   private final AtomicBoolean isPerformingActivityTypeSlowSync = new AtomicBoolean();
 
   public SqlConnector(final ConnectedDatabase connectedDatabase,
       final QueryProvider<TagQuery> tagQueryProvider, final QueryProvider<ActivityTypeQuery> activityTypeQueryProvider) {
+    this(connectedDatabase, DatabaseGovernor.unlimited(), tagQueryProvider, activityTypeQueryProvider);
+  }
+
+  public SqlConnector(final ConnectedDatabase connectedDatabase, final DatabaseGovernor databaseGovernor,
+      final QueryProvider<TagQuery> tagQueryProvider, final QueryProvider<ActivityTypeQuery> activityTypeQueryProvider) {
     database = connectedDatabase;
+    this.databaseGovernor = databaseGovernor;
+    this.tagChangeProbe = new TagChangeProbe(connectedDatabase, query -> tagDrainSyncStore.discardEpoch(query));
+    this.relaxedOrderingDrain = new RelaxedOrderingDrain(connectedDatabase);
+    this.changeCaptureSync = new ChangeCaptureSync(connectedDatabase);
     this.tagQueryProvider = tagQueryProvider;
-    this.tagQueryProvider.setListener(this::performTagUpdate);
+    this.tagQueryProvider.setListener(this::onTagQueriesUpdated);
     this.activityTypeQueryProvider = activityTypeQueryProvider;
-    this.activityTypeQueryProvider.setListener(this::performActivityTypeUpdate);
+    this.activityTypeQueryProvider.setListener(this::onActivityTypeQueriesUpdated);
   }
 
   @Override
   public void init(ConnectorModule connectorModule) {
-    tagDrainSyncStore = new TagSyncStore(connectorModule.getConnectorStore());
-    tagRefreshSyncStore = new TagSyncStore(connectorModule.getConnectorStore(), "refresh");
+    // Only the connector writes the sync state, so the stores can share a write-through cache of it
+    syncStateCache = SyncStateCache.fromConfig(connectorModule.getConnectorStore());
+    tagDrainSyncStore = new TagSyncStore(syncStateCache, "");
+    tagRefreshSyncStore = new TagSyncStore(syncStateCache, "refresh");
     connectApi = new ConnectApi(connectorModule.getApiClient());
+    connectApi.start();
+    tagUpsertCoalescer = createTagUpsertCoalescer();
     activityTypeSyncWithHashService =
-        new ActivityTypeSyncWithHashService(connectorModule.getConnectorStore(), connectApi, database);
+        new ActivityTypeSyncWithHashService(syncStateCache, connectApi, database);
     activityTypeSyncWithMarkerService =
-        new ActivityTypeSyncWithMarkerService(connectorModule.getConnectorStore(), connectApi, database);
+        new ActivityTypeSyncWithMarkerService(syncStateCache, connectApi, database);
+
+    // Have connections, statements and plans ready before the first scheduled sync
+    warmUpTagQueries(tagQueryProvider.getQueries());
+    warmUpActivityTypeQueries(activityTypeQueryProvider.getQueries());
   }
 
   @Override
@@ -103,17 +170,65 @@ public class SqlConnector implements WiseTimeConnector {
     // Prevent possible concurrent runs of scheduled update and on query changed event
     if (isPerformingTagUpdate.compareAndSet(false, true)) {
       try {
-        tagQueries.forEach(query -> {
-          final Supplier<Boolean> allowSync = () -> !hasUpdatedQueries(tagQueries);
-          // Drain everything
-          syncAllNewRecords(query, allowSync);
-        });
+        if (tagQueriesNeedWarmUp.getAndSet(false)) {
+          // Warm up reloaded queries here rather than while a sync of the previous queries may still be running
+          warmUpTagQueries(tagQueries);
+        }
+        final Supplier<Boolean> allowSync = () -> !hasUpdatedQueries(tagQueries);
+        // Queries that keep failing are paused for a while
+        final List<TagQuery> queriesToRun = tagQueries.stream()
+            .filter(tagQueryHealth::shouldRun)
+            .collect(Collectors.toList());
+        final List<TagQuery> batchedQueries = batchTagQueries && !batchedTagSyncFailed.get()
+            ? queriesToRun.stream()
+                .filter(query -> !query.usesRelaxedOrdering() && !query.usesChangeCapture() && !query.hasChangeProbe())
+                .collect(Collectors.toList())
+            : List.of();
+        boolean batchedSyncFailed = false;
+        if (batchedQueries.size() > 1) {
+          try {
+            // Drain the plain queries together, one round trip per page of every query
+            syncAllNewRecords(batchedQueries, allowSync);
+            batchedQueries.forEach(tagQueryHealth::recordSuccess);
+          } catch (RuntimeException e) {
+            // Don't pay for the failing round trips on every run, e.g. if the driver doesn't allow several statements
+            log.warn("Batched tag sync failed, syncing the tag queries separately until they are reloaded", e);
+            batchedSyncFailed = true;
+            batchedTagSyncFailed.set(true);
+            // Each query is cleared again when it syncs on its own
+            batchedQueries.forEach(query -> tagQueryHealth.recordFailure(query, e));
+          }
+        }
+        final boolean syncBatchedSeparately = batchedQueries.size() <= 1 || batchedSyncFailed;
+        final List<TagQuery> separateQueries = queriesToRun.stream()
+            .filter(query -> syncBatchedSeparately || !batchedQueries.contains(query))
+            .collect(Collectors.toList());
+        // Drain everything, concurrently if configured. The connection pool and the governor still limit the database.
+        // Each query syncs in its own failure domain, so that a failing query doesn't hold back the others.
+        ParallelRuns.forEach(separateQueries, tagSyncParallelism, query -> syncIsolated(query, allowSync));
       } finally {
-        isPerformingTagUpdate.set(false);
+        try {
+          if (tagUpsertCoalescer != null) {
+            // Don't hold drained tags back until the next run
+            tagUpsertCoalescer.flush();
+          }
+        } finally {
+          flushSyncState();
+          isPerformingTagUpdate.set(false);
+        }
       }
     }
   }
 
+  private void syncIsolated(final TagQuery query, final Supplier<Boolean> allowSync) {
+    try {
+      syncAllNewRecords(query, allowSync);
+      tagQueryHealth.recordSuccess(query);
+    } catch (RuntimeException e) {
+      tagQueryHealth.recordFailure(query, e);
+    }
+  }
+
   @Override
   public void performTagUpdateSlowLoop() {
     performSlowResync(tagQueryProvider.getQueries());
@@ -125,16 +240,25 @@ public class SqlConnector implements WiseTimeConnector {
       return;
     }
 
+    if (!databaseGovernor.allowsHeavyWork()) {
+      log.debug("Outside of the configured heavy work window. Skipping tag refresh.");
+      return;
+    }
+
     // Prevent possible concurrent runs of scheduled update and on query changed event
     if (isPerformingTagSlowResync.compareAndSet(false, true)) {
       try {
         tagQueries.forEach(query -> {
           final Supplier<Boolean> allowSync = () -> !hasUpdatedQueries(tagQueries);
           // slow resync mechanism that is separate from the main drain-everything mechanism.
-          refreshOneBatch(query, allowSync);
+          // A failing query doesn't stop the other queries from being refreshed.
+          Try.run(() -> refreshOneBatch(query, allowSync))
+              .onFailure(e -> log.error("Tag refresh for query {} failed", query.getName(), e));
         });
       } finally {
+        flushSyncState();
         isPerformingTagSlowResync.set(false);
+        log.info("Database throttling since startup: {}", databaseGovernor.getThrottleStats());
       }
     }
   }
@@ -158,6 +282,7 @@ public class SqlConnector implements WiseTimeConnector {
         getActivityTypeSyncService(query)
             .performActivityTypeUpdate(query);
       } finally {
+        flushSyncState();
         isPerformingActivityTypeSync.set(false);
       }
     }
@@ -176,17 +301,33 @@ public class SqlConnector implements WiseTimeConnector {
     Preconditions.checkArgument(activityTypeQueries.size() == 1, "At most one activity type SQL query must be provided");
     final ActivityTypeQuery query = activityTypeQueries.get(0);
 
+    if (!databaseGovernor.allowsHeavyWork()) {
+      log.debug("Outside of the configured heavy work window. Skipping activity types slow loop sync.");
+      return;
+    }
+
     // Prevent possible concurrent runs of scheduled update and on query changed event
     if (isPerformingActivityTypeSlowSync.compareAndSet(false, true)) {
       try {
         getActivityTypeSyncService(query)
             .performActivityTypeUpdateSlowLoop(query);
       } finally {
+        flushSyncState();
         isPerformingActivityTypeSlowSync.set(false);
       }
     }
   }
 
+  /**
+   * Write the sync positions that were collected for group commit, so that a run doesn't leave them unwritten.
+   */
+  private void flushSyncState() {
+    if (syncStateCache != null) {
+      Try.run(syncStateCache::flush)
+          .onFailure(e -> log.error("Failed to write sync state, the latest tags may be synced again", e));
+    }
+  }
+
   private ActivityTypeSyncService getActivityTypeSyncService(ActivityTypeQuery query) {
     return query.hasSyncMarker() ? activityTypeSyncWithMarkerService : activityTypeSyncWithHashService;
   }
@@ -198,33 +339,132 @@ public class SqlConnector implements WiseTimeConnector {
 
   @Override
   public boolean isConnectorHealthy() {
-    return tagQueryProvider.isHealthy() && activityTypeQueryProvider.isHealthy() && database.isAvailable();
+    return tagQueryProvider.isHealthy() && activityTypeQueryProvider.isHealthy() && database.isAvailable()
+        && tagQueryHealth.isHealthy() && (connectApi == null || connectApi.isHealthy());
   }
 
   @Override
   public void shutdown() {
+    if (connectApi != null) {
+      connectApi.stop();
+    }
+    if (syncStateCache != null) {
+      Try.run(syncStateCache::close)
+          .onFailure(e -> log.error("Failed to close sync state, the latest tags may be synced again", e));
+    }
     database.close();
     tagQueryProvider.stop();
   }
 
   @VisibleForTesting
   void syncAllNewRecords(final TagQuery tagQuery, final Supplier<Boolean> allowSync) {
-    new DrainRun<>(
+    tagChangeProbe.syncIfChanged(tagQuery, allowSync, () -> {
+      if (tagQuery.usesChangeCapture()) {
+        changeCaptureSync.run(tagQuery, tagDrainSyncStore, allowSync, this::upsertNewTags);
+        return;
+      }
+      if (tagQuery.usesRelaxedOrdering()) {
+        relaxedOrderingDrain.run(tagQuery, tagDrainSyncStore, allowSync, this::upsertNewTags);
+        return;
+      }
+      // Pages can only be staged after positions that weren't discarded in the meantime
+      final long discardEpoch = tagDrainSyncStore.discardEpoch(tagQuery);
+      new DrainRun<>(
+          allowSync,
+          () -> getUnsyncedRecords(tagQuery, tagDrainSyncStore),
+          newBatch -> {
+            Preconditions.checkArgument(newBatch instanceof LinkedList);
+            upsertDrainedBatch(tagQuery, (LinkedList<TagSyncRecord>) newBatch, discardEpoch);
+          }).run();
+    });
+  }
+
+  /**
+   * Drains several tag queries together. Each round reads the next page of every query that isn't fully drained yet in
+   * a single database round trip.
+   */
+  @VisibleForTesting
+  void syncAllNewRecords(final List<TagQuery> tagQueries, final Supplier<Boolean> allowSync) {
+    final List<TagQuery> pendingQueries = new ArrayList<>(tagQueries);
+    final Map<TagQuery, Long> discardEpochs = tagQueries.stream()
+        .collect(Collectors.toMap(Function.identity(), tagDrainSyncStore::discardEpoch));
+    new DrainRun<Tuple2<TagQuery, LinkedList<TagSyncRecord>>>(
         allowSync,
-        () -> getUnsyncedRecords(tagQuery, tagDrainSyncStore),
-        newBatch -> {
-          Preconditions.checkArgument(newBatch instanceof LinkedList);
-          connectApi.upsertWiseTimeTags(newBatch);
-          tagDrainSyncStore.markSyncPosition(tagQuery, (LinkedList<TagSyncRecord>) newBatch);
-          log.info("New tag detection: " + formatTags(newBatch));
-        }).run();
+        () -> {
+          final List<LinkedList<TagSyncRecord>> pages = database.getTagsToSync(pendingQueries.stream()
+              .map(query -> new TagPage(query, tagDrainSyncStore.getSyncMarker(query),
+                  getIdsToSkip(query, tagDrainSyncStore)))
+              .collect(Collectors.toList()));
+          final List<Tuple2<TagQuery, LinkedList<TagSyncRecord>>> newPages = new ArrayList<>();
+          for (int i = 0; i < pages.size(); i++) {
+            if (!pages.get(i).isEmpty()) {
+              newPages.add(Tuple.of(pendingQueries.get(i), pages.get(i)));
+            }
+          }
+          // Queries without new records are drained
+          pendingQueries.retainAll(newPages.stream().map(Tuple2::_1).collect(Collectors.toList()));
+          return newPages;
+        },
+        newPages -> newPages.forEach(page -> upsertDrainedBatch(page._1, page._2, discardEpochs.get(page._1)))
+    ).run();
+  }
+
+  private void upsertNewTags(final List<TagSyncRecord> newTags) {
+    connectApi.upsertWiseTimeTags(newTags);
+    log.info("New tag detection: " + formatTags(newTags));
+  }
+
+  private void upsertDrainedBatch(final TagQuery tagQuery, final LinkedList<TagSyncRecord> newBatch,
+      final long discardEpoch) {
+    final SyncPosition positionBefore = getSyncPosition(tagQuery, tagDrainSyncStore);
+    if (tagUpsertCoalescer != null) {
+      // The drain continues from the staged position, which is committed once the coalesced tags are upserted
+      tagUpsertCoalescer.add(tagQuery, newBatch,
+          () -> tagDrainSyncStore.stageSyncPosition(tagQuery, newBatch, discardEpoch));
+    } else {
+      connectApi.upsertWiseTimeTags(newBatch);
+      tagDrainSyncStore.markSyncPosition(tagQuery, newBatch);
+    }
+    // Let the refresh skip the rows that were just upserted
+    tagScanCoverage.recordDrainedPage(tagQuery, positionBefore, getSyncPosition(tagQuery, tagDrainSyncStore));
+    log.info("New tag detection: " + formatTags(newBatch));
+  }
+
+  private void upsertCoalescedTags(final List<TagSyncRecord> coalescedTags) {
+    connectApi.upsertWiseTimeTags(coalescedTags);
+  }
+
+  @VisibleForTesting
+  TagUpsertCoalescer createTagUpsertCoalescer() {
+    return TagUpsertCoalescer.fromConfig(
+        this::upsertCoalescedTags, this::commitStagedSyncPositions, this::discardStagedSyncPositions);
+  }
+
+  private void commitStagedSyncPositions(final Set<TagQuery> tagQueries) {
+    tagDrainSyncStore.commitStaged(tagQueries);
+  }
+
+  private void discardStagedSyncPositions(final Set<TagQuery> tagQueries) {
+    // Drains of these queries that are still running fail when they stage their next page, and start over later
+    tagDrainSyncStore.discardStaged(tagQueries);
+    // The refresh must not skip tags that weren't upserted
+    tagScanCoverage.forgetQueries(tagQueries);
   }
 
   @VisibleForTesting
   void refreshOneBatch(final TagQuery tagQuery, final Supplier<Boolean> allowSync) {
-    if (!tagQuery.getContinuousResync() || !allowSync.get()) {
+    // Refreshing relies on results ordered by sync marker
+    final boolean canRefresh = !tagQuery.usesRelaxedOrdering() && !tagQuery.usesChangeCapture();
+    if (!tagQuery.getContinuousResync() || !canRefresh || !allowSync.get()) {
       return;
     }
+    final Optional<SyncPosition> drainedPosition =
+        tagScanCoverage.coveredFrom(tagQuery, getSyncPosition(tagQuery, tagRefreshSyncStore));
+    if (drainedPosition.isPresent()) {
+      log.info("Tag refresh for {} skipping to sync marker {}, recently covered by the drain",
+          tagQuery.getName(), drainedPosition.get().getSyncMarker());
+      tagRefreshSyncStore.moveSyncPosition(tagQuery, drainedPosition.get());
+    }
     final LinkedList<TagSyncRecord> refreshTagSyncRecords = getUnsyncedRecords(tagQuery, tagRefreshSyncStore);
     if (refreshTagSyncRecords.isEmpty()) {
       // Next refresh batch to start again from the beginning
@@ -232,7 +472,7 @@ public class SqlConnector implements WiseTimeConnector {
       tagRefreshSyncStore.resetSyncPosition(tagQuery);
       return;
     }
-    connectApi.upsertWiseTimeTags(refreshTagSyncRecords);
+    connectApi.upsertWiseTimeTags(refreshTagSyncRecords, Lane.TAG_REFRESH);
     tagRefreshSyncStore.markSyncPosition(tagQuery, refreshTagSyncRecords);
     log.info("Existing tag refresh: " + formatTags(refreshTagSyncRecords));
   }
@@ -242,15 +482,56 @@ public class SqlConnector implements WiseTimeConnector {
     this.connectApi = connectApi;
   }
 
+  private SyncPosition getSyncPosition(final TagQuery query, final TagSyncStore syncStore) {
+    return new SyncPosition(syncStore.getSyncMarker(query), syncStore.getLastSyncedIds(query));
+  }
+
   private LinkedList<TagSyncRecord> getUnsyncedRecords(final TagQuery query, final TagSyncStore syncStore) {
     final String syncMarker = syncStore.getSyncMarker(query);
+    return database.getTagsToSync(query, syncMarker, getIdsToSkip(query, syncStore));
+  }
 
-    final List<String> idsToSkip = Stream
+  private List<String> getIdsToSkip(final TagQuery query, final TagSyncStore syncStore) {
+    return Stream
         .concat(query.getSkippedIds().stream(), syncStore.getLastSyncedIds(query).stream())
         .filter(StringUtils::isNotEmpty)
         .collect(Collectors.toList());
+  }
+
+  private void onTagQueriesUpdated(final List<TagQuery> tagQueries) {
+    tagScanCoverage.retainQueries(tagQueries);
+    tagQueryHealth.retainQueries(tagQueries);
+    tagChangeProbe.retainQueries(tagQueries);
+    relaxedOrderingDrain.retainQueries(tagQueries);
+    batchedTagSyncFailed.set(false);
+    // If a sync is still running, the next one warms up
+    tagQueriesNeedWarmUp.set(true);
+    performTagUpdate(tagQueries);
+  }
+
+  private void onActivityTypeQueriesUpdated(final List<ActivityTypeQuery> activityTypeQueries) {
+    warmUpActivityTypeQueries(activityTypeQueries);
+    performActivityTypeUpdate(activityTypeQueries);
+  }
+
+  private void warmUpTagQueries(final List<TagQuery> tagQueries) {
+    Try.of(() -> database.warmUpTagQueries(tagQueries))
+        .onSuccess(failedQueries -> {
+          if (!failedQueries.isEmpty()) {
+            log.error("Tag SQL queries {} failed validation and will fail to sync until fixed", failedQueries);
+          }
+        })
+        .onFailure(e -> log.warn("Tag SQL query warm-up failed, queries will be prepared on first sync", e));
+  }
 
-    return database.getTagsToSync(query.getSql(), syncMarker, idsToSkip);
+  private void warmUpActivityTypeQueries(final List<ActivityTypeQuery> activityTypeQueries) {
+    Try.of(() -> database.warmUpActivityTypeQueries(activityTypeQueries))
+        .onSuccess(failedQueries -> {
+          if (!failedQueries.isEmpty()) {
+            log.error("Activity type SQL query failed validation and will fail to sync until fixed");
+          }
+        })
+        .onFailure(e -> log.warn("Activity type SQL query warm-up failed, query will be prepared on first sync", e));
   }
 
   private boolean hasUpdatedQueries(final List<TagQuery> tagQueries) {
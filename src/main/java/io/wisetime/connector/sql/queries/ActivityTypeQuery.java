@@ -8,8 +8,8 @@ package io.wisetime.connector.sql.queries;
 import com.google.common.base.Preconditions;
 import java.util.Collections;
 import java.util.List;
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -18,13 +18,21 @@ import org.apache.commons.lang3.StringUtils;
  * @author yehor.lashkul
  */
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 public class ActivityTypeQuery {
 
   private String sql;
   private String initialSyncMarker;
   private List<String> skippedCodes = Collections.emptyList();
+  // Bump to sync the query again from its initial sync marker. Left out of the hash code, which keyed the sync state.
+  @EqualsAndHashCode.Exclude
+  private Integer syncVersion;
+
+  public ActivityTypeQuery(String sql, String initialSyncMarker, List<String> skippedCodes) {
+    this.sql = sql;
+    this.initialSyncMarker = initialSyncMarker;
+    this.skippedCodes = skippedCodes;
+  }
 
   public void enforceValid() {
     Preconditions.checkArgument(StringUtils.isNotEmpty(sql),
@@ -52,9 +60,27 @@ public class ActivityTypeQuery {
           "Initial sync marker is found while SQL doesn't contain required 'sync_marker' "
               + "field and/or ':previous_sync_marker' parameter.");
     }
+    Preconditions.checkArgument(syncVersion == null || syncVersion > 0,
+        "Sync version for activity type SQL query must be positive");
   }
 
   public boolean hasSyncMarker() {
     return sql.contains("sync_marker") && sql.contains(":previous_sync_marker");
   }
+
+  /**
+   * Identifies the sync state of the query. There is at most one activity type query, so unlike the hash code it
+   * doesn't change when the query is edited, only when its sync version is bumped.
+   */
+  public String stateKey() {
+    return "activity_types:v" + (syncVersion == null ? 1 : syncVersion);
+  }
+
+  /**
+   * Whether the query may carry on from sync state that was keyed by its hash code, i.e. its sync version was never
+   * bumped.
+   */
+  public boolean hasInitialSyncVersion() {
+    return syncVersion == null || syncVersion == 1;
+  }
 }
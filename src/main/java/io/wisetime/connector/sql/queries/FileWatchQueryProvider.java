@@ -8,41 +8,72 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardWatchEventKinds;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
 import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.Optional;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.CollectionUtils;
 
 /**
+ * Reads queries from a SQL configuration file and reloads them when the file changes.
+ *
+ * Editors and configuration tools often write a file several times when saving it. The file is only reloaded once
+ * it stopped changing for the reload delay, and only if its content changed since it was last loaded. Reloads and
+ * the listener run on a reload thread of the provider rather than on the watch thread that the providers share, so a
+ * slow listener doesn't hold back the other provider. Changes that arrive while the listener runs are reloaded
+ * together afterwards.
+ *
  * @author shane.xie
  * @author yehor.lashkul
  */
 @Slf4j
 abstract class FileWatchQueryProvider<T> implements QueryProvider<T> {
 
-  private final ExecutorService fileWatchExecutor;
-  private final CompletableFuture<Void> fileWatch;
+  private static final Duration DEFAULT_RELOAD_DELAY = Duration.ofMillis(500);
+
+  private final Path sqlPath;
+  private final SqlFileWatcher fileWatcher;
+  private final Duration reloadDelay;
+  private final ScheduledExecutorService reloadExecutor;
+  private final Runnable fileChangeCallback = this::scheduleReload;
+  private final boolean watching;
   private final AtomicReference<List<T>> queries;
   private final AtomicReference<Listener<T>> listener = new AtomicReference<>(Listener.noOp());
 
+  // Guarded by this
+  private ScheduledFuture<?> pendingReload;
+  private boolean stopped;
+
+  // Only accessed on the reload thread after construction
+  private Optional<String> contentHash;
+  private volatile boolean reloadFailed;
+
   public FileWatchQueryProvider(final Path sqlPath) {
+    this(sqlPath, SqlFileWatcher.shared(), DEFAULT_RELOAD_DELAY);
+  }
+
+  @VisibleForTesting
+  FileWatchQueryProvider(final Path sqlPath, final SqlFileWatcher fileWatcher, final Duration reloadDelay) {
+    this.sqlPath = sqlPath;
+    this.fileWatcher = fileWatcher;
+    this.reloadDelay = reloadDelay;
+    contentHash = contentHash();
     queries = new AtomicReference<>(parseSqlFile(sqlPath));
-    fileWatchExecutor = Executors.newSingleThreadExecutor(
+    reloadExecutor = Executors.newSingleThreadScheduledExecutor(
         new ThreadFactoryBuilder()
             .setDaemon(true)
             .setNameFormat("file-watch-" + getClass().getSimpleName())
             .build());
-    fileWatch = startWatchingFile(sqlPath);
+    watching = fileWatcher.watch(sqlPath, fileChangeCallback);
   }
 
   @Override
@@ -56,14 +87,16 @@ abstract class FileWatchQueryProvider<T> implements QueryProvider<T> {
   }
 
   @Override
-  public void stop() {
-    fileWatch.cancel(true);
-    fileWatchExecutor.shutdownNow();
+  public synchronized void stop() {
+    stopped = true;
+    fileWatcher.unwatch(sqlPath, fileChangeCallback);
+    reloadExecutor.shutdownNow();
   }
 
   @Override
-  public boolean isHealthy() {
-    return !fileWatch.isDone() && CollectionUtils.isNotEmpty(queries.get());
+  public synchronized boolean isHealthy() {
+    return !stopped && watching && fileWatcher.isRunning() && !reloadFailed
+        && CollectionUtils.isNotEmpty(queries.get());
   }
 
   // Blocking, only meant for use in tests
@@ -79,44 +112,56 @@ abstract class FileWatchQueryProvider<T> implements QueryProvider<T> {
     return queries.get();
   }
 
-  private CompletableFuture<Void> startWatchingFile(final Path path) {
-    return CompletableFuture.supplyAsync(() -> {
-      try (final WatchService watchService = FileSystems.getDefault().newWatchService()) {
-
-        path.getParent().register(watchService,
-            StandardWatchEventKinds.ENTRY_CREATE,
-            StandardWatchEventKinds.ENTRY_DELETE,
-            StandardWatchEventKinds.ENTRY_MODIFY);
-
-        while (true) {
-          final WatchKey key = watchService.take();
-
-          for (WatchEvent<?> event : key.pollEvents()) {
-            if (path.endsWith((Path) event.context())) {
-              switch (event.kind().name()) {
-                case "ENTRY_CREATE":
-                case "ENTRY_MODIFY":
-                  queries.set(parseSqlFile(path));
-                  listener.get().onQueriesUpdated(queries.get());
-                  break;
-
-                case "ENTRY_DELETE":
-                  queries.set(ImmutableList.of());
-                  listener.get().onQueriesUpdated(queries.get());
-                  break;
-
-                default:
-                  log.warn("Unexpected file watch event: {}", event.kind());
-              }
-            }
-          }
-          key.reset();
-        }
-
-      } catch (IOException | InterruptedException e) {
-        throw new RuntimeException("Autoload failed for SQL configuration file", e);
-      }
-    }, fileWatchExecutor);
+  /**
+   * Reload the file once it stopped changing for the reload delay.
+   */
+  @VisibleForTesting
+  synchronized void scheduleReload() {
+    if (stopped) {
+      return;
+    }
+    if (pendingReload != null) {
+      pendingReload.cancel(false);
+    }
+    pendingReload = reloadExecutor.schedule(this::reload, reloadDelay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private void reload() {
+    final Optional<String> reloadedHash = contentHash();
+    if (reloadedHash.equals(contentHash)) {
+      log.debug("SQL configuration file {} is unchanged", sqlPath);
+      return;
+    }
+    final List<T> reloadedQueries;
+    try {
+      // A deleted file has no queries
+      reloadedQueries = reloadedHash.isPresent() ? parseSqlFile(sqlPath) : ImmutableList.of();
+    } catch (RuntimeException e) {
+      // Keep the hash so that the file is reloaded once it's fixed
+      reloadFailed = true;
+      log.error("Failed to reload SQL configuration file {}, keeping the previous queries", sqlPath, e);
+      return;
+    }
+    contentHash = reloadedHash;
+    reloadFailed = false;
+    queries.set(reloadedQueries);
+    log.info("Reloaded {} queries from SQL configuration file {}", reloadedQueries.size(), sqlPath);
+    try {
+      listener.get().onQueriesUpdated(reloadedQueries);
+    } catch (RuntimeException e) {
+      log.error("Failed to apply the queries reloaded from SQL configuration file {}", sqlPath, e);
+    }
+  }
+
+  private Optional<String> contentHash() {
+    try {
+      return Optional.of(DigestUtils.sha256Hex(Files.readAllBytes(sqlPath)));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException e) {
+      log.warn("Failed to read SQL configuration file {}", sqlPath, e);
+      return Optional.empty();
+    }
   }
 
   abstract List<T> parseSqlFile(Path path);
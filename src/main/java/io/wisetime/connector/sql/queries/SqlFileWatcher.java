@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.queries;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches SQL configuration files for changes. The query providers share one watch service and one watch thread,
+ * whatever directories their files are in.
+ *
+ * The callbacks run on the watch thread, so they should only hand the change off, e.g. by scheduling a reload.
+ */
+@Slf4j
+final class SqlFileWatcher {
+
+  private static SqlFileWatcher shared;
+
+  private final WatchService watchService;
+  private final Thread watchThread;
+  private final Map<Path, Set<Runnable>> callbacks = new ConcurrentHashMap<>();
+  // Guarded by this
+  private final Map<Path, WatchKey> directoryKeys = new HashMap<>();
+
+  @VisibleForTesting
+  SqlFileWatcher() {
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to create a watch service for the SQL configuration files", e);
+    }
+    watchThread = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("sql-file-watch")
+        .build()
+        .newThread(this::watch);
+    watchThread.start();
+  }
+
+  static synchronized SqlFileWatcher shared() {
+    if (shared == null) {
+      shared = new SqlFileWatcher();
+    }
+    return shared;
+  }
+
+  /**
+   * Call back whenever the file is created, modified or deleted, until {@link #unwatch(Path, Runnable)} is called.
+   *
+   * @return whether the file is watched, it isn't if its directory can't be watched
+   */
+  synchronized boolean watch(final Path file, final Runnable callback) {
+    final Path absoluteFile = file.toAbsolutePath().normalize();
+    final Path directory = absoluteFile.getParent();
+    if (!directoryKeys.containsKey(directory)) {
+      try {
+        directoryKeys.put(directory, directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY));
+      } catch (IOException e) {
+        log.error("Failed to watch SQL configuration file {}, changes to it won't be loaded", absoluteFile, e);
+        return false;
+      }
+    }
+    callbacks.computeIfAbsent(absoluteFile, key -> ConcurrentHashMap.newKeySet()).add(callback);
+    return true;
+  }
+
+  synchronized void unwatch(final Path file, final Runnable callback) {
+    final Path absoluteFile = file.toAbsolutePath().normalize();
+    final Set<Runnable> fileCallbacks = callbacks.get(absoluteFile);
+    if (fileCallbacks == null || !fileCallbacks.remove(callback) || !fileCallbacks.isEmpty()) {
+      return;
+    }
+    callbacks.remove(absoluteFile);
+    final Path directory = absoluteFile.getParent();
+    if (callbacks.keySet().stream().noneMatch(watchedFile -> watchedFile.getParent().equals(directory))) {
+      final WatchKey key = directoryKeys.remove(directory);
+      if (key != null) {
+        key.cancel();
+      }
+    }
+  }
+
+  boolean isRunning() {
+    return watchThread.isAlive();
+  }
+
+  private void watch() {
+    while (true) {
+      final WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        log.warn("Stopped watching SQL configuration files");
+        return;
+      }
+      final Path directory = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          // Events were lost, so any file in the directory may have changed
+          callbacks.forEach((file, fileCallbacks) -> {
+            if (file.getParent().equals(directory)) {
+              callBack(fileCallbacks);
+            }
+          });
+        } else {
+          callBack(callbacks.getOrDefault(directory.resolve((Path) event.context()), Set.of()));
+        }
+      }
+      if (!key.reset()) {
+        log.warn("Stopped watching directory {}, it is no longer accessible", directory);
+        synchronized (this) {
+          directoryKeys.remove(directory, key);
+        }
+      }
+    }
+  }
+
+  private static void callBack(final Set<Runnable> fileCallbacks) {
+    for (Runnable callback : fileCallbacks) {
+      try {
+        callback.run();
+      } catch (RuntimeException e) {
+        log.error("Failed to handle a change of a SQL configuration file", e);
+      }
+    }
+  }
+}
@@ -7,7 +7,6 @@ package io.wisetime.connector.sql.queries;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -16,7 +15,6 @@ import lombok.NoArgsConstructor;
  */
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class TagQuery {
 
   private String name;
@@ -24,6 +22,97 @@ public class TagQuery {
   private String initialSyncMarker;
   private List<String> skippedIds;
   private Boolean continuousResync;
+  // Optional cheap query whose result changes whenever the tag query may return new rows
+  private String changeProbeSql;
+  // Accept results that are not ordered by sync marker, see RelaxedOrderingDrain
+  private Boolean relaxedOrdering;
+  private String markerSafetyLag;
+  private Integer maxSeenIds;
+  // Read relaxed ordering passes in windows of sync markers of this size, checkpointing after each window
+  private String markerWindow;
+  // Read changed IDs from a change data capture source instead of polling by sync marker, see ChangeCaptureSync
+  private String changesSql;
+  private String acknowledgeSql;
+  // Read all rows once before syncing changes, and again when the changes since the sync marker are no longer kept
+  private String snapshotSql;
+  private String currentChangeMarkerSql;
+  private String minValidChangeMarkerSql;
+  // Build the URL and additional keyword from the row's columns instead of selecting them, see TagRowTemplate
+  private String urlTemplate;
+  private String additionalKeywordTemplate;
+  // Merge consecutive rows of the same ID into one tag with all of their keywords, see KeywordGroupMerger
+  private Boolean mergeKeywords;
+  // Looks up all rows of a tag ID with :changed_ids, to complete a keyword group that a page of rows cut off
+  private String keywordGroupSql;
+  // Bump to sync the query again from its initial sync marker, see stateKey()
+  private Integer syncVersion;
+
+  public TagQuery(String name, String sql, String initialSyncMarker, List<String> skippedIds,
+      Boolean continuousResync) {
+    this.name = name;
+    this.sql = sql;
+    this.initialSyncMarker = initialSyncMarker;
+    this.skippedIds = skippedIds;
+    this.continuousResync = continuousResync;
+  }
+
+  public boolean hasChangeProbe() {
+    return changeProbeSql != null && !changeProbeSql.isBlank();
+  }
+
+  public boolean usesRelaxedOrdering() {
+    return Boolean.TRUE.equals(relaxedOrdering);
+  }
+
+  public boolean hasMarkerWindow() {
+    return markerWindow != null && !markerWindow.isBlank();
+  }
+
+  public boolean usesChangeCapture() {
+    return changesSql != null && !changesSql.isBlank();
+  }
+
+  public boolean hasAcknowledgeSql() {
+    return acknowledgeSql != null && !acknowledgeSql.isBlank();
+  }
+
+  public boolean hasSnapshotSql() {
+    return snapshotSql != null && !snapshotSql.isBlank();
+  }
+
+  public boolean hasMinValidChangeMarkerSql() {
+    return minValidChangeMarkerSql != null && !minValidChangeMarkerSql.isBlank();
+  }
+
+  /**
+   * The query that reads the initial snapshot of a change data capture tag query. It syncs by sync marker from the
+   * initial sync marker like a polled tag query, with its own sync state.
+   */
+  public TagQuery snapshotQuery() {
+    final TagQuery snapshotQuery = new TagQuery(name + ":snapshot", snapshotSql, initialSyncMarker, skippedIds, false);
+    snapshotQuery.setSyncVersion(syncVersion);
+    snapshotQuery.setUrlTemplate(urlTemplate);
+    snapshotQuery.setAdditionalKeywordTemplate(additionalKeywordTemplate);
+    snapshotQuery.setMergeKeywords(mergeKeywords);
+    snapshotQuery.setKeywordGroupSql(keywordGroupSql);
+    return snapshotQuery;
+  }
+
+  public boolean mergesKeywords() {
+    return Boolean.TRUE.equals(mergeKeywords);
+  }
+
+  public boolean hasKeywordGroupSql() {
+    return keywordGroupSql != null && !keywordGroupSql.isBlank();
+  }
+
+  public boolean hasUrlTemplate() {
+    return urlTemplate != null && !urlTemplate.isBlank();
+  }
+
+  public boolean hasAdditionalKeywordTemplate() {
+    return additionalKeywordTemplate != null && !additionalKeywordTemplate.isBlank();
+  }
 
   @Override
   public boolean equals(Object o) {
@@ -37,7 +126,38 @@ public class TagQuery {
     return Objects.equals(sql, query.sql)
         && Objects.equals(initialSyncMarker, query.initialSyncMarker)
         && Objects.equals(skippedIds, query.skippedIds)
-        && Objects.equals(continuousResync, query.continuousResync);
+        && Objects.equals(continuousResync, query.continuousResync)
+        && Objects.equals(changeProbeSql, query.changeProbeSql)
+        && Objects.equals(relaxedOrdering, query.relaxedOrdering)
+        && Objects.equals(markerSafetyLag, query.markerSafetyLag)
+        && Objects.equals(maxSeenIds, query.maxSeenIds)
+        && Objects.equals(markerWindow, query.markerWindow)
+        && Objects.equals(changesSql, query.changesSql)
+        && Objects.equals(acknowledgeSql, query.acknowledgeSql)
+        && Objects.equals(snapshotSql, query.snapshotSql)
+        && Objects.equals(currentChangeMarkerSql, query.currentChangeMarkerSql)
+        && Objects.equals(minValidChangeMarkerSql, query.minValidChangeMarkerSql)
+        && Objects.equals(urlTemplate, query.urlTemplate)
+        && Objects.equals(additionalKeywordTemplate, query.additionalKeywordTemplate)
+        && Objects.equals(mergeKeywords, query.mergeKeywords)
+        && Objects.equals(keywordGroupSql, query.keywordGroupSql)
+        && Objects.equals(syncVersion, query.syncVersion);
+  }
+
+  /**
+   * Identifies the sync state of the query. Unlike the hash code, it doesn't change when the query's SQL, initial sync
+   * marker or skipped IDs are edited, only when its sync version is bumped.
+   */
+  public String stateKey() {
+    return "query:" + name + ":v" + (syncVersion == null ? 1 : syncVersion);
+  }
+
+  /**
+   * Whether the query may carry on from sync state that was keyed by its hash code, i.e. its sync version was never
+   * bumped.
+   */
+  public boolean hasInitialSyncVersion() {
+    return syncVersion == null || syncVersion == 1;
   }
 
   /**
@@ -57,4 +177,8 @@ public class TagQuery {
   public static boolean allUnique(Collection<TagQuery> queries) {
     return queries.size() == queries.stream().distinct().count();
   }
+
+  public static boolean allNamesUnique(Collection<TagQuery> queries) {
+    return queries.size() == queries.stream().map(TagQuery::getName).distinct().count();
+  }
 }
@@ -6,6 +6,8 @@ package io.wisetime.connector.sql.queries;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import io.wisetime.connector.sql.sync.SyncMarkers;
+import io.wisetime.connector.sql.sync.TagRowTemplate;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
@@ -39,6 +41,8 @@ public class TagQueryProvider extends FileWatchQueryProvider<TagQuery> {
 
       // Fail early to give the operator a tight feedback loop when configuring the connector
       Preconditions.checkArgument(TagQuery.allUnique(queries), "Tag SQL queries must be unique");
+      // The sync position of each query is kept by its name
+      Preconditions.checkArgument(TagQuery.allNamesUnique(queries), "Tag SQL query names must be unique");
       return queries;
 
     } catch (IOException ioe) {
@@ -56,6 +60,54 @@ public class TagQueryProvider extends FileWatchQueryProvider<TagQuery> {
     Preconditions.checkArgument(!query.getSkippedIds().isEmpty(),
         "Skipped ID list is required for tag SQL query %s. Use a sentinel value if none apply.",
         query.getName());
+    Preconditions.checkArgument(query.getMarkerSafetyLag() == null || SyncMarkers.isValidLag(query.getMarkerSafetyLag()),
+        "Marker safety lag for tag SQL query %s must be a number or an ISO-8601 duration such as PT10M",
+        query.getName());
+    if (query.hasMarkerWindow()) {
+      Preconditions.checkArgument(query.usesRelaxedOrdering(),
+          "Tag SQL query %s can only use a marker window with relaxed ordering", query.getName());
+      Preconditions.checkArgument(SyncMarkers.isPositiveAmount(query.getMarkerWindow()),
+          "Marker window for tag SQL query %s must be a positive number or ISO-8601 duration such as P1D",
+          query.getName());
+    }
+    Preconditions.checkArgument(query.hasMarkerWindow() == query.getSql().contains(":window_end_sync_marker"),
+        "SQL for tag SQL query %s must contain :window_end_sync_marker if and only if it has a marker window",
+        query.getName());
+    Preconditions.checkArgument(query.getMaxSeenIds() == null || query.getMaxSeenIds() > 0,
+        "Max seen IDs for tag SQL query %s must be positive", query.getName());
+    Preconditions.checkArgument(query.getSyncVersion() == null || query.getSyncVersion() > 0,
+        "Sync version for tag SQL query %s must be positive", query.getName());
+    Preconditions.checkArgument(!query.hasUrlTemplate() || TagRowTemplate.isValid(query.getUrlTemplate()),
+        "URL template for tag SQL query %s has an invalid column placeholder", query.getName());
+    Preconditions.checkArgument(
+        !query.hasAdditionalKeywordTemplate() || TagRowTemplate.isValid(query.getAdditionalKeywordTemplate()),
+        "Additional keyword template for tag SQL query %s has an invalid column placeholder", query.getName());
+    Preconditions.checkArgument(!query.mergesKeywords() || !query.usesRelaxedOrdering(),
+        "Tag SQL query %s can't merge keyword rows with relaxed ordering", query.getName());
+    // Pages of polled rows may cut off a keyword group, change data capture looks up all rows of the changed IDs
+    Preconditions.checkArgument(!query.mergesKeywords() || query.usesChangeCapture() && !query.hasSnapshotSql()
+            || query.hasKeywordGroupSql() && query.getKeywordGroupSql().contains(":changed_ids"),
+        "Tag SQL query %s needs a keyword group SQL with :changed_ids to merge keyword rows", query.getName());
+    if (query.usesChangeCapture()) {
+      for (String placeholder : List.of(":previous_sync_marker", ":previous_change_marker", ":previous_change_id")) {
+        Preconditions.checkArgument(query.getChangesSql().contains(placeholder),
+            "Changes SQL for tag SQL query %s must contain %s", query.getName(), placeholder);
+      }
+      Preconditions.checkArgument(query.getSql().contains(":changed_ids"),
+          "SQL for change data capture tag SQL query %s must contain :changed_ids", query.getName());
+      Preconditions.checkArgument(!query.usesRelaxedOrdering(),
+          "Tag SQL query %s can't use both change data capture and relaxed ordering", query.getName());
+      Preconditions.checkArgument(!query.hasSnapshotSql()
+              || query.getSnapshotSql().contains(":previous_sync_marker") && query.getSnapshotSql().contains(":skipped_ids"),
+          "Snapshot SQL for tag SQL query %s must contain both :previous_sync_marker and :skipped_ids", query.getName());
+      Preconditions.checkArgument(!query.hasSnapshotSql() || StringUtils.isNotBlank(query.getCurrentChangeMarkerSql()),
+          "Tag SQL query %s needs a current change marker SQL to start its snapshot from", query.getName());
+      Preconditions.checkArgument(!query.hasMinValidChangeMarkerSql() || query.hasSnapshotSql(),
+          "Tag SQL query %s needs a snapshot SQL to resync when its changes are no longer kept", query.getName());
+    } else {
+      Preconditions.checkArgument(!query.hasSnapshotSql() && !query.hasMinValidChangeMarkerSql(),
+          "Tag SQL query %s can only have a snapshot with change data capture", query.getName());
+    }
     return query;
   }
 
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate of all calls to the WiseTime API with a single token bucket, so that a catch-up drain can't use up
+ * the API quota of the activity type sync.
+ *
+ * Each call is made in a lane. When calls of several lanes wait for tokens, the tokens are shared between the lanes in
+ * proportion to the lane weights, so that new tags keep priority over the background refresh. A lane that has the
+ * bucket to itself may use all of it.
+ */
+public class ApiRateLimiter {
+
+  /**
+   * The kind of API traffic that a call belongs to.
+   */
+  public enum Lane {
+    TAG_DRAIN(6),
+    TAG_REFRESH(1),
+    ACTIVITY_TYPES(3);
+
+    private final int defaultWeight;
+
+    Lane(final int defaultWeight) {
+      this.defaultWeight = defaultWeight;
+    }
+  }
+
+  private final double permitsPerSecond;
+  private final double burst;
+  private final Map<Lane, Integer> weights;
+  private final LongSupplier nanoTime;
+
+  // Tokens granted per unit of weight, for sharing tokens between waiting lanes
+  private final Map<Lane, Double> virtualTimes = new EnumMap<>(Lane.class);
+  private final Map<Lane, Integer> waiters = new EnumMap<>(Lane.class);
+  private double lastGrantVirtualTime;
+  private double tokens;
+  private long lastRefillNanos;
+
+  @VisibleForTesting
+  ApiRateLimiter(final double permitsPerSecond, final double burst, final Map<Lane, Integer> weights,
+      final LongSupplier nanoTime) {
+    Preconditions.checkArgument(permitsPerSecond <= 0 || burst >= 1, "API burst must be at least 1");
+    this.permitsPerSecond = permitsPerSecond;
+    this.burst = burst;
+    this.weights = new EnumMap<>(weights);
+    this.nanoTime = nanoTime;
+    for (Lane lane : Lane.values()) {
+      this.weights.putIfAbsent(lane, lane.defaultWeight);
+      Preconditions.checkArgument(this.weights.get(lane) > 0, "API lane weight for %s must be positive", lane);
+      virtualTimes.put(lane, 0d);
+      waiters.put(lane, 0);
+    }
+    tokens = burst;
+    lastRefillNanos = nanoTime.getAsLong();
+  }
+
+  /**
+   * A limiter that doesn't limit anything.
+   */
+  public static ApiRateLimiter unlimited() {
+    return new ApiRateLimiter(0, 0, Map.of(), System::nanoTime);
+  }
+
+  /**
+   * Create a limiter with the rate, burst and lane weights configured in the runtime configuration. Doesn't limit
+   * anything if no rate is configured.
+   */
+  public static ApiRateLimiter fromConfig() {
+    final double permitsPerSecond = RuntimeConfig.getString(SqlConnectorConfigKey.API_MAX_REQUESTS_PER_SECOND)
+        .map(Double::parseDouble)
+        .orElse(0d);
+    return new ApiRateLimiter(
+        permitsPerSecond,
+        RuntimeConfig.getString(SqlConnectorConfigKey.API_BURST)
+            .map(Double::parseDouble)
+            .orElse(Math.max(1, permitsPerSecond)),
+        RuntimeConfig.getString(SqlConnectorConfigKey.API_LANE_WEIGHTS)
+            .map(ApiRateLimiter::parseWeights)
+            .orElse(Map.of()),
+        System::nanoTime);
+  }
+
+  /**
+   * Parses lane weights formatted as e.g. {@code TAG_DRAIN=6,TAG_REFRESH=1,ACTIVITY_TYPES=3}. Lanes that aren't listed
+   * keep their default weight.
+   */
+  @VisibleForTesting
+  static Map<Lane, Integer> parseWeights(final String weights) {
+    final Map<Lane, Integer> parsed = new EnumMap<>(Lane.class);
+    for (String weight : weights.split(",")) {
+      final String[] parts = weight.split("=");
+      Preconditions.checkArgument(parts.length == 2,
+          "API lane weights must be formatted as LANE=weight, e.g. TAG_DRAIN=6,TAG_REFRESH=1, but were %s", weights);
+      parsed.put(Lane.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+    }
+    return parsed;
+  }
+
+  /**
+   * Wait until the lane may make one API call.
+   */
+  public void acquire(final Lane lane) throws InterruptedException {
+    if (permitsPerSecond <= 0) {
+      return;
+    }
+    synchronized (this) {
+      if (waiters.get(lane) == 0) {
+        // A lane that was idle doesn't get to catch up on the tokens it didn't use
+        virtualTimes.put(lane, Math.max(virtualTimes.get(lane), lastGrantVirtualTime));
+      }
+      waiters.merge(lane, 1, Integer::sum);
+      try {
+        while (true) {
+          refill();
+          if (tokens >= 1 && lane == nextLane()) {
+            tokens -= 1;
+            lastGrantVirtualTime = virtualTimes.get(lane);
+            virtualTimes.merge(lane, 1d / weights.get(lane), Double::sum);
+            notifyAll();
+            return;
+          }
+          final double missingTokens = Math.max(0, 1 - tokens);
+          final long waitMillis = (long) Math.ceil(missingTokens / permitsPerSecond * TimeUnit.SECONDS.toMillis(1));
+          wait(Math.max(1, waitMillis));
+        }
+      } finally {
+        waiters.merge(lane, -1, Integer::sum);
+        notifyAll();
+      }
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int waiting(final Lane lane) {
+    return waiters.get(lane);
+  }
+
+  private void refill() {
+    final long now = nanoTime.getAsLong();
+    tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+    lastRefillNanos = now;
+  }
+
+  /**
+   * The waiting lane that received the fewest tokens for its weight.
+   */
+  private Lane nextLane() {
+    Lane next = null;
+    for (Lane lane : Lane.values()) {
+      if (waiters.get(lane) > 0 && (next == null || virtualTimes.get(lane) < virtualTimes.get(next))) {
+        next = lane;
+      }
+    }
+    return next;
+  }
+}
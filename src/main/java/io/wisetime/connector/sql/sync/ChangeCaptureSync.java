@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.collect.Lists;
+import io.wisetime.connector.sql.queries.DrainRun;
+import io.wisetime.connector.sql.queries.TagQuery;
+import io.wisetime.connector.sql.sync.ConnectedDatabase.TagChange;
+import io.wisetime.connector.sql.sync.TagSyncStore.SnapshotState;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Syncs a tag query from a change data capture source instead of polling the tag query by sync marker.
+ *
+ * The query's changes SQL reads a page of the IDs that changed after the stored sync marker, e.g. from SQL Server's
+ * {@code CHANGETABLE(CHANGES ...)} or from a Postgres logical replication slot, together with the version or log
+ * sequence number of each change. Pages are read in (version, ID) order after the last synced change, so that a large
+ * transaction doesn't have to be read at once. The changed IDs are then looked up with the tag query's SQL. The
+ * stored sync marker only moves to a version once every change up to it was synced. The cost for the database is
+ * proportional to the number of changes.
+ *
+ * A query with a snapshot SQL first reads all of its rows once, like a polled tag query, and then syncs the changes
+ * made since the snapshot started. The snapshot is read again if the source no longer keeps the changes after the
+ * stored sync marker, e.g. because they are older than the change tracking retention period.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ChangeCaptureSync {
+
+  // SQL Server allows at most 2100 parameters per statement
+  private static final int LOOKUP_BATCH_SIZE = 500;
+
+  private final ConnectedDatabase database;
+
+  public void run(final TagQuery tagQuery, final TagSyncStore syncStore, final Supplier<Boolean> allowSync,
+      final Consumer<List<TagSyncRecord>> upsertBatch) {
+    if (!allowSync.get()) {
+      return;
+    }
+    if (tagQuery.hasSnapshotSql()) {
+      SnapshotState snapshotState = syncStore.getSnapshotState(tagQuery);
+      if (snapshotState == SnapshotState.COMPLETE && !changesAreKept(tagQuery, syncStore)) {
+        snapshotState = SnapshotState.NOT_STARTED;
+      }
+      if (snapshotState == SnapshotState.NOT_STARTED) {
+        // Changes made while the snapshot is read are synced afterwards
+        final String changeMarker = database.getChangeMarker(tagQuery.getCurrentChangeMarkerSql());
+        syncStore.startSnapshot(tagQuery, changeMarker);
+        log.info("Reading a snapshot of tag SQL query {}, then syncing its changes after {}",
+            tagQuery.getName(), changeMarker);
+      }
+      if (snapshotState != SnapshotState.COMPLETE && !readSnapshot(tagQuery, syncStore, allowSync, upsertBatch)) {
+        return;
+      }
+    }
+    syncChanges(tagQuery, syncStore, allowSync, upsertBatch);
+  }
+
+  private boolean changesAreKept(final TagQuery tagQuery, final TagSyncStore syncStore) {
+    if (!tagQuery.hasMinValidChangeMarkerSql()) {
+      return true;
+    }
+    final String syncMarker = syncStore.getSyncMarker(tagQuery);
+    final String minValidMarker = database.getChangeMarker(tagQuery.getMinValidChangeMarkerSql());
+    if (SyncMarkers.compare(syncMarker, minValidMarker) >= 0) {
+      return true;
+    }
+    log.warn("Changes of tag SQL query {} after {} are no longer kept, the oldest valid marker is {}. "
+        + "Reading its snapshot again.", tagQuery.getName(), syncMarker, minValidMarker);
+    return false;
+  }
+
+  /**
+   * @return whether the whole snapshot was read
+   */
+  private boolean readSnapshot(final TagQuery tagQuery, final TagSyncStore syncStore, final Supplier<Boolean> allowSync,
+      final Consumer<List<TagSyncRecord>> upsertBatch) {
+    final TagQuery snapshotQuery = tagQuery.snapshotQuery();
+    new DrainRun<>(
+        allowSync,
+        () -> database.getTagsToSync(snapshotQuery, syncStore.getSyncMarker(snapshotQuery),
+            Stream.concat(snapshotQuery.getSkippedIds().stream(), syncStore.getLastSyncedIds(snapshotQuery).stream())
+                .filter(StringUtils::isNotEmpty)
+                .collect(Collectors.toList())),
+        snapshotBatch -> {
+          upsertBatch.accept(snapshotBatch);
+          syncStore.markSyncPosition(snapshotQuery, (LinkedList<TagSyncRecord>) snapshotBatch);
+        }).run();
+    if (!allowSync.get()) {
+      return false;
+    }
+    syncStore.completeSnapshot(tagQuery);
+    log.info("Read the snapshot of tag SQL query {}", tagQuery.getName());
+    return true;
+  }
+
+  private void syncChanges(final TagQuery tagQuery, final TagSyncStore syncStore, final Supplier<Boolean> allowSync,
+      final Consumer<List<TagSyncRecord>> upsertBatch) {
+    while (allowSync.get()) {
+      final String syncMarker = syncStore.getSyncMarker(tagQuery);
+      // Without a stored cursor, every change up to the sync marker was synced
+      final ChangeCursor cursor = syncStore.getChangeCursor(tagQuery).orElse(new ChangeCursor(syncMarker, ""));
+      final List<TagChange> changes = database.getTagChanges(tagQuery.getChangesSql(), syncMarker, cursor);
+      if (changes.isEmpty()) {
+        if (!cursor.getSyncMarker().equals(syncMarker)) {
+          // Every change up to the last synced change was synced
+          syncStore.markChangePosition(tagQuery, cursor.getSyncMarker(), cursor);
+          acknowledge(tagQuery, cursor.getSyncMarker());
+        }
+        return;
+      }
+      final TagChange lastChange = changes.get(changes.size() - 1);
+      final ChangeCursor nextCursor = new ChangeCursor(lastChange.getSyncMarker(), lastChange.getId());
+      if (nextCursor.equals(cursor)) {
+        // Guard against looping forever over the same changes
+        throw new RuntimeException(String.format("Changes SQL for tag SQL query %s must only return changes after "
+            + ":previous_change_marker and :previous_change_id", tagQuery.getName()));
+      }
+
+      final List<String> changedIds = changes.stream()
+          .map(TagChange::getId)
+          .distinct()
+          .collect(Collectors.toList());
+      for (List<String> ids : Lists.partition(changedIds, LOOKUP_BATCH_SIZE)) {
+        // Deleted rows are not found and have nothing to upsert
+        final List<TagSyncRecord> tagSyncRecords = database.getTagsById(tagQuery, ids);
+        if (!tagSyncRecords.isEmpty()) {
+          upsertBatch.accept(tagSyncRecords);
+        }
+      }
+
+      final String completedMarker = completedMarker(changes, cursor, syncMarker);
+      syncStore.markChangePosition(tagQuery, completedMarker, nextCursor);
+      if (!completedMarker.equals(syncMarker)) {
+        acknowledge(tagQuery, completedMarker);
+      }
+      log.info("Tag SQL query {} synced {} changed IDs up to change {} at sync marker {}",
+          tagQuery.getName(), changedIds.size(), nextCursor.getId(), nextCursor.getSyncMarker());
+    }
+  }
+
+  /**
+   * The version up to which every change was synced after syncing a page. Changes at the page's last version may
+   * continue on the next page, but every change at an earlier version was synced.
+   */
+  private String completedMarker(final List<TagChange> changes, final ChangeCursor cursor, final String syncMarker) {
+    final String lastMarker = changes.get(changes.size() - 1).getSyncMarker();
+    for (int i = changes.size() - 2; i >= 0; i--) {
+      if (!changes.get(i).getSyncMarker().equals(lastMarker)) {
+        return changes.get(i).getSyncMarker();
+      }
+    }
+    // The page doesn't start with changes at the cursor's version, so none are left there
+    return cursor.getSyncMarker().equals(lastMarker) ? syncMarker : cursor.getSyncMarker();
+  }
+
+  private void acknowledge(final TagQuery tagQuery, final String syncMarker) {
+    if (tagQuery.hasAcknowledgeSql()) {
+      database.acknowledgeTagChanges(tagQuery.getAcknowledgeSql(), syncMarker);
+    }
+  }
+}
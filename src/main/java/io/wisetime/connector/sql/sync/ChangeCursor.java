@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import lombok.Value;
+
+/**
+ * Where a change data capture sync stopped within the changes after its sync marker: the version and ID of the last
+ * synced change. The next page of changes starts after it in (version, ID) order.
+ */
+@Value
+public class ChangeCursor {
+
+  String syncMarker;
+  String id;
+}
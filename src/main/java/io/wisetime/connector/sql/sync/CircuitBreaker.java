@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops calling an endpoint for a while after it failed repeatedly, so that an unavailable endpoint is not hammered
+ * with retries. Once the open period has passed, calls are let through again. A successful call closes the breaker,
+ * while another failure opens it again straight away.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  private final String endpoint;
+  private final int failureThreshold;
+  private final Duration openDuration;
+  private final Clock clock;
+
+  private int consecutiveFailures;
+  private Instant openUntil;
+
+  public CircuitBreaker(final String endpoint, final int failureThreshold, final Duration openDuration,
+      final Clock clock) {
+    this.endpoint = endpoint;
+    this.failureThreshold = failureThreshold;
+    this.openDuration = openDuration;
+    this.clock = clock;
+  }
+
+  /**
+   * Throws if the breaker is open.
+   */
+  public synchronized void checkClosed() {
+    if (openUntil != null && clock.instant().isBefore(openUntil)) {
+      throw new RuntimeException(String.format(
+          "Not calling %s until %s after %d consecutive failures", endpoint, openUntil, consecutiveFailures));
+    }
+  }
+
+  public synchronized void recordSuccess() {
+    if (openUntil != null) {
+      log.info("Calls to {} succeed again", endpoint);
+    }
+    consecutiveFailures = 0;
+    openUntil = null;
+  }
+
+  public synchronized void recordFailure() {
+    consecutiveFailures++;
+    if (consecutiveFailures >= failureThreshold) {
+      openUntil = clock.instant().plus(openDuration);
+      log.warn("Calls to {} failed {} times in a row, pausing calls until {}", endpoint, consecutiveFailures, openUntil);
+    }
+  }
+}
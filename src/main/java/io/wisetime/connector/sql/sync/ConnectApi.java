@@ -6,23 +6,31 @@ package io.wisetime.connector.sql.sync;
 
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import io.vavr.control.Try;
 import io.wisetime.connector.api_client.ApiClient;
 import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import io.wisetime.connector.sql.sync.ApiRateLimiter.Lane;
+import io.wisetime.connector.sql.sync.TagMetadataDecoder.InvalidTagMetadataException;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
 import io.wisetime.generated.connect.ActivityType;
 import io.wisetime.generated.connect.SyncActivityTypesRequest;
 import io.wisetime.generated.connect.SyncSession;
 import io.wisetime.generated.connect.UpsertTagRequest;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpStatus;
@@ -38,32 +46,267 @@ public class ConnectApi {
   private final Runnable noop = () -> {
   };
 
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int DEFAULT_UPSERT_CONCURRENCY = 4;
+  private static final int DEFAULT_UPSERT_MAX_BATCH_SIZE = 500;
+  private static final int DEFAULT_UPSERT_MAX_BATCH_BYTES = 1024 * 1024;
+  private static final int DEFAULT_OUTBOX_MAX_BYTES = 256 * 1024 * 1024;
+  private static final Duration OUTBOX_POLL_TIMEOUT = Duration.ofSeconds(1);
+  private static final Duration OUTBOX_FAILURE_PAUSE = Duration.ofSeconds(30);
+  private static final Duration OUTBOX_UNHEALTHY_AFTER = Duration.ofMinutes(15);
+  private static final double OUTBOX_UNHEALTHY_FILL_RATIO = 0.8;
+  private static final Duration OUTBOX_STOP_TIMEOUT = Duration.ofSeconds(5);
+
   private final ApiClient apiClient;
+  private final RetryPolicy retryPolicy;
+  private final TagUpsertHashIndex upsertHashIndex;
+  private final ApiRateLimiter rateLimiter;
+  private final TagDeadLetterLog deadLetterLog;
+  private final TagMetadataDecoder metadataDecoder = TagMetadataDecoder.fromConfig();
   private final String tagUpsertPath;
+  private final int upsertConcurrency;
+  private final int upsertMaxBatchSize;
+  private final int upsertMaxBatchBytes;
+  private final Optional<TagOutbox> outbox;
+  private final Clock clock = Clock.systemUTC();
+  private final AtomicBoolean outboxReportedUnhealthy = new AtomicBoolean();
+  private Thread outboxSender;
+  private volatile boolean closed;
+  // When posting from the outbox started failing, null while it succeeds
+  private volatile Instant outboxFailingSince;
 
   public ConnectApi(final ApiClient apiClient) {
+    this(apiClient, RetryPolicy.fromConfig(), TagUpsertHashIndex.fromConfig(), outboxFromConfig(),
+        ApiRateLimiter.fromConfig(), TagDeadLetterLog.fromConfig());
+  }
+
+  @VisibleForTesting
+  ConnectApi(final ApiClient apiClient, final RetryPolicy retryPolicy) {
+    this(apiClient, retryPolicy, TagUpsertHashIndex.disabled());
+  }
+
+  @VisibleForTesting
+  ConnectApi(final ApiClient apiClient, final RetryPolicy retryPolicy, final TagUpsertHashIndex upsertHashIndex) {
+    this(apiClient, retryPolicy, upsertHashIndex, null, ApiRateLimiter.unlimited());
+  }
+
+  @VisibleForTesting
+  ConnectApi(final ApiClient apiClient, final RetryPolicy retryPolicy, final TagUpsertHashIndex upsertHashIndex,
+      final TagOutbox outbox, final ApiRateLimiter rateLimiter) {
+    this(apiClient, retryPolicy, upsertHashIndex, outbox, rateLimiter, TagDeadLetterLog.logOnly());
+  }
+
+  @VisibleForTesting
+  ConnectApi(final ApiClient apiClient, final RetryPolicy retryPolicy, final TagUpsertHashIndex upsertHashIndex,
+      final TagOutbox outbox, final ApiRateLimiter rateLimiter, final TagDeadLetterLog deadLetterLog) {
     this.apiClient = apiClient;
+    this.retryPolicy = retryPolicy;
+    this.upsertHashIndex = upsertHashIndex;
+    this.outbox = Optional.ofNullable(outbox);
+    this.rateLimiter = rateLimiter;
+    this.deadLetterLog = deadLetterLog;
 
     tagUpsertPath = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_UPSERT_PATH)
         .orElseThrow(() -> new RuntimeException("Missing required TAG_UPSERT_PATH configuration"));
     Preconditions.checkArgument(tagUpsertPath.startsWith("/"), "tag path should start with /");
+
+    upsertConcurrency = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_UPSERT_CONCURRENCY)
+        .map(Integer::parseInt)
+        .orElse(DEFAULT_UPSERT_CONCURRENCY);
+    upsertMaxBatchSize = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_UPSERT_MAX_BATCH_SIZE)
+        .map(Integer::parseInt)
+        .orElse(DEFAULT_UPSERT_MAX_BATCH_SIZE);
+    upsertMaxBatchBytes = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_UPSERT_MAX_BATCH_BYTES)
+        .map(Integer::parseInt)
+        .orElse(DEFAULT_UPSERT_MAX_BATCH_BYTES);
+    Preconditions.checkArgument(upsertMaxBatchSize > 0, "TAG_UPSERT_MAX_BATCH_SIZE must be positive");
+    Preconditions.checkArgument(upsertMaxBatchBytes > 0, "TAG_UPSERT_MAX_BATCH_BYTES must be positive");
   }
 
+  private static TagOutbox outboxFromConfig() {
+    final boolean outboxEnabled = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_OUTBOX_ENABLED)
+        .map(Boolean::parseBoolean)
+        .orElse(false);
+    if (!outboxEnabled) {
+      return null;
+    }
+    return new TagOutbox(
+        DataFiles.resolve("tag_outbox.log"),
+        RuntimeConfig.getString(SqlConnectorConfigKey.TAG_OUTBOX_MAX_BYTES)
+            .map(Integer::parseInt)
+            .orElse(DEFAULT_OUTBOX_MAX_BYTES));
+  }
+
+  /**
+   * Upserts the tags in chunks that are bounded by both the number of tags and their serialized size, with several
+   * chunks in flight at once. Returns once every chunk was upserted, and throws if any chunk failed.
+   *
+   * Tags that were already upserted with the same content are skipped if the upsert hash index is enabled.
+   *
+   * Tags that WiseTime rejects are isolated by splitting the failed chunk, and recorded in the {@link TagDeadLetterLog}
+   * rather than failing the whole upsert. Other failures, e.g. network errors, still fail the upsert.
+   *
+   * If the outbox is enabled, the tags are only journaled to the outbox with their lane, and posted to WiseTime in the
+   * background once {@link #start()} was called. The method then returns as soon as the tags are durably journaled.
+   */
   public void upsertWiseTimeTags(Collection<TagSyncRecord> tagSyncRecords) {
+    upsertWiseTimeTags(tagSyncRecords, Lane.TAG_DRAIN);
+  }
+
+  /**
+   * Upserts the tags as API traffic of the given lane, see {@link ApiRateLimiter}.
+   */
+  public void upsertWiseTimeTags(Collection<TagSyncRecord> tagSyncRecords, Lane lane) {
     final List<UpsertTagRequest> requests = tagSyncRecords.stream()
         .map(tagSyncRecord -> toUpsertTagRequest(tagSyncRecord, tagUpsertPath))
+        .flatMap(Optional::stream)
         .collect(Collectors.toList());
+    if (outbox.isPresent()) {
+      if (!requests.isEmpty()) {
+        outbox.get().append(lane, requests);
+      }
+      return;
+    }
+    upsertTagRequests(requests, lane);
+  }
+
+  /**
+   * Start posting tags from the outbox in the background, if the outbox is enabled.
+   */
+  public synchronized void start() {
+    Preconditions.checkState(!closed, "The connect API was stopped");
+    if (outbox.isPresent() && outboxSender == null) {
+      outboxSender = Thread.ofVirtual().name("tag-outbox-sender").start(() -> sendFromOutbox(outbox.get()));
+    }
+  }
+
+  /**
+   * Stop posting tags from the outbox. Batches that weren't posted yet are posted after the next start.
+   */
+  public synchronized void stop() {
+    closed = true;
+    if (outboxSender != null) {
+      outboxSender.interrupt();
+      try {
+        outboxSender.join(OUTBOX_STOP_TIMEOUT);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    outbox.ifPresent(TagOutbox::close);
+  }
+
+  /**
+   * Whether posting from the outbox keeps up, i.e. it hasn't been failing for long and the outbox isn't close to full.
+   * Always true if the outbox is disabled. Only logs when the outbox becomes unhealthy.
+   */
+  public boolean isHealthy() {
+    if (outbox.isEmpty()) {
+      return true;
+    }
+    final Instant failingSince = outboxFailingSince;
+    final boolean failingTooLong = failingSince != null
+        && !failingSince.isAfter(clock.instant().minus(OUTBOX_UNHEALTHY_AFTER));
+    final int pendingBytes = outbox.get().pendingBytes();
+    final boolean nearlyFull = pendingBytes > outbox.get().capacityBytes() * OUTBOX_UNHEALTHY_FILL_RATIO;
+    final boolean healthy = !failingTooLong && !nearlyFull;
+    final boolean reportedUnhealthy = outboxReportedUnhealthy.getAndSet(!healthy);
+    if (!healthy && !reportedUnhealthy) {
+      log.warn("Tag outbox is falling behind with {} bytes waiting to be posted, failing since {}",
+          pendingBytes, failingSince);
+    }
+    return healthy;
+  }
+
+  private void sendFromOutbox(final TagOutbox tagOutbox) {
+    while (!closed) {
+      try {
+        final Optional<TagOutbox.Batch> batch = tagOutbox.next(OUTBOX_POLL_TIMEOUT);
+        if (batch.isPresent()) {
+          upsertTagRequests(batch.get().getRequests(), batch.get().getLane());
+          tagOutbox.commit();
+          outboxFailingSince = null;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        if (closed) {
+          return;
+        }
+        if (outboxFailingSince == null) {
+          outboxFailingSince = clock.instant();
+        }
+        log.warn("Failed to post tags from the outbox, trying again in {}", OUTBOX_FAILURE_PAUSE, e);
+        try {
+          Thread.sleep(OUTBOX_FAILURE_PAUSE);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void upsertTagRequests(final List<UpsertTagRequest> allRequests, final Lane lane) {
+    final List<UpsertTagRequest> requests = allRequests.stream()
+        .filter(request -> !upsertHashIndex.isUnchanged(request))
+        .collect(Collectors.toList());
+    if (requests.size() < allRequests.size()) {
+      log.debug("Skipping {} unchanged tag upserts", allRequests.size() - requests.size());
+    }
     if (!requests.isEmpty()) {
-      Try.run(() -> apiClient.tagUpsertBatch(requests))
-          .onFailure(ioe -> {
-            throw new RuntimeException(ioe);
-          });
+      final List<List<UpsertTagRequest>> chunks = chunk(requests, upsertMaxBatchSize, upsertMaxBatchBytes);
+      ParallelRuns.forEach(chunks, upsertConcurrency, chunk -> upsertChunk(chunk, lane));
     }
   }
 
+  private void upsertChunk(final List<UpsertTagRequest> chunk, final Lane lane) {
+    try {
+      callApi(lane, "tag upsert", () -> {
+        apiClient.tagUpsertBatch(chunk);
+        return null;
+      });
+    } catch (IOException e) {
+      if (!isRejection(e)) {
+        throw new RuntimeException(e);
+      }
+      if (chunk.size() == 1) {
+        deadLetterLog.record(chunk.get(0).getName(), "Rejected by WiseTime: " + e.getMessage(), chunk.get(0));
+        return;
+      }
+      // Bisect to find the rejected tags, so that the other tags of the chunk are still upserted
+      final int middle = chunk.size() / 2;
+      upsertChunk(new ArrayList<>(chunk.subList(0, middle)), lane);
+      upsertChunk(new ArrayList<>(chunk.subList(middle, chunk.size())), lane);
+      return;
+    }
+    upsertHashIndex.recordUpserted(chunk);
+  }
+
+  /**
+   * Whether WiseTime rejected the content of the request, as opposed to e.g. an authentication or a network error.
+   * Sending the same tags again would fail the same way.
+   */
+  @VisibleForTesting
+  static boolean isRejection(final IOException e) {
+    if (!(e instanceof HttpResponseException)) {
+      return false;
+    }
+    final int statusCode = ((HttpResponseException) e).getStatusCode();
+    return statusCode >= HttpStatus.SC_BAD_REQUEST
+        && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR
+        && statusCode != TOO_MANY_REQUESTS
+        && statusCode != HttpStatus.SC_UNAUTHORIZED
+        && statusCode != HttpStatus.SC_FORBIDDEN
+        && statusCode != HttpStatus.SC_NOT_FOUND
+        && statusCode != HttpStatus.SC_REQUEST_TIMEOUT;
+  }
+
   public String startSyncSession() {
     try {
-      return apiClient.activityTypesStartSyncSession().getSyncSessionId();
+      return callApi(Lane.ACTIVITY_TYPES, "activity types sync session start", apiClient::activityTypesStartSyncSession)
+          .getSyncSessionId();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -75,6 +318,7 @@ public class ConnectApi {
 
   public void completeSyncSession(String syncSessionId, Runnable onInvalidSession) {
     sessionApiCall(
+        "activity types sync session completion",
         () -> apiClient.activityTypesCompleteSyncSession(new SyncSession().syncSessionId(syncSessionId)),
         onInvalidSession);
   }
@@ -95,21 +339,31 @@ public class ConnectApi {
         .collect(Collectors.toList());
 
     sessionApiCall(
+        "activity types sync",
         () -> apiClient.syncActivityTypes(new SyncActivityTypesRequest()
             .syncSessionId(sessionId)
             .activityTypes(activityTypes)),
         onInvalidSession);
   }
 
-  private UpsertTagRequest toUpsertTagRequest(final TagSyncRecord tagSyncRecord, final String path) {
+  /**
+   * Returns empty for a tag with invalid metadata, which is left out rather than failing the whole page and recorded in
+   * the dead letter log.
+   */
+  private Optional<UpsertTagRequest> toUpsertTagRequest(final TagSyncRecord tagSyncRecord, final String path) {
+    final Map<String, String> metadata;
+    try {
+      metadata = metadataDecoder.decode(tagSyncRecord.getTagMetadata(), tagSyncRecord.getMetadataColumns());
+    } catch (InvalidTagMetadataException e) {
+      deadLetterLog.record(tagSyncRecord.getTagName(), "Invalid tag_metadata: " + e.getMessage(), tagSyncRecord);
+      return Optional.empty();
+    }
     final UpsertTagRequest request = new UpsertTagRequest()
         .name(tagSyncRecord.getTagName())
-        .additionalKeywords(ImmutableList.of(tagSyncRecord.getAdditionalKeyword()))
+        .additionalKeywords(ImmutableList.copyOf(tagSyncRecord.allAdditionalKeywords()))
         .url(tagSyncRecord.getUrl())
         .externalId(tagSyncRecord.getExternalId())
-        .metadata(
-            gson.fromJson(tagSyncRecord.getTagMetadata(), new TypeToken<Map<String, String>>() {
-            }.getType()))
+        .metadata(metadata)
         .excludeTagNameKeyword(true)
         .path(path);
 
@@ -117,12 +371,38 @@ public class ConnectApi {
       // Only overwrite existing description if we are given a new one
       request.description(tagSyncRecord.getTagDescription());
     }
-    return request;
+    return Optional.of(request);
   }
 
-  private void sessionApiCall(SessionVoidApiCall call, Runnable onInvalidSession) {
+  /**
+   * Splits the requests into consecutive chunks of at most the given number of requests and serialized bytes. A request
+   * that is larger than the byte limit on its own is sent in a chunk of its own.
+   */
+  @VisibleForTesting
+  List<List<UpsertTagRequest>> chunk(final List<UpsertTagRequest> requests, final int maxSize, final int maxBytes) {
+    final List<List<UpsertTagRequest>> chunks = new ArrayList<>();
+    List<UpsertTagRequest> chunk = new ArrayList<>();
+    long chunkBytes = 0;
+    for (UpsertTagRequest request : requests) {
+      final int requestBytes = gson.toJson(request).getBytes(StandardCharsets.UTF_8).length;
+      if (!chunk.isEmpty() && (chunk.size() >= maxSize || chunkBytes + requestBytes > maxBytes)) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>();
+        chunkBytes = 0;
+      }
+      chunk.add(request);
+      chunkBytes += requestBytes;
+    }
+    chunks.add(chunk);
+    return chunks;
+  }
+
+  private void sessionApiCall(String endpoint, SessionVoidApiCall call, Runnable onInvalidSession) {
     try {
-      call.invoke();
+      callApi(Lane.ACTIVITY_TYPES, endpoint, () -> {
+        call.invoke();
+        return null;
+      });
     } catch (HttpResponseException e) {
       if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
         log.warn("Session not found! Clearing sync session and refresh marker to start from the beginning.");
@@ -134,6 +414,18 @@ public class ConnectApi {
     }
   }
 
+  private <T> T callApi(final Lane lane, final String endpoint, final RetryPolicy.ApiCall<T> call) throws IOException {
+    return retryPolicy.call(endpoint, () -> {
+      try {
+        rateLimiter.acquire(lane);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting to call " + endpoint, e);
+      }
+      return call.invoke();
+    });
+  }
+
   private interface SessionVoidApiCall {
 
     void invoke() throws IOException;
@@ -4,20 +4,42 @@
 
 package io.wisetime.connector.sql.sync;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import io.vavr.control.Try;
 import io.wisetime.connector.sql.queries.ActivityTypeQuery;
+import io.wisetime.connector.sql.queries.TagQuery;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.codejargon.fluentjdbc.api.FluentJdbc;
 import org.codejargon.fluentjdbc.api.FluentJdbcBuilder;
 import org.codejargon.fluentjdbc.api.mapper.Mappers;
+import org.codejargon.fluentjdbc.api.query.Mapper;
 import org.codejargon.fluentjdbc.api.query.Query;
 
 /**
@@ -25,38 +47,342 @@ import org.codejargon.fluentjdbc.api.query.Query;
  *
  * @author shane.xie
  */
+@Slf4j
 public class ConnectedDatabase {
 
+  private static final Set<String> TAG_REQUIRED_COLUMNS =
+      ImmutableSet.of("id", "tag_name", "additional_keyword", "tag_description", "sync_marker");
+  private static final Set<String> ACTIVITY_TYPE_REQUIRED_COLUMNS = ImmutableSet.of("code", "label", "description");
+  // Bound to :changed_ids during warm-up, an ID that no row has
+  private static final List<String> WARM_UP_CHANGED_IDS = List.of("");
+
   private final HikariDataSource dataSource;
+  private final DatabaseGovernor governor;
   private final FluentJdbc fluentJdbc;
+  // Selected columns of each query, as learned when its statement was prepared during warm-up
+  private final Map<String, Set<String>> selectedColumns = new ConcurrentHashMap<>();
 
   public ConnectedDatabase(final HikariDataSource dataSource) {
+    this(dataSource, DatabaseGovernor.unlimited());
+  }
+
+  public ConnectedDatabase(final HikariDataSource dataSource, final DatabaseGovernor governor) {
     this.dataSource = dataSource;
+    this.governor = governor;
     this.fluentJdbc = new FluentJdbcBuilder().connectionProvider(dataSource).build();
   }
 
+  /**
+   * Whether the database answers. The check bypasses the governor, so that a connector whose statements are held back
+   * by the governor doesn't report itself as unhealthy.
+   */
   public boolean isAvailable() {
-    return Try.of(() -> query().select("SELECT 1").firstResult(Mappers.singleInteger())).isSuccess();
+    return Try.of(() -> fluentJdbc.query().select("SELECT 1").firstResult(Mappers.singleInteger()))
+        .isSuccess();
   }
 
   public LinkedList<TagSyncRecord> getTagsToSync(
-      final String sql, final String syncMarker, final List<String> skippedIds) {
+      final TagQuery tagQuery, final String syncMarker, final List<String> skippedIds) {
 
-    Preconditions.checkArgument(!skippedIds.isEmpty(), "skippedIds must not be empty");
-    Preconditions.checkArgument(
-        sql.contains(":previous_sync_marker") && sql.contains(":skipped_ids"),
-        "The tag query SQL must contain both :previous_sync_marker and :skipped_ids"
-    );
+    checkTagQuery(tagQuery.getSql(), skippedIds);
 
     final LinkedList<TagSyncRecord> results = new LinkedList<>();
-    query()
-        .select(sql)
-        .namedParam("previous_sync_marker", syncMarker)
-        .namedParam("skipped_ids", skippedIds)
-        .iterateResult(TagSyncRecord.fluentJdbcMapper(), results::add);
+    final Optional<KeywordGroupMerger> merger = keywordGroupMerger(tagQuery, results::add);
+    final Consumer<TagSyncRecord> rows = merger.isPresent() ? merger.get() : results::add;
+    governed(query -> {
+      query
+          .select(tagQuery.getSql())
+          .namedParam("previous_sync_marker", syncMarker)
+          .namedParam("skipped_ids", skippedIds)
+          .iterateResult(tagSyncRecordMapper(tagQuery), rows);
+      return results;
+    });
+    merger.ifPresent(groups -> finishPage(tagQuery, groups));
     return results;
   }
 
+  /**
+   * Runs several tag queries as one statement on one connection, so that they cost a single network round trip. SQL
+   * Server returns one result set per query, and the Postgres driver pipelines the queries. MySQL Connector/J rejects
+   * the statement unless the JDBC URL sets {@code allowMultiQueries=true}. The results are returned in the same order as
+   * the pages.
+   */
+  public List<LinkedList<TagSyncRecord>> getTagsToSync(final List<TagPage> pages) {
+    pages.forEach(page -> checkTagQuery(page.getTagQuery().getSql(), page.getSkippedIds()));
+    if (pages.size() == 1) {
+      final TagPage page = pages.get(0);
+      return List.of(getTagsToSync(page.getTagQuery(), page.getSyncMarker(), page.getSkippedIds()));
+    }
+
+    final List<Optional<KeywordGroupMerger>> mergers = new ArrayList<>(pages.size());
+    final List<LinkedList<TagSyncRecord>> results;
+    try (Connection connection = dataSource.getConnection()) {
+      final boolean sqlServer = isSqlServer(connection);
+      final List<NamedParameterSql> statements = pages.stream()
+          .map(page -> NamedParameterSql.expand(page.getTagQuery().getSql(), Map.of(
+              "previous_sync_marker", page.getSyncMarker(),
+              "skipped_ids", page.getSkippedIds()), sqlServer))
+          .collect(Collectors.toList());
+      final String sql = statements.stream()
+          .map(statement -> StringUtils.stripEnd(statement.getSql().trim(), ";"))
+          .collect(Collectors.joining(";\n"));
+      results = governor.govern(() -> runBatchedTagQueries(connection, sql, statements, pages, mergers));
+    } catch (SQLException e) {
+      throw new RuntimeException("Failed to run the batched tag queries", e);
+    }
+    // Keyword groups are looked up after the connection of the batched queries was returned
+    for (int i = 0; i < pages.size(); i++) {
+      final TagQuery pageQuery = pages.get(i).getTagQuery();
+      mergers.get(i).ifPresent(groups -> finishPage(pageQuery, groups));
+    }
+    return results;
+  }
+
+  private List<LinkedList<TagSyncRecord>> runBatchedTagQueries(final Connection connection, final String sql,
+      final List<NamedParameterSql> statements, final List<TagPage> pages,
+      final List<Optional<KeywordGroupMerger>> mergers) {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      int parameterIndex = 1;
+      for (NamedParameterSql statementSql : statements) {
+        for (Object parameter : statementSql.getParameters()) {
+          statement.setObject(parameterIndex++, parameter);
+        }
+      }
+
+      final List<LinkedList<TagSyncRecord>> results = new ArrayList<>(pages.size());
+      boolean isResultSet = statement.execute();
+      while (results.size() < pages.size()) {
+        if (isResultSet) {
+          final TagQuery pageQuery = pages.get(results.size()).getTagQuery();
+          final Mapper<TagSyncRecord> mapper = tagSyncRecordMapper(pageQuery);
+          final LinkedList<TagSyncRecord> records = new LinkedList<>();
+          final Optional<KeywordGroupMerger> merger = keywordGroupMerger(pageQuery, records::add);
+          try (ResultSet resultSet = statement.getResultSet()) {
+            while (resultSet.next()) {
+              if (merger.isPresent()) {
+                merger.get().accept(mapper.map(resultSet));
+              } else {
+                records.add(mapper.map(resultSet));
+              }
+            }
+          }
+          mergers.add(merger);
+          results.add(records);
+        } else if (statement.getUpdateCount() == -1) {
+          throw new IllegalStateException(String.format(
+              "Expected %d result sets from the batched tag queries but got %d", pages.size(), results.size()));
+        }
+        // Update counts, e.g. from statements without SET NOCOUNT ON, are skipped
+        isResultSet = statement.getMoreResults();
+      }
+      return results;
+
+    } catch (SQLException e) {
+      throw new RuntimeException("Failed to run the batched tag queries", e);
+    }
+  }
+
+  /**
+   * Streams the results of a tag query in batches, reading rows from the database only as fast as the batches are
+   * consumed. Unlike {@link #getTagsToSync(TagQuery, String, List)}, the whole result is never held in memory.
+   *
+   * Only running the query and fetching each batch are governed. The connection stays checked out while the batches
+   * are consumed, but the governor's permit doesn't, so that e.g. upserting a batch doesn't hold back other statements.
+   *
+   * @param windowEndSyncMarker bound to {@code :window_end_sync_marker}, empty to read all remaining rows
+   * @param batchConsumer returns whether to read on, the rest of the rows are not read if it doesn't
+   */
+  public void streamTagsToSync(final TagQuery tagQuery, final String syncMarker,
+      final Optional<String> windowEndSyncMarker, final List<String> skippedIds, final int batchSize,
+      final Predicate<List<TagSyncRecord>> batchConsumer) {
+    checkTagQuery(tagQuery.getSql(), skippedIds);
+
+    final Map<String, Object> params = new HashMap<>();
+    params.put("previous_sync_marker", syncMarker);
+    params.put("skipped_ids", skippedIds);
+    params.put("window_end_sync_marker", windowEndSyncMarker.orElse(null));
+    final Mapper<TagSyncRecord> mapper = tagSyncRecordMapper(tagQuery);
+    boolean stopped = false;
+    try (Connection connection = dataSource.getConnection()) {
+      final NamedParameterSql statementSql = NamedParameterSql.expand(tagQuery.getSql(), params, isSqlServer(connection));
+      // The Postgres driver only fetches rows in batches outside of auto-commit
+      connection.setAutoCommit(false);
+      try (PreparedStatement statement = connection.prepareStatement(statementSql.getSql())) {
+        for (int i = 0; i < statementSql.getParameters().size(); i++) {
+          statement.setObject(i + 1, statementSql.getParameters().get(i));
+        }
+        statement.setFetchSize(batchSize);
+        try (ResultSet resultSet = governor.govern(() -> executeQuery(statement))) {
+          List<TagSyncRecord> batch = governor.govern(() -> readBatch(resultSet, mapper, batchSize));
+          while (!batch.isEmpty()) {
+            if (!batchConsumer.test(batch)) {
+              stopped = true;
+              // Closing the result set closes the cursor of a Postgres query, other databases would send the rest of
+              // the rows unless the query is cancelled
+              if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+                statement.cancel();
+              }
+              return;
+            }
+            batch = governor.govern(() -> readBatch(resultSet, mapper, batchSize));
+          }
+        }
+      } finally {
+        connection.rollback();
+      }
+    } catch (SQLException e) {
+      if (stopped) {
+        log.debug("Ignoring an error while closing a stopped stream of tag query results", e);
+        return;
+      }
+      throw new RuntimeException("Failed to stream the tag query results", e);
+    }
+  }
+
+  private static ResultSet executeQuery(final PreparedStatement statement) {
+    try {
+      return statement.executeQuery();
+    } catch (SQLException e) {
+      throw new RuntimeException("Failed to run the tag query", e);
+    }
+  }
+
+  private static List<TagSyncRecord> readBatch(
+      final ResultSet resultSet, final Mapper<TagSyncRecord> mapper, final int batchSize) {
+    try {
+      final List<TagSyncRecord> batch = new ArrayList<>(batchSize);
+      while (batch.size() < batchSize && resultSet.next()) {
+        batch.add(mapper.map(resultSet));
+      }
+      return batch;
+    } catch (SQLException e) {
+      throw new RuntimeException("Failed to read the tag query results", e);
+    }
+  }
+
+  /**
+   * Reads the next page of IDs of the rows that changed after the sync marker from a tag query's change data capture
+   * source, e.g. SQL Server change tracking or a Postgres logical replication slot. The changes SQL must select
+   * {@code id} and {@code sync_marker} of a limited number of changes after the cursor, ordered by sync marker and ID.
+   */
+  public List<TagChange> getTagChanges(final String changesSql, final String syncMarker, final ChangeCursor cursor) {
+    return governed(query -> query
+        .select(changesSql)
+        .namedParam("previous_sync_marker", syncMarker)
+        .namedParam("previous_change_marker", cursor.getSyncMarker())
+        .namedParam("previous_change_id", cursor.getId())
+        .listResult(resultSet -> new TagChange(resultSet.getString("id"), resultSet.getString("sync_marker"))));
+  }
+
+  /**
+   * Runs a SQL that selects a single change marker, e.g. the current or the minimum valid change tracking version.
+   */
+  public String getChangeMarker(final String markerSql) {
+    return governed(query -> query
+        .select(markerSql)
+        .firstResult(Mappers.singleString())
+        .orElseThrow(() -> new RuntimeException("Change marker SQL returned no marker: " + markerSql)));
+  }
+
+  /**
+   * Looks up the tag rows of the given IDs with a tag query's SQL, which must contain {@code :changed_ids}.
+   */
+  public List<TagSyncRecord> getTagsById(final TagQuery tagQuery, final List<String> ids) {
+    Preconditions.checkArgument(!ids.isEmpty(), "ids must not be empty");
+    Preconditions.checkArgument(tagQuery.getSql().contains(":changed_ids"), "The tag query SQL must contain :changed_ids");
+
+    return governed(query -> {
+      final List<TagSyncRecord> results = new ArrayList<>();
+      final Optional<KeywordGroupMerger> merger = keywordGroupMerger(tagQuery, results::add);
+      final Consumer<TagSyncRecord> rows = merger.isPresent() ? merger.get() : results::add;
+      query
+          .select(tagQuery.getSql())
+          .namedParam("changed_ids", ids)
+          .iterateResult(tagSyncRecordMapper(tagQuery), rows);
+      // All rows of the IDs were read
+      merger.ifPresent(KeywordGroupMerger::finish);
+      return results;
+    });
+  }
+
+  /**
+   * Lets a change data capture source know that the changes up to the sync marker were synced, e.g. to advance a
+   * Postgres replication slot. The statement runs as a query because connections are read only.
+   */
+  public void acknowledgeTagChanges(final String acknowledgeSql, final String syncMarker) {
+    governed(query -> query
+        .select(acknowledgeSql)
+        .namedParam("sync_marker", syncMarker)
+        .firstResult(Mappers.singleString()));
+  }
+
+  /**
+   * Runs a tag query's change probe and returns the value it observed, e.g. the latest update time of the source table.
+   */
+  public String probeForChanges(final String changeProbeSql) {
+    return governed(query -> query
+        .select(changeProbeSql)
+        .firstResult(resultSet -> String.valueOf(resultSet.getString(1)))
+        .orElse(StringUtils.EMPTY));
+  }
+
+  /**
+   * Prepares the statement of each tag query, so that the first sync after startup or after a configuration reload
+   * doesn't pay for opening connections, loading the driver and compiling query plans. The result set metadata of each
+   * statement is checked for the required columns and kept for mapping the rows of later runs. Most drivers describe
+   * the result set without running the query, but MySQL Connector/J runs it unless {@code useServerPrepStmts=true}.
+   *
+   * @return the names of the tag queries that could not be prepared or do not select the required columns
+   */
+  public List<String> warmUpTagQueries(final List<TagQuery> tagQueries) {
+    return withWarmConnections(connections -> {
+      final List<String> failedQueries = new ArrayList<>();
+      for (int i = 0; i < tagQueries.size(); i++) {
+        final TagQuery query = tagQueries.get(i);
+        // Bind the same parameter types that a sync run binds
+        final Map<String, Object> params = new HashMap<>();
+        params.put("previous_sync_marker", query.getInitialSyncMarker());
+        params.put("skipped_ids", query.getSkippedIds());
+        params.put("changed_ids", WARM_UP_CHANGED_IDS);
+        params.put("window_end_sync_marker", query.getInitialSyncMarker());
+
+        if (!prepare(connections.get(i % connections.size()), query.getName(), query.getSql(), params,
+            tagRequiredColumns(query), columns -> selectedColumns.put(query.getSql(), columns))) {
+          failedQueries.add(query.getName());
+        }
+      }
+      // Forget the columns of queries that were removed or changed
+      selectedColumns.keySet().retainAll(tagQueries.stream().map(TagQuery::getSql).collect(Collectors.toSet()));
+      return failedQueries;
+    });
+  }
+
+  /**
+   * Prepares the statement of each activity type query. See {@link #warmUpTagQueries(List)}.
+   *
+   * @return the SQL of the activity type queries that could not be prepared or do not select the required columns
+   */
+  public List<String> warmUpActivityTypeQueries(final List<ActivityTypeQuery> activityTypeQueries) {
+    return withWarmConnections(connections -> {
+      final List<String> failedQueries = new ArrayList<>();
+      for (int i = 0; i < activityTypeQueries.size(); i++) {
+        final ActivityTypeQuery query = activityTypeQueries.get(i);
+        final Map<String, Object> params = new HashMap<>();
+        params.put("previous_sync_marker", Optional.ofNullable(query.getInitialSyncMarker()).orElse(StringUtils.EMPTY));
+        params.put("skipped_codes", query.getSkippedCodes());
+
+        final Set<String> requiredColumns = query.hasSyncMarker()
+            ? Sets.union(ACTIVITY_TYPE_REQUIRED_COLUMNS, ImmutableSet.of("sync_marker"))
+            : ACTIVITY_TYPE_REQUIRED_COLUMNS;
+        if (!prepare(connections.get(i % connections.size()), "activity types", query.getSql(), params,
+            requiredColumns, columns -> { })) {
+          failedQueries.add(query.getSql());
+        }
+      }
+      return failedQueries;
+    });
+  }
+
   public List<ActivityTypeRecord> getActivityTypes(final ActivityTypeQuery query) {
     return getActivityTypes(query, StringUtils.EMPTY, List.of());
   }
@@ -70,19 +396,178 @@ public class ConnectedDatabase {
         .filter(StringUtils::isNotEmpty)
         .collect(Collectors.toList());
 
-    return query()
+    return governed(statement -> statement
         .select(query.getSql())
         .namedParam("skipped_codes", codesToSkip)
         .namedParam("previous_sync_marker", syncMarker)
-        .listResult(ActivityTypeRecord.fluentJdbcMapper(query.hasSyncMarker()));
+        .listResult(ActivityTypeRecord.fluentJdbcMapper(query.hasSyncMarker())));
   }
 
   public void close() {
     dataSource.close();
   }
 
-  @VisibleForTesting
-  Query query() {
-    return fluentJdbc.query();
+  private void checkTagQuery(final String sql, final List<String> skippedIds) {
+    Preconditions.checkArgument(!skippedIds.isEmpty(), "skippedIds must not be empty");
+    Preconditions.checkArgument(
+        sql.contains(":previous_sync_marker") && sql.contains(":skipped_ids"),
+        "The tag query SQL must contain both :previous_sync_marker and :skipped_ids"
+    );
+  }
+
+  /**
+   * Maps the rows of a tag query, building fields from the query's templates where it configures them.
+   */
+  private Mapper<TagSyncRecord> tagSyncRecordMapper(final TagQuery tagQuery) {
+    return tagSyncRecordMapper(tagQuery, tagQuery.getSql());
+  }
+
+  private Mapper<TagSyncRecord> tagSyncRecordMapper(final TagQuery tagQuery, final String sql) {
+    return TagSyncRecord.fluentJdbcMapper(
+        selectedColumns.get(sql),
+        tagQuery.hasUrlTemplate() ? TagRowTemplate.parseUrl(tagQuery.getUrlTemplate()) : null,
+        tagQuery.hasAdditionalKeywordTemplate() ? TagRowTemplate.parse(tagQuery.getAdditionalKeywordTemplate()) : null);
+  }
+
+  private Optional<KeywordGroupMerger> keywordGroupMerger(
+      final TagQuery tagQuery, final Consumer<TagSyncRecord> downstream) {
+    return tagQuery.mergesKeywords() ? Optional.of(new KeywordGroupMerger(downstream)) : Optional.empty();
+  }
+
+  /**
+   * Finishes a page of merged keyword rows. A page with a single keyword group may have cut it off, so all rows of its
+   * ID are looked up with the tag query's keyword group SQL. The lookup runs once the page's connection was returned.
+   */
+  private void finishPage(final TagQuery tagQuery, final KeywordGroupMerger merger) {
+    merger.finishPage().ifPresent(group -> {
+      if (!tagQuery.hasKeywordGroupSql()) {
+        throw new IllegalStateException(String.format(
+            "Tag SQL query %s needs a keyword group SQL to complete the keywords of tag %s",
+            tagQuery.getName(), group.getId()));
+      }
+      final List<TagSyncRecord> groupRows = governed(query -> query
+          .select(tagQuery.getKeywordGroupSql())
+          .namedParam("changed_ids", List.of(group.getId()))
+          .listResult(tagSyncRecordMapper(tagQuery, tagQuery.getKeywordGroupSql())));
+      merger.completeGroup(group, groupRows);
+    });
+  }
+
+  private Set<String> tagRequiredColumns(final TagQuery query) {
+    final Set<String> requiredColumns = new HashSet<>(TAG_REQUIRED_COLUMNS);
+    if (query.hasAdditionalKeywordTemplate()) {
+      requiredColumns.remove("additional_keyword");
+      requiredColumns.addAll(TagRowTemplate.parse(query.getAdditionalKeywordTemplate()).getColumns());
+    }
+    if (query.hasUrlTemplate()) {
+      requiredColumns.addAll(TagRowTemplate.parse(query.getUrlTemplate()).getColumns());
+    }
+    return requiredColumns;
+  }
+
+  /**
+   * Checks out the pool's minimum idle connections at once so that they are all opened, then hands them to the
+   * warm-up work. Connections that are in use by a running sync are left to it. As for every statement, the connections
+   * are checked out before the governor is asked for a permit.
+   */
+  private List<String> withWarmConnections(final Function<List<Connection>, List<String>> warmUp) {
+    final HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+    final int inUse = pool == null ? 0 : pool.getActiveConnections();
+    final int connectionCount =
+        Math.max(1, Math.min(dataSource.getMinimumIdle(), dataSource.getMaximumPoolSize() - inUse));
+
+    final List<Connection> connections = new ArrayList<>(connectionCount);
+    try {
+      for (int i = 0; i < connectionCount; i++) {
+        connections.add(dataSource.getConnection());
+      }
+      return warmUp.apply(connections);
+    } catch (SQLException e) {
+      throw new RuntimeException("Failed to open database connections for warm-up", e);
+    } finally {
+      connections.forEach(connection -> Try.run(connection::close));
+    }
+  }
+
+  private boolean prepare(final Connection connection, final String queryName, final String sql,
+      final Map<String, Object> params, final Set<String> requiredColumns, final Consumer<Set<String>> columnsConsumer) {
+    return governor.govern(() -> prepareStatement(connection, queryName, sql, params, requiredColumns, columnsConsumer));
+  }
+
+  private boolean prepareStatement(final Connection connection, final String queryName, final String sql,
+      final Map<String, Object> params, final Set<String> requiredColumns, final Consumer<Set<String>> columnsConsumer) {
+    final NamedParameterSql statementSql;
+    try {
+      statementSql = NamedParameterSql.expand(sql, params, isSqlServer(connection));
+    } catch (SQLException e) {
+      log.error("Failed to prepare the {} query: {}", queryName, e.getMessage());
+      return false;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(statementSql.getSql())) {
+      for (int i = 0; i < statementSql.getParameters().size(); i++) {
+        statement.setObject(i + 1, statementSql.getParameters().get(i));
+      }
+      // Describes the result set. MySQL Connector/J runs the query to do so unless it uses server prepared statements.
+      final ResultSetMetaData metaData = statement.getMetaData();
+      if (metaData == null) {
+        log.info("Prepared {} query. The driver does not describe results before execution.", queryName);
+        return true;
+      }
+
+      final Set<String> columns = new HashSet<>();
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        columns.add(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT));
+      }
+      final Set<String> missingColumns = Sets.difference(requiredColumns, columns);
+      if (!missingColumns.isEmpty()) {
+        log.error("The {} query does not select the required columns {}", queryName, missingColumns);
+        return false;
+      }
+      columnsConsumer.accept(ImmutableSet.copyOf(columns));
+      log.info("Prepared {} query selecting {}", queryName, columns);
+      return true;
+
+    } catch (SQLException e) {
+      log.error("Failed to prepare the {} query: {}", queryName, e.getMessage());
+      return false;
+    }
+  }
+
+  private static boolean isSqlServer(final Connection connection) throws SQLException {
+    return "Microsoft SQL Server".equals(connection.getMetaData().getDatabaseProductName());
+  }
+
+  /**
+   * Runs a statement on a connection of its own. The connection is checked out before the governor is asked for a
+   * permit, the same order as everywhere else, so that a statement that holds a permit never waits for a connection
+   * that is held by a statement waiting for a permit.
+   */
+  private <T> T governed(final Function<Query, T> statement) {
+    try (Connection connection = dataSource.getConnection()) {
+      return governor.govern(() -> statement.apply(fluentJdbc.queryOn(connection)));
+    } catch (SQLException e) {
+      throw new RuntimeException("Failed to check out a database connection", e);
+    }
+  }
+
+  /**
+   * A row that changed in a change data capture source, at the change's version or log sequence number.
+   */
+  @Value
+  public static class TagChange {
+
+    String id;
+    String syncMarker;
+  }
+
+  /**
+   * The next page of a tag query to read: the rows after the sync marker, skipping the given IDs.
+   */
+  @Value
+  public static class TagPage {
+
+    TagQuery tagQuery;
+    String syncMarker;
+    List<String> skippedIds;
   }
 }
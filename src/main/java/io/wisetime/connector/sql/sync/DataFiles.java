@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Locates the files that the connector keeps next to its connector store, in the configured data directory.
+ */
+public final class DataFiles {
+
+  private DataFiles() {
+  }
+
+  /**
+   * The path of a file in the data directory. Uses the temporary directory if no data directory is configured.
+   */
+  public static Path resolve(final String fileName) {
+    final Path dataDir = RuntimeConfig.getString(SqlConnectorConfigKey.DATA_DIR)
+        .map(Paths::get)
+        .orElseGet(() -> Paths.get(System.getProperty("java.io.tmpdir")));
+    try {
+      Files.createDirectories(dataDir);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to create data directory " + dataDir, e);
+    }
+    return dataDir.resolve(fileName);
+  }
+}
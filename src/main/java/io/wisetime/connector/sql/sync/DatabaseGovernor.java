@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limits how hard the connector hits the connected database. Every statement that {@link ConnectedDatabase} runs
+ * goes through the governor, which caps the rate and the number of concurrent statements. Heavy background work,
+ * such as the continuous tag refresh, can additionally be restricted to a daily time window.
+ *
+ * The governor counts how often and for how long it held statements back, so that the limits can be tuned.
+ */
+@Slf4j
+public class DatabaseGovernor {
+
+  private final Optional<RateLimiter> rateLimiter;
+  private final Optional<Semaphore> statementPermits;
+  private final Optional<HeavyWorkWindow> heavyWorkWindow;
+  private final Clock clock;
+
+  private final AtomicLong throttledStatements = new AtomicLong();
+  private final AtomicLong throttledMillis = new AtomicLong();
+  private final AtomicLong deferredHeavyWork = new AtomicLong();
+  private final AtomicBoolean heavyWorkAllowed = new AtomicBoolean(true);
+
+  @VisibleForTesting
+  DatabaseGovernor(double maxQueriesPerSecond, int maxConcurrentStatements, HeavyWorkWindow heavyWorkWindow,
+      Clock clock) {
+    this.rateLimiter = maxQueriesPerSecond > 0
+        ? Optional.of(RateLimiter.create(maxQueriesPerSecond))
+        : Optional.empty();
+    this.statementPermits = maxConcurrentStatements > 0
+        ? Optional.of(new Semaphore(maxConcurrentStatements, true))
+        : Optional.empty();
+    this.heavyWorkWindow = Optional.ofNullable(heavyWorkWindow);
+    this.clock = clock;
+  }
+
+  /**
+   * A governor that doesn't limit anything.
+   */
+  public static DatabaseGovernor unlimited() {
+    return new DatabaseGovernor(0, 0, null, Clock.systemDefaultZone());
+  }
+
+  /**
+   * Create a governor with the limits configured in the runtime configuration. Limits that aren't configured don't
+   * apply.
+   */
+  public static DatabaseGovernor fromConfig() {
+    return new DatabaseGovernor(
+        RuntimeConfig.getString(SqlConnectorConfigKey.DB_MAX_QUERIES_PER_SECOND).map(Double::parseDouble).orElse(0d),
+        RuntimeConfig.getString(SqlConnectorConfigKey.DB_MAX_CONCURRENT_STATEMENTS).map(Integer::parseInt).orElse(0),
+        RuntimeConfig.getString(SqlConnectorConfigKey.DB_HEAVY_WORK_WINDOW).map(HeavyWorkWindow::parse).orElse(null),
+        Clock.systemDefaultZone()
+    );
+  }
+
+  /**
+   * Run a database statement once the rate and concurrency limits allow it.
+   */
+  public <T> T govern(final Supplier<T> statement) {
+    final long startNanos = System.nanoTime();
+    boolean throttled = false;
+
+    if (statementPermits.isPresent()) {
+      if (!statementPermits.get().tryAcquire()) {
+        throttled = true;
+        try {
+          statementPermits.get().acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+    }
+    try {
+      if (rateLimiter.isPresent() && !rateLimiter.get().tryAcquire()) {
+        throttled = true;
+        rateLimiter.get().acquire();
+      }
+      if (throttled) {
+        throttledStatements.incrementAndGet();
+        throttledMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      }
+      return statement.get();
+    } finally {
+      statementPermits.ifPresent(Semaphore::release);
+    }
+  }
+
+  /**
+   * Whether heavy background work may run now. Always true if no heavy work window is configured. Only the opening and
+   * closing of the window are logged, not every check.
+   */
+  public boolean allowsHeavyWork() {
+    final boolean allowed = heavyWorkWindow
+        .map(window -> window.contains(LocalTime.now(clock)))
+        .orElse(true);
+    if (heavyWorkAllowed.getAndSet(allowed) != allowed) {
+      if (allowed) {
+        log.info("Inside of the configured heavy work window {}, resuming heavy database work", heavyWorkWindow.get());
+      } else {
+        log.info("Outside of the configured heavy work window {}, deferring heavy database work. {}",
+            heavyWorkWindow.get(), getThrottleStats());
+      }
+    }
+    if (!allowed) {
+      deferredHeavyWork.incrementAndGet();
+      log.debug("Deferring heavy database work until the configured window {}", heavyWorkWindow.get());
+    }
+    return allowed;
+  }
+
+  public ThrottleStats getThrottleStats() {
+    return new ThrottleStats(throttledStatements.get(), throttledMillis.get(), deferredHeavyWork.get());
+  }
+
+  /**
+   * How much the governor held back database work since the connector started.
+   */
+  @Value
+  public static class ThrottleStats {
+
+    long throttledStatements;
+    long throttledMillis;
+    long deferredHeavyWork;
+  }
+
+  /**
+   * A daily time window in the connector's local time zone, e.g. {@code 22:00-06:00}. The window may span midnight.
+   */
+  @Value
+  static class HeavyWorkWindow {
+
+    LocalTime start;
+    LocalTime end;
+
+    static HeavyWorkWindow parse(final String window) {
+      final String[] times = window.split("-");
+      Preconditions.checkArgument(times.length == 2,
+          "Heavy work window must be formatted as HH:mm-HH:mm, e.g. 22:00-06:00, but was %s", window);
+      return new HeavyWorkWindow(LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim()));
+    }
+
+    boolean contains(final LocalTime time) {
+      if (start.isBefore(end)) {
+        return !time.isBefore(start) && time.isBefore(end);
+      }
+      // Window spans midnight
+      return !time.isBefore(start) || time.isBefore(end);
+    }
+
+    @Override
+    public String toString() {
+      return start + "-" + end;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Merges consecutive rows of the same tag ID into one tag record with the additional keywords of all rows, for tag
+ * queries that return one row per keyword. Rows must be ordered by sync marker, then ID. Only the current group of rows
+ * is held in memory.
+ *
+ * The last group of a page may be cut off by the query's row limit. Unless the page ends with complete groups, the
+ * last group is held back so that the next page reads it again in full. A page with a single group can't be held back
+ * without stalling the drain, so it is completed with all rows of its ID instead.
+ */
+class KeywordGroupMerger implements Consumer<TagSyncRecord> {
+
+  private final Consumer<TagSyncRecord> downstream;
+  private TagSyncRecord group;
+  private int passedGroups;
+
+  KeywordGroupMerger(final Consumer<TagSyncRecord> downstream) {
+    this.downstream = downstream;
+  }
+
+  @Override
+  public void accept(final TagSyncRecord row) {
+    if (group != null && group.getId().equals(row.getId())) {
+      if (row.getAdditionalKeyword() != null && !group.getAdditionalKeywords().contains(row.getAdditionalKeyword())) {
+        group.getAdditionalKeywords().add(row.getAdditionalKeyword());
+      }
+      group.setSyncMarker(row.getSyncMarker());
+      return;
+    }
+    passGroup();
+    final List<String> keywords = new ArrayList<>();
+    if (row.getAdditionalKeyword() != null) {
+      keywords.add(row.getAdditionalKeyword());
+    }
+    group = row.setAdditionalKeywords(keywords);
+  }
+
+  /**
+   * Pass on the last group, after all rows were read.
+   */
+  void finish() {
+    passGroup();
+    group = null;
+  }
+
+  /**
+   * Finish a page of rows, which may end in the middle of the last group. The last group is held back unless it is
+   * the only group of the page.
+   *
+   * @return the only group of the page, which must be completed with {@link #completeGroup(TagSyncRecord, List)}
+   */
+  Optional<TagSyncRecord> finishPage() {
+    final Optional<TagSyncRecord> onlyGroup = passedGroups == 0 ? Optional.ofNullable(group) : Optional.empty();
+    group = null;
+    return onlyGroup;
+  }
+
+  /**
+   * Pass on a group with the keywords of all rows of its ID. The group keeps the sync marker that the page read up to.
+   */
+  void completeGroup(final TagSyncRecord pageGroup, final List<TagSyncRecord> groupRows) {
+    for (TagSyncRecord row : groupRows) {
+      Preconditions.checkArgument(row.getId().equals(pageGroup.getId()),
+          "Keyword group SQL returned ID %s when looking up ID %s", row.getId(), pageGroup.getId());
+      if (row.getAdditionalKeyword() != null && !pageGroup.getAdditionalKeywords().contains(row.getAdditionalKeyword())) {
+        pageGroup.getAdditionalKeywords().add(row.getAdditionalKeyword());
+      }
+    }
+    downstream.accept(pageGroup);
+    passedGroups++;
+  }
+
+  private void passGroup() {
+    if (group != null) {
+      downstream.accept(group);
+      passedGroups++;
+    }
+  }
+}
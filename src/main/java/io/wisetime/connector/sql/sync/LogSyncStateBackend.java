@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the sync state in an append-only log in memory mapped files in the data directory. Writing a value appends a
+ * record to the log and forces only that record to disk. All values are kept in memory, so reads don't touch the
+ * file.
+ *
+ * Each record is its length, a CRC32 of its content and the content: the type of the value, the key and the value.
+ * Values are stored the way they are written: strings as UTF-8 and longs as 8 bytes. The sync markers and ID sets are
+ * written as strings. The last record is followed by a zero length. On startup the values are read back from the records up to the first zero length or
+ * corrupt record, the later records of a key replacing the earlier ones.
+ *
+ * There are two log files, each starting with its generation. When the current log file is full, the latest values
+ * are compacted into the other one, and its generation is written once they are forced to disk. A crash during
+ * compaction leaves the full log file as the latest one. The checksums include the generation, so that records left
+ * over from an earlier generation of a file are never read back.
+ *
+ * Keys that were never written to the log are read from the fallback backend, so that the sync positions carry over
+ * when switching from the connector store.
+ */
+@Slf4j
+public class LogSyncStateBackend implements SyncStateBackend {
+
+  private static final String FILE_NAME = "sync_state.log";
+  private static final int DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+  private static final int HEADER_BYTES = Long.BYTES;
+  private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+  private static final byte NULL_VALUE = 0;
+  private static final byte STRING_VALUE = 1;
+  private static final byte LONG_VALUE = 2;
+
+  private final Path[] files;
+  private final int capacityBytes;
+  private final SyncStateBackend fallback;
+  private final Map<String, Optional<Object>> values = new ConcurrentHashMap<>();
+
+  // Guarded by this
+  private int currentFile;
+  private long generation;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int writeOffset;
+
+  public LogSyncStateBackend(final Path file, final int capacityBytes, final SyncStateBackend fallback) {
+    Preconditions.checkArgument(capacityBytes > HEADER_BYTES + RECORD_HEADER_BYTES,
+        "Sync state log capacity is too small: %s bytes", capacityBytes);
+    this.files = new Path[] {
+        file.resolveSibling(file.getFileName() + ".0"),
+        file.resolveSibling(file.getFileName() + ".1")
+    };
+    this.capacityBytes = capacityBytes;
+    this.fallback = fallback;
+    final long generation0 = readGeneration(files[0]);
+    final long generation1 = readGeneration(files[1]);
+    currentFile = generation1 > generation0 ? 1 : 0;
+    generation = Math.max(generation0, generation1);
+    open(currentFile);
+    if (generation == 0) {
+      // New log
+      generation = 1;
+      writeOffset = HEADER_BYTES;
+      terminate(buffer, writeOffset);
+      buffer.putLong(0, generation);
+      buffer.force();
+    }
+    recover();
+  }
+
+  public static LogSyncStateBackend fromConfig(final SyncStateBackend fallback) {
+    return new LogSyncStateBackend(
+        DataFiles.resolve(FILE_NAME),
+        RuntimeConfig.getString(SqlConnectorConfigKey.SYNC_STATE_LOG_MAX_BYTES)
+            .map(Integer::parseInt)
+            .orElse(DEFAULT_MAX_BYTES),
+        fallback);
+  }
+
+  @Override
+  public Optional<String> getString(final String key) {
+    final Optional<Object> value = values.get(key);
+    if (value == null) {
+      return fallback.getString(key);
+    }
+    return value.filter(String.class::isInstance).map(String.class::cast);
+  }
+
+  @Override
+  public synchronized void putString(final String key, final String value) {
+    append(key, Optional.ofNullable(value));
+  }
+
+  @Override
+  public Optional<Long> getLong(final String key) {
+    final Optional<Object> value = values.get(key);
+    if (value == null) {
+      return fallback.getLong(key);
+    }
+    return value.filter(Long.class::isInstance).map(Long.class::cast);
+  }
+
+  @Override
+  public synchronized void putLong(final String key, final long value) {
+    append(key, Optional.of(value));
+  }
+
+  @VisibleForTesting
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  @Override
+  public synchronized void close() {
+    close(channel, files[currentFile]);
+  }
+
+  private void append(final String key, final Optional<Object> value) {
+    final byte[] content = encode(key, value);
+    final int recordBytes = RECORD_HEADER_BYTES + content.length;
+    if (!hasRoomFor(writeOffset, recordBytes)) {
+      compact();
+      if (!hasRoomFor(writeOffset, recordBytes)) {
+        throw new RuntimeException(String.format(
+            "Sync state log %s is full with %s bytes of values", files[currentFile], writeOffset - HEADER_BYTES));
+      }
+    }
+    final int recordOffset = writeOffset;
+    writeOffset = writeRecord(buffer, recordOffset, generation, content);
+    terminate(buffer, writeOffset);
+    // A record that was only partly written when the connector stopped fails its checksum on startup
+    buffer.force(recordOffset, Math.min(capacityBytes, writeOffset + Integer.BYTES) - recordOffset);
+    values.put(key, value);
+  }
+
+  private void recover() {
+    writeOffset = HEADER_BYTES;
+    int records = 0;
+    while (writeOffset + RECORD_HEADER_BYTES <= capacityBytes) {
+      final int length = buffer.getInt(writeOffset);
+      if (length <= 0 || length > capacityBytes - writeOffset - RECORD_HEADER_BYTES) {
+        break;
+      }
+      final byte[] content = new byte[length];
+      buffer.get(writeOffset + RECORD_HEADER_BYTES, content);
+      if (checksum(generation, content) != buffer.getInt(writeOffset + Integer.BYTES)) {
+        log.warn("Ignoring corrupt sync state record at offset {} of {}", writeOffset, files[currentFile]);
+        break;
+      }
+      decode(content);
+      writeOffset += RECORD_HEADER_BYTES + length;
+      records++;
+    }
+    terminate(buffer, writeOffset);
+    log.info("Read {} sync state values from {} records of {}", values.size(), records, files[currentFile]);
+  }
+
+  /**
+   * Write the latest values to the other log file and continue with that one.
+   */
+  private void compact() {
+    final int targetFile = 1 - currentFile;
+    final long targetGeneration = generation + 1;
+    final FileChannel targetChannel = openChannel(files[targetFile]);
+    final MappedByteBuffer target = map(targetChannel, files[targetFile]);
+    int offset = HEADER_BYTES;
+    for (Map.Entry<String, Optional<Object>> entry : values.entrySet()) {
+      final byte[] content = encode(entry.getKey(), entry.getValue());
+      if (!hasRoomFor(offset, RECORD_HEADER_BYTES + content.length)) {
+        // The values don't fit in an empty log either, so stay with the current one
+        close(targetChannel, files[targetFile]);
+        return;
+      }
+      offset = writeRecord(target, offset, targetGeneration, content);
+    }
+    terminate(target, offset);
+    target.force();
+    // Writing the generation last makes the compacted log the latest only once it is complete
+    target.putLong(0, targetGeneration);
+    target.force(0, HEADER_BYTES);
+    log.info("Compacted sync state log {} from {} to {} bytes", files[currentFile], writeOffset, offset);
+
+    close(channel, files[currentFile]);
+    currentFile = targetFile;
+    generation = targetGeneration;
+    channel = targetChannel;
+    buffer = target;
+    writeOffset = offset;
+    if (offset > capacityBytes / 2) {
+      log.warn("Sync state log {} is more than half full after compaction, consider increasing its size",
+          files[currentFile]);
+    }
+  }
+
+  private boolean hasRoomFor(final int offset, final int recordBytes) {
+    // Leave room for the zero length that follows the last record
+    return (long) offset + recordBytes + Integer.BYTES <= capacityBytes;
+  }
+
+  private void open(final int file) {
+    channel = openChannel(files[file]);
+    buffer = map(channel, files[file]);
+  }
+
+  private static FileChannel openChannel(final Path file) {
+    try {
+      return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to open sync state log " + file, e);
+    }
+  }
+
+  private MappedByteBuffer map(final FileChannel fileChannel, final Path file) {
+    try {
+      return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to map sync state log " + file, e);
+    }
+  }
+
+  private static void close(final FileChannel fileChannel, final Path file) {
+    try {
+      fileChannel.close();
+    } catch (IOException e) {
+      log.warn("Failed to close sync state log {}", file, e);
+    }
+  }
+
+  private static long readGeneration(final Path file) {
+    try {
+      if (!Files.exists(file) || Files.size(file) < HEADER_BYTES) {
+        return 0;
+      }
+      try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        fileChannel.read(header, 0);
+        return header.getLong(0);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read sync state log " + file, e);
+    }
+  }
+
+  private static int writeRecord(final ByteBuffer target, final int offset, final long recordGeneration,
+      final byte[] content) {
+    target.putInt(offset + Integer.BYTES, checksum(recordGeneration, content));
+    target.put(offset + RECORD_HEADER_BYTES, content);
+    target.putInt(offset, content.length);
+    return offset + RECORD_HEADER_BYTES + content.length;
+  }
+
+  private void terminate(final ByteBuffer target, final int offset) {
+    if (offset + Integer.BYTES <= capacityBytes) {
+      target.putInt(offset, 0);
+    }
+  }
+
+  private static byte[] encode(final String key, final Optional<Object> value) {
+    final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    final byte type;
+    final byte[] valueBytes;
+    if (value.isEmpty()) {
+      type = NULL_VALUE;
+      valueBytes = new byte[0];
+    } else if (value.get() instanceof Long) {
+      type = LONG_VALUE;
+      valueBytes = ByteBuffer.allocate(Long.BYTES).putLong((Long) value.get()).array();
+    } else {
+      type = STRING_VALUE;
+      valueBytes = ((String) value.get()).getBytes(StandardCharsets.UTF_8);
+    }
+    return ByteBuffer.allocate(1 + Integer.BYTES + keyBytes.length + valueBytes.length)
+        .put(type)
+        .putInt(keyBytes.length)
+        .put(keyBytes)
+        .put(valueBytes)
+        .array();
+  }
+
+  private void decode(final byte[] content) {
+    final ByteBuffer record = ByteBuffer.wrap(content);
+    final byte type = record.get();
+    final byte[] keyBytes = new byte[record.getInt()];
+    record.get(keyBytes);
+    final String key = new String(keyBytes, StandardCharsets.UTF_8);
+    if (type == LONG_VALUE) {
+      values.put(key, Optional.of(record.getLong()));
+    } else if (type == STRING_VALUE) {
+      final byte[] valueBytes = new byte[record.remaining()];
+      record.get(valueBytes);
+      values.put(key, Optional.of(new String(valueBytes, StandardCharsets.UTF_8)));
+    } else {
+      values.put(key, Optional.empty());
+    }
+  }
+
+  private static int checksum(final long recordGeneration, final byte[] content) {
+    final CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, recordGeneration));
+    crc.update(content);
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Expands the named parameters of a configured SQL query (e.g. {@code :previous_sync_marker}) into JDBC positional
+ * parameters, for when a statement needs to be prepared directly on a connection rather than through FluentJdbc.
+ *
+ * Collection values are expanded to one positional parameter per element, the same way FluentJdbc expands them.
+ * Quoted literals, quoted identifiers, comments and Postgres {@code ::} casts are left untouched. Square brackets only
+ * quote identifiers on SQL Server, elsewhere they are e.g. Postgres array constructors and subscripts.
+ */
+@Getter
+class NamedParameterSql {
+
+  private final String sql;
+  private final List<Object> parameters;
+
+  private NamedParameterSql(String sql, List<Object> parameters) {
+    this.sql = sql;
+    this.parameters = Collections.unmodifiableList(parameters);
+  }
+
+  /**
+   * Replaces each named parameter that has an entry in {@code namedParams} with positional placeholders. Named
+   * parameters without an entry are left as they are.
+   *
+   * @param sqlServer whether the query runs on SQL Server, where square brackets quote identifiers
+   */
+  static NamedParameterSql expand(final String namedSql, final Map<String, ?> namedParams, final boolean sqlServer) {
+    final StringBuilder sql = new StringBuilder(namedSql.length());
+    final List<Object> parameters = new ArrayList<>();
+    final int length = namedSql.length();
+    int i = 0;
+    while (i < length) {
+      final char c = namedSql.charAt(i);
+      if (c == '\'' || c == '"' || c == '`' || (c == '[' && sqlServer)) {
+        final int end = skipQuoted(namedSql, i, c == '[' ? ']' : c);
+        sql.append(namedSql, i, end);
+        i = end;
+      } else if (c == '-' && i + 1 < length && namedSql.charAt(i + 1) == '-') {
+        final int end = indexOrEnd(namedSql, "\n", i);
+        sql.append(namedSql, i, end);
+        i = end;
+      } else if (c == '/' && i + 1 < length && namedSql.charAt(i + 1) == '*') {
+        final int end = Math.min(length, indexOrEnd(namedSql, "*/", i + 2) + 2);
+        sql.append(namedSql, i, end);
+        i = end;
+      } else if (c == ':' && i + 1 < length && namedSql.charAt(i + 1) == ':') {
+        // Postgres type cast
+        sql.append("::");
+        i += 2;
+      } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(namedSql.charAt(i + 1))) {
+        int end = i + 1;
+        while (end < length && Character.isJavaIdentifierPart(namedSql.charAt(end))) {
+          end++;
+        }
+        final String name = namedSql.substring(i + 1, end);
+        if (namedParams.containsKey(name)) {
+          appendPlaceholders(sql, parameters, namedParams.get(name));
+        } else {
+          sql.append(namedSql, i, end);
+        }
+        i = end;
+      } else {
+        sql.append(c);
+        i++;
+      }
+    }
+    return new NamedParameterSql(sql.toString(), parameters);
+  }
+
+  private static void appendPlaceholders(StringBuilder sql, List<Object> parameters, Object value) {
+    if (value instanceof Collection) {
+      final Collection<?> values = (Collection<?>) value;
+      for (int i = 0; i < values.size(); i++) {
+        sql.append(i == 0 ? "?" : ", ?");
+      }
+      parameters.addAll(values);
+    } else {
+      sql.append('?');
+      parameters.add(value);
+    }
+  }
+
+  private static int skipQuoted(String sql, int start, char closingQuote) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == closingQuote) {
+        // Doubled quotes are escaped quotes
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == closingQuote) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return sql.length();
+  }
+
+  private static int indexOrEnd(String sql, String token, int from) {
+    final int index = sql.indexOf(token, from);
+    return index < 0 ? sql.length() : index;
+  }
+}
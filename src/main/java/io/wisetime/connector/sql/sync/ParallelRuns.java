@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs work for each item of a list on virtual threads, with at most a given number of items in progress at once.
+ */
+public final class ParallelRuns {
+
+  private ParallelRuns() {
+  }
+
+  /**
+   * Runs the work for each item and waits for all of it to finish. Runs on the calling thread if the parallelism is 1
+   * or less. If any work fails, the first failure in item order is rethrown once all work has finished.
+   */
+  public static <T> void forEach(final List<T> items, final int parallelism, final Consumer<T> work) {
+    if (parallelism <= 1 || items.size() <= 1) {
+      forEachInTurn(items, work);
+      return;
+    }
+    final Semaphore permits = new Semaphore(parallelism);
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final List<Future<?>> runs = items.stream()
+          .map(item -> executor.submit(() -> {
+            permits.acquireUninterruptibly();
+            try {
+              work.accept(item);
+            } finally {
+              permits.release();
+            }
+          }))
+          .collect(Collectors.toList());
+      for (Future<?> run : runs) {
+        run.get();
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static <T> void forEachInTurn(final List<T> items, final Consumer<T> work) {
+    RuntimeException firstFailure = null;
+    for (T item : items) {
+      try {
+        work.accept(item);
+      } catch (RuntimeException e) {
+        if (firstFailure == null) {
+          firstFailure = e;
+        }
+      }
+    }
+    if (firstFailure != null) {
+      throw firstFailure;
+    }
+  }
+}
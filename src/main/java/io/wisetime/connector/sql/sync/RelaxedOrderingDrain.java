@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drains a tag query whose results are not ordered by sync marker, so that the database doesn't have to sort the
+ * candidate rows of views without a matching index.
+ *
+ * Instead of paging through the results in marker order, each run reads all rows at or after the stored marker in a
+ * streamed pass and upserts them in batches. Once the pass completes, the stored marker moves to the highest marker
+ * seen minus the query's safety lag, so that rows committed late with a lower marker are still picked up. Rows within
+ * the lag window are read again on the next run, and an in-memory record of the IDs and markers already upserted keeps
+ * them from being sent twice.
+ *
+ * Rows of a single pass come in any order, so the marker can't move until the pass completes. A query with a marker
+ * window instead reads the rows in consecutive windows of markers and moves the marker after each window, so that an
+ * interrupted run doesn't start over. The first window without rows may be a gap in the markers or the end of the
+ * rows, so all remaining rows are read in a last pass.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RelaxedOrderingDrain {
+
+  private static final int BATCH_SIZE = 100;
+  private static final int DEFAULT_MAX_SEEN_IDS = 10_000;
+
+  private final ConnectedDatabase database;
+  private final Map<TagQuery, Map<String, String>> seenMarkersByQuery = new ConcurrentHashMap<>();
+
+  public void run(final TagQuery tagQuery, final TagSyncStore syncStore, final Supplier<Boolean> allowSync,
+      final Consumer<List<TagSyncRecord>> upsertBatch) {
+    if (!allowSync.get()) {
+      return;
+    }
+    final Map<String, String> seenMarkers = seenMarkers(tagQuery);
+    String windowStart = syncStore.getSyncMarker(tagQuery);
+    String highWaterMark = windowStart;
+    boolean lastPass = !tagQuery.hasMarkerWindow();
+    while (true) {
+      final Optional<String> windowEnd = lastPass
+          ? Optional.empty()
+          : Optional.of(SyncMarkers.plus(windowStart, tagQuery.getMarkerWindow()));
+      final Pass pass = new Pass(highWaterMark);
+      database.streamTagsToSync(tagQuery, windowStart, windowEnd, tagQuery.getSkippedIds(), BATCH_SIZE,
+          batch -> pass.read(batch, seenMarkers, allowSync, upsertBatch));
+      if (pass.interrupted) {
+        // Skip the rest of the pass, the marker is not moved past the rows that weren't read
+        return;
+      }
+      highWaterMark = pass.highWaterMark;
+      checkpoint(tagQuery, syncStore, seenMarkers, highWaterMark);
+      if (lastPass || !allowSync.get()) {
+        return;
+      }
+      lastPass = pass.rowCount == 0;
+      windowStart = windowEnd.get();
+    }
+  }
+
+  /**
+   * Forget the upserted rows of queries that were removed or changed.
+   */
+  public void retainQueries(final List<TagQuery> tagQueries) {
+    seenMarkersByQuery.keySet().retainAll(tagQueries);
+  }
+
+  private void checkpoint(final TagQuery tagQuery, final TagSyncStore syncStore, final Map<String, String> seenMarkers,
+      final String highWaterMark) {
+    final String previousMarker = syncStore.getSyncMarker(tagQuery);
+    final String lag = tagQuery.getMarkerSafetyLag() == null ? "0" : tagQuery.getMarkerSafetyLag();
+    final String lowWaterMark = SyncMarkers.minus(highWaterMark, lag);
+    final String nextMarker = SyncMarkers.max(previousMarker, lowWaterMark);
+    if (!nextMarker.equals(previousMarker)) {
+      seenMarkers.values().removeIf(marker -> SyncMarkers.compare(marker, nextMarker) < 0);
+      syncStore.markSyncMarker(tagQuery, nextMarker);
+      log.info("Tag SQL query {} advanced to sync marker {} (high water mark {})",
+          tagQuery.getName(), nextMarker, highWaterMark);
+    }
+  }
+
+  private Map<String, String> seenMarkers(final TagQuery tagQuery) {
+    final int maxSeenIds = tagQuery.getMaxSeenIds() == null ? DEFAULT_MAX_SEEN_IDS : tagQuery.getMaxSeenIds();
+    return seenMarkersByQuery.computeIfAbsent(tagQuery, query -> new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        // Forgetting an ID only means its row may be upserted again, which is idempotent
+        return size() > maxSeenIds;
+      }
+    });
+  }
+
+  /**
+   * What a streamed pass read so far.
+   */
+  private static final class Pass {
+
+    private String highWaterMark;
+    private int rowCount;
+    private boolean interrupted;
+
+    private Pass(final String highWaterMark) {
+      this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * @return whether to read on
+     */
+    private boolean read(final List<TagSyncRecord> batch, final Map<String, String> seenMarkers,
+        final Supplier<Boolean> allowSync, final Consumer<List<TagSyncRecord>> upsertBatch) {
+      if (!allowSync.get()) {
+        interrupted = true;
+        return false;
+      }
+      final List<TagSyncRecord> unseen = batch.stream()
+          .filter(record -> !Objects.equals(seenMarkers.get(record.getId()), record.getSyncMarker()))
+          .collect(Collectors.toList());
+      if (!unseen.isEmpty()) {
+        upsertBatch.accept(unseen);
+      }
+      batch.forEach(record -> {
+        seenMarkers.put(record.getId(), record.getSyncMarker());
+        highWaterMark = SyncMarkers.max(highWaterMark, record.getSyncMarker());
+      });
+      rowCount += batch.size();
+      return true;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+
+/**
+ * Retries failed WiseTime API calls with exponential backoff and jitter, so that a transient failure doesn't abort a
+ * sync. Too many requests (429), server errors (5xx) and network errors are retried. Other client errors are not,
+ * since repeating the same request would fail the same way.
+ *
+ * Each endpoint has its own {@link CircuitBreaker}, which fails calls fast while the endpoint keeps failing.
+ */
+@Slf4j
+public class RetryPolicy {
+
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int DEFAULT_MAX_ATTEMPTS = 4;
+  private static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(500);
+  private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+  private static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 10;
+  private static final Duration CIRCUIT_BREAKER_OPEN_DURATION = Duration.ofMinutes(1);
+
+  private final int maxAttempts;
+  private final Duration baseDelay;
+  private final Duration maxDelay;
+  private final Sleeper sleeper;
+  private final Clock clock;
+  private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Sleeper sleeper, Clock clock) {
+    this.maxAttempts = maxAttempts;
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+    this.sleeper = sleeper;
+    this.clock = clock;
+  }
+
+  public static RetryPolicy fromConfig() {
+    return new RetryPolicy(
+        RuntimeConfig.getString(SqlConnectorConfigKey.API_MAX_ATTEMPTS).map(Integer::parseInt).orElse(DEFAULT_MAX_ATTEMPTS),
+        DEFAULT_BASE_DELAY,
+        DEFAULT_MAX_DELAY,
+        duration -> Thread.sleep(duration.toMillis()),
+        Clock.systemUTC()
+    );
+  }
+
+  /**
+   * Calls the endpoint, retrying retriable failures until the maximum number of attempts is reached. The last failure
+   * is rethrown.
+   */
+  public <T> T call(final String endpoint, final ApiCall<T> call) throws IOException {
+    final CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(endpoint, name ->
+        new CircuitBreaker(name, CIRCUIT_BREAKER_FAILURE_THRESHOLD, CIRCUIT_BREAKER_OPEN_DURATION, clock));
+    int attempt = 1;
+    while (true) {
+      circuitBreaker.checkClosed();
+      try {
+        final T result = call.invoke();
+        circuitBreaker.recordSuccess();
+        return result;
+
+      } catch (IOException e) {
+        if (!isRetriable(e)) {
+          throw e;
+        }
+        circuitBreaker.recordFailure();
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+        final Duration delay = backoff(attempt);
+        log.warn("Attempt {} to call {} failed, retrying in {} ms: {}", attempt, endpoint, delay.toMillis(), e.toString());
+        try {
+          sleeper.sleep(delay);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting to retry " + endpoint);
+        }
+        attempt++;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static boolean isRetriable(final IOException e) {
+    if (e instanceof HttpResponseException) {
+      final int statusCode = ((HttpResponseException) e).getStatusCode();
+      return statusCode == TOO_MANY_REQUESTS || statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+    // Network errors, e.g. timeouts and refused connections
+    return true;
+  }
+
+  /**
+   * Exponential backoff with equal jitter: half of the delay is fixed, the other half random.
+   */
+  @VisibleForTesting
+  Duration backoff(final int attempt) {
+    final long exponentialMillis = baseDelay.toMillis() << Math.min(attempt - 1, 30);
+    final long cappedMillis = Math.min(maxDelay.toMillis(), exponentialMillis);
+    return Duration.ofMillis(cappedMillis / 2 + ThreadLocalRandom.current().nextLong(cappedMillis / 2 + 1));
+  }
+
+  public interface ApiCall<T> {
+
+    T invoke() throws IOException;
+  }
+
+  @VisibleForTesting
+  interface Sleeper {
+
+    void sleep(Duration duration) throws InterruptedException;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.Temporal;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Compares and offsets sync markers. Sync markers are read from the database as strings and are either numbers (e.g.
+ * an auto incremented ID) or date times (e.g. a last updated timestamp). Date times may have a zone offset, e.g. a
+ * Postgres {@code timestamptz} or a SQL Server {@code datetimeoffset}, and are then compared by instant. Markers of any
+ * other form are compared as strings.
+ */
+public final class SyncMarkers {
+
+  private static final DateTimeFormatter DATE_TIME = new DateTimeFormatterBuilder()
+      .appendPattern("yyyy-MM-dd")
+      .optionalStart().appendLiteral(' ').optionalEnd()
+      .optionalStart().appendLiteral('T').optionalEnd()
+      .appendPattern("HH:mm:ss")
+      .optionalStart().appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true).optionalEnd()
+      .optionalStart().appendLiteral(' ').optionalEnd()
+      // Minutes and seconds of the offset are optional, e.g. +10 as formatted by Postgres
+      .optionalStart().appendOffset("+HH:mm:ss", "Z").optionalEnd()
+      .optionalStart().appendLiteral('[').parseCaseSensitive().appendZoneRegionId().appendLiteral(']').optionalEnd()
+      .toFormatter();
+  private static final Pattern OFFSET_AFTER_SPACE = Pattern.compile("\\d [+-]\\d");
+
+  private SyncMarkers() {
+  }
+
+  public static int compare(final String marker1, final String marker2) {
+    final Optional<BigDecimal> number1 = parseNumber(marker1);
+    final Optional<BigDecimal> number2 = parseNumber(marker2);
+    if (number1.isPresent() && number2.isPresent()) {
+      return number1.get().compareTo(number2.get());
+    }
+    final Optional<Temporal> dateTime1 = parseDateTime(marker1);
+    final Optional<Temporal> dateTime2 = parseDateTime(marker2);
+    if (dateTime1.isPresent() && dateTime2.isPresent()) {
+      if (dateTime1.get() instanceof ZonedDateTime && dateTime2.get() instanceof ZonedDateTime) {
+        return ((ZonedDateTime) dateTime1.get()).toInstant().compareTo(((ZonedDateTime) dateTime2.get()).toInstant());
+      }
+      if (dateTime1.get() instanceof LocalDateTime && dateTime2.get() instanceof LocalDateTime) {
+        return ((LocalDateTime) dateTime1.get()).compareTo((LocalDateTime) dateTime2.get());
+      }
+    }
+    return marker1.compareTo(marker2);
+  }
+
+  public static String max(final String marker1, final String marker2) {
+    return compare(marker1, marker2) >= 0 ? marker1 : marker2;
+  }
+
+  /**
+   * Move a marker back by a lag, which is a number for numeric markers or an ISO-8601 duration (e.g. {@code PT10M})
+   * for date time markers. A date time marker keeps its zone offset.
+   */
+  public static String minus(final String marker, final String lag) {
+    return offset(marker, lag, -1);
+  }
+
+  /**
+   * Move a marker forward by an amount, which is a number or a duration as for {@link #minus(String, String)}.
+   */
+  public static String plus(final String marker, final String amount) {
+    return offset(marker, amount, 1);
+  }
+
+  private static String offset(final String marker, final String amount, final int sign) {
+    final Optional<BigDecimal> amountNumber = parseNumber(amount);
+    if (amountNumber.isPresent() && amountNumber.get().signum() == 0) {
+      return marker;
+    }
+    final Optional<BigDecimal> number = parseNumber(marker);
+    if (number.isPresent() && amountNumber.isPresent()) {
+      return number.get().add(amountNumber.get().multiply(BigDecimal.valueOf(sign))).toPlainString();
+    }
+    final Optional<Temporal> dateTime = parseDateTime(marker);
+    final Optional<Duration> amountDuration = parseDuration(amount);
+    if (dateTime.isPresent() && amountDuration.isPresent()) {
+      final String separator = marker.contains("T") ? "'T'" : " ";
+      final Temporal offsetDateTime = dateTime.get().plus(amountDuration.get().multipliedBy(sign));
+      if (offsetDateTime instanceof ZonedDateTime) {
+        final ZonedDateTime zonedDateTime = (ZonedDateTime) offsetDateTime;
+        final String offsetSeparator = OFFSET_AFTER_SPACE.matcher(marker).find() ? " " : "";
+        final String zone = zonedDateTime.getZone() instanceof ZoneOffset ? "" : "'['VV']'";
+        return zonedDateTime.format(DateTimeFormatter.ofPattern(
+            "yyyy-MM-dd" + separator + "HH:mm:ss.SSS" + offsetSeparator + "xxx" + zone));
+      }
+      return ((LocalDateTime) offsetDateTime).format(
+          DateTimeFormatter.ofPattern("yyyy-MM-dd" + separator + "HH:mm:ss.SSS"));
+    }
+    throw new IllegalArgumentException(
+        String.format("Can't apply %s to sync marker %s. Use a number for numeric markers or an ISO-8601 "
+            + "duration such as PT10M for date time markers.", amount, marker));
+  }
+
+  public static boolean isValidLag(final String lag) {
+    return parseNumber(lag).isPresent() || parseDuration(lag).isPresent();
+  }
+
+  public static boolean isPositiveAmount(final String amount) {
+    return parseNumber(amount).map(number -> number.signum() > 0)
+        .or(() -> parseDuration(amount).map(duration -> !duration.isNegative() && !duration.isZero()))
+        .orElse(false);
+  }
+
+  private static Optional<BigDecimal> parseNumber(final String value) {
+    try {
+      return Optional.of(new BigDecimal(value.trim()));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static Optional<Temporal> parseDateTime(final String value) {
+    try {
+      return Optional.of((Temporal) DATE_TIME.parseBest(value.trim(), ZonedDateTime::from, LocalDateTime::from));
+    } catch (DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static Optional<Duration> parseDuration(final String value) {
+    try {
+      return Optional.of(Duration.parse(value.trim()));
+    } catch (DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+}
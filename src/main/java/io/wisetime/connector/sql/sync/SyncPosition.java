@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Where a tag sync stopped: the latest synced sync marker and the IDs already synced at that marker. The next sync
+ * reads the rows after the marker, and the rows at the marker with other IDs.
+ */
+@Value
+public class SyncPosition {
+
+  String syncMarker;
+  List<String> lastSyncedIds;
+
+  /**
+   * Whether every row that remains to be synced from this position also remains to be synced from the other position.
+   */
+  public boolean isAtOrAfter(final SyncPosition other) {
+    final int comparison = SyncMarkers.compare(syncMarker, other.syncMarker);
+    return comparison > 0 || (comparison == 0 && lastSyncedIds.containsAll(other.lastSyncedIds));
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.util.Optional;
+
+/**
+ * Where the sync state is kept. By default it's kept in the connector store of the connector library, and it can be
+ * kept in a log in the data directory instead, see {@link LogSyncStateBackend}.
+ */
+public interface SyncStateBackend extends AutoCloseable {
+
+  Optional<String> getString(String key);
+
+  void putString(String key, String value);
+
+  Optional<Long> getLong(String key);
+
+  void putLong(String key, long value);
+
+  @Override
+  default void close() {
+  }
+
+  static SyncStateBackend of(final ConnectorStore connectorStore) {
+    return new SyncStateBackend() {
+
+      @Override
+      public Optional<String> getString(final String key) {
+        return connectorStore.getString(key);
+      }
+
+      @Override
+      public void putString(final String key, final String value) {
+        connectorStore.putString(key, value);
+      }
+
+      @Override
+      public Optional<Long> getLong(final String key) {
+        return connectorStore.getLong(key);
+      }
+
+      @Override
+      public void putLong(final String key, final long value) {
+        connectorStore.putLong(key, value);
+      }
+    };
+  }
+
+  /**
+   * The backend selected in the runtime configuration. The log backend reads the keys it doesn't have yet from the
+   * connector store, so that the sync positions carry over when switching to it.
+   */
+  static SyncStateBackend fromConfig(final ConnectorStore connectorStore) {
+    final String backend = RuntimeConfig.getString(SqlConnectorConfigKey.SYNC_STATE_BACKEND)
+        .map(String::trim)
+        .orElse("connector_store");
+    if ("connector_store".equalsIgnoreCase(backend)) {
+      return of(connectorStore);
+    }
+    if ("log".equalsIgnoreCase(backend)) {
+      return LogSyncStateBackend.fromConfig(of(connectorStore));
+    }
+    throw new IllegalArgumentException(String.format(
+        "Unknown sync state backend %s, use connector_store or log", backend));
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A write-through cache of the sync state in its backend, the connector store by default. The sync state only changes
+ * when the connector writes it, so values are read from the backend once and then served from memory. Values can also
+ * be cached decoded, e.g. as lists of IDs, so that they aren't parsed on every read.
+ *
+ * One cache is shared by the sync stores of a connector. An uncached instance reads straight from the backend.
+ *
+ * The values of a sync position are written together with {@link #commit(Map)}. With group commit, commits are only
+ * collected in memory and written to the backend every so many commits or so often, and when flushed. A crash then
+ * loses the latest sync positions, and the rows since the persisted positions are synced again. Syncing is
+ * at-least-once anyway, and upserting the same rows again is idempotent.
+ */
+@Slf4j
+public class SyncStateCache {
+
+  private static final int DEFAULT_GROUP_COMMIT_MAX_COMMITS = 20;
+  private static final Duration DEFAULT_GROUP_COMMIT_MAX_AGE = Duration.ofSeconds(5);
+
+  private final SyncStateBackend backend;
+  private final boolean caching;
+  private final int groupCommitMaxCommits;
+  private final Duration groupCommitMaxAge;
+  private final Clock clock;
+  private final Map<String, Optional<String>> strings = new ConcurrentHashMap<>();
+  private final Map<String, Optional<Long>> longs = new ConcurrentHashMap<>();
+  private final Map<String, DecodedValue> decodedValues = new ConcurrentHashMap<>();
+
+  // Guarded by this
+  private final Map<String, String> pendingStrings = new LinkedHashMap<>();
+  private final Map<String, Long> pendingLongs = new LinkedHashMap<>();
+  private int pendingCommits;
+  private Instant oldestPendingCommit;
+
+  @VisibleForTesting
+  SyncStateCache(final SyncStateBackend backend, final boolean caching, final int groupCommitMaxCommits,
+      final Duration groupCommitMaxAge, final Clock clock) {
+    Preconditions.checkArgument(caching || groupCommitMaxCommits <= 1, "Group commit requires caching");
+    this.backend = backend;
+    this.caching = caching;
+    this.groupCommitMaxCommits = groupCommitMaxCommits;
+    this.groupCommitMaxAge = groupCommitMaxAge;
+    this.clock = clock;
+  }
+
+  public static SyncStateCache of(final ConnectorStore connectorStore) {
+    return new SyncStateCache(SyncStateBackend.of(connectorStore), true, 1, Duration.ZERO, Clock.systemUTC());
+  }
+
+  public static SyncStateCache uncached(final ConnectorStore connectorStore) {
+    return new SyncStateCache(SyncStateBackend.of(connectorStore), false, 1, Duration.ZERO, Clock.systemUTC());
+  }
+
+  /**
+   * A cache of the backend selected in the runtime configuration, with group commit if it's enabled.
+   */
+  public static SyncStateCache fromConfig(final ConnectorStore connectorStore) {
+    final SyncStateBackend backend = SyncStateBackend.fromConfig(connectorStore);
+    final boolean groupCommit = RuntimeConfig.getString(SqlConnectorConfigKey.SYNC_STATE_GROUP_COMMIT)
+        .map(Boolean::parseBoolean)
+        .orElse(false);
+    if (!groupCommit) {
+      return new SyncStateCache(backend, true, 1, Duration.ZERO, Clock.systemUTC());
+    }
+    return new SyncStateCache(backend, true,
+        RuntimeConfig.getString(SqlConnectorConfigKey.SYNC_STATE_GROUP_COMMIT_MAX_COMMITS)
+            .map(Integer::parseInt)
+            .orElse(DEFAULT_GROUP_COMMIT_MAX_COMMITS),
+        RuntimeConfig.getString(SqlConnectorConfigKey.SYNC_STATE_GROUP_COMMIT_MAX_AGE)
+            .map(Duration::parse)
+            .orElse(DEFAULT_GROUP_COMMIT_MAX_AGE),
+        Clock.systemUTC());
+  }
+
+  public Optional<String> getString(final String key) {
+    if (!caching) {
+      return backend.getString(key);
+    }
+    return strings.computeIfAbsent(key, backend::getString);
+  }
+
+  public void putString(final String key, final String value) {
+    commit(Collections.singletonMap(key, value));
+  }
+
+  /**
+   * Write several values together, e.g. the marker and the IDs of a sync position. The values are written to the
+   * backend in order, and with group commit together with the other collected commits.
+   */
+  public synchronized void commit(final Map<String, String> values) {
+    if (values.isEmpty()) {
+      return;
+    }
+    if (caching) {
+      values.forEach((key, value) -> {
+        strings.put(key, Optional.ofNullable(value));
+        decodedValues.remove(key);
+      });
+    }
+    if (groupCommitMaxCommits <= 1) {
+      values.forEach(backend::putString);
+      return;
+    }
+    // A key written again before the flush is only written once, in the order of its latest commit
+    values.forEach((key, value) -> {
+      pendingStrings.remove(key);
+      pendingStrings.put(key, value);
+    });
+    recordPendingCommit();
+  }
+
+  public Optional<Long> getLong(final String key) {
+    if (!caching) {
+      return backend.getLong(key);
+    }
+    return longs.computeIfAbsent(key, backend::getLong);
+  }
+
+  public synchronized void putLong(final String key, final long value) {
+    if (caching) {
+      longs.put(key, Optional.of(value));
+    }
+    if (groupCommitMaxCommits <= 1) {
+      backend.putLong(key, value);
+      return;
+    }
+    pendingLongs.put(key, value);
+    recordPendingCommit();
+  }
+
+  /**
+   * Write the collected commits to the backend.
+   */
+  public synchronized void flush() {
+    if (pendingCommits == 0) {
+      return;
+    }
+    pendingLongs.forEach(backend::putLong);
+    pendingStrings.forEach(backend::putString);
+    log.debug("Wrote {} sync state commits as {} values", pendingCommits, pendingLongs.size() + pendingStrings.size());
+    pendingLongs.clear();
+    pendingStrings.clear();
+    pendingCommits = 0;
+    oldestPendingCommit = null;
+  }
+
+  private void recordPendingCommit() {
+    final Instant now = clock.instant();
+    if (oldestPendingCommit == null) {
+      oldestPendingCommit = now;
+    }
+    pendingCommits++;
+    if (pendingCommits >= groupCommitMaxCommits || !now.isBefore(oldestPendingCommit.plus(groupCommitMaxAge))) {
+      flush();
+    }
+  }
+
+  /**
+   * The string value of the key decoded by the decoder. The decoded value is cached until the key is written or
+   * invalidated, so the decoder should always decode the same value the same way.
+   *
+   * A value that is decoded while the key is committed may be cached after the commit. It is only served while the
+   * cached string value is still the one it was decoded from, so a stale decoded value is decoded again.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getDecoded(final String key, final Function<Optional<String>, T> decoder) {
+    final Optional<String> value = getString(key);
+    if (!caching) {
+      return decoder.apply(value);
+    }
+    final DecodedValue cached = decodedValues.get(key);
+    // Every write caches a new optional, so the same instance means the same write
+    if (cached != null && cached.getValue() == value) {
+      return (T) cached.getDecoded();
+    }
+    final T decoded = decoder.apply(value);
+    decodedValues.put(key, new DecodedValue(value, decoded));
+    return decoded;
+  }
+
+  /**
+   * Forget the cached values of the keys, so that they are read from the backend again. Collected commits are
+   * written first.
+   */
+  public synchronized void invalidate(final String... keys) {
+    flush();
+    for (String key : keys) {
+      strings.remove(key);
+      longs.remove(key);
+      decodedValues.remove(key);
+    }
+  }
+
+  /**
+   * Write the collected commits and close the backend.
+   */
+  public synchronized void close() {
+    flush();
+    backend.close();
+  }
+
+  /**
+   * A decoded value and the cached string value it was decoded from.
+   */
+  @Value
+  private static class DecodedValue {
+
+    Optional<String> value;
+    Object decoded;
+  }
+}
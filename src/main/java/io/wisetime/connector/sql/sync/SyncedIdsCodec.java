@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes the IDs that were synced at the same sync marker for the connector store.
+ *
+ * Few IDs are joined with a {@code @@@} delimiter, which is how they were always stored. Many numeric IDs are sorted
+ * and stored as varint encoded deltas, and many other IDs are stored deflated if that's shorter. The order of the IDs
+ * isn't kept, since they are only used as a set of IDs to skip.
+ */
+public final class SyncedIdsCodec {
+
+  private static final String DELIMITER = "@@@";
+  private static final String NUMERIC_PREFIX = "~n:";
+  private static final String DEFLATED_PREFIX = "~z:";
+  private static final int MIN_COMPACT_IDS = 16;
+  // Numbers that fit in a long and are written without leading zeros, so that they decode to the same string
+  private static final Pattern CANONICAL_NUMBER = Pattern.compile("0|[1-9][0-9]{0,17}");
+
+  private SyncedIdsCodec() {
+  }
+
+  public static String encode(final List<String> ids) {
+    final String joined = String.join(DELIMITER, ids);
+    if (ids.size() < MIN_COMPACT_IDS) {
+      return joined;
+    }
+    if (ids.stream().allMatch(id -> CANONICAL_NUMBER.matcher(id).matches())) {
+      return NUMERIC_PREFIX + encodeNumbers(ids);
+    }
+    final String deflated = DEFLATED_PREFIX + deflate(joined);
+    return deflated.length() < joined.length() ? deflated : joined;
+  }
+
+  public static List<String> decode(final String encoded) {
+    if (encoded.isEmpty()) {
+      return List.of();
+    }
+    if (encoded.startsWith(NUMERIC_PREFIX)) {
+      return decodeNumbers(encoded.substring(NUMERIC_PREFIX.length()));
+    }
+    if (encoded.startsWith(DEFLATED_PREFIX)) {
+      return Arrays.asList(inflate(encoded.substring(DEFLATED_PREFIX.length())).split(DELIMITER));
+    }
+    return Arrays.asList(encoded.split(DELIMITER));
+  }
+
+  private static String encodeNumbers(final List<String> ids) {
+    final long[] numbers = ids.stream().mapToLong(Long::parseLong).sorted().toArray();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(numbers.length * 2);
+    long previous = 0;
+    for (long number : numbers) {
+      writeVarint(bytes, number - previous);
+      previous = number;
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  private static List<String> decodeNumbers(final String encoded) {
+    final byte[] bytes = Base64.getUrlDecoder().decode(encoded);
+    final List<String> ids = new ArrayList<>();
+    long previous = 0;
+    int position = 0;
+    while (position < bytes.length) {
+      long delta = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[position++];
+        delta |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      previous += delta;
+      ids.add(Long.toString(previous));
+    }
+    return ids;
+  }
+
+  private static void writeVarint(final ByteArrayOutputStream bytes, final long value) {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      bytes.write((int) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    bytes.write((int) remaining);
+  }
+
+  private static String deflate(final String value) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream deflater = new DeflaterOutputStream(bytes)) {
+      deflater.write(value.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  private static String inflate(final String encoded) {
+    try (InputStream inflater = new InflaterInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(encoded)))) {
+      return new String(inflater.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import io.vavr.control.Try;
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Skips running a tag query when its change probe reports that nothing changed since the query was last drained.
+ *
+ * The probe is a cheap query configured per tag query, such as {@code SELECT MAX(DATE_UPDATED) FROM CASES} or
+ * {@code SELECT CHANGE_TRACKING_CURRENT_VERSION()}. Observed values are kept in memory, so the tag query always runs
+ * on the first sync after the connector starts.
+ *
+ * A drain may only stage its sync positions, see {@link TagSyncStore#stageSyncPosition}. An observation only counts
+ * while the query's staged positions weren't discarded since the sync started, so that the query runs again if the
+ * drained tags weren't upserted after all.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class TagChangeProbe {
+
+  private final ConnectedDatabase database;
+  private final ToLongFunction<TagQuery> discardEpoch;
+  private final Map<TagQuery, Observation> lastDrainedObservations = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the sync unless the tag query's change probe observes the same value as after the last complete sync.
+   * Tag queries without a change probe are always synced.
+   */
+  public void syncIfChanged(final TagQuery tagQuery, final Supplier<Boolean> allowSync, final Runnable sync) {
+    if (!tagQuery.hasChangeProbe()) {
+      sync.run();
+      return;
+    }
+
+    // Observe before syncing so that changes made while the sync runs are picked up next time
+    final Try<String> observation = Try.of(() -> database.probeForChanges(tagQuery.getChangeProbeSql()))
+        .onFailure(e -> log.warn("Change probe for tag SQL query {} failed, running the query", tagQuery.getName(), e));
+
+    final long epoch = discardEpoch.applyAsLong(tagQuery);
+    if (observation.isSuccess()
+        && new Observation(observation.get(), epoch).equals(lastDrainedObservations.get(tagQuery))) {
+      log.debug("No changes detected for tag SQL query {}, skipping", tagQuery.getName());
+      return;
+    }
+
+    sync.run();
+
+    // Only remember the observation if the sync wasn't interrupted before it drained everything
+    if (observation.isSuccess() && allowSync.get()) {
+      lastDrainedObservations.put(tagQuery, new Observation(observation.get(), epoch));
+    }
+  }
+
+  /**
+   * Forget the observations of queries that are no longer configured.
+   */
+  public void retainQueries(final Collection<TagQuery> tagQueries) {
+    lastDrainedObservations.keySet().retainAll(tagQueries);
+  }
+
+  @Value
+  private static class Observation {
+
+    String value;
+    // Discard epoch of the query's staged sync positions when the sync started
+    long discardEpoch;
+  }
+}
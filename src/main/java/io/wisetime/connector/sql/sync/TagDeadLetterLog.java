@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records the tag rows that were left out of a sync because they can't be upserted, e.g. because WiseTime rejected
+ * them or their metadata is invalid. Leaving them out lets the sync move on past them instead of failing the same
+ * page over and over.
+ *
+ * Each row is appended as a line of JSON with the reason to a file in the data directory, so that the rows can be
+ * fixed in the database. When the file grows too large it's moved aside to a {@code .1} file, replacing the previous
+ * one.
+ */
+@Slf4j
+public class TagDeadLetterLog {
+
+  private static final String FILE_NAME = "tag_dead_letters.jsonl";
+  private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+  private final Gson gson = new Gson();
+  private final Optional<Path> file;
+  private final long maxBytes;
+
+  @VisibleForTesting
+  TagDeadLetterLog(final Path file, final long maxBytes) {
+    this.file = Optional.ofNullable(file);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * A dead letter log that only logs the rows that were left out.
+   */
+  public static TagDeadLetterLog logOnly() {
+    return new TagDeadLetterLog(null, 0);
+  }
+
+  public static TagDeadLetterLog fromConfig() {
+    return new TagDeadLetterLog(DataFiles.resolve(FILE_NAME), DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Record a tag row that was left out of the sync. The row is synced again once it's updated in the database.
+   */
+  public synchronized void record(final String tagName, final String reason, final Object row) {
+    log.error("Skipping tag {}, it will be synced once its row is updated: {}", tagName, reason);
+    if (file.isEmpty()) {
+      return;
+    }
+    final String line = gson.toJson(new DeadLetter(Instant.now().toString(), tagName, reason, row)) + "\n";
+    try {
+      if (Files.exists(file.get()) && Files.size(file.get()) >= maxBytes) {
+        Files.move(file.get(), file.get().resolveSibling(file.get().getFileName() + ".1"),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+      Files.write(file.get(), line.getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      // Losing a dead letter is no reason to fail the sync, the error above was logged anyway
+      log.warn("Failed to write to dead letter file {}", file.get(), e);
+    }
+  }
+
+  @Value
+  private static class DeadLetter {
+
+    String time;
+    String tagName;
+    String reason;
+    Object row;
+  }
+}
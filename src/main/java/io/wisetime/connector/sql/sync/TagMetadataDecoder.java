@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Decodes the {@code tag_metadata} JSON of a tag record into metadata keys and values, streaming through the JSON
+ * without reflection. Metadata must be a flat JSON object. Number and boolean values are converted to strings. The
+ * values of the record's metadata columns are added over the decoded metadata.
+ *
+ * Metadata with too many keys or too long values is rejected, as well as malformed JSON.
+ */
+public class TagMetadataDecoder {
+
+  private static final int DEFAULT_MAX_KEYS = 100;
+  private static final int DEFAULT_MAX_VALUE_LENGTH = 2000;
+
+  private final int maxKeys;
+  private final int maxValueLength;
+  private final MetadataAdapter adapter;
+
+  @VisibleForTesting
+  TagMetadataDecoder(final int maxKeys, final int maxValueLength) {
+    this.maxKeys = maxKeys;
+    this.maxValueLength = maxValueLength;
+    this.adapter = new MetadataAdapter(maxKeys, maxValueLength);
+  }
+
+  public static TagMetadataDecoder fromConfig() {
+    return new TagMetadataDecoder(
+        RuntimeConfig.getString(SqlConnectorConfigKey.TAG_METADATA_MAX_KEYS)
+            .map(Integer::parseInt)
+            .orElse(DEFAULT_MAX_KEYS),
+        RuntimeConfig.getString(SqlConnectorConfigKey.TAG_METADATA_MAX_VALUE_LENGTH)
+            .map(Integer::parseInt)
+            .orElse(DEFAULT_MAX_VALUE_LENGTH));
+  }
+
+  /**
+   * Returns null for missing metadata without metadata columns.
+   *
+   * @param metadataColumns values of the record's {@code meta_} prefixed columns by metadata key, may be null
+   * @throws InvalidTagMetadataException if the metadata isn't a flat JSON object or the merged metadata isn't within
+   *     the limits
+   */
+  public Map<String, String> decode(final String tagMetadata, final Map<String, String> metadataColumns) {
+    final Map<String, String> metadata = decode(tagMetadata);
+    if (metadataColumns == null || metadataColumns.isEmpty()) {
+      return metadata;
+    }
+    final Map<String, String> merged = metadata == null ? new LinkedHashMap<>() : metadata;
+    for (Map.Entry<String, String> column : metadataColumns.entrySet()) {
+      if (column.getValue().length() > maxValueLength) {
+        throw new InvalidTagMetadataException(String.format(
+            "Metadata value of %s is longer than %s characters", column.getKey(), maxValueLength));
+      }
+      merged.put(column.getKey(), column.getValue());
+    }
+    if (merged.size() > maxKeys) {
+      throw new InvalidTagMetadataException("Metadata has more than " + maxKeys + " keys");
+    }
+    return merged;
+  }
+
+  /**
+   * Returns null for missing metadata.
+   *
+   * @throws InvalidTagMetadataException if the metadata isn't a flat JSON object within the limits
+   */
+  public Map<String, String> decode(final String tagMetadata) {
+    if (StringUtils.isBlank(tagMetadata)) {
+      return null;
+    }
+    try (JsonReader reader = new JsonReader(new StringReader(tagMetadata))) {
+      reader.setLenient(true);
+      final Map<String, String> metadata = adapter.read(reader);
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new InvalidTagMetadataException("Unexpected content after the metadata object");
+      }
+      return metadata;
+    } catch (IOException | IllegalStateException e) {
+      throw new InvalidTagMetadataException("Malformed metadata JSON: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Thrown for tag metadata that can't be decoded.
+   */
+  public static class InvalidTagMetadataException extends RuntimeException {
+
+    InvalidTagMetadataException(final String message) {
+      super(message);
+    }
+  }
+
+  private static class MetadataAdapter extends TypeAdapter<Map<String, String>> {
+
+    private final int maxKeys;
+    private final int maxValueLength;
+
+    MetadataAdapter(final int maxKeys, final int maxValueLength) {
+      this.maxKeys = maxKeys;
+      this.maxValueLength = maxValueLength;
+    }
+
+    @Override
+    public void write(final JsonWriter out, final Map<String, String> metadata) throws IOException {
+      if (metadata == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      for (Map.Entry<String, String> entry : metadata.entrySet()) {
+        out.name(entry.getKey()).value(entry.getValue());
+      }
+      out.endObject();
+    }
+
+    @Override
+    public Map<String, String> read(final JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      if (in.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new InvalidTagMetadataException("Metadata must be a JSON object but was " + in.peek());
+      }
+      final Map<String, String> metadata = new LinkedHashMap<>();
+      in.beginObject();
+      while (in.hasNext()) {
+        final String key = in.nextName();
+        if (metadata.size() >= maxKeys) {
+          throw new InvalidTagMetadataException("Metadata has more than " + maxKeys + " keys");
+        }
+        metadata.put(key, readValue(in, key));
+      }
+      in.endObject();
+      return metadata;
+    }
+
+    private String readValue(final JsonReader in, final String key) throws IOException {
+      switch (in.peek()) {
+        case NULL:
+          in.nextNull();
+          return null;
+        case BOOLEAN:
+          return Boolean.toString(in.nextBoolean());
+        case STRING:
+        case NUMBER:
+          final String value = in.nextString();
+          if (value.length() > maxValueLength) {
+            throw new InvalidTagMetadataException(String.format(
+                "Metadata value of %s is longer than %s characters", key, maxValueLength));
+          }
+          return value;
+        default:
+          throw new InvalidTagMetadataException(String.format(
+              "Metadata value of %s must be a string, number or boolean but was %s", key, in.peek()));
+      }
+    }
+  }
+}
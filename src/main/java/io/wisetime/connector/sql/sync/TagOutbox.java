@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import io.wisetime.connector.sql.sync.ApiRateLimiter.Lane;
+import io.wisetime.generated.connect.UpsertTagRequest;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A durable queue of tag upsert batches, kept in a memory mapped file in the data directory. Batches are journaled
+ * before they are posted to WiseTime, so that the database can be drained while the WiseTime API is unavailable.
+ *
+ * The file starts with the commit cursor, the offset of the oldest batch that wasn't posted yet. Each batch follows
+ * as its length, a CRC32 of its content and the JSON encoded upsert requests with their API lane, and the last batch
+ * is followed by a zero length. On startup, the batches after the commit cursor are read back up to the first zero
+ * length or corrupt batch. Once every batch was posted, or when the posted batches leave enough room, batches are
+ * moved back to the start of the file.
+ */
+@Slf4j
+public class TagOutbox implements AutoCloseable {
+
+  private static final int HEADER_BYTES = Long.BYTES;
+  private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+  private static final Type BATCH_TYPE = new TypeToken<List<UpsertTagRequest>>() {
+  }.getType();
+
+  private final Gson gson = new Gson();
+  private final Path file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private int commitOffset;
+  private int writeOffset;
+
+  public TagOutbox(final Path file, final int capacityBytes) {
+    Preconditions.checkArgument(capacityBytes > HEADER_BYTES + RECORD_HEADER_BYTES,
+        "Tag outbox capacity is too small: %s bytes", capacityBytes);
+    this.file = file;
+    try {
+      channel = FileChannel.open(file,
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to open tag outbox " + file, e);
+    }
+    recover();
+  }
+
+  /**
+   * Durably journal a batch of upsert requests, to be posted as API traffic of the given lane. Throws if the outbox is
+   * full, i.e. if WiseTime was unavailable for long enough that the posting fell too far behind.
+   */
+  public synchronized void append(final Lane lane, final List<UpsertTagRequest> requests) {
+    final byte[] content = gson.toJson(new Batch(lane, requests)).getBytes(StandardCharsets.UTF_8);
+    final int recordBytes = RECORD_HEADER_BYTES + content.length;
+    if (!hasRoomFor(recordBytes)) {
+      compact();
+      if (!hasRoomFor(recordBytes)) {
+        throw new RuntimeException(String.format(
+            "Tag outbox %s is full with %s bytes waiting to be posted", file, writeOffset - commitOffset));
+      }
+    }
+    final int recordOffset = writeOffset;
+    buffer.putInt(recordOffset + Integer.BYTES, checksum(content));
+    buffer.put(recordOffset + RECORD_HEADER_BYTES, content);
+    writeOffset += recordBytes;
+    terminate();
+    buffer.force(recordOffset + Integer.BYTES, writeOffset - recordOffset - Integer.BYTES);
+    // Writing the length last makes the batch visible only once it is complete
+    buffer.putInt(recordOffset, content.length);
+    buffer.force(recordOffset, Integer.BYTES);
+    notifyAll();
+  }
+
+  /**
+   * The oldest batch that wasn't posted yet, waiting up to the timeout for one to be appended.
+   */
+  public synchronized Optional<Batch> next(final Duration timeout) throws InterruptedException {
+    if (isEmpty() && !timeout.isZero()) {
+      wait(timeout.toMillis());
+    }
+    if (isEmpty()) {
+      return Optional.empty();
+    }
+    final int length = buffer.getInt(commitOffset);
+    final byte[] content = new byte[length];
+    buffer.get(commitOffset + RECORD_HEADER_BYTES, content);
+    return Optional.of(decode(new String(content, StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Mark the batch returned by {@link #next(Duration)} as posted.
+   */
+  public synchronized void commit() {
+    Preconditions.checkState(!isEmpty(), "No tag outbox batch to commit");
+    commitOffset += RECORD_HEADER_BYTES + buffer.getInt(commitOffset);
+    if (isEmpty()) {
+      // Start again from the beginning of the file
+      writeOffset = HEADER_BYTES;
+      terminate();
+      buffer.force(writeOffset, Integer.BYTES);
+      commitOffset = HEADER_BYTES;
+    }
+    writeCommitOffset();
+  }
+
+  public synchronized boolean isEmpty() {
+    return commitOffset == writeOffset;
+  }
+
+  public synchronized int pendingBytes() {
+    return writeOffset - commitOffset;
+  }
+
+  public int capacityBytes() {
+    return buffer.capacity();
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Failed to close tag outbox {}", file, e);
+    }
+  }
+
+  private void recover() {
+    commitOffset = (int) buffer.getLong(0);
+    if (commitOffset < HEADER_BYTES || commitOffset > buffer.capacity() - Integer.BYTES) {
+      // New file
+      commitOffset = HEADER_BYTES;
+      writeCommitOffset();
+    }
+    writeOffset = commitOffset;
+    int batches = 0;
+    while (writeOffset + RECORD_HEADER_BYTES <= buffer.capacity()) {
+      final int length = buffer.getInt(writeOffset);
+      if (length <= 0 || length > buffer.capacity() - writeOffset - RECORD_HEADER_BYTES) {
+        break;
+      }
+      final byte[] content = new byte[length];
+      buffer.get(writeOffset + RECORD_HEADER_BYTES, content);
+      if (checksum(content) != buffer.getInt(writeOffset + Integer.BYTES)) {
+        log.warn("Ignoring corrupt tag outbox batch at offset {} of {}", writeOffset, file);
+        break;
+      }
+      writeOffset += RECORD_HEADER_BYTES + length;
+      batches++;
+    }
+    terminate();
+    if (batches > 0) {
+      log.info("Recovered {} tag upsert batches from outbox {}", batches, file);
+    }
+  }
+
+  private boolean hasRoomFor(final int recordBytes) {
+    // Leave room for the zero length that follows the last batch
+    return (long) writeOffset + recordBytes + Integer.BYTES <= buffer.capacity();
+  }
+
+  /**
+   * Move the batches that weren't posted yet to the start of the file. Only moves them if they don't overlap their
+   * new position, so that the batches are still intact at the old position until the commit cursor moves.
+   */
+  private void compact() {
+    final int pending = writeOffset - commitOffset;
+    if (commitOffset == HEADER_BYTES || commitOffset - HEADER_BYTES < pending) {
+      return;
+    }
+    final byte[] batches = new byte[pending];
+    buffer.get(commitOffset, batches);
+    buffer.put(HEADER_BYTES, batches);
+    buffer.putInt(HEADER_BYTES + pending, 0);
+    buffer.force(HEADER_BYTES, pending + Integer.BYTES);
+    commitOffset = HEADER_BYTES;
+    writeOffset = HEADER_BYTES + pending;
+    writeCommitOffset();
+  }
+
+  private void terminate() {
+    if (writeOffset + Integer.BYTES <= buffer.capacity()) {
+      buffer.putInt(writeOffset, 0);
+    }
+  }
+
+  private void writeCommitOffset() {
+    buffer.putLong(0, commitOffset);
+    buffer.force(0, HEADER_BYTES);
+  }
+
+  private Batch decode(final String json) {
+    final JsonElement batch = JsonParser.parseString(json);
+    if (batch.isJsonArray()) {
+      // Journaled before the outbox kept the lane, posting these is catching up on new tags
+      return new Batch(Lane.TAG_DRAIN, gson.fromJson(batch, BATCH_TYPE));
+    }
+    return gson.fromJson(batch, Batch.class);
+  }
+
+  private static int checksum(final byte[] content) {
+    final CRC32 crc = new CRC32();
+    crc.update(content);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * A journaled batch of upsert requests and the API lane that they are posted in.
+   */
+  @Value
+  public static class Batch {
+
+    Lane lane;
+    List<UpsertTagRequest> requests;
+  }
+}
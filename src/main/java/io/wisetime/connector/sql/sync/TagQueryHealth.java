@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps track of failing tag queries, so that each query syncs in its own failure domain. A failing query doesn't stop
+ * the other queries from syncing.
+ *
+ * A query that failed is tried again on the next run. If it keeps failing, it's paused for exponentially longer
+ * periods, up to a maximum, until a run succeeds again. A query that has been failing for longer than the unhealthy
+ * period makes the connector unhealthy.
+ */
+@Slf4j
+public class TagQueryHealth {
+
+  private static final Duration DEFAULT_BASE_BACKOFF = Duration.ofSeconds(30);
+  private static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMinutes(15);
+  private static final Duration DEFAULT_UNHEALTHY_AFTER = Duration.ofMinutes(30);
+
+  private final Duration baseBackoff;
+  private final Duration maxBackoff;
+  private final Duration unhealthyAfter;
+  private final Clock clock;
+  private final Map<TagQuery, Failures> failures = new ConcurrentHashMap<>();
+  // Unhealthy queries that were already logged, so that each health check doesn't log them again
+  private final Set<TagQuery> reportedUnhealthy = ConcurrentHashMap.newKeySet();
+
+  public TagQueryHealth() {
+    this(DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF, DEFAULT_UNHEALTHY_AFTER, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  TagQueryHealth(Duration baseBackoff, Duration maxBackoff, Duration unhealthyAfter, Clock clock) {
+    this.baseBackoff = baseBackoff;
+    this.maxBackoff = maxBackoff;
+    this.unhealthyAfter = unhealthyAfter;
+    this.clock = clock;
+  }
+
+  /**
+   * Whether the query should sync now, i.e. it isn't paused after repeated failures.
+   */
+  public boolean shouldRun(final TagQuery query) {
+    final Failures queryFailures = failures.get(query);
+    return queryFailures == null || !clock.instant().isBefore(queryFailures.getRetryAt());
+  }
+
+  public void recordSuccess(final TagQuery query) {
+    if (failures.remove(query) != null) {
+      reportedUnhealthy.remove(query);
+      log.info("Tag query {} syncs again", query.getName());
+    }
+  }
+
+  public void recordFailure(final TagQuery query, final Exception error) {
+    final Instant now = clock.instant();
+    final Failures queryFailures = failures.compute(query, (key, previous) -> {
+      final int count = previous == null ? 1 : previous.getCount() + 1;
+      final Instant failingSince = previous == null ? now : previous.getFailingSince();
+      return new Failures(count, failingSince, now.plus(backoff(count)), error.toString());
+    });
+    log.error("Tag query {} failed {} times in a row, next attempt not before {}",
+        query.getName(), queryFailures.getCount(), queryFailures.getRetryAt(), error);
+  }
+
+  /**
+   * Forget the queries that are no longer configured.
+   */
+  public void retainQueries(final List<TagQuery> tagQueries) {
+    failures.keySet().retainAll(tagQueries);
+    reportedUnhealthy.retainAll(tagQueries);
+  }
+
+  /**
+   * The queries that have been failing for longer than the unhealthy period, with their last error.
+   */
+  public Map<String, String> getUnhealthyQueries() {
+    return unhealthyFailures().entrySet().stream()
+        .collect(Collectors.toMap(entry -> entry.getKey().getName(), entry -> entry.getValue().getLastError()));
+  }
+
+  /**
+   * Whether no query has been failing for longer than the unhealthy period. A query is only logged when it becomes
+   * unhealthy.
+   */
+  public boolean isHealthy() {
+    final Map<TagQuery, Failures> unhealthyFailures = unhealthyFailures();
+    unhealthyFailures.forEach((query, queryFailures) -> {
+      if (reportedUnhealthy.add(query)) {
+        log.warn("Tag query {} has been failing for more than {}, last error: {}",
+            query.getName(), unhealthyAfter, queryFailures.getLastError());
+      }
+    });
+    return unhealthyFailures.isEmpty();
+  }
+
+  private Map<TagQuery, Failures> unhealthyFailures() {
+    final Instant unhealthySince = clock.instant().minus(unhealthyAfter);
+    return failures.entrySet().stream()
+        .filter(entry -> !entry.getValue().getFailingSince().isAfter(unhealthySince))
+        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+  }
+
+  public Optional<Integer> getConsecutiveFailures(final TagQuery query) {
+    return Optional.ofNullable(failures.get(query)).map(Failures::getCount);
+  }
+
+  /**
+   * No pause after the first failure, then exponentially longer pauses.
+   */
+  @VisibleForTesting
+  Duration backoff(final int consecutiveFailures) {
+    if (consecutiveFailures <= 1) {
+      return Duration.ZERO;
+    }
+    final long backoffMillis = baseBackoff.toMillis() << Math.min(consecutiveFailures - 2, 30);
+    return Duration.ofMillis(Math.min(maxBackoff.toMillis(), backoffMillis));
+  }
+
+  @Value
+  private static class Failures {
+
+    int count;
+    Instant failingSince;
+    Instant retryAt;
+    String lastError;
+  }
+}
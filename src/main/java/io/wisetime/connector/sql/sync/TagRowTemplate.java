@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.escape.Escaper;
+import com.google.common.net.PercentEscaper;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.EqualsAndHashCode;
+
+/**
+ * A template for a tag field that is built from the columns of a tag query row, e.g.
+ * {@code https://example.com/cases/{id}} or {@code FID{prj_id}}. Column placeholders are replaced with the column
+ * values of each row, with an empty string for null values. The column values of a URL template are percent-encoded,
+ * so that e.g. a {@code /} or {@code #} in a value doesn't change the URL's path or fragment.
+ *
+ * Building such fields in the connector keeps string concatenation out of the tag queries.
+ */
+@EqualsAndHashCode
+public class TagRowTemplate {
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\{([A-Za-z_][A-Za-z0-9_]*)}");
+  // Encodes all but the unreserved characters, so that a value is a single path segment or query parameter value
+  private static final Escaper URL_VALUE_ESCAPER = new PercentEscaper("-._~", false);
+
+  // Alternating literal text and column names, starting with literal text
+  private final List<String> parts;
+  private final boolean urlEncoded;
+
+  private TagRowTemplate(final List<String> parts, final boolean urlEncoded) {
+    this.parts = ImmutableList.copyOf(parts);
+    this.urlEncoded = urlEncoded;
+  }
+
+  /**
+   * A template whose column values are rendered as they are.
+   */
+  public static TagRowTemplate parse(final String template) {
+    return new TagRowTemplate(parseParts(template), false);
+  }
+
+  /**
+   * A template whose column values are percent-encoded when rendered.
+   */
+  public static TagRowTemplate parseUrl(final String template) {
+    return new TagRowTemplate(parseParts(template), true);
+  }
+
+  private static List<String> parseParts(final String template) {
+    final List<String> parts = new ArrayList<>();
+    final Matcher matcher = PLACEHOLDER.matcher(template);
+    int literalStart = 0;
+    while (matcher.find()) {
+      parts.add(template.substring(literalStart, matcher.start()));
+      parts.add(matcher.group(1));
+      literalStart = matcher.end();
+    }
+    parts.add(template.substring(literalStart));
+    for (int i = 0; i < parts.size(); i += 2) {
+      if (parts.get(i).contains("{") || parts.get(i).contains("}")) {
+        throw new IllegalArgumentException("Unbalanced or invalid column placeholder in template " + template);
+      }
+    }
+    return parts;
+  }
+
+  public static boolean isValid(final String template) {
+    try {
+      parse(template);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The lower case names of the columns that the template reads.
+   */
+  public Set<String> getColumns() {
+    final ImmutableSet.Builder<String> columns = ImmutableSet.builder();
+    for (int i = 1; i < parts.size(); i += 2) {
+      columns.add(parts.get(i).toLowerCase(Locale.ROOT));
+    }
+    return columns.build();
+  }
+
+  public String render(final ResultSet resultSet) throws SQLException {
+    final StringBuilder rendered = new StringBuilder(parts.get(0));
+    for (int i = 1; i < parts.size(); i += 2) {
+      final String value = resultSet.getString(parts.get(i));
+      if (value != null) {
+        rendered.append(urlEncoded ? URL_VALUE_ESCAPER.escape(value) : value);
+      }
+      rendered.append(parts.get(i + 1));
+    }
+    return rendered.toString();
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Value;
+
+/**
+ * Remembers which range of each tag query the drain recently read and upserted, so that the refresh doesn't read and
+ * upsert the same rows again. This happens right after startup or a reset, when the drain and the refresh both start
+ * from the initial sync marker.
+ *
+ * Consecutive drained pages form one contiguous segment per query. A segment is only reused while it is fresh, i.e.
+ * while its first page was drained within the freshness window.
+ */
+public class TagScanCoverage {
+
+  private static final Duration DEFAULT_FRESHNESS = Duration.ofHours(1);
+
+  private final Duration freshness;
+  private final Clock clock;
+  private final Map<TagQuery, Segment> segments = new ConcurrentHashMap<>();
+
+  public TagScanCoverage() {
+    this(DEFAULT_FRESHNESS, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  TagScanCoverage(final Duration freshness, final Clock clock) {
+    this.freshness = freshness;
+    this.clock = clock;
+  }
+
+  /**
+   * Record that the drain upserted all rows between the two positions.
+   */
+  public void recordDrainedPage(final TagQuery tagQuery, final SyncPosition before, final SyncPosition after) {
+    if (after.equals(before)) {
+      return;
+    }
+    final Instant now = clock.instant();
+    segments.compute(tagQuery, (query, segment) -> {
+      if (segment != null && segment.getEnd().equals(before) && isFresh(segment, now)) {
+        return new Segment(segment.getStart(), after, segment.getStartedAt());
+      }
+      return new Segment(before, after, now);
+    });
+  }
+
+  /**
+   * The position up to which the drain recently upserted all rows that remain to be synced from the given position.
+   * Empty if the drain hasn't recently covered the rows right after the given position.
+   */
+  public Optional<SyncPosition> coveredFrom(final TagQuery tagQuery, final SyncPosition position) {
+    final Segment segment = segments.get(tagQuery);
+    if (segment == null || !isFresh(segment, clock.instant())) {
+      return Optional.empty();
+    }
+    if (position.isAtOrAfter(segment.getStart()) && !position.isAtOrAfter(segment.getEnd())) {
+      return Optional.of(segment.getEnd());
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Forget the coverage of queries that are no longer configured.
+   */
+  public void retainQueries(final Collection<TagQuery> tagQueries) {
+    segments.keySet().retainAll(tagQueries);
+  }
+
+  /**
+   * Forget the coverage of the queries, e.g. because the drained tags weren't upserted after all.
+   */
+  public void forgetQueries(final Collection<TagQuery> tagQueries) {
+    segments.keySet().removeAll(tagQueries);
+  }
+
+  private boolean isFresh(final Segment segment, final Instant now) {
+    return segment.getStartedAt().plus(freshness).isAfter(now);
+  }
+
+  @Value
+  private static class Segment {
+
+    SyncPosition start;
+    SyncPosition end;
+    Instant startedAt;
+  }
+}
@@ -5,7 +5,16 @@
 package io.wisetime.connector.sql.sync;
 
 import io.vavr.control.Try;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
@@ -20,30 +29,121 @@ import org.codejargon.fluentjdbc.api.query.Mapper;
 @Accessors(chain = true)
 public class TagSyncRecord {
 
+  public static final String METADATA_COLUMN_PREFIX = "meta_";
+
   @NonNull
   private String id;
   @NonNull
   private String tagName;
   private String additionalKeyword;
+  // All keywords of a tag whose keyword rows were merged, see KeywordGroupMerger
+  private List<String> additionalKeywords;
   private String tagDescription;
   private String url;
   private String externalId;
   @NonNull
   private String tagMetadata;
+  // Values of meta_ prefixed columns by metadata key, added to the tag metadata when the tag is upserted
+  private Map<String, String> metadataColumns;
   @NonNull
   private String syncMarker;
 
+  /**
+   * The keywords to add to the tag, from merged keyword rows or else from the additional keyword.
+   */
+  public List<String> allAdditionalKeywords() {
+    return additionalKeywords != null ? additionalKeywords : Collections.singletonList(additionalKeyword);
+  }
+
   public static Mapper<TagSyncRecord> fluentJdbcMapper() {
-    return resultSet -> new TagSyncRecord()
-        .setId(resultSet.getString("id"))
-        .setTagName(resultSet.getString("tag_name"))
-        .setUrl(Try.of(() -> resultSet.getString("url")).getOrNull())
-        .setExternalId(Try.of(() -> resultSet.getString("external_id")).getOrNull())
-        .setTagMetadata(
-            Try.of(() -> Optional.ofNullable(resultSet.getString("tag_metadata")).orElse("{}"))
-                .getOrElse("{}"))
-        .setAdditionalKeyword(resultSet.getString("additional_keyword"))
-        .setTagDescription(resultSet.getString("tag_description"))
-        .setSyncMarker(resultSet.getString("sync_marker"));
+    return fluentJdbcMapper(null, null, null);
+  }
+
+  /**
+   * Maps rows of a query whose selected columns are already known, e.g. from a prepared statement's metadata. Optional
+   * columns that are not selected are skipped instead of being looked up and failing on every row.
+   */
+  public static Mapper<TagSyncRecord> fluentJdbcMapper(final Set<String> selectedColumns) {
+    return fluentJdbcMapper(selectedColumns, null, null);
+  }
+
+  /**
+   * Maps rows, building the URL and additional keyword from templates where given instead of reading them from
+   * columns. Any of the arguments may be null.
+   */
+  public static Mapper<TagSyncRecord> fluentJdbcMapper(final Set<String> selectedColumns,
+      final TagRowTemplate urlTemplate, final TagRowTemplate additionalKeywordTemplate) {
+    final OptionalColumn optionalColumn = selectedColumns == null
+        ? (rs, column) -> Try.of(() -> rs.getString(column)).getOrNull()
+        : (rs, column) -> selectedColumns.contains(column) ? rs.getString(column) : null;
+    // Only look for metadata columns if the query may select any
+    final boolean mayHaveMetadataColumns = selectedColumns == null
+        || selectedColumns.stream().anyMatch(column -> column.startsWith(METADATA_COLUMN_PREFIX));
+    final MetadataColumns metadataColumns = new MetadataColumns();
+    return resultSet -> {
+      final TagSyncRecord record = new TagSyncRecord()
+          .setId(resultSet.getString("id"))
+          .setTagName(resultSet.getString("tag_name"))
+          .setUrl(urlTemplate != null ? urlTemplate.render(resultSet) : optionalColumn.read(resultSet, "url"))
+          .setExternalId(optionalColumn.read(resultSet, "external_id"))
+          .setTagMetadata(Optional.ofNullable(optionalColumn.read(resultSet, "tag_metadata")).orElse("{}"))
+          .setAdditionalKeyword(additionalKeywordTemplate != null
+              ? additionalKeywordTemplate.render(resultSet)
+              : resultSet.getString("additional_keyword"))
+          .setTagDescription(resultSet.getString("tag_description"))
+          .setSyncMarker(resultSet.getString("sync_marker"));
+      if (mayHaveMetadataColumns) {
+        record.setMetadataColumns(metadataColumns.read(resultSet));
+      }
+      return record;
+    };
+  }
+
+  /**
+   * Reads the values of {@code meta_} prefixed columns as metadata keys without the prefix, e.g. column
+   * {@code meta_country} as metadata key {@code country}. Null values are left out. The columns are looked up in the
+   * result set metadata once per result set rather than for every row.
+   */
+  private static class MetadataColumns {
+
+    private ResultSet resolvedResultSet;
+    private Map<Integer, String> keysByIndex = Map.of();
+
+    Map<String, String> read(final ResultSet resultSet) throws SQLException {
+      if (resultSet != resolvedResultSet) {
+        keysByIndex = resolve(resultSet.getMetaData());
+        resolvedResultSet = resultSet;
+      }
+      if (keysByIndex.isEmpty()) {
+        return null;
+      }
+      final Map<String, String> metadata = new LinkedHashMap<>();
+      for (Map.Entry<Integer, String> column : keysByIndex.entrySet()) {
+        final String value = resultSet.getString(column.getKey());
+        if (value != null) {
+          metadata.put(column.getValue(), value);
+        }
+      }
+      return metadata;
+    }
+
+    private static Map<Integer, String> resolve(final ResultSetMetaData metaData) throws SQLException {
+      if (metaData == null) {
+        return Map.of();
+      }
+      final Map<Integer, String> keys = new LinkedHashMap<>();
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        final String column = metaData.getColumnLabel(i);
+        if (column.toLowerCase(Locale.ROOT).startsWith(METADATA_COLUMN_PREFIX)) {
+          keys.put(i, column.substring(METADATA_COLUMN_PREFIX.length()));
+        }
+      }
+      return keys;
+    }
+  }
+
+  private interface OptionalColumn {
+
+    String read(ResultSet resultSet, String column) throws SQLException;
   }
 }
@@ -6,19 +6,25 @@ package io.wisetime.connector.sql.sync;
 
 import static io.wisetime.connector.sql.format.LogFormatter.ellipsize;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import io.wisetime.connector.datastore.ConnectorStore;
 import io.wisetime.connector.sql.queries.TagQuery;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 
 /**
  * A store to remember the latest synced tags at the same sync marker.
@@ -27,14 +33,34 @@ import org.apache.commons.lang3.StringUtils;
  * behave like separate stores even if they share the same underlying ConnectorStore. They store
  * their state in their own separate key spaces.
  *
+ * Sync positions can also be staged in memory, e.g. until the tags that they cover were posted. Staged positions are
+ * read back like persisted ones, until they are committed or discarded. Each query's staged position is committed and
+ * discarded on its own, so that a failure to post one query's tags doesn't affect the other queries.
+ *
+ * Many IDs may be synced at the same marker, e.g. after a bulk update. The IDs are kept in memory and stored in
+ * chunks encoded by {@link SyncedIdsCodec}, so that appending IDs at the same marker only rewrites the last chunk. The
+ * first chunk is stored under the original key and starts with the number of chunks if there are several.
+ *
+ * Persisted state can be read through a {@link SyncStateCache} shared with the other sync stores.
+ *
+ * The state of a query is keyed by its {@link TagQuery#stateKey()}, so that editing the query's SQL doesn't start its
+ * sync over. State that was keyed by the query's hash code is moved to the new keys when the query is first read.
+ *
  * @author shane.xie
  */
 @Slf4j
 public class TagSyncStore {
 
-  private static final String DELIMITER = "@@@";
-  private final ConnectorStore connectorStore;
+  private static final int IDS_PER_CHUNK = 1024;
+  private static final Pattern CHUNK_COUNT_HEADER = Pattern.compile("^~(\\d+);");
+  private final SyncStateCache syncStateCache;
   private final String keySpace;
+  // Staged values by the state key of their query
+  private final Map<String, Map<String, String>> stagedValues = new ConcurrentHashMap<>();
+  // How often the staged values of each query were discarded, by state key
+  private final Map<String, Long> discardEpochs = new ConcurrentHashMap<>();
+  private final Map<String, List<List<String>>> syncedIdChunks = new ConcurrentHashMap<>();
+  private final Set<String> checkedLegacyState = ConcurrentHashMap.newKeySet();
 
   /**
    * Create a SyncStore with default key space.
@@ -49,7 +75,14 @@ public class TagSyncStore {
    * Create a SyncStore, providing a custom key space.
    */
   public TagSyncStore(final ConnectorStore connectorStore, final String keySpace) {
-    this.connectorStore = connectorStore;
+    this(SyncStateCache.uncached(connectorStore), keySpace);
+  }
+
+  /**
+   * Create a SyncStore that reads and writes through a sync state cache, providing a custom key space.
+   */
+  public TagSyncStore(final SyncStateCache syncStateCache, final String keySpace) {
+    this.syncStateCache = syncStateCache;
     this.keySpace = keySpace;
   }
 
@@ -58,44 +91,329 @@ public class TagSyncStore {
    * The TagSyncRecords provided must be sorted by sync marker in ascending order.
    */
   public void markSyncPosition(final TagQuery tagQuery, final LinkedList<TagSyncRecord> tagSyncRecordsInAscMarkerOrder) {
+    final Map<String, String> values = new LinkedHashMap<>();
+    markSyncPosition(tagQuery, tagSyncRecordsInAscMarkerOrder, values::put);
+    commit(tagQuery, values);
+  }
+
+  /**
+   * Like {@link #markSyncPosition(TagQuery, LinkedList)}, but only keeps the sync position in memory until
+   * {@link #commitStaged(Collection)} is called.
+   *
+   * Fails if the query's staged position was discarded since the given {@link #discardEpoch(TagQuery)}. The records
+   * were then read after a position that no longer applies, and staging them would skip the discarded records.
+   */
+  public void stageSyncPosition(final TagQuery tagQuery, final LinkedList<TagSyncRecord> tagSyncRecordsInAscMarkerOrder,
+      final long discardEpoch) {
+    Preconditions.checkState(discardEpoch(tagQuery) == discardEpoch,
+        "The staged sync position of tag query %s was discarded while it was drained", tagQuery.getName());
+    markSyncPosition(tagQuery, tagSyncRecordsInAscMarkerOrder,
+        stagedValues.computeIfAbsent(tagQuery.stateKey(), stateKey -> new ConcurrentHashMap<>())::put);
+  }
+
+  /**
+   * Persist the staged sync positions of the queries.
+   */
+  public void commitStaged(final Collection<TagQuery> tagQueries) {
+    final Map<String, String> values = new LinkedHashMap<>();
+    tagQueries.forEach(tagQuery -> values.putAll(stagedValues.getOrDefault(tagQuery.stateKey(), Map.of())));
+    syncStateCache.commit(values);
+    for (TagQuery tagQuery : tagQueries) {
+      final Map<String, String> staged = stagedValues.get(tagQuery.stateKey());
+      if (staged != null) {
+        // Keep a value that was staged again in the meantime
+        values.forEach(staged::remove);
+      }
+    }
+  }
+
+  /**
+   * Forget the staged sync positions of the queries, so that their persisted sync positions apply again.
+   */
+  public void discardStaged(final Collection<TagQuery> tagQueries) {
+    for (TagQuery tagQuery : tagQueries) {
+      stagedValues.remove(tagQuery.stateKey());
+      // The cached IDs may have been staged
+      syncedIdChunks.remove(lastSyncedIdsKey(tagQuery));
+      discardEpochs.merge(tagQuery.stateKey(), 1L, Long::sum);
+    }
+  }
+
+  /**
+   * Changes whenever the query's staged sync position is discarded. A drain that stages positions takes it when it
+   * starts reading, see {@link #stageSyncPosition(TagQuery, LinkedList, long)}.
+   */
+  public long discardEpoch(final TagQuery tagQuery) {
+    return discardEpochs.getOrDefault(tagQuery.stateKey(), 0L);
+  }
+
+  private void markSyncPosition(final TagQuery tagQuery, final LinkedList<TagSyncRecord> tagSyncRecordsInAscMarkerOrder,
+      final BiConsumer<String, String> put) {
     final List<TagSyncRecord> currentSyncBatch =
         extractMostRecentTagSyncRecordsWithSameMarker(tagSyncRecordsInAscMarkerOrder.descendingIterator());
 
     if (!currentSyncBatch.isEmpty()) {
       final String previousMarker = getSyncMarker(tagQuery);
       final String latestMarker = currentSyncBatch.get(0).getSyncMarker();
-      connectorStore.putString(markerKey(tagQuery), latestMarker);
+      put.accept(markerKey(tagQuery), latestMarker);
 
-      final Stream<String> previousSyncedIds = getLastSyncedIds(tagQuery).stream();
-      final Stream<String> latestSyncedIds = currentSyncBatch.stream().map(TagSyncRecord::getId);
-      List<String> syncedIdsAtSameMarker;
+      final List<String> latestSyncedIds = currentSyncBatch.stream()
+          .map(TagSyncRecord::getId)
+          .collect(Collectors.toList());
 
+      final List<List<String>> chunks;
       if (latestMarker.equals(previousMarker)) {
-        syncedIdsAtSameMarker = Stream.concat(previousSyncedIds, latestSyncedIds).collect(Collectors.toList());
+        chunks = appendSyncedIds(tagQuery, latestSyncedIds, put);
       } else {
-        syncedIdsAtSameMarker = latestSyncedIds.collect(Collectors.toList());
+        chunks = putSyncedIds(tagQuery, latestSyncedIds, put);
       }
-      connectorStore.putString(lastSyncedIdsKey(tagQuery), StringUtils.join(syncedIdsAtSameMarker, DELIMITER));
 
+      final List<String> syncedIdsAtSameMarker = flatten(chunks);
       log.info("Last synced IDs at same marker ({}): {}", syncedIdsAtSameMarker.size(),
           ellipsize(syncedIdsAtSameMarker));
     }
   }
 
+  /**
+   * Persist a sync marker without any IDs at that marker, for queries that are drained in relaxed ordering mode.
+   */
+  public void markSyncMarker(final TagQuery tagQuery, final String syncMarker) {
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(markerKey(tagQuery), syncMarker);
+    putSyncedIds(tagQuery, List.of(), values::put);
+    commit(tagQuery, values);
+  }
+
+  /**
+   * Persist a sync position that was reached by another store reading the same query.
+   */
+  public void moveSyncPosition(final TagQuery tagQuery, final SyncPosition syncPosition) {
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(markerKey(tagQuery), syncPosition.getSyncMarker());
+    putSyncedIds(tagQuery, syncPosition.getLastSyncedIds(), values::put);
+    commit(tagQuery, values);
+  }
+
+  /**
+   * The last synced change of a change data capture tag query, if one was stored. The sync marker is then the version
+   * up to which every change was synced, see {@link ChangeCaptureSync}.
+   */
+  public Optional<ChangeCursor> getChangeCursor(final TagQuery tagQuery) {
+    final List<String> cursor = getString(tagQuery, changeCursorKey(tagQuery))
+        .map(SyncedIdsCodec::decode)
+        .orElse(List.of());
+    if (cursor.isEmpty()) {
+      return Optional.empty();
+    }
+    // An empty ID isn't encoded
+    return Optional.of(new ChangeCursor(cursor.get(0), cursor.size() > 1 ? cursor.get(1) : ""));
+  }
+
+  /**
+   * Persist the version up to which every change was synced together with the last synced change.
+   */
+  public void markChangePosition(final TagQuery tagQuery, final String syncMarker, final ChangeCursor cursor) {
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(markerKey(tagQuery), syncMarker);
+    values.put(changeCursorKey(tagQuery), SyncedIdsCodec.encode(List.of(cursor.getSyncMarker(), cursor.getId())));
+    commit(tagQuery, values);
+  }
+
+  public SnapshotState getSnapshotState(final TagQuery tagQuery) {
+    return getString(tagQuery, snapshotStateKey(tagQuery))
+        .map(SnapshotState::valueOf)
+        .orElse(SnapshotState.NOT_STARTED);
+  }
+
+  /**
+   * Start the initial snapshot of a change data capture tag query over. Its changes are synced from the given version
+   * once the snapshot is complete, and the snapshot is read from the query's initial sync marker.
+   */
+  public void startSnapshot(final TagQuery tagQuery, final String changeMarker) {
+    final TagQuery snapshotQuery = tagQuery.snapshotQuery();
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(markerKey(tagQuery), changeMarker);
+    values.put(changeCursorKey(tagQuery), SyncedIdsCodec.encode(List.of(changeMarker)));
+    values.put(snapshotStateKey(tagQuery), SnapshotState.PENDING.name());
+    values.put(markerKey(snapshotQuery), snapshotQuery.getInitialSyncMarker());
+    putSyncedIds(snapshotQuery, List.of(), values::put);
+    commit(tagQuery, values);
+  }
+
+  public void completeSnapshot(final TagQuery tagQuery) {
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(snapshotStateKey(tagQuery), SnapshotState.COMPLETE.name());
+    commit(tagQuery, values);
+  }
+
   public void resetSyncPosition(final TagQuery tagQuery) {
-    connectorStore.putString(markerKey(tagQuery), tagQuery.getInitialSyncMarker());
-    connectorStore.putString(lastSyncedIdsKey(tagQuery), "");
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(markerKey(tagQuery), tagQuery.getInitialSyncMarker());
+    putSyncedIds(tagQuery, List.of(), values::put);
+    commit(tagQuery, values);
+    // Start over from what is persisted
+    syncedIdChunks.remove(lastSyncedIdsKey(tagQuery));
+    syncStateCache.invalidate(markerKey(tagQuery), lastSyncedIdsKey(tagQuery));
   }
 
   public String getSyncMarker(final TagQuery tagQuery) {
-    return connectorStore.getString(markerKey(tagQuery)).orElse(tagQuery.getInitialSyncMarker());
+    Optional<String> syncMarker = getString(tagQuery, markerKey(tagQuery));
+    if (syncMarker.isEmpty() && migrateLegacyState(tagQuery)) {
+      syncMarker = getString(tagQuery, markerKey(tagQuery));
+    }
+    return syncMarker.orElse(tagQuery.getInitialSyncMarker());
   }
 
   public List<String> getLastSyncedIds(final TagQuery tagQuery) {
-    return connectorStore.getString(lastSyncedIdsKey(tagQuery))
-        .map(refs -> refs.split(DELIMITER))
-        .map(Arrays::asList)
-        .orElse(ImmutableList.of());
+    return flatten(getSyncedIdChunks(tagQuery));
+  }
+
+  private List<List<String>> getSyncedIdChunks(final TagQuery tagQuery) {
+    final String key = lastSyncedIdsKey(tagQuery);
+    final List<List<String>> cachedChunks = syncedIdChunks.get(key);
+    if (cachedChunks != null) {
+      return cachedChunks;
+    }
+    Optional<String> firstChunk = getString(tagQuery, key);
+    if (firstChunk.isEmpty() && migrateLegacyState(tagQuery)) {
+      firstChunk = getString(tagQuery, key);
+    }
+    if (firstChunk.isEmpty()) {
+      return ImmutableList.of();
+    }
+    final Matcher header = CHUNK_COUNT_HEADER.matcher(firstChunk.get());
+    final List<List<String>> chunks = new ArrayList<>();
+    if (header.find()) {
+      chunks.add(SyncedIdsCodec.decode(firstChunk.get().substring(header.end())));
+      final int chunkCount = Integer.parseInt(header.group(1));
+      for (int i = 1; i < chunkCount; i++) {
+        chunks.add(SyncedIdsCodec.decode(getString(tagQuery, chunkKey(key, i)).orElse("")));
+      }
+    } else {
+      chunks.add(SyncedIdsCodec.decode(firstChunk.get()));
+    }
+    syncedIdChunks.put(key, chunks);
+    return chunks;
+  }
+
+  /**
+   * Move the sync position that was kept under the query's hash code to the query's state key, unless the query
+   * already has state under its state key or its sync version was bumped. Only looks for it once per query.
+   *
+   * @return whether a sync position was moved
+   */
+  private boolean migrateLegacyState(final TagQuery tagQuery) {
+    if (!tagQuery.hasInitialSyncVersion() || !checkedLegacyState.add(markerKey(tagQuery))) {
+      return false;
+    }
+    final String legacyKey = keySpace + tagQuery.hashCode();
+    final Optional<String> legacyMarker = syncStateCache.getString(legacyKey + "_sync_marker");
+    if (legacyMarker.isEmpty() || getString(tagQuery, markerKey(tagQuery)).isPresent()) {
+      return false;
+    }
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(markerKey(tagQuery), legacyMarker.get());
+    final String legacyIdsKey = legacyKey + "_last_synced_ids";
+    final String legacyFirstChunk = syncStateCache.getString(legacyIdsKey).orElse("");
+    final int legacyChunkCount = chunkCount(legacyFirstChunk);
+    for (int i = 1; i < legacyChunkCount; i++) {
+      values.put(chunkKey(lastSyncedIdsKey(tagQuery), i),
+          syncStateCache.getString(chunkKey(legacyIdsKey, i)).orElse(""));
+    }
+    clearChunks(lastSyncedIdsKey(tagQuery), legacyChunkCount, persistedChunkCount(tagQuery), values::put);
+    // The first chunk holds the chunk count, so it's written once the other chunks are
+    values.put(lastSyncedIdsKey(tagQuery), legacyFirstChunk);
+    commit(tagQuery, values);
+    log.info("Moved the sync position of tag query {} at marker {} to its state key {}",
+        tagQuery.getName(), legacyMarker.get(), tagQuery.stateKey());
+    return true;
+  }
+
+  /**
+   * Replace the IDs at the sync marker.
+   */
+  private List<List<String>> putSyncedIds(final TagQuery tagQuery, final List<String> ids,
+      final BiConsumer<String, String> put) {
+    final List<List<String>> chunks = new ArrayList<>();
+    for (int from = 0; from == 0 || from < ids.size(); from += IDS_PER_CHUNK) {
+      chunks.add(new ArrayList<>(ids.subList(from, Math.min(ids.size(), from + IDS_PER_CHUNK))));
+    }
+    writeChunks(lastSyncedIdsKey(tagQuery), chunks, 0, persistedChunkCount(tagQuery), put);
+    return chunks;
+  }
+
+  /**
+   * Add IDs at the same sync marker. Only the last chunk and new chunks are written.
+   */
+  private List<List<String>> appendSyncedIds(final TagQuery tagQuery, final List<String> ids,
+      final BiConsumer<String, String> put) {
+    final List<List<String>> chunks = new ArrayList<>(getSyncedIdChunks(tagQuery));
+    if (chunks.isEmpty()) {
+      chunks.add(new ArrayList<>());
+    }
+    final int previousChunkCount = chunks.size();
+    final int firstChangedChunk = chunks.size() - 1;
+    List<String> lastChunk = new ArrayList<>(chunks.get(firstChangedChunk));
+    chunks.set(firstChangedChunk, lastChunk);
+    for (String id : ids) {
+      if (lastChunk.size() >= IDS_PER_CHUNK) {
+        lastChunk = new ArrayList<>();
+        chunks.add(lastChunk);
+      }
+      lastChunk.add(id);
+    }
+    // The first chunk holds the chunk count
+    writeChunks(lastSyncedIdsKey(tagQuery), chunks, chunks.size() > previousChunkCount ? 0 : firstChangedChunk,
+        previousChunkCount, put);
+    return chunks;
+  }
+
+  /**
+   * Writes the chunks from {@code fromChunk} on and clears the chunks beyond the new chunk count. The first chunk holds
+   * the chunk count, so it's written last: a backend that writes the values one by one never has a chunk count that
+   * covers chunks that weren't written yet.
+   */
+  private void writeChunks(final String key, final List<List<String>> chunks, final int fromChunk,
+      final int previousChunkCount, final BiConsumer<String, String> put) {
+    for (int i = Math.max(fromChunk, 1); i < chunks.size(); i++) {
+      put.accept(chunkKey(key, i), SyncedIdsCodec.encode(chunks.get(i)));
+    }
+    clearChunks(key, chunks.size(), previousChunkCount, put);
+    if (fromChunk == 0) {
+      final String encoded = SyncedIdsCodec.encode(chunks.get(0));
+      put.accept(key, chunks.size() > 1 ? "~" + chunks.size() + ";" + encoded : encoded);
+    }
+    syncedIdChunks.put(key, chunks);
+  }
+
+  private void clearChunks(final String key, final int chunkCount, final int previousChunkCount,
+      final BiConsumer<String, String> put) {
+    for (int i = Math.max(chunkCount, 1); i < previousChunkCount; i++) {
+      put.accept(chunkKey(key, i), "");
+    }
+  }
+
+  /**
+   * The number of chunks of the IDs at the sync marker, read from the header of the first chunk.
+   */
+  private int persistedChunkCount(final TagQuery tagQuery) {
+    final List<List<String>> cachedChunks = syncedIdChunks.get(lastSyncedIdsKey(tagQuery));
+    if (cachedChunks != null) {
+      return cachedChunks.size();
+    }
+    return getString(tagQuery, lastSyncedIdsKey(tagQuery)).map(this::chunkCount).orElse(0);
+  }
+
+  private int chunkCount(final String firstChunk) {
+    final Matcher header = CHUNK_COUNT_HEADER.matcher(firstChunk);
+    return header.find() ? Integer.parseInt(header.group(1)) : 1;
+  }
+
+  private List<String> flatten(final List<List<String>> chunks) {
+    if (chunks.size() == 1) {
+      return chunks.get(0);
+    }
+    return chunks.stream().flatMap(List::stream).collect(Collectors.toList());
   }
 
   private List<TagSyncRecord> extractMostRecentTagSyncRecordsWithSameMarker(
@@ -118,11 +436,46 @@ public class TagSyncStore {
     return mostRecentSameMarker;
   }
 
+  private void commit(final TagQuery tagQuery, final Map<String, String> values) {
+    final Map<String, String> staged = stagedValues.get(tagQuery.stateKey());
+    if (staged != null) {
+      // A persisted value replaces a staged one
+      values.keySet().forEach(staged::remove);
+    }
+    syncStateCache.commit(values);
+  }
+
+  private Optional<String> getString(final TagQuery tagQuery, final String key) {
+    final String stagedValue = stagedValues.getOrDefault(tagQuery.stateKey(), Map.of()).get(key);
+    return stagedValue != null ? Optional.of(stagedValue) : syncStateCache.getString(key);
+  }
+
   private String markerKey(final TagQuery tagQuery) {
-    return keySpace + tagQuery.hashCode() + "_sync_marker";
+    return keySpace + tagQuery.stateKey() + "_sync_marker";
   }
 
   private String lastSyncedIdsKey(final TagQuery tagQuery) {
-    return keySpace + tagQuery.hashCode() + "_last_synced_ids";
+    return keySpace + tagQuery.stateKey() + "_last_synced_ids";
+  }
+
+  private String chunkKey(final String lastSyncedIdsKey, final int chunk) {
+    return lastSyncedIdsKey + "_" + chunk;
+  }
+
+  private String changeCursorKey(final TagQuery tagQuery) {
+    return keySpace + tagQuery.stateKey() + "_change_cursor";
+  }
+
+  private String snapshotStateKey(final TagQuery tagQuery) {
+    return keySpace + tagQuery.stateKey() + "_snapshot";
+  }
+
+  /**
+   * Progress of the initial snapshot of a change data capture tag query.
+   */
+  public enum SnapshotState {
+    NOT_STARTED,
+    PENDING,
+    COMPLETE
   }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Collects drained tags before they are upserted, merging the versions of each tag into one. Several tag queries can
+ * return the same tag, and a tag that is updated repeatedly during a catch-up drain would otherwise be upserted once
+ * per version. Upserts are additive, so the merged tag has the keywords of every version, and fields that a later
+ * version leaves empty keep their earlier value.
+ *
+ * The collected tags are upserted once there are enough of them or the oldest was collected long enough ago, and
+ * whenever {@link #flush()} is called. Sync positions are staged while their tags are collected and committed only
+ * once the tags were upserted, so that a failed upsert drains the same tags again. Only the queries whose tags were
+ * collected since the previous flush are committed or discarded.
+ */
+@Slf4j
+public class TagUpsertCoalescer {
+
+  private static final int DEFAULT_MAX_SIZE = 5000;
+  private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(1);
+
+  private final int maxSize;
+  private final Duration maxAge;
+  private final Clock clock;
+  private final Consumer<List<TagSyncRecord>> upsert;
+  private final Consumer<Set<TagQuery>> onUpserted;
+  private final Consumer<Set<TagQuery>> onFailed;
+
+  // Merged versions of each tag, by tag name
+  private final Map<String, TagSyncRecord> pending = new LinkedHashMap<>();
+  // The queries that staged sync positions for the pending tags
+  private final Set<TagQuery> pendingQueries = new LinkedHashSet<>();
+  private Instant oldestAddedAt;
+  private int addedRecords;
+
+  /**
+   * @param upsert upserts the coalesced tags
+   * @param onUpserted commits the staged sync positions of the queries
+   * @param onFailed discards the staged sync positions of the queries
+   */
+  @VisibleForTesting
+  TagUpsertCoalescer(final int maxSize, final Duration maxAge, final Clock clock,
+      final Consumer<List<TagSyncRecord>> upsert, final Consumer<Set<TagQuery>> onUpserted,
+      final Consumer<Set<TagQuery>> onFailed) {
+    Preconditions.checkArgument(maxSize > 0, "TAG_UPSERT_COALESCE_MAX_SIZE must be positive");
+    this.maxSize = maxSize;
+    this.maxAge = maxAge;
+    this.clock = clock;
+    this.upsert = upsert;
+    this.onUpserted = onUpserted;
+    this.onFailed = onFailed;
+  }
+
+  /**
+   * Create a coalescer if coalescing is enabled in the runtime configuration.
+   */
+  public static TagUpsertCoalescer fromConfig(final Consumer<List<TagSyncRecord>> upsert,
+      final Consumer<Set<TagQuery>> onUpserted, final Consumer<Set<TagQuery>> onFailed) {
+    final boolean coalescing = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_UPSERT_COALESCING)
+        .map(Boolean::parseBoolean)
+        .orElse(false);
+    if (!coalescing) {
+      return null;
+    }
+    return new TagUpsertCoalescer(
+        RuntimeConfig.getString(SqlConnectorConfigKey.TAG_UPSERT_COALESCE_MAX_SIZE)
+            .map(Integer::parseInt)
+            .orElse(DEFAULT_MAX_SIZE),
+        RuntimeConfig.getString(SqlConnectorConfigKey.TAG_UPSERT_COALESCE_MAX_AGE)
+            .map(Duration::parse)
+            .orElse(DEFAULT_MAX_AGE),
+        Clock.systemUTC(),
+        upsert, onUpserted, onFailed);
+  }
+
+  /**
+   * Collect a page of drained tags of the query. The sync position of the page is staged together with collecting the
+   * tags, so that a concurrent flush can't commit the position without upserting the tags.
+   */
+  public synchronized void add(final TagQuery tagQuery, final List<TagSyncRecord> records,
+      final Runnable stageSyncPosition) {
+    stageSyncPosition.run();
+    pendingQueries.add(tagQuery);
+    if (pending.isEmpty()) {
+      oldestAddedAt = clock.instant();
+    }
+    for (TagSyncRecord record : records) {
+      // Move the tag to the end, it is now the latest
+      final TagSyncRecord earlier = pending.remove(record.getTagName());
+      pending.put(record.getTagName(), earlier == null ? record : merge(earlier, record));
+    }
+    addedRecords += records.size();
+    if (pending.size() >= maxSize || !clock.instant().isBefore(oldestAddedAt.plus(maxAge))) {
+      flush();
+    }
+  }
+
+  /**
+   * Upsert the collected tags and commit the staged sync positions.
+   */
+  public synchronized void flush() {
+    final Set<TagQuery> queries = new LinkedHashSet<>(pendingQueries);
+    pendingQueries.clear();
+    if (pending.isEmpty()) {
+      onUpserted.accept(queries);
+      return;
+    }
+    final List<TagSyncRecord> records = new ArrayList<>(pending.values());
+    final int coalescedRecords = addedRecords;
+    pending.clear();
+    addedRecords = 0;
+    try {
+      upsert.accept(records);
+    } catch (RuntimeException e) {
+      onFailed.accept(queries);
+      throw e;
+    }
+    onUpserted.accept(queries);
+    log.info("Upserted {} drained tags as {} coalesced tags", coalescedRecords, records.size());
+  }
+
+  /**
+   * Merges a later version of a tag into the earlier one as consecutive upserts would, without changing either.
+   */
+  private static TagSyncRecord merge(final TagSyncRecord earlier, final TagSyncRecord later) {
+    final Set<String> keywords = new LinkedHashSet<>(earlier.allAdditionalKeywords());
+    keywords.addAll(later.allAdditionalKeywords());
+    keywords.remove(null);
+    final Map<String, String> metadataColumns = new HashMap<>();
+    if (earlier.getMetadataColumns() != null) {
+      metadataColumns.putAll(earlier.getMetadataColumns());
+    }
+    if (later.getMetadataColumns() != null) {
+      metadataColumns.putAll(later.getMetadataColumns());
+    }
+    return new TagSyncRecord()
+        .setId(later.getId())
+        .setTagName(later.getTagName())
+        .setAdditionalKeyword(later.getAdditionalKeyword())
+        .setAdditionalKeywords(new ArrayList<>(keywords))
+        .setTagDescription(StringUtils.defaultIfEmpty(later.getTagDescription(), earlier.getTagDescription()))
+        .setUrl(StringUtils.defaultIfEmpty(later.getUrl(), earlier.getUrl()))
+        .setExternalId(StringUtils.defaultIfEmpty(later.getExternalId(), earlier.getExternalId()))
+        .setTagMetadata(isEmptyMetadata(later.getTagMetadata()) ? earlier.getTagMetadata() : later.getTagMetadata())
+        .setMetadataColumns(metadataColumns.isEmpty() ? null : metadataColumns)
+        .setSyncMarker(later.getSyncMarker());
+  }
+
+  private static boolean isEmptyMetadata(final String tagMetadata) {
+    return StringUtils.isBlank(tagMetadata) || "{}".equals(StringUtils.deleteWhitespace(tagMetadata));
+  }
+
+  @VisibleForTesting
+  synchronized int pendingSize() {
+    return pending.size();
+  }
+}
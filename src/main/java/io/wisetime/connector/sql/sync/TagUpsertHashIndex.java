@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import io.wisetime.connector.config.RuntimeConfig;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import io.wisetime.generated.connect.UpsertTagRequest;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers a hash of the content of each tag that was upserted, so that upserting the same content again can be
+ * skipped. The continuous refresh otherwise upserts every tag on every cycle, even though few of them changed.
+ *
+ * Tags are identified by path and name, and both the identity and the content are hashed to 64 bits. The hashes are
+ * kept in a primitive in-memory map and appended to a file in the data directory, which is compacted on startup. A
+ * small ratio of unchanged tags is upserted anyway, e.g. to recreate tags that were deleted in WiseTime.
+ */
+@Slf4j
+public class TagUpsertHashIndex {
+
+  private static final String FILE_NAME = "tag_upsert_hashes.bin";
+  private static final double DEFAULT_FORCED_RESEND_RATIO = 0.01;
+  private static final int ENTRY_BYTES = 2 * Long.BYTES;
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
+  private final Gson gson = new Gson();
+  private final Path file;
+  private final double forcedResendRatio;
+  private final LongLongHashMap hashes = new LongLongHashMap();
+  private DataOutputStream output;
+
+  @VisibleForTesting
+  TagUpsertHashIndex(final Path file, final double forcedResendRatio) {
+    this.file = file;
+    this.forcedResendRatio = forcedResendRatio;
+    if (file != null) {
+      open();
+    }
+  }
+
+  /**
+   * An index that never skips an upsert.
+   */
+  public static TagUpsertHashIndex disabled() {
+    return new TagUpsertHashIndex(null, 1);
+  }
+
+  public static TagUpsertHashIndex fromConfig() {
+    final boolean skipUnchanged = RuntimeConfig.getString(SqlConnectorConfigKey.TAG_SKIP_UNCHANGED_UPSERTS)
+        .map(Boolean::parseBoolean)
+        .orElse(false);
+    if (!skipUnchanged) {
+      return disabled();
+    }
+    return new TagUpsertHashIndex(
+        DataFiles.resolve(FILE_NAME),
+        RuntimeConfig.getString(SqlConnectorConfigKey.TAG_FORCED_RESEND_RATIO)
+            .map(Double::parseDouble)
+            .orElse(DEFAULT_FORCED_RESEND_RATIO));
+  }
+
+  /**
+   * Whether the tag was last upserted with the same content. Returns false for a ratio of unchanged tags, so that
+   * they are upserted anyway.
+   */
+  public synchronized boolean isUnchanged(final UpsertTagRequest request) {
+    if (file == null) {
+      return false;
+    }
+    final long storedHash = hashes.get(identityHash(request));
+    return storedHash != 0
+        && storedHash == contentHash(request)
+        && ThreadLocalRandom.current().nextDouble() >= forcedResendRatio;
+  }
+
+  /**
+   * Remember the content of tags that were upserted successfully.
+   */
+  public synchronized void recordUpserted(final List<UpsertTagRequest> requests) {
+    if (file == null) {
+      return;
+    }
+    try {
+      for (UpsertTagRequest request : requests) {
+        final long identityHash = identityHash(request);
+        final long contentHash = contentHash(request);
+        if (hashes.put(identityHash, contentHash) != contentHash) {
+          output.writeLong(identityHash);
+          output.writeLong(contentHash);
+        }
+      }
+      output.flush();
+    } catch (IOException e) {
+      // Not remembering the content only means that the tags will be upserted again
+      log.warn("Failed to write tag upsert hashes to {}", file, e);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return hashes.size();
+  }
+
+  private long identityHash(final UpsertTagRequest request) {
+    return nonZero(HASH_FUNCTION.hashString(request.getPath() + '\0' + request.getName(), StandardCharsets.UTF_8)
+        .asLong());
+  }
+
+  private long contentHash(final UpsertTagRequest request) {
+    return nonZero(HASH_FUNCTION.hashString(gson.toJson(request), StandardCharsets.UTF_8).asLong());
+  }
+
+  private static long nonZero(final long hash) {
+    // Zero marks empty slots and missing entries
+    return hash == 0 ? 1 : hash;
+  }
+
+  private void open() {
+    try {
+      final long fileEntries = load();
+      if (fileEntries > 2L * hashes.size()) {
+        compact();
+      }
+      output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+      log.info("Loaded {} tag upsert hashes from {}", hashes.size(), file);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to open tag upsert hash index " + file, e);
+    }
+  }
+
+  private long load() throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    final long completeEntries = Files.size(file) / ENTRY_BYTES;
+    if (Files.size(file) % ENTRY_BYTES != 0) {
+      // Drop an entry that was partially written when the connector stopped
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.truncate(completeEntries * ENTRY_BYTES);
+      }
+    }
+    try (InputStream inputStream = Files.newInputStream(file);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream))) {
+      for (long i = 0; i < completeEntries; i++) {
+        hashes.put(input.readLong(), input.readLong());
+      }
+    } catch (EOFException e) {
+      log.warn("Tag upsert hash index {} ended early", file);
+    }
+    return completeEntries;
+  }
+
+  private void compact() throws IOException {
+    final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+    try (OutputStream outputStream = Files.newOutputStream(compacted);
+        DataOutputStream compactOutput = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+      hashes.forEach((identityHash, contentHash) -> {
+        compactOutput.writeLong(identityHash);
+        compactOutput.writeLong(contentHash);
+      });
+    }
+    Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Open addressing hash map of non-zero long keys to long values, without boxing.
+   */
+  private static class LongLongHashMap {
+
+    private long[] keys = new long[1024];
+    private long[] values = new long[1024];
+    private int size;
+
+    long get(final long key) {
+      int slot = slot(key, keys.length);
+      while (keys[slot] != 0) {
+        if (keys[slot] == key) {
+          return values[slot];
+        }
+        slot = (slot + 1) & (keys.length - 1);
+      }
+      return 0;
+    }
+
+    /**
+     * Returns the previous value, or zero if there was none.
+     */
+    long put(final long key, final long value) {
+      if (2 * (size + 1) > keys.length) {
+        resize();
+      }
+      int slot = slot(key, keys.length);
+      while (keys[slot] != 0) {
+        if (keys[slot] == key) {
+          final long previous = values[slot];
+          values[slot] = value;
+          return previous;
+        }
+        slot = (slot + 1) & (keys.length - 1);
+      }
+      keys[slot] = key;
+      values[slot] = value;
+      size++;
+      return 0;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void forEach(final EntryConsumer consumer) throws IOException {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != 0) {
+          consumer.accept(keys[i], values[i]);
+        }
+      }
+    }
+
+    private void resize() {
+      final long[] oldKeys = keys;
+      final long[] oldValues = values;
+      keys = new long[oldKeys.length * 2];
+      values = new long[oldValues.length * 2];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0) {
+          put(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    private static int slot(final long key, final int capacity) {
+      // Keys are already well distributed hashes
+      return (int) (key ^ (key >>> 32)) & (capacity - 1);
+    }
+  }
+
+  private interface EntryConsumer {
+
+    void accept(long key, long value) throws IOException;
+  }
+}
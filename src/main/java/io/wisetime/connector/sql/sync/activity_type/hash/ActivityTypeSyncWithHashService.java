@@ -9,6 +9,7 @@ import io.wisetime.connector.datastore.ConnectorStore;
 import io.wisetime.connector.sql.queries.ActivityTypeQuery;
 import io.wisetime.connector.sql.sync.ConnectApi;
 import io.wisetime.connector.sql.sync.ConnectedDatabase;
+import io.wisetime.connector.sql.sync.SyncStateCache;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeSyncService;
 import java.time.Duration;
@@ -35,7 +36,14 @@ public class ActivityTypeSyncWithHashService implements ActivityTypeSyncService
       ConnectorStore connectorStore,
       ConnectApi connectApi,
       ConnectedDatabase database) {
-    activityTypeSyncStore = new ActivityTypeSyncWithHashStore(connectorStore);
+    this(SyncStateCache.uncached(connectorStore), connectApi, database);
+  }
+
+  public ActivityTypeSyncWithHashService(
+      SyncStateCache syncStateCache,
+      ConnectApi connectApi,
+      ConnectedDatabase database) {
+    activityTypeSyncStore = new ActivityTypeSyncWithHashStore(syncStateCache);
     this.connectApi = connectApi;
     this.database = database;
   }
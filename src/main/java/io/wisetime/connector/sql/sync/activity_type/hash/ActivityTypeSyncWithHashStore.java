@@ -6,6 +6,7 @@ package io.wisetime.connector.sql.sync.activity_type.hash;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.connector.sql.sync.SyncStateCache;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
 import java.time.Duration;
 import java.util.List;
@@ -25,14 +26,18 @@ class ActivityTypeSyncWithHashStore {
   @VisibleForTesting
   static final String HASH_KEY = "ACTIVITY_TYPES_HASH";
 
-  private final ConnectorStore connectorStore;
+  private final SyncStateCache syncStateCache;
 
   @VisibleForTesting
   @Setter(AccessLevel.PACKAGE)
   private Function<List<ActivityTypeRecord>, String> hashFunction;
 
   public ActivityTypeSyncWithHashStore(ConnectorStore connectorStore) {
-    this.connectorStore = connectorStore;
+    this(SyncStateCache.uncached(connectorStore));
+  }
+
+  public ActivityTypeSyncWithHashStore(SyncStateCache syncStateCache) {
+    this.syncStateCache = syncStateCache;
     hashFunction = activityTypes -> DigestUtils.md5Hex(
         activityTypes.stream()
             .map(activityType -> activityType.getCode() + activityType.getDescription())
@@ -45,7 +50,7 @@ class ActivityTypeSyncWithHashStore {
    */
   boolean isSynced(List<ActivityTypeRecord> activityTypes) {
     final String activityTypesHash = hashFunction.apply(activityTypes);
-    return connectorStore.getString(HASH_KEY)
+    return syncStateCache.getString(HASH_KEY)
         .map(hash -> hash.equals(activityTypesHash))
         .orElse(false);
   }
@@ -54,14 +59,14 @@ class ActivityTypeSyncWithHashStore {
    * Returns true if there was no sync yet or it was more than a {@link Duration} ago.
    */
   boolean lastSyncedOlderThan(Duration duration) {
-    return connectorStore.getLong(LAST_SYNC_KEY)
+    return syncStateCache.getLong(LAST_SYNC_KEY)
         .map(lastSync -> System.currentTimeMillis() - lastSync > duration.toMillis())
         .orElse(true);
   }
 
   void markSynced(List<ActivityTypeRecord> activityTypes) {
     final String activityTypesHash = hashFunction.apply(activityTypes);
-    connectorStore.putLong(LAST_SYNC_KEY, System.currentTimeMillis());
-    connectorStore.putString(HASH_KEY, activityTypesHash);
+    syncStateCache.putLong(LAST_SYNC_KEY, System.currentTimeMillis());
+    syncStateCache.putString(HASH_KEY, activityTypesHash);
   }
 }
@@ -12,6 +12,7 @@ import io.wisetime.connector.sql.queries.ActivityTypeQuery;
 import io.wisetime.connector.sql.queries.DrainRun;
 import io.wisetime.connector.sql.sync.ConnectApi;
 import io.wisetime.connector.sql.sync.ConnectedDatabase;
+import io.wisetime.connector.sql.sync.SyncStateCache;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeSyncService;
 import java.util.List;
@@ -40,8 +41,15 @@ public class ActivityTypeSyncWithMarkerService implements ActivityTypeSyncServic
       ConnectorStore connectorStore,
       ConnectApi connectApi,
       ConnectedDatabase database) {
-    activityTypeDrainSyncStore = new ActivityTypeSyncWithMarkerStore(connectorStore);
-    activityTypeRefreshSyncStore = new ActivityTypeSyncWithMarkerStore(connectorStore, "refresh_");
+    this(SyncStateCache.uncached(connectorStore), connectApi, database);
+  }
+
+  public ActivityTypeSyncWithMarkerService(
+      SyncStateCache syncStateCache,
+      ConnectApi connectApi,
+      ConnectedDatabase database) {
+    activityTypeDrainSyncStore = new ActivityTypeSyncWithMarkerStore(syncStateCache, "");
+    activityTypeRefreshSyncStore = new ActivityTypeSyncWithMarkerStore(syncStateCache, "refresh_");
     this.connectApi = connectApi;
     this.database = database;
   }
@@ -8,83 +8,128 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import io.wisetime.connector.datastore.ConnectorStore;
 import io.wisetime.connector.sql.queries.ActivityTypeQuery;
+import io.wisetime.connector.sql.sync.SyncStateCache;
+import io.wisetime.connector.sql.sync.SyncedIdsCodec;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 /**
+ * Keeps the sync state of the activity type query under its {@link ActivityTypeQuery#stateKey()}. State that was
+ * kept under the query's hash code is moved to the new keys when the query is first read.
+ *
  * @author yehor.lashkul
  */
+@Slf4j
 @RequiredArgsConstructor
 class ActivityTypeSyncWithMarkerStore {
 
-  private static final String CODES_DELIMITER = "@@@";
-
-  private final ConnectorStore connectorStore;
+  private final SyncStateCache syncStateCache;
   private final String keySpace;
+  private final Set<String> checkedLegacyState = ConcurrentHashMap.newKeySet();
 
   public ActivityTypeSyncWithMarkerStore(ConnectorStore connectorStore) {
     this(connectorStore, "");
   }
 
+  public ActivityTypeSyncWithMarkerStore(ConnectorStore connectorStore, String keySpace) {
+    this(SyncStateCache.uncached(connectorStore), keySpace);
+  }
+
   void markSyncPosition(ActivityTypeQuery query, List<ActivityTypeRecord> activityTypes) {
     Preconditions.checkArgument(activityTypes.size() > 0, "activity types can't be empty");
 
     final String latestMarker = activityTypes.get(activityTypes.size() - 1).getSyncMarker();
-    connectorStore.putString(syncMarkerKey(query), latestMarker);
-
-    final String latestSyncedCodes = activityTypes.stream()
+    final List<String> latestSyncedCodes = activityTypes.stream()
         .filter(activityType -> activityType.getSyncMarker().equals(latestMarker))
         .map(ActivityTypeRecord::getCode)
-        .collect(Collectors.joining(CODES_DELIMITER));
-    connectorStore.putString(lastSyncedCodesKey(query), latestSyncedCodes);
+        .collect(Collectors.toList());
+
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(syncMarkerKey(query), latestMarker);
+    values.put(lastSyncedCodesKey(query), SyncedIdsCodec.encode(latestSyncedCodes));
+    syncStateCache.commit(values);
   }
 
   void resetSyncPosition(ActivityTypeQuery query) {
-    connectorStore.putString(syncMarkerKey(query), query.getInitialSyncMarker());
-    connectorStore.putString(syncSessionKey(query), "");
-    connectorStore.putString(lastSyncedCodesKey(query), "");
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(syncMarkerKey(query), query.getInitialSyncMarker());
+    values.put(syncSessionKey(query), "");
+    values.put(lastSyncedCodesKey(query), "");
+    syncStateCache.commit(values);
+    // Start over from what is persisted
+    syncStateCache.invalidate(syncMarkerKey(query), syncSessionKey(query), lastSyncedCodesKey(query));
   }
 
   String getSyncMarker(ActivityTypeQuery query) {
-    return connectorStore.getString(syncMarkerKey(query))
+    migrateLegacyState(query);
+    return syncStateCache.getString(syncMarkerKey(query))
         .filter(StringUtils::isNotEmpty)
         .orElse(query.getInitialSyncMarker());
   }
 
   List<String> getLastSyncedCodes(ActivityTypeQuery query) {
-    return connectorStore.getString(lastSyncedCodesKey(query))
-        .filter(StringUtils::isNotEmpty)
-        .map(refs -> refs.split(CODES_DELIMITER))
-        .map(Arrays::asList)
-        .orElse(List.of());
+    migrateLegacyState(query);
+    return syncStateCache.getDecoded(lastSyncedCodesKey(query), codes -> codes
+        .map(SyncedIdsCodec::decode)
+        .orElse(List.of()));
   }
 
   void saveSyncSession(ActivityTypeQuery query, String syncSessionId) {
-    connectorStore.putString(syncSessionKey(query), syncSessionId);
+    syncStateCache.putString(syncSessionKey(query), syncSessionId);
   }
 
   Optional<String> getSyncSession(ActivityTypeQuery query) {
-    return connectorStore.getString(syncSessionKey(query))
+    migrateLegacyState(query);
+    return syncStateCache.getString(syncSessionKey(query))
+        .filter(StringUtils::isNotEmpty);
+  }
+
+  /**
+   * Move the sync state that was kept under the query's hash code to the query's state key, unless the query already
+   * has a sync marker under its state key or its sync version was bumped. Only looks for it once per query.
+   */
+  private void migrateLegacyState(ActivityTypeQuery query) {
+    if (!query.hasInitialSyncVersion() || !checkedLegacyState.add(syncMarkerKey(query))) {
+      return;
+    }
+    final String legacyKey = keySpace + query.hashCode();
+    final Optional<String> legacyMarker = syncStateCache.getString(legacyKey + "_activity_type_sync_marker")
         .filter(StringUtils::isNotEmpty);
+    if (legacyMarker.isEmpty() || syncStateCache.getString(syncMarkerKey(query)).isPresent()) {
+      return;
+    }
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put(syncMarkerKey(query), legacyMarker.get());
+    values.put(lastSyncedCodesKey(query),
+        syncStateCache.getString(legacyKey + "_activity_type_last_sync_codes").orElse(""));
+    values.put(syncSessionKey(query),
+        syncStateCache.getString(legacyKey + "_activity_type_sync_session").orElse(""));
+    syncStateCache.commit(values);
+    log.info("Moved the activity type sync position at marker {} to its state key {}",
+        legacyMarker.get(), query.stateKey());
   }
 
   @VisibleForTesting
   String syncMarkerKey(final ActivityTypeQuery query) {
-    return keySpace + query.hashCode() + "_activity_type_sync_marker";
+    return keySpace + query.stateKey() + "_activity_type_sync_marker";
   }
 
   @VisibleForTesting
   String lastSyncedCodesKey(final ActivityTypeQuery query) {
-    return keySpace + query.hashCode() + "_activity_type_last_sync_codes";
+    return keySpace + query.stateKey() + "_activity_type_last_sync_codes";
   }
 
   @VisibleForTesting
   String syncSessionKey(final ActivityTypeQuery query) {
-    return keySpace + query.hashCode() + "_activity_type_sync_session";
+    return keySpace + query.stateKey() + "_activity_type_sync_session";
   }
 }
@@ -9,11 +9,11 @@ import static io.wisetime.connector.sql.RandomEntities.fixedTimeMinusMinutes;
 import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
 import static io.wisetime.connector.sql.RandomEntities.randomTagSyncRecord;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -24,17 +24,34 @@ import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableList;
 import io.wisetime.connector.api_client.ApiClient;
+import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
 import io.wisetime.connector.sql.queries.ActivityTypeQueryProvider;
 import io.wisetime.connector.sql.queries.TagQuery;
 import io.wisetime.connector.sql.queries.TagQueryProvider;
+import io.wisetime.connector.sql.sync.ApiRateLimiter.Lane;
 import io.wisetime.connector.sql.sync.ConnectApi;
 import io.wisetime.connector.sql.sync.ConnectedDatabase;
+import io.wisetime.connector.sql.sync.ConnectedDatabase.TagPage;
+import io.wisetime.connector.sql.sync.SyncPosition;
+import io.wisetime.connector.sql.sync.SyncStateCache;
+import io.wisetime.connector.sql.sync.TagQueryHealth;
+import io.wisetime.connector.sql.sync.TagScanCoverage;
 import io.wisetime.connector.sql.sync.TagSyncRecord;
 import io.wisetime.connector.sql.sync.TagSyncStore;
+import io.wisetime.connector.sql.sync.TagUpsertCoalescer;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -73,6 +90,7 @@ class SqlConnectorTagUpdateTest {
         mockRefreshSyncStore,
         mockConnectApi
     );
+    connector.setTagQueryHealth(new TagQueryHealth());
   }
 
   @Test
@@ -84,12 +102,11 @@ class SqlConnectorTagUpdateTest {
 
   @Test
   void performTagUpdate_no_tags_to_sync() {
-    when(mockTagQueryProvider.getQueries())
-        .thenReturn(ImmutableList.of(new TagQuery("one", "SELECT 1", "",
-            Collections.singletonList("0"), true)));
+    final TagQuery query = new TagQuery("one", "SELECT 1", "", Collections.singletonList("0"), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(query));
     when(mockDrainSyncStore.getSyncMarker(any(TagQuery.class))).thenReturn("");
     when(mockDrainSyncStore.getLastSyncedIds(any(TagQuery.class))).thenReturn(ImmutableList.of());
-    when(mockDatabase.getTagsToSync(eq("SELECT 1"), eq(""), anyList())).thenReturn(new LinkedList<>());
+    when(mockDatabase.getTagsToSync(eq(query), eq(""), anyList())).thenReturn(new LinkedList<>());
 
     connector.performTagUpdate();
 
@@ -100,9 +117,8 @@ class SqlConnectorTagUpdateTest {
 
   @Test
   void performTagUpdate_exception_does_not_prevent_next_run() {
-    when(mockTagQueryProvider.getQueries())
-        .thenReturn(ImmutableList.of(new TagQuery("one", "SELECT 1", "",
-            Collections.singletonList("0"), true)));
+    final TagQuery query = new TagQuery("one", "SELECT 1", "", Collections.singletonList("0"), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(query));
 
     when(mockDrainSyncStore.getSyncMarker(any(TagQuery.class)))
         .thenThrow(new RuntimeException("First call throws"))
@@ -112,13 +128,140 @@ class SqlConnectorTagUpdateTest {
 
     final LinkedList<TagSyncRecord> tagSyncRecords = new LinkedList<>();
     tagSyncRecords.add(randomTagSyncRecord());
-    when(mockDatabase.getTagsToSync(eq("SELECT 1"), eq(""), anyList()))
+    when(mockDatabase.getTagsToSync(eq(query), eq(""), anyList()))
         .thenReturn(tagSyncRecords)
         .thenReturn(new LinkedList<>());
 
-    assertThrows(RuntimeException.class, () -> connector.performTagUpdate());
+    // The failure is contained to the query
+    connector.performTagUpdate();
     connector.performTagUpdate();
-    verify(mockDatabase, times(2)).getTagsToSync(anyString(), anyString(), anyList());
+    verify(mockDatabase, times(2)).getTagsToSync(any(TagQuery.class), anyString(), anyList());
+  }
+
+  @Test
+  void performTagUpdate_failing_query_does_not_hold_back_other_queries() {
+    final TagQueryHealth tagQueryHealth = new TagQueryHealth();
+    connector.setTagQueryHealth(tagQueryHealth);
+    final TagQuery keywords = new TagQuery("keywords", "SELECT 1", "", Collections.singletonList("0"), true);
+    final TagQuery cases = new TagQuery("cases", "SELECT 2", "", Collections.singletonList("0"), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(keywords, cases));
+    when(mockDrainSyncStore.getSyncMarker(any(TagQuery.class))).thenReturn("");
+    when(mockDrainSyncStore.getLastSyncedIds(any(TagQuery.class))).thenReturn(ImmutableList.of());
+    when(mockDatabase.getTagsToSync(eq(keywords), eq(""), anyList()))
+        .thenThrow(new RuntimeException("Broken keywords query"));
+    final LinkedList<TagSyncRecord> tagSyncRecords = new LinkedList<>();
+    tagSyncRecords.add(randomTagSyncRecord());
+    when(mockDatabase.getTagsToSync(eq(cases), eq(""), anyList()))
+        .thenReturn(tagSyncRecords)
+        .thenReturn(new LinkedList<>());
+
+    connector.performTagUpdate();
+
+    verify(mockConnectApi, times(1)).upsertWiseTimeTags(tagSyncRecords);
+    verify(mockDrainSyncStore, times(1)).markSyncPosition(cases, tagSyncRecords);
+    assertThat(tagQueryHealth.getConsecutiveFailures(keywords)).contains(1);
+    assertThat(tagQueryHealth.getConsecutiveFailures(cases)).isEmpty();
+  }
+
+  @Test
+  void performTagUpdate_coalesces_drained_pages() {
+    final TagUpsertCoalescer mockCoalescer = mock(TagUpsertCoalescer.class);
+    connector.setTagUpsertCoalescer(mockCoalescer);
+    try {
+      final TagQuery query = new TagQuery("one", "SELECT 1", "", Collections.singletonList("0"), true);
+      when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(query));
+      when(mockDrainSyncStore.getSyncMarker(any(TagQuery.class))).thenReturn("");
+      when(mockDrainSyncStore.getLastSyncedIds(any(TagQuery.class))).thenReturn(ImmutableList.of());
+      final LinkedList<TagSyncRecord> page = new LinkedList<>();
+      page.add(randomTagSyncRecord());
+      when(mockDatabase.getTagsToSync(eq(query), eq(""), anyList()))
+          .thenReturn(page)
+          .thenReturn(new LinkedList<>());
+
+      connector.performTagUpdate();
+
+      final ArgumentCaptor<Runnable> stageCaptor = ArgumentCaptor.forClass(Runnable.class);
+      verify(mockCoalescer).add(eq(query), eq(page), stageCaptor.capture());
+      verify(mockCoalescer).flush();
+      verify(mockConnectApi, never()).upsertWiseTimeTags(anyList());
+      verify(mockDrainSyncStore, never()).markSyncPosition(any(), any());
+
+      stageCaptor.getValue().run();
+      verify(mockDrainSyncStore).stageSyncPosition(query, page, 0L);
+    } finally {
+      connector.setTagUpsertCoalescer(null);
+    }
+  }
+
+  @Test
+  void performTagUpdate_parallel_coalesced_flush_failure_loses_no_tags() throws Exception {
+    final TagQuery cases = new TagQuery("cases", "SELECT 1", "0", Collections.singletonList("0"), true);
+    final TagQuery keywords = new TagQuery("keywords", "SELECT 2", "0", Collections.singletonList("0"), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(cases, keywords));
+    final Map<String, List<TagSyncRecord>> rows = Map.of(
+        "SELECT 1", List.of(record("c1", "1"), record("c2", "2"), record("c3", "3")),
+        "SELECT 2", List.of(record("k1", "1"), record("k2", "2"), record("k3", "3")));
+
+    // The keywords query reads its second page before the flush fails, and stages it after the failure
+    final CountDownLatch keywordsReadingSecondPage = new CountDownLatch(1);
+    final CountDownLatch flushFailed = new CountDownLatch(1);
+    final AtomicBoolean firstCasesPage = new AtomicBoolean(true);
+    final AtomicBoolean firstKeywordsSecondPage = new AtomicBoolean(true);
+    when(mockDatabase.getTagsToSync(any(TagQuery.class), anyString(), anyList())).thenAnswer(invocation -> {
+      final String sql = invocation.<TagQuery>getArgument(0).getSql();
+      final String marker = invocation.getArgument(1);
+      if (sql.equals("SELECT 1") && firstCasesPage.getAndSet(false)) {
+        assertThat(keywordsReadingSecondPage.await(10, TimeUnit.SECONDS)).isTrue();
+      }
+      if (sql.equals("SELECT 2") && marker.equals("1") && firstKeywordsSecondPage.getAndSet(false)) {
+        keywordsReadingSecondPage.countDown();
+        assertThat(flushFailed.await(10, TimeUnit.SECONDS)).isTrue();
+      }
+      return rows.get(sql).stream()
+          .filter(row -> row.getSyncMarker().compareTo(marker) > 0
+              || row.getSyncMarker().equals(marker) && !invocation.<List<String>>getArgument(2).contains(row.getId()))
+          .limit(1)
+          .collect(Collectors.toCollection(LinkedList::new));
+    });
+    final Set<String> upsertedIds = ConcurrentHashMap.newKeySet();
+    final AtomicBoolean firstUpsert = new AtomicBoolean(true);
+    doAnswer(invocation -> {
+      if (firstUpsert.getAndSet(false)) {
+        flushFailed.countDown();
+        throw new RuntimeException("API unavailable");
+      }
+      invocation.<List<TagSyncRecord>>getArgument(0).forEach(record -> upsertedIds.add(record.getId()));
+      return null;
+    }).when(mockConnectApi).upsertWiseTimeTags(anyList());
+
+    final Map<String, String> persisted = new ConcurrentHashMap<>();
+    final ConnectorStore connectorStore = mock(ConnectorStore.class);
+    when(connectorStore.getString(anyString()))
+        .thenAnswer(invocation -> Optional.ofNullable(persisted.get(invocation.<String>getArgument(0))));
+    doAnswer(invocation -> persisted.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(connectorStore).putString(anyString(), anyString());
+    connector.setTagDrainSyncStore(new TagSyncStore(SyncStateCache.uncached(connectorStore), ""));
+    RuntimeConfig.setProperty(SqlConnectorConfigKey.TAG_UPSERT_COALESCING, "true");
+    RuntimeConfig.setProperty(SqlConnectorConfigKey.TAG_UPSERT_COALESCE_MAX_SIZE, "3");
+    connector.setTagUpsertCoalescer(connector.createTagUpsertCoalescer());
+    connector.setTagSyncParallelism(2);
+    try {
+      connector.performTagUpdate();
+      // Sync again once the API is available and the failed queries may run again
+      connector.setTagQueryHealth(new TagQueryHealth());
+      connector.performTagUpdate();
+    } finally {
+      connector.setTagSyncParallelism(1);
+      connector.setTagUpsertCoalescer(null);
+      RuntimeConfig.setProperty(SqlConnectorConfigKey.TAG_UPSERT_COALESCING, "false");
+      RuntimeConfig.setProperty(SqlConnectorConfigKey.TAG_UPSERT_COALESCE_MAX_SIZE, "5000");
+      connector.setTagDrainSyncStore(mockDrainSyncStore);
+    }
+
+    assertThat(flushFailed.getCount()).isZero();
+    assertThat(upsertedIds)
+        .as("Tags that were discarded in a failed flush are drained again")
+        .containsExactlyInAnyOrder("c1", "c2", "c3", "k1", "k2", "k3");
   }
 
   @Test
@@ -145,7 +288,7 @@ class SqlConnectorTagUpdateTest {
     final TagSyncRecord queryResults2Record1 = randomTagSyncRecord(fixedTime());
     queryResults2.add(queryResults2Record1);
 
-    when(mockDatabase.getTagsToSync(query.getSql(), marker, ImmutableList.of("skipped1", "synced1")))
+    when(mockDatabase.getTagsToSync(query, marker, ImmutableList.of("skipped1", "synced1")))
         .thenReturn(queryResults1)
         .thenReturn(queryResults2)
         .thenReturn(new LinkedList<>());
@@ -257,7 +400,7 @@ class SqlConnectorTagUpdateTest {
     queryResults.add(query1Record1);
     queryResults.add(query1Record2);
 
-    when(mockDatabase.getTagsToSync(query.getSql(), marker, ImmutableList.of("skipped1", "synced1")))
+    when(mockDatabase.getTagsToSync(query, marker, ImmutableList.of("skipped1", "synced1")))
         .thenReturn(queryResults)
         .thenReturn(new LinkedList<>());
 
@@ -265,7 +408,7 @@ class SqlConnectorTagUpdateTest {
 
     // Verify API was called to upsert tags
     ArgumentCaptor<List<TagSyncRecord>> recordsCaptor = ArgumentCaptor.forClass(List.class);
-    verify(mockConnectApi, times(1)).upsertWiseTimeTags(recordsCaptor.capture());
+    verify(mockConnectApi, times(1)).upsertWiseTimeTags(recordsCaptor.capture(), eq(Lane.TAG_REFRESH));
     final List<List<TagSyncRecord>> recordsArguments = recordsCaptor.getAllValues();
 
     assertThat(recordsArguments.get(0).size())
@@ -304,4 +447,109 @@ class SqlConnectorTagUpdateTest {
         .as("Record matches per returned order")
         .isEqualTo(query1Record2.getTagName());
   }
+
+  @Test
+  void refreshOneBatch_skips_range_covered_by_drain() {
+    TagQuery query = new TagQuery("projects", "SELECT 1", "1", Collections.emptyList(), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(query));
+    when(mockRefreshSyncStore.getSyncMarker(query)).thenReturn("1");
+    when(mockRefreshSyncStore.getLastSyncedIds(query)).thenReturn(ImmutableList.of());
+
+    final TagScanCoverage tagScanCoverage = new TagScanCoverage();
+    final SyncPosition drainedPosition = new SyncPosition("20", ImmutableList.of("synced1"));
+    tagScanCoverage.recordDrainedPage(query, new SyncPosition("1", ImmutableList.of()), drainedPosition);
+    connector.setTagScanCoverage(tagScanCoverage);
+
+    connector.performTagUpdateSlowLoop();
+
+    verify(mockRefreshSyncStore).moveSyncPosition(query, drainedPosition);
+  }
+
+  @Test
+  void syncAllNewRecords_batched_queries() {
+    final TagQuery cases = new TagQuery("cases", "SELECT 1", "1", Collections.singletonList("skipped1"), true);
+    final TagQuery keywords = new TagQuery("keywords", "SELECT 2", "1", Collections.singletonList("skipped2"), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(cases, keywords));
+    when(mockDrainSyncStore.getSyncMarker(any())).thenReturn("10");
+
+    final LinkedList<TagSyncRecord> casesPage = new LinkedList<>();
+    casesPage.add(randomTagSyncRecord(fixedTime()));
+    when(mockDatabase.getTagsToSync(anyList()))
+        .thenReturn(List.of(casesPage, new LinkedList<>()))
+        .thenReturn(List.of(new LinkedList<>()));
+
+    connector.syncAllNewRecords(ImmutableList.of(cases, keywords), () -> true);
+
+    ArgumentCaptor<List<TagPage>> pagesCaptor = ArgumentCaptor.forClass(List.class);
+    verify(mockDatabase, times(2)).getTagsToSync(pagesCaptor.capture());
+    assertThat(pagesCaptor.getAllValues().get(0))
+        .as("Both queries are read in the first round trip")
+        .containsExactly(
+            new TagPage(cases, "10", ImmutableList.of("skipped1")),
+            new TagPage(keywords, "10", ImmutableList.of("skipped2")));
+    assertThat(pagesCaptor.getAllValues().get(1))
+        .as("Only the query that returned records is read again")
+        .containsExactly(new TagPage(cases, "10", ImmutableList.of("skipped1")));
+
+    verify(mockConnectApi, times(1)).upsertWiseTimeTags(casesPage);
+    verify(mockDrainSyncStore, times(1)).markSyncPosition(cases, casesPage);
+    verify(mockDatabase, never()).getTagsToSync(any(TagQuery.class), anyString(), anyList());
+  }
+
+  @Test
+  void performTagUpdate_batched_sync_failure_disables_batching() {
+    final TagQuery cases = new TagQuery("cases", "SELECT 1", "1", Collections.singletonList("skipped1"), true);
+    final TagQuery keywords = new TagQuery("keywords", "SELECT 2", "1", Collections.singletonList("skipped2"), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(cases, keywords));
+    when(mockDrainSyncStore.getSyncMarker(any())).thenReturn("10");
+    when(mockDatabase.getTagsToSync(anyList())).thenThrow(new RuntimeException("Multiple statements not allowed"));
+    when(mockDatabase.getTagsToSync(any(TagQuery.class), anyString(), anyList())).thenReturn(new LinkedList<>());
+
+    connector.setBatchTagQueries(true);
+    try {
+      connector.performTagUpdate();
+      connector.performTagUpdate();
+    } finally {
+      connector.setBatchTagQueries(false);
+    }
+
+    verify(mockDatabase, times(1)).getTagsToSync(anyList());
+    verify(mockDatabase, times(2)).getTagsToSync(eq(cases), anyString(), anyList());
+    verify(mockDatabase, times(2)).getTagsToSync(eq(keywords), anyString(), anyList());
+  }
+
+  @Test
+  void performTagUpdate_parallel_tag_queries() throws Exception {
+    final TagQuery cases = new TagQuery("cases", "SELECT 1", "1", Collections.singletonList("skipped1"), true);
+    final TagQuery keywords = new TagQuery("keywords", "SELECT 2", "1", Collections.singletonList("skipped2"), true);
+    when(mockTagQueryProvider.getQueries()).thenReturn(ImmutableList.of(cases, keywords));
+    when(mockDrainSyncStore.getSyncMarker(any())).thenReturn("10");
+
+    // The cases query only completes once the keywords query has started
+    final CountDownLatch keywordsStarted = new CountDownLatch(1);
+    when(mockDatabase.getTagsToSync(eq(cases), anyString(), anyList())).thenAnswer(invocation -> {
+      assertThat(keywordsStarted.await(10, TimeUnit.SECONDS))
+          .as("Tag queries are synced concurrently")
+          .isTrue();
+      return new LinkedList<>();
+    });
+    when(mockDatabase.getTagsToSync(eq(keywords), anyString(), anyList())).thenAnswer(invocation -> {
+      keywordsStarted.countDown();
+      return new LinkedList<>();
+    });
+
+    connector.setTagSyncParallelism(2);
+    try {
+      connector.performTagUpdate();
+    } finally {
+      connector.setTagSyncParallelism(1);
+    }
+
+    verify(mockDatabase).getTagsToSync(eq(cases), anyString(), anyList());
+    verify(mockDatabase).getTagsToSync(eq(keywords), anyString(), anyList());
+  }
+
+  private static TagSyncRecord record(final String id, final String syncMarker) {
+    return randomTagSyncRecord(syncMarker).setId(id).setTagName(id);
+  }
 }
@@ -59,6 +59,13 @@ class SqlConnectorTest {
     connector.init(new ConnectorModule(mockApiClient, mockConnectorStore));
   }
 
+  @Test
+  void init_warms_up_queries() {
+    connector.init(new ConnectorModule(mockApiClient, mockConnectorStore));
+    verify(mockDatabase).warmUpTagQueries(any());
+    verify(mockDatabase).warmUpActivityTypeQueries(any());
+  }
+
   @Test
   void connectorType_is_unchanged() {
     assertThat(connector.getConnectorType()).isEqualTo("wisetime-sql-connector");
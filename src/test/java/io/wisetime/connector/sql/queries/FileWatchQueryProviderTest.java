@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.queries;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileWatchQueryProviderTest {
+
+  @TempDir
+  Path tempDir;
+
+  private Path sqlPath;
+  private LineQueryProvider queryProvider;
+  @SuppressWarnings("unchecked")
+  private final QueryProvider.Listener<String> mockListener = mock(QueryProvider.Listener.class);
+
+  @BeforeEach
+  void setUp() throws Exception {
+    sqlPath = tempDir.resolve("queries.yaml");
+    Files.write(sqlPath, List.of("cases"));
+    queryProvider = new LineQueryProvider(sqlPath);
+    queryProvider.setListener(mockListener);
+  }
+
+  @AfterEach
+  void tearDown() {
+    queryProvider.stop();
+  }
+
+  @Test
+  void bursts_of_changes_are_reloaded_once() throws Exception {
+    Files.write(sqlPath, List.of("cases"));
+    queryProvider.scheduleReload();
+    Files.write(sqlPath, List.of("cases", "projects"));
+    queryProvider.scheduleReload();
+    queryProvider.scheduleReload();
+
+    verify(mockListener, timeout(2000)).onQueriesUpdated(List.of("cases", "projects"));
+    verify(mockListener, after(500).never()).onQueriesUpdated(List.of("cases"));
+    assertThat(queryProvider.getQueries()).containsExactly("cases", "projects");
+  }
+
+  @Test
+  void unchanged_file_is_not_reloaded() throws Exception {
+    Files.write(sqlPath, List.of("cases"));
+    queryProvider.scheduleReload();
+
+    verify(mockListener, after(500).never()).onQueriesUpdated(any());
+  }
+
+  @Test
+  void failed_reload_keeps_previous_queries() throws Exception {
+    Files.write(sqlPath, List.of("invalid"));
+    queryProvider.scheduleReload();
+
+    verify(mockListener, after(500).never()).onQueriesUpdated(any());
+    assertThat(queryProvider.getQueries()).containsExactly("cases");
+    assertThat(queryProvider.isHealthy()).isFalse();
+
+    Files.write(sqlPath, List.of("projects"));
+    queryProvider.scheduleReload();
+
+    verify(mockListener, timeout(2000)).onQueriesUpdated(List.of("projects"));
+    assertThat(queryProvider.isHealthy()).isTrue();
+  }
+
+  @Test
+  void deleted_file_has_no_queries() throws Exception {
+    Files.delete(sqlPath);
+    queryProvider.scheduleReload();
+
+    verify(mockListener, timeout(2000)).onQueriesUpdated(List.of());
+    assertThat(queryProvider.isHealthy()).isFalse();
+  }
+
+  @Test
+  void stopped_provider_does_not_reload() throws Exception {
+    queryProvider.stop();
+    reset(mockListener);
+    Files.write(sqlPath, List.of("projects"));
+    queryProvider.scheduleReload();
+
+    verify(mockListener, after(500).never()).onQueriesUpdated(any());
+    assertThat(queryProvider.isHealthy()).isFalse();
+  }
+
+  /**
+   * Reads one query per line, and fails on a line that says invalid.
+   */
+  private static class LineQueryProvider extends FileWatchQueryProvider<String> {
+
+    LineQueryProvider(final Path sqlPath) {
+      super(sqlPath, SqlFileWatcher.shared(), Duration.ofMillis(100));
+    }
+
+    @Override
+    List<String> parseSqlFile(final Path path) {
+      try {
+        final List<String> lines = Files.readAllLines(path);
+        if (lines.contains("invalid")) {
+          throw new IllegalArgumentException("Invalid query");
+        }
+        return lines;
+      } catch (IOException e) {
+        return List.of();
+      }
+    }
+  }
+}
@@ -26,6 +26,11 @@ import org.junit.jupiter.api.Test;
  */
 class TagQueryProviderIntegrationTest {
 
+  private static final String CHANGES_SQL = "SELECT id, sync_marker FROM CASE_CHANGES "
+      + "WHERE sync_marker > :previous_sync_marker AND (sync_marker > :previous_change_marker "
+      + "OR sync_marker = :previous_change_marker AND id > :previous_change_id) "
+      + "ORDER BY sync_marker, id LIMIT 500";
+
   @Test
   void getTagQueries_empty_if_file_not_found() {
     final TagQueryProvider tagQueryProvider = new TagQueryProvider(Paths.get("does_not_exist"));
@@ -85,6 +90,23 @@ class TagQueryProviderIntegrationTest {
     assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
   }
 
+  @Test
+  void getTagQueries_fail_non_unique_names() throws Exception {
+    final Path path = Files.createTempFile("tag_query_test_distinct_names", ".yaml");
+    Files.write(path, ImmutableList.of(
+        "name: cases",
+        "initialSyncMarker: 0",
+        "skippedIds: [0]",
+        "sql: SELECT 1",
+        "---",
+        "name: cases",
+        "initialSyncMarker: 0",
+        "skippedIds: [0]",
+        "sql: SELECT 2"
+    ));
+    assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
+  }
+
   @Test
   void getTagQueries_fail_empty_required_field() throws Exception {
     final Path path = Files.createTempFile("tag_query_test_query_names", ".yaml");
@@ -104,6 +126,74 @@ class TagQueryProviderIntegrationTest {
     assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
   }
 
+  @Test
+  void getTagQueries_fail_change_capture_without_changed_ids() throws Exception {
+    final Path path = Files.createTempFile("tag_query_test_change_capture", ".yaml");
+    Files.write(path, ImmutableList.of(
+        "name: cases",
+        "initialSyncMarker: 0",
+        "skippedIds: [0]",
+        "changesSql: " + CHANGES_SQL,
+        "sql: SELECT 1"
+    ));
+    assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
+  }
+
+  @Test
+  void getTagQueries_fail_change_capture_without_keyset_placeholders() throws Exception {
+    final Path path = Files.createTempFile("tag_query_test_change_capture", ".yaml");
+    Files.write(path, ImmutableList.of(
+        "name: cases",
+        "initialSyncMarker: 0",
+        "skippedIds: [0]",
+        "changesSql: SELECT id, sync_marker FROM CASE_CHANGES WHERE sync_marker > :previous_sync_marker",
+        "sql: SELECT * FROM CASES WHERE id IN (:changed_ids)"
+    ));
+    assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
+  }
+
+  @Test
+  void getTagQueries_fail_min_valid_change_marker_without_snapshot() throws Exception {
+    final Path path = Files.createTempFile("tag_query_test_change_capture", ".yaml");
+    Files.write(path, ImmutableList.of(
+        "name: cases",
+        "initialSyncMarker: 0",
+        "skippedIds: [0]",
+        "changesSql: " + CHANGES_SQL,
+        "minValidChangeMarkerSql: SELECT MIN_VERSION FROM CHANGE_RETENTION",
+        "sql: SELECT * FROM CASES WHERE id IN (:changed_ids)"
+    ));
+    assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
+  }
+
+  @Test
+  void getTagQueries_fail_snapshot_without_placeholders() throws Exception {
+    final Path path = Files.createTempFile("tag_query_test_change_capture", ".yaml");
+    Files.write(path, ImmutableList.of(
+        "name: cases",
+        "initialSyncMarker: 0",
+        "skippedIds: [0]",
+        "changesSql: " + CHANGES_SQL,
+        "snapshotSql: SELECT * FROM CASES",
+        "currentChangeMarkerSql: SELECT CURRENT_VERSION FROM CHANGE_RETENTION",
+        "sql: SELECT * FROM CASES WHERE id IN (:changed_ids)"
+    ));
+    assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
+  }
+
+  @Test
+  void getTagQueries_fail_merge_keywords_without_keyword_group_sql() throws Exception {
+    final Path path = Files.createTempFile("tag_query_test_merge_keywords", ".yaml");
+    Files.write(path, ImmutableList.of(
+        "name: cases",
+        "initialSyncMarker: 0",
+        "skippedIds: [0]",
+        "mergeKeywords: yes",
+        "sql: SELECT 1 WHERE 1 > :previous_sync_marker AND 1 NOT IN (:skipped_ids)"
+    ));
+    assertThrows(IllegalArgumentException.class, () -> new TagQueryProvider(path));
+  }
+
   /**
    * This test is slow. It takes tens of seconds to run.
    * It relies on filesystem notifications, which can take several seconds before firing.
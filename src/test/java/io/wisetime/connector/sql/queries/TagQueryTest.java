@@ -62,4 +62,26 @@ class TagQueryTest {
             query.getSql(), query.getInitialSyncMarker(), query.getSkippedIds(), query.getContinuousResync()
         ));
   }
-}
\ No newline at end of file
+
+  @Test void testStateKey_is_kept_when_sql_is_edited() {
+    final TagQuery query = randomTagQuery("cases");
+    final String stateKey = query.stateKey();
+
+    query.setSql(query.getSql() + " ");
+    query.setSkippedIds(ImmutableList.of("sentinel"));
+    assertThat(query.stateKey()).isEqualTo(stateKey);
+
+    query.setSyncVersion(2);
+    assertThat(query.stateKey())
+        .as("Bumping the sync version changes the state key")
+        .isNotEqualTo(stateKey);
+  }
+
+  @Test void testAllNamesUnique() {
+    final TagQuery query1 = randomTagQuery("cases");
+    final TagQuery query2 = randomTagQuery("cases");
+
+    assertThat(TagQuery.allNamesUnique(ImmutableList.of(query1, randomTagQuery("projects")))).isTrue();
+    assertThat(TagQuery.allNamesUnique(ImmutableList.of(query1, query2))).isFalse();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.wisetime.connector.sql.sync.ApiRateLimiter.Lane;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class ApiRateLimiterTest {
+
+  private final AtomicLong nanoTime = new AtomicLong();
+
+  @Test
+  void unlimited_never_waits() throws Exception {
+    final ApiRateLimiter limiter = ApiRateLimiter.unlimited();
+    for (int i = 0; i < 1000; i++) {
+      limiter.acquire(Lane.TAG_REFRESH);
+    }
+  }
+
+  @Test
+  void burst_is_available_immediately() throws Exception {
+    final ApiRateLimiter limiter = new ApiRateLimiter(1, 3, Map.of(), nanoTime::get);
+    limiter.acquire(Lane.TAG_DRAIN);
+    limiter.acquire(Lane.TAG_REFRESH);
+    limiter.acquire(Lane.ACTIVITY_TYPES);
+
+    final Thread waiter = Thread.ofVirtual().start(() -> acquire(limiter, Lane.TAG_DRAIN, new CopyOnWriteArrayList<>()));
+    awaitWaiting(limiter, Lane.TAG_DRAIN, 1);
+    assertThat(waiter.isAlive())
+        .as("Bucket is empty until time passes")
+        .isTrue();
+
+    nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    waiter.join(5000);
+    assertThat(waiter.isAlive()).isFalse();
+  }
+
+  @Test
+  void waiting_lanes_share_tokens_by_weight() throws Exception {
+    final ApiRateLimiter limiter = new ApiRateLimiter(1, 1, Map.of(Lane.TAG_DRAIN, 2, Lane.TAG_REFRESH, 1),
+        nanoTime::get);
+    // Empty the bucket
+    limiter.acquire(Lane.ACTIVITY_TYPES);
+    final List<Lane> granted = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Thread.ofVirtual().start(() -> acquire(limiter, Lane.TAG_DRAIN, granted));
+      Thread.ofVirtual().start(() -> acquire(limiter, Lane.TAG_REFRESH, granted));
+    }
+    awaitWaiting(limiter, Lane.TAG_DRAIN, 6);
+    awaitWaiting(limiter, Lane.TAG_REFRESH, 6);
+
+    for (int i = 1; i <= 12; i++) {
+      nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+      awaitGranted(granted, i);
+    }
+
+    assertThat(granted.subList(0, 6))
+        .as("While both lanes wait, the drain lane gets two tokens for every token of the refresh lane")
+        .containsExactlyInAnyOrder(Lane.TAG_DRAIN, Lane.TAG_DRAIN, Lane.TAG_DRAIN, Lane.TAG_DRAIN,
+            Lane.TAG_REFRESH, Lane.TAG_REFRESH);
+  }
+
+  @Test
+  void parseWeights() {
+    assertThat(ApiRateLimiter.parseWeights("tag_drain=10, TAG_REFRESH=2"))
+        .containsExactlyInAnyOrderEntriesOf(Map.of(Lane.TAG_DRAIN, 10, Lane.TAG_REFRESH, 2));
+    assertThatThrownBy(() -> ApiRateLimiter.parseWeights("TAG_DRAIN"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new ApiRateLimiter(1, 1, Map.of(Lane.TAG_REFRESH, 0), nanoTime::get))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private void acquire(final ApiRateLimiter limiter, final Lane lane, final List<Lane> granted) {
+    try {
+      limiter.acquire(lane);
+      granted.add(lane);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void awaitWaiting(final ApiRateLimiter limiter, final Lane lane, final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (limiter.waiting(lane) < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(limiter.waiting(lane)).isEqualTo(count);
+  }
+
+  private void awaitGranted(final List<Lane> granted, final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (granted.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(granted).hasSize(count);
+  }
+}
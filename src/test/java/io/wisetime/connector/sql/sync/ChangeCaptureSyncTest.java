@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
+import static io.wisetime.connector.sql.RandomEntities.randomTagSyncRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.datastore.ConnectorStore;
+import io.wisetime.connector.sql.queries.TagQuery;
+import io.wisetime.connector.sql.sync.ConnectedDatabase.TagChange;
+import io.wisetime.connector.sql.sync.TagSyncStore.SnapshotState;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChangeCaptureSyncTest {
+
+  private final ConnectedDatabase mockDatabase = mock(ConnectedDatabase.class);
+  private final List<List<TagSyncRecord>> upsertedBatches = new ArrayList<>();
+  private TagSyncStore syncStore;
+  private ChangeCaptureSync changeCaptureSync;
+  private TagQuery query;
+
+  @BeforeEach
+  void setUp() {
+    final Map<String, String> persisted = new HashMap<>();
+    final ConnectorStore connectorStore = mock(ConnectorStore.class);
+    when(connectorStore.getString(anyString()))
+        .thenAnswer(invocation -> Optional.ofNullable(persisted.get(invocation.<String>getArgument(0))));
+    doAnswer(invocation -> persisted.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(connectorStore).putString(anyString(), anyString());
+    syncStore = new TagSyncStore(connectorStore);
+    changeCaptureSync = new ChangeCaptureSync(mockDatabase);
+    query = randomTagQuery("cases", "0");
+    query.setSql("SELECT * FROM CASES WHERE IRN IN (:changed_ids)");
+    query.setChangesSql("SELECT TOP 500 IRN AS id, VERSION AS sync_marker FROM CHANGES "
+        + "WHERE VERSION > :previous_sync_marker AND (VERSION > :previous_change_marker "
+        + "OR VERSION = :previous_change_marker AND IRN > :previous_change_id) ORDER BY VERSION, IRN");
+  }
+
+  @Test
+  void run_disallowed() {
+    changeCaptureSync.run(query, syncStore, () -> false, upsertedBatches::add);
+    verifyNoInteractions(mockDatabase);
+  }
+
+  @Test
+  void run_looks_up_changed_ids_and_stores_latest_version() {
+    when(mockDatabase.getTagChanges(query.getChangesSql(), "0", new ChangeCursor("0", ""))).thenReturn(List.of(
+        new TagChange("P1", "10"), new TagChange("P2", "11"), new TagChange("P1", "12")));
+    final List<TagSyncRecord> tagSyncRecords = List.of(randomTagSyncRecord(), randomTagSyncRecord());
+    when(mockDatabase.getTagsById(query, List.of("P1", "P2"))).thenReturn(tagSyncRecords);
+
+    changeCaptureSync.run(query, syncStore, () -> true, upsertedBatches::add);
+
+    assertThat(upsertedBatches).containsExactly(tagSyncRecords);
+    // Changes at the last version of a page may continue on the next page
+    verify(mockDatabase).getTagChanges(query.getChangesSql(), "11", new ChangeCursor("12", "P1"));
+    assertThat(syncStore.getSyncMarker(query)).isEqualTo("12");
+    assertThat(syncStore.getChangeCursor(query)).contains(new ChangeCursor("12", "P1"));
+    verify(mockDatabase, never()).acknowledgeTagChanges(anyString(), anyString());
+  }
+
+  @Test
+  void run_pages_through_changes_of_one_version() {
+    query.setAcknowledgeSql("SELECT pg_replication_slot_advance('wisetime', :sync_marker::pg_lsn)");
+    when(mockDatabase.getTagChanges(query.getChangesSql(), "0", new ChangeCursor("0", ""))).thenReturn(List.of(
+        new TagChange("P1", "10"), new TagChange("P2", "10")));
+    when(mockDatabase.getTagChanges(query.getChangesSql(), "0", new ChangeCursor("10", "P2"))).thenReturn(List.of(
+        new TagChange("P3", "10")));
+
+    changeCaptureSync.run(query, syncStore, () -> true, upsertedBatches::add);
+
+    verify(mockDatabase).getTagsById(query, List.of("P1", "P2"));
+    verify(mockDatabase).getTagsById(query, List.of("P3"));
+    verify(mockDatabase).getTagChanges(query.getChangesSql(), "0", new ChangeCursor("10", "P3"));
+    assertThat(syncStore.getSyncMarker(query))
+        .as("The version is complete once no changes are left after the last synced change")
+        .isEqualTo("10");
+    verify(mockDatabase, times(1)).acknowledgeTagChanges(anyString(), anyString());
+    verify(mockDatabase).acknowledgeTagChanges(query.getAcknowledgeSql(), "10");
+  }
+
+  @Test
+  void run_acknowledges_synced_changes() {
+    query.setInitialSyncMarker("0/0");
+    query.setAcknowledgeSql("SELECT pg_replication_slot_advance('wisetime', :sync_marker::pg_lsn)");
+    when(mockDatabase.getTagChanges(query.getChangesSql(), "0/0", new ChangeCursor("0/0", ""))).thenReturn(List.of(
+        new TagChange("P1", "0/16B3748")));
+
+    changeCaptureSync.run(query, syncStore, () -> true, upsertedBatches::add);
+
+    assertThat(upsertedBatches)
+        .as("Deleted rows are not found")
+        .isEmpty();
+    assertThat(syncStore.getSyncMarker(query)).isEqualTo("0/16B3748");
+    verify(mockDatabase).acknowledgeTagChanges(query.getAcknowledgeSql(), "0/16B3748");
+  }
+
+  @Test
+  void run_changes_not_after_cursor() {
+    syncStore.markChangePosition(query, "9", new ChangeCursor("10", "P1"));
+    when(mockDatabase.getTagChanges(query.getChangesSql(), "9", new ChangeCursor("10", "P1")))
+        .thenReturn(List.of(new TagChange("P1", "10")));
+
+    assertThrows(RuntimeException.class,
+        () -> changeCaptureSync.run(query, syncStore, () -> true, upsertedBatches::add));
+    assertThat(syncStore.getSyncMarker(query)).isEqualTo("9");
+  }
+
+  @Test
+  void run_reads_snapshot_before_changes() {
+    query.setSnapshotSql("SELECT * FROM CASES WHERE VERSION >= :previous_sync_marker AND IRN NOT IN (:skipped_ids)");
+    query.setCurrentChangeMarkerSql("SELECT CHANGE_TRACKING_CURRENT_VERSION()");
+    when(mockDatabase.getChangeMarker(query.getCurrentChangeMarkerSql())).thenReturn("42");
+    final LinkedList<TagSyncRecord> snapshotPage = new LinkedList<>(List.of(randomTagSyncRecord("5")));
+    when(mockDatabase.getTagsToSync(eq(query.snapshotQuery()), anyString(), anyList()))
+        .thenReturn(snapshotPage)
+        .thenReturn(new LinkedList<>());
+
+    changeCaptureSync.run(query, syncStore, () -> true, upsertedBatches::add);
+
+    assertThat(upsertedBatches).containsExactly(snapshotPage);
+    verify(mockDatabase).getTagsToSync(eq(query.snapshotQuery()), eq("0"), anyList());
+    assertThat(syncStore.getSnapshotState(query)).isEqualTo(SnapshotState.COMPLETE);
+    // Changes are synced from when the snapshot started
+    verify(mockDatabase).getTagChanges(query.getChangesSql(), "42", new ChangeCursor("42", ""));
+  }
+
+  @Test
+  void run_interrupted_snapshot_is_continued() {
+    query.setSnapshotSql("SELECT * FROM CASES WHERE VERSION >= :previous_sync_marker AND IRN NOT IN (:skipped_ids)");
+    query.setCurrentChangeMarkerSql("SELECT CHANGE_TRACKING_CURRENT_VERSION()");
+    syncStore.startSnapshot(query, "42");
+
+    changeCaptureSync.run(query, syncStore, () -> true, upsertedBatches::add);
+
+    verify(mockDatabase, never()).getChangeMarker(anyString());
+    assertThat(syncStore.getSnapshotState(query)).isEqualTo(SnapshotState.COMPLETE);
+  }
+
+  @Test
+  void run_reads_snapshot_again_when_changes_are_no_longer_kept() {
+    query.setSnapshotSql("SELECT * FROM CASES WHERE VERSION >= :previous_sync_marker AND IRN NOT IN (:skipped_ids)");
+    query.setCurrentChangeMarkerSql("SELECT CHANGE_TRACKING_CURRENT_VERSION()");
+    query.setMinValidChangeMarkerSql("SELECT CHANGE_TRACKING_MIN_VALID_VERSION(OBJECT_ID('dbo.CASES'))");
+    syncStore.startSnapshot(query, "5");
+    syncStore.completeSnapshot(query);
+    syncStore.markChangePosition(query, "6", new ChangeCursor("7", "P1"));
+    when(mockDatabase.getChangeMarker(query.getMinValidChangeMarkerSql())).thenReturn("8");
+    when(mockDatabase.getChangeMarker(query.getCurrentChangeMarkerSql())).thenReturn("50");
+
+    changeCaptureSync.run(query, syncStore, () -> true, upsertedBatches::add);
+
+    verify(mockDatabase).getTagsToSync(eq(query.snapshotQuery()), eq("0"), anyList());
+    assertThat(syncStore.getSnapshotState(query)).isEqualTo(SnapshotState.COMPLETE);
+    assertThat(syncStore.getSyncMarker(query)).isEqualTo("50");
+    verify(mockDatabase).getTagChanges(query.getChangesSql(), "50", new ChangeCursor("50", ""));
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private final Clock mockClock = mock(Clock.class);
+  private final Instant now = Instant.now();
+  private final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, Duration.ofMinutes(1), mockClock);
+
+  @Test
+  void opens_after_consecutive_failures() {
+    when(mockClock.instant()).thenReturn(now);
+    circuitBreaker.recordFailure();
+    assertDoesNotThrow(circuitBreaker::checkClosed);
+
+    circuitBreaker.recordFailure();
+    assertThrows(RuntimeException.class, circuitBreaker::checkClosed);
+  }
+
+  @Test
+  void success_resets_failures() {
+    when(mockClock.instant()).thenReturn(now);
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordSuccess();
+    circuitBreaker.recordFailure();
+    assertDoesNotThrow(circuitBreaker::checkClosed);
+  }
+
+  @Test
+  void lets_calls_through_after_open_duration() {
+    when(mockClock.instant()).thenReturn(now);
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+
+    when(mockClock.instant()).thenReturn(now.plus(Duration.ofMinutes(1)));
+    assertDoesNotThrow(circuitBreaker::checkClosed);
+
+    // Opens again on the next failure
+    circuitBreaker.recordFailure();
+    assertThrows(RuntimeException.class, circuitBreaker::checkClosed);
+  }
+}
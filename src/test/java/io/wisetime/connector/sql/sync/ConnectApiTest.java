@@ -11,10 +11,13 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -25,19 +28,29 @@ import com.google.gson.reflect.TypeToken;
 import io.wisetime.connector.api_client.ApiClient;
 import io.wisetime.connector.config.RuntimeConfig;
 import io.wisetime.connector.sql.ConnectorLauncher.SqlConnectorConfigKey;
+import io.wisetime.connector.sql.sync.ApiRateLimiter.Lane;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
 import io.wisetime.generated.connect.ActivityType;
 import io.wisetime.generated.connect.SyncActivityTypesRequest;
 import io.wisetime.generated.connect.SyncSession;
 import io.wisetime.generated.connect.UpsertTagRequest;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.apache.http.client.HttpResponseException;
 import org.junit.jupiter.api.AfterEach;
-import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 
 /**
@@ -51,10 +64,12 @@ class ConnectApiTest {
   private static ConnectApi connectApi;
   private static final Gson gson = new Gson();
 
-  @BeforeAll
-  static void setUp() {
+  @BeforeEach
+  void setUp() {
     RuntimeConfig.setProperty(SqlConnectorConfigKey.TAG_UPSERT_PATH, "/Connector/");
-    connectApi = new ConnectApi(mockApiClient);
+    // Retry without waiting, each test starts with closed circuit breakers
+    connectApi = new ConnectApi(mockApiClient, new RetryPolicy(3, Duration.ZERO, Duration.ZERO, duration -> {
+    }, Clock.systemUTC()));
   }
 
   @AfterEach
@@ -138,6 +153,31 @@ class ConnectApiTest {
         .isNull();
   }
 
+  @Test
+  void upsertWiseTimeTags_skips_tags_with_invalid_metadata() throws Exception {
+    final TagSyncRecord valid = randomTagSyncRecord();
+    final TagSyncRecord invalid = randomTagSyncRecord().setTagMetadata("{\"Country\": ");
+
+    connectApi.upsertWiseTimeTags(List.of(valid, invalid));
+
+    ArgumentCaptor<List<UpsertTagRequest>> argument = ArgumentCaptor.forClass(List.class);
+    verify(mockApiClient).tagUpsertBatch(argument.capture());
+    assertThat(argument.getValue())
+        .extracting(UpsertTagRequest::getName)
+        .containsExactly(valid.getTagName());
+  }
+
+  @Test
+  void upsertWiseTimeTags_merged_keywords() throws Exception {
+    final TagSyncRecord record = randomTagSyncRecord().setAdditionalKeywords(List.of("FID1", "Alpha"));
+
+    connectApi.upsertWiseTimeTags(List.of(record));
+
+    ArgumentCaptor<List<UpsertTagRequest>> argument = ArgumentCaptor.forClass(List.class);
+    verify(mockApiClient).tagUpsertBatch(argument.capture());
+    assertThat(argument.getValue().get(0).getAdditionalKeywords()).containsExactly("FID1", "Alpha");
+  }
+
   @Test
   void upsertWiseTimeTags_should_throw_runtime_exception() throws Exception {
     TagSyncRecord record = randomTagSyncRecord();
@@ -145,6 +185,208 @@ class ConnectApiTest {
     assertThrows(RuntimeException.class, () -> connectApi.upsertWiseTimeTags(List.of(record)));
   }
 
+  @Test
+  void upsertWiseTimeTags_skips_unchanged_tags(@TempDir Path tempDir) throws Exception {
+    final ConnectApi hashIndexConnectApi = new ConnectApi(mockApiClient,
+        new RetryPolicy(1, Duration.ZERO, Duration.ZERO, duration -> {
+        }, Clock.systemUTC()),
+        new TagUpsertHashIndex(tempDir.resolve("hashes.bin"), 0));
+    final TagSyncRecord unchanged = randomTagSyncRecord();
+    final TagSyncRecord changed = randomTagSyncRecord();
+    hashIndexConnectApi.upsertWiseTimeTags(List.of(unchanged, changed));
+
+    changed.setTagDescription(changed.getTagDescription() + " (updated)");
+    hashIndexConnectApi.upsertWiseTimeTags(List.of(unchanged, changed));
+
+    ArgumentCaptor<List<UpsertTagRequest>> argument = ArgumentCaptor.forClass(List.class);
+    verify(mockApiClient, times(2)).tagUpsertBatch(argument.capture());
+    assertThat(argument.getAllValues().get(1))
+        .as("Only the changed tag is upserted again")
+        .extracting(UpsertTagRequest::getName)
+        .containsExactly(changed.getTagName());
+  }
+
+  @Test
+  void upsertWiseTimeTags_does_not_remember_failed_upserts(@TempDir Path tempDir) throws Exception {
+    final ConnectApi hashIndexConnectApi = new ConnectApi(mockApiClient,
+        new RetryPolicy(1, Duration.ZERO, Duration.ZERO, duration -> {
+        }, Clock.systemUTC()),
+        new TagUpsertHashIndex(tempDir.resolve("hashes.bin"), 0));
+    final TagSyncRecord record = randomTagSyncRecord();
+    doThrow(new IOException()).when(mockApiClient).tagUpsertBatch(anyList());
+    assertThrows(RuntimeException.class, () -> hashIndexConnectApi.upsertWiseTimeTags(List.of(record)));
+
+    reset(mockApiClient);
+    hashIndexConnectApi.upsertWiseTimeTags(List.of(record));
+
+    verify(mockApiClient).tagUpsertBatch(anyList());
+  }
+
+  @Test
+  void upsertWiseTimeTags_posts_from_outbox(@TempDir Path tempDir) throws Exception {
+    doThrow(new IOException("API unavailable")).when(mockApiClient).tagUpsertBatch(anyList());
+    final ConnectApi outboxConnectApi = new ConnectApi(mockApiClient,
+        new RetryPolicy(1, Duration.ZERO, Duration.ZERO, duration -> {
+        }, Clock.systemUTC()),
+        TagUpsertHashIndex.disabled(),
+        new TagOutbox(tempDir.resolve("outbox.log"), 64 * 1024),
+        ApiRateLimiter.unlimited());
+    final TagSyncRecord record = randomTagSyncRecord();
+
+    // Journaled even though the API is unavailable
+    outboxConnectApi.upsertWiseTimeTags(List.of(record), Lane.TAG_REFRESH);
+    verify(mockApiClient, never()).tagUpsertBatch(anyList());
+
+    outboxConnectApi.start();
+    verify(mockApiClient, timeout(5000)).tagUpsertBatch(anyList());
+    outboxConnectApi.stop();
+    final TagOutbox reopened = new TagOutbox(tempDir.resolve("outbox.log"), 64 * 1024);
+    assertThat(reopened.next(Duration.ZERO))
+        .as("The batch is posted again after a restart")
+        .hasValueSatisfying(batch -> {
+          assertThat(batch.getLane()).isEqualTo(Lane.TAG_REFRESH);
+          assertThat(batch.getRequests())
+              .extracting(UpsertTagRequest::getName)
+              .containsExactly(record.getTagName());
+        });
+  }
+
+  @Test
+  void isHealthy_is_false_when_outbox_backs_up(@TempDir Path tempDir) {
+    final ConnectApi outboxConnectApi = new ConnectApi(mockApiClient,
+        new RetryPolicy(1, Duration.ZERO, Duration.ZERO, duration -> {
+        }, Clock.systemUTC()),
+        TagUpsertHashIndex.disabled(),
+        new TagOutbox(tempDir.resolve("outbox.log"), 4 * 1024),
+        ApiRateLimiter.unlimited());
+    assertThat(outboxConnectApi.isHealthy()).isTrue();
+
+    // Not started, so nothing is posted from the outbox
+    outboxConnectApi.upsertWiseTimeTags(List.of(randomTagSyncRecord().setTagDescription("x".repeat(3200))));
+
+    assertThat(outboxConnectApi.isHealthy()).isFalse();
+    outboxConnectApi.stop();
+  }
+
+  @Test
+  void upsertWiseTimeTags_splits_large_pages() throws Exception {
+    final List<TagSyncRecord> tagSyncRecords = IntStream.range(0, 6)
+        .mapToObj(i -> randomTagSyncRecord().setTagDescription("x".repeat(300_000)))
+        .collect(Collectors.toList());
+
+    connectApi.upsertWiseTimeTags(tagSyncRecords);
+
+    ArgumentCaptor<List<UpsertTagRequest>> argument = ArgumentCaptor.forClass(List.class);
+    verify(mockApiClient, atLeast(2)).tagUpsertBatch(argument.capture());
+    assertThat(argument.getAllValues())
+        .as("No chunk exceeds the default size of 1 MiB")
+        .allSatisfy(chunk -> assertThat(gson.toJson(chunk).length()).isLessThan(1024 * 1024));
+    assertThat(argument.getAllValues().stream().flatMap(List::stream).map(UpsertTagRequest::getName))
+        .as("Every tag is upserted")
+        .containsExactlyInAnyOrderElementsOf(
+            tagSyncRecords.stream().map(TagSyncRecord::getTagName).collect(Collectors.toList()));
+  }
+
+  @Test
+  void chunk_bounded_by_count_and_bytes() {
+    final UpsertTagRequest small1 = new UpsertTagRequest().name("small1");
+    final UpsertTagRequest small2 = new UpsertTagRequest().name("small2");
+    final UpsertTagRequest small3 = new UpsertTagRequest().name("small3");
+    final UpsertTagRequest large = new UpsertTagRequest().name("large").description("x".repeat(1000));
+
+    assertThat(connectApi.chunk(List.of(small1, small2, small3), 2, 1000))
+        .containsExactly(List.of(small1, small2), List.of(small3));
+    assertThat(connectApi.chunk(List.of(small1, large, small2), 10, 1000))
+        .as("A request larger than the byte limit is sent on its own")
+        .containsExactly(List.of(small1), List.of(large), List.of(small2));
+  }
+
+  @Test
+  void upsertWiseTimeTags_fails_if_any_chunk_fails() throws Exception {
+    final List<TagSyncRecord> tagSyncRecords = IntStream.range(0, 4)
+        .mapToObj(i -> randomTagSyncRecord().setTagDescription("x".repeat(400_000)))
+        .collect(Collectors.toList());
+    // Only the chunk with the last tag fails
+    final String failingTagName = tagSyncRecords.get(3).getTagName();
+    doAnswer(invocation -> {
+      final List<UpsertTagRequest> chunk = invocation.getArgument(0);
+      if (chunk.stream().anyMatch(request -> request.getName().equals(failingTagName))) {
+        throw new IOException("connection reset");
+      }
+      return null;
+    }).when(mockApiClient).tagUpsertBatch(anyList());
+
+    assertThrows(RuntimeException.class, () -> connectApi.upsertWiseTimeTags(tagSyncRecords));
+  }
+
+  @Test
+  void upsertWiseTimeTags_retries_server_errors() throws Exception {
+    final AtomicInteger upserts = new AtomicInteger();
+    doAnswer(invocation -> {
+      if (upserts.incrementAndGet() == 1) {
+        throw new HttpResponseException(502, "bad gateway");
+      }
+      return null;
+    }).when(mockApiClient).tagUpsertBatch(anyList());
+
+    connectApi.upsertWiseTimeTags(List.of(randomTagSyncRecord()));
+
+    verify(mockApiClient, times(2)).tagUpsertBatch(anyList());
+  }
+
+  @Test
+  void upsertWiseTimeTags_does_not_retry_client_errors() throws Exception {
+    doThrow(new HttpResponseException(400, "bad request")).when(mockApiClient).tagUpsertBatch(anyList());
+
+    // The rejected tag is left out
+    connectApi.upsertWiseTimeTags(List.of(randomTagSyncRecord()));
+    verify(mockApiClient, times(1)).tagUpsertBatch(anyList());
+  }
+
+  @Test
+  void upsertWiseTimeTags_isolates_rejected_tags(@TempDir Path tempDir) throws Exception {
+    final Path deadLetterFile = tempDir.resolve("dead_letters.jsonl");
+    final ConnectApi deadLetterConnectApi = new ConnectApi(mockApiClient,
+        new RetryPolicy(1, Duration.ZERO, Duration.ZERO, duration -> {
+        }, Clock.systemUTC()),
+        TagUpsertHashIndex.disabled(), null, ApiRateLimiter.unlimited(), new TagDeadLetterLog(deadLetterFile, 1024));
+    final List<TagSyncRecord> tagSyncRecords = IntStream.range(0, 5)
+        .mapToObj(i -> randomTagSyncRecord())
+        .collect(Collectors.toList());
+    final String rejectedTagName = tagSyncRecords.get(2).getTagName();
+    final List<String> upsertedTagNames = new ArrayList<>();
+    doAnswer(invocation -> {
+      final List<UpsertTagRequest> chunk = invocation.getArgument(0);
+      if (chunk.stream().anyMatch(request -> request.getName().equals(rejectedTagName))) {
+        throw new HttpResponseException(400, "bad request");
+      }
+      chunk.forEach(request -> upsertedTagNames.add(request.getName()));
+      return null;
+    }).when(mockApiClient).tagUpsertBatch(anyList());
+
+    deadLetterConnectApi.upsertWiseTimeTags(tagSyncRecords);
+
+    assertThat(upsertedTagNames)
+        .as("All tags but the rejected one are upserted")
+        .containsExactlyElementsOf(tagSyncRecords.stream()
+            .map(TagSyncRecord::getTagName)
+            .filter(tagName -> !tagName.equals(rejectedTagName))
+            .collect(Collectors.toList()));
+    assertThat(Files.readAllLines(deadLetterFile))
+        .hasSize(1)
+        .allMatch(line -> line.contains(rejectedTagName) && line.contains("bad request"));
+  }
+
+  @Test
+  void isRejection() {
+    assertThat(ConnectApi.isRejection(new HttpResponseException(400, "bad request"))).isTrue();
+    assertThat(ConnectApi.isRejection(new HttpResponseException(413, "too large"))).isTrue();
+    assertThat(ConnectApi.isRejection(new HttpResponseException(401, "unauthorized"))).isFalse();
+    assertThat(ConnectApi.isRejection(new HttpResponseException(429, "too many requests"))).isFalse();
+    assertThat(ConnectApi.isRejection(new HttpResponseException(503, "unavailable"))).isFalse();
+    assertThat(ConnectApi.isRejection(new IOException("connection reset"))).isFalse();
+  }
+
   @Test
   void startSyncSession() throws Exception {
     final String syncSessionId = faker.numerify("sync-session-###");
@@ -7,13 +7,19 @@ package io.wisetime.connector.sql.sync;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import com.github.javafaker.Faker;
 import io.vavr.control.Try;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import org.codejargon.fluentjdbc.api.query.Mapper;
 import org.junit.jupiter.api.Test;
 
 public class ConnectedDatabaseTest {
@@ -54,6 +60,78 @@ public class ConnectedDatabaseTest {
     assertThat(tagSyncRecord.getAdditionalKeyword()).isEqualTo(dataMap.get("additional_keyword"));
   }
 
+  @Test
+  void toTagSyncRecord_knownSelectedColumns() throws SQLException {
+    final Map<String, String> dataMap = getTestDataMap();
+    dataMap.remove("tag_metadata");
+    dataMap.remove("url");
+    final ResultSet resultSet = createMockResultSet(dataMap);
+
+    final TagSyncRecord tagSyncRecord = TagSyncRecord.fluentJdbcMapper(dataMap.keySet()).map(resultSet);
+
+    assertThat(tagSyncRecord.getUrl()).isNull();
+    assertThat(tagSyncRecord.getTagMetadata()).isEqualTo("{}");
+    assertThat(tagSyncRecord.getId()).isEqualTo(dataMap.get("id"));
+    assertThat(tagSyncRecord.getSyncMarker()).isEqualTo(dataMap.get("sync_marker"));
+    // Columns that are known not to be selected are not looked up
+    verify(resultSet, never()).getString("url");
+    verify(resultSet, never()).getString("tag_metadata");
+  }
+
+  @Test
+  void toTagSyncRecord_metadataColumns() throws SQLException {
+    final Map<String, String> dataMap = getTestDataMap();
+    dataMap.put("tag_metadata", "{\"type\": \"Patent\"}");
+    dataMap.put("META_Country", "Australia");
+    dataMap.put("meta_location", null);
+    final ResultSet resultSet = createMockResultSet(dataMap);
+    final ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(3);
+    when(metaData.getColumnLabel(1)).thenReturn("id");
+    when(metaData.getColumnLabel(2)).thenReturn("META_Country");
+    when(metaData.getColumnLabel(3)).thenReturn("meta_location");
+    when(resultSet.getString(2)).thenReturn("Australia");
+
+    final Mapper<TagSyncRecord> mapper = TagSyncRecord.fluentJdbcMapper();
+    final TagSyncRecord tagSyncRecord = mapper.map(resultSet);
+    mapper.map(resultSet);
+
+    assertThat(tagSyncRecord.getTagMetadata()).isEqualTo("{\"type\": \"Patent\"}");
+    assertThat(tagSyncRecord.getMetadataColumns())
+        .as("Null values are left out")
+        .containsExactly(Map.entry("Country", "Australia"));
+    verify(resultSet, times(1).description("Metadata columns are looked up once per result set")).getMetaData();
+  }
+
+  @Test
+  void toTagSyncRecord_metadataColumns_not_selected() throws SQLException {
+    final Map<String, String> dataMap = getTestDataMap();
+    final ResultSet resultSet = createMockResultSet(dataMap);
+
+    final TagSyncRecord tagSyncRecord = TagSyncRecord.fluentJdbcMapper(dataMap.keySet()).map(resultSet);
+
+    assertThat(tagSyncRecord.getTagMetadata()).isEqualTo(dataMap.get("tag_metadata"));
+    verify(resultSet, never()).getMetaData();
+  }
+
+  @Test
+  void toTagSyncRecord_templates() throws SQLException {
+    final Map<String, String> dataMap = getTestDataMap();
+    dataMap.remove("additional_keyword");
+    dataMap.put("prj_id", "12/34");
+    final ResultSet resultSet = createMockResultSet(dataMap);
+
+    final TagSyncRecord tagSyncRecord = TagSyncRecord.fluentJdbcMapper(dataMap.keySet(),
+        TagRowTemplate.parseUrl("https://projects.example.com/{prj_id}"), TagRowTemplate.parse("FID{prj_id}"))
+        .map(resultSet);
+
+    assertThat(tagSyncRecord.getUrl()).isEqualTo("https://projects.example.com/12%2F34");
+    assertThat(tagSyncRecord.getAdditionalKeyword()).isEqualTo("FID12/34");
+    verify(resultSet, never()).getString("url");
+    verify(resultSet, never()).getString("additional_keyword");
+  }
+
   private Map<String, String> getTestDataMap() {
     Map<String, String> dataMap = Map.of("id", FAKER.idNumber().valid(),
         "tag_name", FAKER.team().name(),
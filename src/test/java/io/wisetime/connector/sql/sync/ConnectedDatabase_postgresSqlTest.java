@@ -10,6 +10,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import io.wisetime.connector.sql.queries.ActivityTypeQuery;
+import io.wisetime.connector.sql.queries.TagQuery;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
 import io.wisetime.test_docker.ContainerRuntimeSpec;
 import io.wisetime.test_docker.DockerLauncher;
@@ -57,7 +58,7 @@ class ConnectedDatabase_postgresSqlTest {
   @Test
   void getTagsToSync_invalid_sql() {
     assertThrows(IllegalArgumentException.class, () ->
-        database.getTagsToSync("SELECT 1", "", ImmutableList.of())
+        database.getTagsToSync(tagQuery("SELECT 1"), "", ImmutableList.of())
     );
   }
 
@@ -71,7 +72,7 @@ class ConnectedDatabase_postgresSqlTest {
   @Test
   void getTagsToSync_testCase() {
     final List<TagSyncRecord> tagSyncRecords = database.getTagsToSync(
-        "SELECT IRN as id, "
+        tagQuery("SELECT IRN as id, "
             + " IRN AS tag_name, "
             + " IRN AS additional_keyword, "
             + " TITLE AS tag_description, "
@@ -82,7 +83,7 @@ class ConnectedDatabase_postgresSqlTest {
             + " WHERE DATE_UPDATED >= TO_DATE(:previous_sync_marker, 'YYYY-MM-DD') "
             + " AND IRN NOT IN (:skipped_ids) "
             + " ORDER BY DATE_UPDATED ASC "
-            + " LIMIT 50; ",
+            + " LIMIT 50; "),
         "2019-07-21",
         ImmutableList.of("P0436021")
     );
@@ -106,7 +107,7 @@ class ConnectedDatabase_postgresSqlTest {
   @Test
   void getTagsToSync_testProjects() {
     final List<TagSyncRecord> tagSyncRecords = database.getTagsToSync(
-        "SELECT PRJ_ID AS id, "
+        tagQuery("SELECT PRJ_ID AS id, "
             + "  IRN AS tag_name, "
             + "  'FID' || PRJ_ID AS additional_keyword, "
             + "  DESCRIPTION AS tag_description, "
@@ -115,7 +116,7 @@ class ConnectedDatabase_postgresSqlTest {
             + " WHERE PRJ_ID >= :previous_sync_marker::int "
             + " AND PRJ_ID NOT IN (:skipped_ids::int) "
             + " ORDER BY PRJ_ID ASC "
-            + " LIMIT 50; ",
+            + " LIMIT 50; "),
 
         "80001",
         ImmutableList.of("80001")
@@ -137,7 +138,7 @@ class ConnectedDatabase_postgresSqlTest {
   @Test
   void getTagsToSync_testProjectsWithTagMetadata() {
     final List<TagSyncRecord> tagSyncRecords = database.getTagsToSync(
-        "SELECT TEST_CASES.IRN as id, "
+        tagQuery("SELECT TEST_CASES.IRN as id, "
             + "  TEST_CASES.IRN AS tag_name, "
             + "  TEST_CASES.IRN AS additional_keyword, "
             + "  TITLE AS tag_description, "
@@ -153,7 +154,7 @@ class ConnectedDatabase_postgresSqlTest {
             + " WHERE DATE_UPDATED >= TO_DATE(:previous_sync_marker, 'YYYY-MM-DD') "
             + " AND TEST_CASES.IRN NOT IN (:skipped_ids) "
             + " ORDER BY DATE_UPDATED ASC "
-            + " LIMIT 50",
+            + " LIMIT 50"),
         "2019-07-21",
         ImmutableList.of("P0436021")
     );
@@ -174,6 +175,39 @@ class ConnectedDatabase_postgresSqlTest {
         .containsExactly(result);
   }
 
+  @Test
+  void getTagChanges_and_getTagsById() {
+    final List<ConnectedDatabase.TagChange> changes = database.getTagChanges(
+        "SELECT IRN AS id, CHANGE_VERSION AS sync_marker "
+            + " FROM TEST_CASE_CHANGES "
+            + " WHERE CHANGE_VERSION > :previous_sync_marker::bigint "
+            + " AND (CHANGE_VERSION > :previous_change_marker::bigint "
+            + " OR (CHANGE_VERSION = :previous_change_marker::bigint AND IRN > :previous_change_id)) "
+            + " ORDER BY CHANGE_VERSION ASC, IRN ASC",
+        "1",
+        new ChangeCursor("1", "")
+    );
+    assertThat(changes)
+        .as("Only changes after the sync marker are read")
+        .containsExactly(
+            new ConnectedDatabase.TagChange("P0100973", "2"),
+            new ConnectedDatabase.TagChange("P0436021", "3"));
+
+    final List<TagSyncRecord> tagSyncRecords = database.getTagsById(
+        tagQuery("SELECT IRN as id, "
+            + " IRN AS tag_name, "
+            + " IRN AS additional_keyword, "
+            + " TITLE AS tag_description, "
+            + " DATE_UPDATED AS sync_marker "
+            + " FROM TEST_CASES "
+            + " WHERE IRN IN (:changed_ids)"),
+        ImmutableList.of("P0100973", "P0436021")
+    );
+    assertThat(tagSyncRecords)
+        .extracting(TagSyncRecord::getId)
+        .containsExactlyInAnyOrder("P0100973", "P0436021");
+  }
+
   @Test
   void getActivityTypes() {
     final ActivityTypeQuery query = new ActivityTypeQuery();
@@ -220,4 +254,8 @@ class ConnectedDatabase_postgresSqlTest {
             new ActivityTypeRecord("23456", "Non-Billable", "Non-Billable description", "23456"),
             new ActivityTypeRecord("34567", "Default", "Default description", "34567"));
   }
+
+  private static TagQuery tagQuery(final String sql) {
+    return new TagQuery("test", sql, "", List.of("0"), false);
+  }
 }
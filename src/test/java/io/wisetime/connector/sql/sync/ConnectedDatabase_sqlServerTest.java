@@ -11,9 +11,12 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import io.wisetime.connector.sql.PlainSqlServer;
 import io.wisetime.connector.sql.queries.ActivityTypeQuery;
+import io.wisetime.connector.sql.queries.TagQuery;
+import io.wisetime.connector.sql.sync.ConnectedDatabase.TagPage;
 import io.wisetime.connector.sql.sync.activity_type.ActivityTypeRecord;
 import io.wisetime.test_docker.ContainerRuntimeSpec;
 import io.wisetime.test_docker.DockerLauncher;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.flywaydb.core.Flyway;
@@ -52,7 +55,7 @@ class ConnectedDatabase_sqlServerTest {
   @Test
   void getTagsToSync_invalid_sql() {
     assertThrows(IllegalArgumentException.class, () ->
-        database.getTagsToSync("SELECT 1", "", List.of())
+        database.getTagsToSync(tagQuery("SELECT 1"), "", List.of())
     );
   }
 
@@ -66,7 +69,7 @@ class ConnectedDatabase_sqlServerTest {
   @Test
   void getTagsToSync_testCase() {
     final List<TagSyncRecord> tagSyncRecords = database.getTagsToSync(
-        "SELECT TOP 50 "
+        tagQuery("SELECT TOP 50 "
             + "[IRN] as [id], "
             + "[IRN] AS [tag_name], "
             + "[IRN] AS [additional_keyword], "
@@ -77,7 +80,7 @@ class ConnectedDatabase_sqlServerTest {
             + "FROM [dbo].[TEST_CASES] "
             + "WHERE [DATE_UPDATED] >= :previous_sync_marker "
             + "AND [IRN] NOT IN (:skipped_ids) "
-            + "ORDER BY [DATE_UPDATED] ASC;",
+            + "ORDER BY [DATE_UPDATED] ASC;"),
 
         "2019-07-21",
         List.of("P0436021")
@@ -101,7 +104,7 @@ class ConnectedDatabase_sqlServerTest {
   @Test
   void getTagsToSync_testProjects() {
     final List<TagSyncRecord> tagSyncRecords = database.getTagsToSync(
-        "SELECT TOP 50"
+        tagQuery("SELECT TOP 50"
             + "  [PRJ_ID] AS [id],"
             + "  [IRN] AS [tag_name],"
             + "  CONCAT('FID', [PRJ_ID]) AS [additional_keyword],"
@@ -110,7 +113,7 @@ class ConnectedDatabase_sqlServerTest {
             + "  FROM [dbo].[TEST_PROJECTS]"
             + "  WHERE [PRJ_ID] >= :previous_sync_marker"
             + "  AND [PRJ_ID] NOT IN (:skipped_ids)"
-            + "  ORDER BY [PRJ_ID] ASC;",
+            + "  ORDER BY [PRJ_ID] ASC;"),
 
         "80001",
         List.of("80001")
@@ -132,7 +135,7 @@ class ConnectedDatabase_sqlServerTest {
   @Test
   void getTagsToSync_testProjectsWithTagMetadata() {
     final List<TagSyncRecord> tagSyncRecords = database.getTagsToSync(
-        "SELECT TOP 50 "
+        tagQuery("SELECT TOP 50 "
             + "[IRN] as [id], "
             + "[IRN] AS [tag_name], "
             + "[IRN] AS [additional_keyword], "
@@ -150,7 +153,7 @@ class ConnectedDatabase_sqlServerTest {
             + "FROM [dbo].[TEST_CASES] "
             + "WHERE [DATE_UPDATED] >= :previous_sync_marker "
             + "AND [IRN] NOT IN (:skipped_ids) "
-            + "ORDER BY [DATE_UPDATED] ASC;",
+            + "ORDER BY [DATE_UPDATED] ASC;"),
         "2019-07-21",
         List.of("P0436021")
     );
@@ -171,6 +174,35 @@ class ConnectedDatabase_sqlServerTest {
         .containsExactly(result);
   }
 
+  @Test
+  void getTagsToSync_batched_queries() {
+    final String projectsSql = "SELECT TOP 50"
+        + "  [PRJ_ID] AS [id],"
+        + "  [IRN] AS [tag_name],"
+        + "  CONCAT('FID', [PRJ_ID]) AS [additional_keyword],"
+        + "  [DESCRIPTION] AS [tag_description],"
+        + "  [PRJ_ID] AS [sync_marker]"
+        + "  FROM [dbo].[TEST_PROJECTS]"
+        + "  WHERE [PRJ_ID] >= :previous_sync_marker"
+        + "  AND [PRJ_ID] NOT IN (:skipped_ids)"
+        + "  ORDER BY [PRJ_ID] ASC;";
+
+    final List<LinkedList<TagSyncRecord>> pages = database.getTagsToSync(List.of(
+        new TagPage(tagQuery(projectsSql), "80001", List.of("80001")),
+        new TagPage(tagQuery(projectsSql), "90000", List.of("0")),
+        new TagPage(tagQuery(projectsSql), "80001", List.of("80001", "80002"))
+    ));
+
+    assertThat(pages)
+        .as("One page per query, in order")
+        .hasSize(3);
+    assertThat(pages.get(0))
+        .extracting(TagSyncRecord::getId)
+        .containsExactly("80002");
+    assertThat(pages.get(1)).isEmpty();
+    assertThat(pages.get(2)).isEmpty();
+  }
+
   @Test
   void getActivityTypes() {
     final ActivityTypeQuery query = new ActivityTypeQuery();
@@ -217,4 +249,8 @@ class ConnectedDatabase_sqlServerTest {
             new ActivityTypeRecord("23456", "Non-Billable", "Non-Billable description", "23456"),
             new ActivityTypeRecord("34567", "Default", "Default description", "34567"));
   }
+
+  private static TagQuery tagQuery(final String sql) {
+    return new TagQuery("test", sql, "", List.of("0"), false);
+  }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.wisetime.connector.sql.sync.DatabaseGovernor.HeavyWorkWindow;
+import java.time.Clock;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class DatabaseGovernorTest {
+
+  @Test
+  void heavyWorkWindow_spanning_midnight() {
+    final HeavyWorkWindow window = HeavyWorkWindow.parse("22:00-06:00");
+    assertThat(window.contains(LocalTime.of(23, 30))).isTrue();
+    assertThat(window.contains(LocalTime.of(2, 0))).isTrue();
+    assertThat(window.contains(LocalTime.of(6, 0))).isFalse();
+    assertThat(window.contains(LocalTime.of(12, 0))).isFalse();
+  }
+
+  @Test
+  void heavyWorkWindow_same_day() {
+    final HeavyWorkWindow window = HeavyWorkWindow.parse("01:00 - 05:30");
+    assertThat(window.contains(LocalTime.of(1, 0))).isTrue();
+    assertThat(window.contains(LocalTime.of(5, 29))).isTrue();
+    assertThat(window.contains(LocalTime.of(5, 30))).isFalse();
+    assertThat(window.contains(LocalTime.of(0, 59))).isFalse();
+  }
+
+  @Test
+  void heavyWorkWindow_invalid() {
+    assertThrows(IllegalArgumentException.class, () -> HeavyWorkWindow.parse("22:00"));
+  }
+
+  @Test
+  void allowsHeavyWork_counts_deferred_work() {
+    final Clock noon = Clock.fixed(ZonedDateTime.of(2026, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+    final DatabaseGovernor governor = new DatabaseGovernor(0, 0, HeavyWorkWindow.parse("22:00-06:00"), noon);
+
+    assertThat(governor.allowsHeavyWork()).isFalse();
+    assertThat(governor.getThrottleStats().getDeferredHeavyWork()).isEqualTo(1);
+
+    assertThat(DatabaseGovernor.unlimited().allowsHeavyWork())
+        .as("Heavy work is always allowed without a configured window")
+        .isTrue();
+  }
+
+  @Test
+  void govern_caps_concurrent_statements() throws Exception {
+    final DatabaseGovernor governor = new DatabaseGovernor(0, 1, null, Clock.systemUTC());
+    final CountDownLatch firstStatementRunning = new CountDownLatch(1);
+    final CountDownLatch releaseFirstStatement = new CountDownLatch(1);
+
+    final CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> governor.govern(() -> {
+      firstStatementRunning.countDown();
+      try {
+        releaseFirstStatement.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return 1;
+    }));
+    firstStatementRunning.await();
+
+    final CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> governor.govern(() -> 2));
+    TimeUnit.MILLISECONDS.sleep(100);
+    assertThat(second.isDone())
+        .as("Second statement waits for the first to complete")
+        .isFalse();
+
+    releaseFirstStatement.countDown();
+    assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+    assertThat(governor.getThrottleStats().getThrottledStatements()).isEqualTo(1);
+  }
+
+  @Test
+  void govern_unlimited_does_not_throttle() {
+    final DatabaseGovernor governor = DatabaseGovernor.unlimited();
+    for (int i = 0; i < 100; i++) {
+      governor.govern(() -> true);
+    }
+    assertThat(governor.getThrottleStats().getThrottledStatements()).isZero();
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class KeywordGroupMergerTest {
+
+  private final List<TagSyncRecord> merged = new ArrayList<>();
+  private final KeywordGroupMerger merger = new KeywordGroupMerger(merged::add);
+
+  @Test
+  void merges_consecutive_rows_of_same_id() {
+    merger.accept(row("1", "FID1", "10"));
+    merger.accept(row("1", "Alpha", "10"));
+    merger.accept(row("1", "FID1", "10"));
+    merger.accept(row("2", "FID2", "11"));
+    merger.accept(row("3", "FID3", "12"));
+    merger.finish();
+
+    assertThat(merged).extracting(TagSyncRecord::getId).containsExactly("1", "2", "3");
+    assertThat(merged.get(0).allAdditionalKeywords())
+        .as("Duplicate keywords are merged")
+        .containsExactly("FID1", "Alpha");
+    assertThat(merged.get(1).allAdditionalKeywords()).containsExactly("FID2");
+  }
+
+  @Test
+  void group_takes_latest_sync_marker() {
+    merger.accept(row("1", "FID1", "10"));
+    merger.accept(row("1", "Alpha", "11"));
+    merger.finish();
+
+    assertThat(merged).hasSize(1);
+    assertThat(merged.get(0).getSyncMarker()).isEqualTo("11");
+  }
+
+  @Test
+  void page_holds_back_last_group() {
+    merger.accept(row("1", "FID1", "10"));
+    merger.accept(row("2", "FID2", "11"));
+    merger.accept(row("2", "Beta", "11"));
+    assertThat(merger.finishPage()).isEmpty();
+
+    assertThat(merged)
+        .as("The last group may continue on the next page")
+        .extracting(TagSyncRecord::getId)
+        .containsExactly("1");
+  }
+
+  @Test
+  void page_with_single_group_is_completed() {
+    merger.accept(row("1", "FID1", "10"));
+    merger.accept(row("1", "Alpha", "10"));
+    final Optional<TagSyncRecord> onlyGroup = merger.finishPage();
+
+    assertThat(merged)
+        .as("The only group of a page may be cut off")
+        .isEmpty();
+    assertThat(onlyGroup).isPresent();
+    merger.completeGroup(onlyGroup.get(),
+        List.of(row("1", "FID1", "10"), row("1", "Alpha", "10"), row("1", "Beta", "12")));
+
+    assertThat(merged).extracting(TagSyncRecord::getId).containsExactly("1");
+    assertThat(merged.get(0).allAdditionalKeywords()).containsExactly("FID1", "Alpha", "Beta");
+    assertThat(merged.get(0).getSyncMarker())
+        .as("The page was read up to the group's last row")
+        .isEqualTo("10");
+  }
+
+  @Test
+  void completed_group_with_other_id() {
+    merger.accept(row("1", "FID1", "10"));
+    final TagSyncRecord onlyGroup = merger.finishPage().orElseThrow();
+
+    assertThrows(IllegalArgumentException.class,
+        () -> merger.completeGroup(onlyGroup, List.of(row("2", "FID2", "10"))));
+    assertThat(merged).isEmpty();
+  }
+
+  @Test
+  void empty_page() {
+    assertThat(merger.finishPage()).isEmpty();
+    assertThat(merged).isEmpty();
+  }
+
+  private TagSyncRecord row(final String id, final String keyword, final String syncMarker) {
+    return new TagSyncRecord()
+        .setId(id)
+        .setTagName("P" + id)
+        .setAdditionalKeyword(keyword)
+        .setTagMetadata("{}")
+        .setSyncMarker(syncMarker);
+  }
+}
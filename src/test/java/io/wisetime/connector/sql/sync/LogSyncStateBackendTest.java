@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogSyncStateBackendTest {
+
+  @TempDir
+  Path tempDir;
+
+  private final SyncStateBackend mockFallback = mock(SyncStateBackend.class);
+
+  @Test
+  void values_are_read_back() {
+    final LogSyncStateBackend backend = new LogSyncStateBackend(tempDir.resolve("sync_state.log"), 4096, mockFallback);
+    backend.putString("marker", "100");
+    backend.putLong("position", 42L);
+    backend.putString("marker", "200");
+    backend.putString("cleared", null);
+
+    assertThat(backend.getString("marker")).contains("200");
+    assertThat(backend.getLong("position")).contains(42L);
+    assertThat(backend.getString("cleared")).isEmpty();
+    verify(mockFallback, never()).getString("cleared");
+  }
+
+  @Test
+  void values_survive_restart() {
+    final Path file = tempDir.resolve("sync_state.log");
+    final LogSyncStateBackend backend = new LogSyncStateBackend(file, 4096, mockFallback);
+    backend.putString("marker", "100");
+    backend.putLong("position", 42L);
+    backend.putString("marker", "200");
+    backend.close();
+
+    final LogSyncStateBackend reopened = new LogSyncStateBackend(file, 4096, mockFallback);
+
+    assertThat(reopened.getString("marker")).contains("200");
+    assertThat(reopened.getLong("position")).contains(42L);
+  }
+
+  @Test
+  void keys_not_in_the_log_are_read_from_fallback() {
+    when(mockFallback.getString("marker")).thenReturn(Optional.of("50"));
+    final LogSyncStateBackend backend = new LogSyncStateBackend(tempDir.resolve("sync_state.log"), 4096, mockFallback);
+
+    assertThat(backend.getString("marker")).contains("50");
+
+    backend.putString("marker", "100");
+    assertThat(backend.getString("marker")).contains("100");
+  }
+
+  @Test
+  void corrupt_record_is_not_recovered() throws Exception {
+    final Path file = tempDir.resolve("sync_state.log");
+    final LogSyncStateBackend backend = new LogSyncStateBackend(file, 4096, mockFallback);
+    backend.putString("marker", "100");
+    backend.putString("marker", "200");
+    backend.close();
+
+    // The first record is its length and checksum, a type byte, the key length, the key and the value
+    final int secondRecordOffset = Long.BYTES + 2 * Integer.BYTES + 1 + Integer.BYTES + "marker".length() + 3;
+    try (RandomAccessFile raf = new RandomAccessFile(tempDir.resolve("sync_state.log.0").toFile(), "rw")) {
+      // Flip the last byte of the second record's value
+      raf.seek(secondRecordOffset + 2 * Integer.BYTES + 1 + Integer.BYTES + "marker".length() + 2);
+      final int b = raf.read();
+      raf.seek(secondRecordOffset + 2 * Integer.BYTES + 1 + Integer.BYTES + "marker".length() + 2);
+      raf.write(b ^ 0xFF);
+    }
+
+    final LogSyncStateBackend reopened = new LogSyncStateBackend(file, 4096, mockFallback);
+    assertThat(reopened.getString("marker")).contains("100");
+  }
+
+  @Test
+  void full_log_is_compacted() {
+    final Path file = tempDir.resolve("sync_state.log");
+    final LogSyncStateBackend backend = new LogSyncStateBackend(file, 1024, mockFallback);
+    backend.putString("ids", "x".repeat(100));
+    for (int i = 0; i < 100; i++) {
+      backend.putLong("position", i);
+    }
+
+    assertThat(backend.getGeneration()).isGreaterThan(1);
+    assertThat(backend.getLong("position")).contains(99L);
+    backend.close();
+
+    final LogSyncStateBackend reopened = new LogSyncStateBackend(file, 1024, mockFallback);
+    assertThat(reopened.getGeneration()).isEqualTo(backend.getGeneration());
+    assertThat(reopened.getString("ids")).contains("x".repeat(100));
+    assertThat(reopened.getLong("position")).contains(99L);
+  }
+
+  @Test
+  void put_fails_when_values_do_not_fit() {
+    final LogSyncStateBackend backend = new LogSyncStateBackend(tempDir.resolve("sync_state.log"), 1024, mockFallback);
+    backend.putString("ids1", "x".repeat(600));
+
+    assertThatThrownBy(() -> backend.putString("ids2", "y".repeat(600)))
+        .isInstanceOf(RuntimeException.class)
+        .hasMessageContaining("is full");
+    assertThat(backend.getString("ids1")).contains("x".repeat(600));
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class NamedParameterSqlTest {
+
+  @Test
+  void expand_replaces_named_parameters() {
+    final NamedParameterSql sql = NamedParameterSql.expand(
+        "SELECT * FROM CASES WHERE DATE_UPDATED >= :previous_sync_marker AND IRN NOT IN (:skipped_ids)",
+        Map.of("previous_sync_marker", "2020-01-01", "skipped_ids", List.of("P1", "P2", "P3")), false);
+
+    assertThat(sql.getSql())
+        .isEqualTo("SELECT * FROM CASES WHERE DATE_UPDATED >= ? AND IRN NOT IN (?, ?, ?)");
+    assertThat(sql.getParameters())
+        .containsExactly("2020-01-01", "P1", "P2", "P3");
+  }
+
+  @Test
+  void expand_leaves_literals_comments_and_casts_untouched() {
+    final NamedParameterSql sql = NamedParameterSql.expand(
+        "SELECT ':skipped_ids' AS [:id], \"a:b\" -- :skipped_ids\n"
+            + "/* :skipped_ids */ FROM T WHERE ID >= :previous_sync_marker::int AND X = :unknown",
+        Map.of("previous_sync_marker", "1", "skipped_ids", List.of("0")), true);
+
+    assertThat(sql.getSql())
+        .isEqualTo("SELECT ':skipped_ids' AS [:id], \"a:b\" -- :skipped_ids\n"
+            + "/* :skipped_ids */ FROM T WHERE ID >= ?::int AND X = :unknown");
+    assertThat(sql.getParameters())
+        .containsExactly("1");
+  }
+
+  @Test
+  void expand_replaces_named_parameters_in_postgres_arrays() {
+    final NamedParameterSql sql = NamedParameterSql.expand(
+        "SELECT * FROM CASES WHERE IRN <> ALL(ARRAY[:skipped_ids]) AND IRN = ANY(ARRAY[:changed_ids]) "
+            + "AND CODES[1] = :previous_sync_marker",
+        Map.of("previous_sync_marker", "1", "skipped_ids", List.of("P1", "P2"), "changed_ids", List.of("P3")), false);
+
+    assertThat(sql.getSql())
+        .isEqualTo("SELECT * FROM CASES WHERE IRN <> ALL(ARRAY[?, ?]) AND IRN = ANY(ARRAY[?]) AND CODES[1] = ?");
+    assertThat(sql.getParameters())
+        .containsExactly("P1", "P2", "P3", "1");
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+class ParallelRunsTest {
+
+  private final Set<String> done = ConcurrentHashMap.newKeySet();
+
+  private final Consumer<String> work = item -> {
+    if (item.startsWith("fail")) {
+      throw new IllegalStateException(item);
+    }
+    done.add(item);
+  };
+
+  @Test
+  void forEach_in_turn_runs_every_item() {
+    ParallelRuns.forEach(List.of("a", "b", "c"), 1, work);
+
+    assertThat(done).containsExactlyInAnyOrder("a", "b", "c");
+  }
+
+  @Test
+  void forEach_in_turn_runs_every_item_and_rethrows_first_failure() {
+    assertThatThrownBy(() -> ParallelRuns.forEach(List.of("a", "fail 1", "b", "fail 2", "c"), 1, work))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("fail 1");
+    assertThat(done).containsExactlyInAnyOrder("a", "b", "c");
+  }
+
+  @Test
+  void forEach_in_parallel_runs_every_item() {
+    ParallelRuns.forEach(List.of("a", "b", "c"), 4, work);
+
+    assertThat(done).containsExactlyInAnyOrder("a", "b", "c");
+  }
+
+  @Test
+  void forEach_in_parallel_runs_every_item_and_rethrows_first_failure() {
+    assertThatThrownBy(() -> ParallelRuns.forEach(List.of("a", "fail 1", "b", "fail 2", "c"), 2, work))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("fail 1");
+    assertThat(done).containsExactlyInAnyOrder("a", "b", "c");
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
+import static io.wisetime.connector.sql.RandomEntities.randomTagSyncRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.stubbing.Answer;
+
+class RelaxedOrderingDrainTest {
+
+  private final ConnectedDatabase mockDatabase = mock(ConnectedDatabase.class);
+  private final TagSyncStore mockSyncStore = mock(TagSyncStore.class);
+  private final List<List<TagSyncRecord>> upsertedBatches = new ArrayList<>();
+  private RelaxedOrderingDrain drain;
+  private TagQuery query;
+
+  @BeforeEach
+  void setUp() {
+    drain = new RelaxedOrderingDrain(mockDatabase);
+    query = randomTagQuery("cases");
+    query.setSkippedIds(List.of("0"));
+    query.setRelaxedOrdering(true);
+    query.setMarkerSafetyLag("5");
+    when(mockSyncStore.getSyncMarker(query)).thenReturn("100");
+  }
+
+  @Test
+  void run_disallowed() {
+    drain.run(query, mockSyncStore, () -> false, upsertedBatches::add);
+    verifyNoInteractions(mockDatabase, mockSyncStore);
+  }
+
+  @Test
+  void run_advances_marker_to_high_water_mark_minus_lag() {
+    final TagSyncRecord record1 = randomTagSyncRecord("120");
+    final TagSyncRecord record2 = randomTagSyncRecord("101");
+    final TagSyncRecord record3 = randomTagSyncRecord("110");
+    streamResults(List.of(record1, record2), List.of(record3));
+
+    drain.run(query, mockSyncStore, () -> true, upsertedBatches::add);
+
+    assertThat(upsertedBatches).containsExactly(List.of(record1, record2), List.of(record3));
+    verify(mockSyncStore).markSyncMarker(query, "115");
+  }
+
+  @Test
+  void run_does_not_upsert_seen_rows_in_lag_window_again() {
+    final TagSyncRecord record1 = randomTagSyncRecord("120");
+    final TagSyncRecord record2 = randomTagSyncRecord("118");
+    streamResults(List.of(record1, record2));
+    drain.run(query, mockSyncStore, () -> true, upsertedBatches::add);
+
+    // Next pass reads the lag window again and finds one new row
+    when(mockSyncStore.getSyncMarker(query)).thenReturn("115");
+    final TagSyncRecord record3 = randomTagSyncRecord("117");
+    streamResults(List.of(record1, record3, record2));
+    drain.run(query, mockSyncStore, () -> true, upsertedBatches::add);
+
+    assertThat(upsertedBatches).containsExactly(List.of(record1, record2), List.of(record3));
+  }
+
+  @Test
+  void run_interrupted_does_not_move_marker() {
+    final List<Integer> readBatches = new ArrayList<>();
+    streamResults(readBatches, List.of(randomTagSyncRecord("120")), List.of(randomTagSyncRecord("121")));
+
+    // Sync is disallowed after the pass started
+    final Iterator<Boolean> allowSync = List.of(true, false).iterator();
+    drain.run(query, mockSyncStore, allowSync::next, upsertedBatches::add);
+
+    assertThat(upsertedBatches).isEmpty();
+    assertThat(readBatches)
+        .as("the rest of the stream is not read")
+        .containsExactly(1);
+    verify(mockSyncStore, never()).markSyncMarker(any(), anyString());
+  }
+
+  @Test
+  void run_with_marker_window_checkpoints_after_each_window() {
+    query.setMarkerWindow("50");
+    final TagSyncRecord record1 = randomTagSyncRecord("130");
+    final TagSyncRecord record2 = randomTagSyncRecord("170");
+    streamWindow("100", Optional.of("150"), List.of(record1));
+    streamWindow("150", Optional.of("200"), List.of(record2));
+    streamWindow("200", Optional.of("250"));
+    streamWindow("250", Optional.empty());
+
+    final AtomicReference<String> storedMarker = new AtomicReference<>("100");
+    when(mockSyncStore.getSyncMarker(query)).thenAnswer(invocation -> storedMarker.get());
+    doAnswer(invocation -> {
+      storedMarker.set(invocation.getArgument(1));
+      return null;
+    }).when(mockSyncStore).markSyncMarker(eq(query), anyString());
+
+    drain.run(query, mockSyncStore, () -> true, upsertedBatches::add);
+
+    assertThat(upsertedBatches).containsExactly(List.of(record1), List.of(record2));
+    final InOrder inOrder = inOrder(mockDatabase, mockSyncStore);
+    inOrder.verify(mockSyncStore).markSyncMarker(query, "125");
+    inOrder.verify(mockDatabase)
+        .streamTagsToSync(eq(query), eq("150"), eq(Optional.of("200")), anyList(), anyInt(), any());
+    inOrder.verify(mockSyncStore).markSyncMarker(query, "165");
+    inOrder.verify(mockDatabase)
+        .streamTagsToSync(eq(query), eq("250"), eq(Optional.empty()), anyList(), anyInt(), any());
+  }
+
+  @SafeVarargs
+  private void streamResults(List<TagSyncRecord>... batches) {
+    streamResults(new ArrayList<>(), batches);
+  }
+
+  @SafeVarargs
+  private void streamResults(List<Integer> readBatches, List<TagSyncRecord>... batches) {
+    doAnswer(streamAnswer(readBatches, batches)).when(mockDatabase)
+        .streamTagsToSync(eq(query), anyString(), any(), anyList(), anyInt(), any());
+  }
+
+  @SafeVarargs
+  private void streamWindow(String windowStart, Optional<String> windowEnd, List<TagSyncRecord>... batches) {
+    doAnswer(streamAnswer(new ArrayList<>(), batches)).when(mockDatabase)
+        .streamTagsToSync(eq(query), eq(windowStart), eq(windowEnd), anyList(), anyInt(), any());
+  }
+
+  private static Answer<Void> streamAnswer(List<Integer> readBatches, List<TagSyncRecord>[] batches) {
+    return invocation -> {
+      final Predicate<List<TagSyncRecord>> consumer = invocation.getArgument(5);
+      for (int i = 0; i < batches.length; i++) {
+        readBatches.add(i + 1);
+        if (!consumer.test(batches[i])) {
+          break;
+        }
+      }
+      return null;
+    };
+  }
+}
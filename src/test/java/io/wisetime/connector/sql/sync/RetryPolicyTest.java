@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.HttpResponseException;
+import org.junit.jupiter.api.Test;
+
+class RetryPolicyTest {
+
+  private final List<Duration> sleeps = new ArrayList<>();
+  private final RetryPolicy retryPolicy =
+      new RetryPolicy(3, Duration.ofMillis(100), Duration.ofMillis(150), sleeps::add, Clock.systemUTC());
+
+  @Test
+  void isRetriable() {
+    assertThat(RetryPolicy.isRetriable(new HttpResponseException(429, "too many requests"))).isTrue();
+    assertThat(RetryPolicy.isRetriable(new HttpResponseException(502, "bad gateway"))).isTrue();
+    assertThat(RetryPolicy.isRetriable(new SocketTimeoutException())).isTrue();
+    assertThat(RetryPolicy.isRetriable(new HttpResponseException(400, "bad request"))).isFalse();
+    assertThat(RetryPolicy.isRetriable(new HttpResponseException(404, "not found"))).isFalse();
+  }
+
+  @Test
+  void backoff_exponential_with_jitter_and_cap() {
+    assertThat(retryPolicy.backoff(1)).isBetween(Duration.ofMillis(50), Duration.ofMillis(100));
+    assertThat(retryPolicy.backoff(2)).isBetween(Duration.ofMillis(75), Duration.ofMillis(150));
+    assertThat(retryPolicy.backoff(10)).isBetween(Duration.ofMillis(75), Duration.ofMillis(150));
+  }
+
+  @Test
+  void call_retries_until_success() throws Exception {
+    final AtomicInteger attempts = new AtomicInteger();
+    final String result = retryPolicy.call("test", () -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw new HttpResponseException(503, "unavailable");
+      }
+      return "ok";
+    });
+
+    assertThat(result).isEqualTo("ok");
+    assertThat(sleeps).hasSize(2);
+  }
+
+  @Test
+  void call_gives_up_after_max_attempts() {
+    final AtomicInteger attempts = new AtomicInteger();
+    assertThrows(HttpResponseException.class, () -> retryPolicy.call("test", () -> {
+      attempts.incrementAndGet();
+      throw new HttpResponseException(500, "error");
+    }));
+    assertThat(attempts).hasValue(3);
+  }
+
+  @Test
+  void call_does_not_retry_fatal_errors() {
+    final AtomicInteger attempts = new AtomicInteger();
+    assertThrows(HttpResponseException.class, () -> retryPolicy.call("test", () -> {
+      attempts.incrementAndGet();
+      throw new HttpResponseException(422, "invalid");
+    }));
+    assertThat(attempts).hasValue(1);
+    assertThat(sleeps).isEmpty();
+  }
+
+  @Test
+  void call_fails_fast_once_circuit_breaker_opens() {
+    final AtomicInteger attempts = new AtomicInteger();
+    final RetryPolicy.ApiCall<String> failingCall = () -> {
+      attempts.incrementAndGet();
+      throw new IOException("connection refused");
+    };
+    // The breaker opens after 10 consecutive failures
+    for (int i = 0; i < 4; i++) {
+      assertThrows(Exception.class, () -> retryPolicy.call("test", failingCall));
+    }
+
+    assertThat(attempts).hasValue(10);
+    assertThrows(RuntimeException.class, () -> retryPolicy.call("test", failingCall));
+    assertThat(attempts).hasValue(10);
+  }
+}
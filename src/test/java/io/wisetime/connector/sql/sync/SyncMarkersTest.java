@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class SyncMarkersTest {
+
+  @Test
+  void compare_numeric_markers() {
+    assertThat(SyncMarkers.compare("9", "10")).isNegative();
+    assertThat(SyncMarkers.compare("10.0", "10")).isZero();
+    assertThat(SyncMarkers.max("-1", "2")).isEqualTo("2");
+  }
+
+  @Test
+  void compare_date_time_markers() {
+    assertThat(SyncMarkers.compare("2019-08-06 00:00:00.0", "2019-08-06T00:00:01")).isNegative();
+    assertThat(SyncMarkers.compare("2019-08-06 00:00:00.0", "2019-08-06 00:00:00")).isZero();
+  }
+
+  @Test
+  void compare_zoned_date_time_markers_by_instant() {
+    assertThat(SyncMarkers.compare("2019-08-06 10:00:00+10", "2019-08-06T00:00:00Z")).isZero();
+    assertThat(SyncMarkers.compare("2019-08-06 10:00:00.5+10", "2019-08-06T00:00:01Z")).isNegative();
+    assertThat(SyncMarkers.compare("2019-08-06 00:00:00 +10:00", "2019-08-05 23:00:00 +09:00")).isZero();
+  }
+
+  @Test
+  void compare_other_markers_as_strings() {
+    assertThat(SyncMarkers.compare("abc", "abd")).isNegative();
+  }
+
+  @Test
+  void minus_numeric_lag() {
+    assertThat(SyncMarkers.minus("100", "20")).isEqualTo("80");
+    assertThat(SyncMarkers.minus("100", "0")).isEqualTo("100");
+  }
+
+  @Test
+  void minus_duration_lag() {
+    assertThat(SyncMarkers.minus("2019-08-06 00:05:00.0", "PT10M")).isEqualTo("2019-08-05 23:55:00.000");
+    assertThat(SyncMarkers.minus("2019-08-06T00:05:00", "PT1M")).isEqualTo("2019-08-06T00:04:00.000");
+  }
+
+  @Test
+  void minus_duration_lag_keeps_zone_offset() {
+    assertThat(SyncMarkers.minus("2019-08-06 00:05:00.123+10", "PT10M")).isEqualTo("2019-08-05 23:55:00.123+10:00");
+    assertThat(SyncMarkers.minus("2019-08-06T00:05:00+05:30", "PT1H")).isEqualTo("2019-08-05T23:05:00.000+05:30");
+    assertThat(SyncMarkers.minus("2019-08-06 00:05:00.1234567 +10:00", "PT10M"))
+        .isEqualTo("2019-08-05 23:55:00.123 +10:00");
+  }
+
+  @Test
+  void plus_moves_marker_forward() {
+    assertThat(SyncMarkers.plus("100", "20")).isEqualTo("120");
+    assertThat(SyncMarkers.plus("2019-08-06 00:05:00.0", "P1D")).isEqualTo("2019-08-07 00:05:00.000");
+    assertThat(SyncMarkers.plus("2019-08-06T00:05:00Z", "PT1H")).isEqualTo("2019-08-06T01:05:00.000+00:00");
+  }
+
+  @Test
+  void minus_mismatched_lag() {
+    assertThat(SyncMarkers.isValidLag("PT10M")).isTrue();
+    assertThat(SyncMarkers.isValidLag("ten minutes")).isFalse();
+    assertThrows(IllegalArgumentException.class, () -> SyncMarkers.minus("100", "PT10M"));
+  }
+}
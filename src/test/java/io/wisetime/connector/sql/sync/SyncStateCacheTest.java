@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.datastore.ConnectorStore;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+class SyncStateCacheTest {
+
+  private final ConnectorStore mockConnectorStore = mock(ConnectorStore.class);
+  private final SyncStateCache cache = SyncStateCache.of(mockConnectorStore);
+  private final Clock mockClock = mock(Clock.class);
+  private final Instant now = Instant.now();
+
+  @Test
+  void reads_from_connector_store_once() {
+    when(mockConnectorStore.getString("marker")).thenReturn(Optional.of("10"));
+
+    assertThat(cache.getString("marker")).contains("10");
+    assertThat(cache.getString("marker")).contains("10");
+
+    verify(mockConnectorStore, times(1)).getString("marker");
+  }
+
+  @Test
+  void caches_missing_values() {
+    when(mockConnectorStore.getLong("last_sync")).thenReturn(Optional.empty());
+
+    assertThat(cache.getLong("last_sync")).isEmpty();
+    assertThat(cache.getLong("last_sync")).isEmpty();
+
+    verify(mockConnectorStore, times(1)).getLong("last_sync");
+  }
+
+  @Test
+  void writes_through() {
+    cache.putString("marker", "11");
+    cache.putLong("last_sync", 5L);
+
+    verify(mockConnectorStore).putString("marker", "11");
+    verify(mockConnectorStore).putLong("last_sync", 5L);
+    assertThat(cache.getString("marker")).contains("11");
+    assertThat(cache.getLong("last_sync")).contains(5L);
+    verify(mockConnectorStore, never()).getString("marker");
+    verify(mockConnectorStore, never()).getLong("last_sync");
+  }
+
+  @Test
+  void decoded_values_are_cached_until_written() {
+    when(mockConnectorStore.getString("ids")).thenReturn(Optional.of("1@@@2"));
+    final AtomicInteger decodings = new AtomicInteger();
+
+    assertThat(cache.getDecoded("ids", value -> decode(value, decodings))).containsExactly("1", "2");
+    assertThat(cache.getDecoded("ids", value -> decode(value, decodings))).containsExactly("1", "2");
+    assertThat(decodings).hasValue(1);
+
+    cache.putString("ids", "3");
+
+    assertThat(cache.getDecoded("ids", value -> decode(value, decodings))).containsExactly("3");
+    assertThat(decodings).hasValue(2);
+  }
+
+  @Test
+  void value_decoded_during_commit_is_decoded_again() {
+    when(mockConnectorStore.getString("ids")).thenReturn(Optional.of("1@@@2"));
+    final AtomicInteger decodings = new AtomicInteger();
+
+    // Another thread commits the key after its previous value was read but before the decoded value is cached
+    assertThat(cache.getDecoded("ids", value -> {
+      cache.putString("ids", "3");
+      return decode(value, decodings);
+    })).containsExactly("1", "2");
+
+    assertThat(cache.getDecoded("ids", value -> decode(value, decodings)))
+        .as("The value decoded before the commit is not served after it")
+        .containsExactly("3");
+    assertThat(cache.getDecoded("ids", value -> decode(value, decodings))).containsExactly("3");
+    assertThat(decodings).hasValue(2);
+  }
+
+  @Test
+  void invalidate_reads_again() {
+    when(mockConnectorStore.getString("marker")).thenReturn(Optional.of("10"));
+    cache.getString("marker");
+
+    cache.invalidate("marker");
+    when(mockConnectorStore.getString("marker")).thenReturn(Optional.of("12"));
+
+    assertThat(cache.getString("marker")).contains("12");
+  }
+
+  @Test
+  void uncached_always_reads_from_connector_store() {
+    final SyncStateCache uncached = SyncStateCache.uncached(mockConnectorStore);
+    when(mockConnectorStore.getString("marker")).thenReturn(Optional.of("10"));
+    uncached.getString("marker");
+    uncached.getString("marker");
+
+    verify(mockConnectorStore, times(2)).getString("marker");
+  }
+
+  @Test
+  void commit_writes_values_in_order() {
+    final Map<String, String> values = new LinkedHashMap<>();
+    values.put("marker", "10");
+    values.put("ids", "1@@@2");
+
+    cache.commit(values);
+
+    final InOrder inOrder = inOrder(mockConnectorStore);
+    inOrder.verify(mockConnectorStore).putString("marker", "10");
+    inOrder.verify(mockConnectorStore).putString("ids", "1@@@2");
+  }
+
+  @Test
+  void group_commit_writes_every_max_commits() {
+    final SyncStateCache groupCommitCache =
+        new SyncStateCache(SyncStateBackend.of(mockConnectorStore), true, 3, Duration.ofMinutes(1), mockClock);
+    when(mockClock.instant()).thenReturn(now);
+
+    groupCommitCache.commit(Map.of("marker", "1"));
+    groupCommitCache.commit(Map.of("marker", "2"));
+
+    verify(mockConnectorStore, never()).putString(anyString(), anyString());
+    assertThat(groupCommitCache.getString("marker"))
+        .as("Collected commits are read back")
+        .contains("2");
+
+    groupCommitCache.commit(Map.of("marker", "3"));
+
+    verify(mockConnectorStore, times(1)).putString(anyString(), anyString());
+    verify(mockConnectorStore).putString("marker", "3");
+  }
+
+  @Test
+  void group_commit_writes_after_max_age() {
+    final SyncStateCache groupCommitCache =
+        new SyncStateCache(SyncStateBackend.of(mockConnectorStore), true, 100, Duration.ofSeconds(5), mockClock);
+    when(mockClock.instant()).thenReturn(now);
+    groupCommitCache.commit(Map.of("marker", "1"));
+    groupCommitCache.putLong("last_sync", 1L);
+    verify(mockConnectorStore, never()).putString(anyString(), anyString());
+
+    when(mockClock.instant()).thenReturn(now.plusSeconds(5));
+    groupCommitCache.commit(Map.of("ids", "1"));
+
+    verify(mockConnectorStore).putString("marker", "1");
+    verify(mockConnectorStore).putString("ids", "1");
+    verify(mockConnectorStore).putLong("last_sync", 1L);
+  }
+
+  @Test
+  void flush_writes_collected_commits() {
+    final SyncStateCache groupCommitCache =
+        new SyncStateCache(SyncStateBackend.of(mockConnectorStore), true, 100, Duration.ofMinutes(1), mockClock);
+    when(mockClock.instant()).thenReturn(now);
+    groupCommitCache.commit(Map.of("marker", "1"));
+
+    groupCommitCache.flush();
+    groupCommitCache.flush();
+
+    verify(mockConnectorStore, times(1)).putString("marker", "1");
+  }
+
+  @Test
+  void invalidate_writes_collected_commits_first() {
+    final SyncStateCache groupCommitCache =
+        new SyncStateCache(SyncStateBackend.of(mockConnectorStore), true, 100, Duration.ofMinutes(1), mockClock);
+    when(mockClock.instant()).thenReturn(now);
+    groupCommitCache.commit(Map.of("marker", "1"));
+
+    groupCommitCache.invalidate("marker");
+
+    verify(mockConnectorStore).putString("marker", "1");
+  }
+
+  @Test
+  void close_writes_collected_commits_and_closes_backend() {
+    final SyncStateBackend mockBackend = mock(SyncStateBackend.class);
+    final SyncStateCache groupCommitCache =
+        new SyncStateCache(mockBackend, true, 100, Duration.ofMinutes(1), mockClock);
+    when(mockClock.instant()).thenReturn(now);
+    groupCommitCache.commit(Map.of("marker", "1"));
+
+    groupCommitCache.close();
+
+    final InOrder inOrder = inOrder(mockBackend);
+    inOrder.verify(mockBackend).putString("marker", "1");
+    inOrder.verify(mockBackend).close();
+  }
+
+  private List<String> decode(final Optional<String> value, final AtomicInteger decodings) {
+    decodings.incrementAndGet();
+    return value.map(SyncedIdsCodec::decode).orElse(List.of());
+  }
+}
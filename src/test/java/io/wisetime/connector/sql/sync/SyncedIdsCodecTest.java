@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class SyncedIdsCodecTest {
+
+  @Test
+  void few_ids_are_joined() {
+    assertThat(SyncedIdsCodec.encode(List.of("2", "1"))).isEqualTo("2@@@1");
+    assertThat(SyncedIdsCodec.encode(List.of())).isEmpty();
+    assertThat(SyncedIdsCodec.decode("2@@@1")).containsExactly("2", "1");
+    assertThat(SyncedIdsCodec.decode("")).isEmpty();
+  }
+
+  @Test
+  void many_numeric_ids_are_delta_encoded() {
+    final List<String> ids = IntStream.range(0, 1000)
+        .mapToObj(i -> String.valueOf(1_000_000_000L - i * 7L))
+        .collect(Collectors.toList());
+
+    final String encoded = SyncedIdsCodec.encode(ids);
+
+    assertThat(encoded).startsWith("~n:");
+    assertThat(encoded.length()).isLessThan(String.join("@@@", ids).length() / 5);
+    assertThat(SyncedIdsCodec.decode(encoded))
+        .as("Numeric IDs are decoded in ascending order")
+        .containsExactlyElementsOf(ids.stream().sorted((a, b) -> Long.compare(Long.parseLong(a), Long.parseLong(b)))
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  void numeric_ids_with_leading_zeros_are_kept_as_strings() {
+    final List<String> ids = IntStream.range(0, 100)
+        .mapToObj(i -> String.format("%05d", i))
+        .collect(Collectors.toList());
+
+    final String encoded = SyncedIdsCodec.encode(ids);
+
+    assertThat(encoded).doesNotStartWith("~n:");
+    assertThat(SyncedIdsCodec.decode(encoded)).containsExactlyElementsOf(ids);
+  }
+
+  @Test
+  void many_string_ids_are_deflated() {
+    final List<String> ids = IntStream.range(0, 1000)
+        .mapToObj(i -> "CASE-" + i)
+        .collect(Collectors.toList());
+
+    final String encoded = SyncedIdsCodec.encode(ids);
+
+    assertThat(encoded).startsWith("~z:");
+    assertThat(SyncedIdsCodec.decode(encoded)).containsExactlyElementsOf(ids);
+  }
+
+  @Test
+  void duplicate_and_large_numbers() {
+    final List<String> ids = IntStream.range(0, 20)
+        .mapToObj(i -> i % 2 == 0 ? "0" : "999999999999999999")
+        .collect(Collectors.toList());
+
+    assertThat(SyncedIdsCodec.decode(SyncedIdsCodec.encode(ids))).containsExactlyInAnyOrderElementsOf(ids);
+  }
+}
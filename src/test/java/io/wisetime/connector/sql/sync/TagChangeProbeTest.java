@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TagChangeProbeTest {
+
+  private final ConnectedDatabase mockDatabase = mock(ConnectedDatabase.class);
+  private final Runnable mockSync = mock(Runnable.class);
+  private final AtomicLong discardEpoch = new AtomicLong();
+  private final TagChangeProbe changeProbe = new TagChangeProbe(mockDatabase, query -> discardEpoch.get());
+
+  @BeforeEach
+  void setUp() {
+    reset(mockDatabase, mockSync);
+  }
+
+  @Test
+  void syncIfChanged_without_probe_always_syncs() {
+    final TagQuery query = randomTagQuery("cases");
+
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+
+    verify(mockSync, times(2)).run();
+    verifyNoInteractions(mockDatabase);
+  }
+
+  @Test
+  void syncIfChanged_skips_unchanged() {
+    final TagQuery query = randomTagQuery("cases");
+    query.setChangeProbeSql("SELECT MAX(DATE_UPDATED) FROM CASES");
+    when(mockDatabase.probeForChanges(query.getChangeProbeSql()))
+        .thenReturn("2020-01-01")
+        .thenReturn("2020-01-01")
+        .thenReturn("2020-01-02");
+
+    // First sync always runs
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    verify(mockSync, times(1)).run();
+
+    // Nothing changed
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    verify(mockSync, times(1)).run();
+
+    // Probe observed a change
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    verify(mockSync, times(2)).run();
+  }
+
+  @Test
+  void syncIfChanged_interrupted_sync_runs_again() {
+    final TagQuery query = randomTagQuery("cases");
+    query.setChangeProbeSql("SELECT MAX(DATE_UPDATED) FROM CASES");
+    when(mockDatabase.probeForChanges(query.getChangeProbeSql())).thenReturn("2020-01-01");
+
+    // Sync was stopped before it drained everything
+    changeProbe.syncIfChanged(query, () -> false, mockSync);
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+
+    verify(mockSync, times(2)).run();
+  }
+
+  @Test
+  void syncIfChanged_failed_probe_syncs() {
+    final TagQuery query = randomTagQuery("cases");
+    query.setChangeProbeSql("SELECT broken");
+    when(mockDatabase.probeForChanges(query.getChangeProbeSql())).thenThrow(new RuntimeException("Invalid SQL"));
+
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+
+    verify(mockSync, times(2)).run();
+  }
+
+  @Test
+  void syncIfChanged_failed_sync_runs_again() {
+    final TagQuery query = randomTagQuery("cases");
+    query.setChangeProbeSql("SELECT MAX(DATE_UPDATED) FROM CASES");
+    when(mockDatabase.probeForChanges(query.getChangeProbeSql())).thenReturn("2020-01-01");
+    final Runnable failingSync = () -> {
+      throw new RuntimeException("API unavailable");
+    };
+
+    try {
+      changeProbe.syncIfChanged(query, () -> true, failingSync);
+    } catch (RuntimeException expected) {
+      // the failed sync is not remembered
+    }
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+
+    verify(mockSync, times(1)).run();
+  }
+
+  @Test
+  void syncIfChanged_discarded_sync_runs_again() {
+    final TagQuery query = randomTagQuery("cases");
+    query.setChangeProbeSql("SELECT MAX(DATE_UPDATED) FROM CASES");
+    when(mockDatabase.probeForChanges(query.getChangeProbeSql())).thenReturn("2020-01-01");
+
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    // The staged sync positions of the drained tags were discarded, e.g. because upserting them failed
+    discardEpoch.incrementAndGet();
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+
+    verify(mockSync, times(2)).run();
+  }
+
+  @Test
+  void retainQueries_forgets_removed_queries() {
+    final TagQuery query = randomTagQuery("cases");
+    query.setChangeProbeSql("SELECT MAX(DATE_UPDATED) FROM CASES");
+    when(mockDatabase.probeForChanges(query.getChangeProbeSql())).thenReturn("2020-01-01");
+
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+    changeProbe.retainQueries(List.of());
+    changeProbe.syncIfChanged(query, () -> true, mockSync);
+
+    verify(mockSync, times(2)).run();
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import io.wisetime.generated.connect.UpsertTagRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TagDeadLetterLogTest {
+
+  private final Gson gson = new Gson();
+
+  @Test
+  void record_appends_json_lines(@TempDir Path tempDir) throws Exception {
+    final Path file = tempDir.resolve("dead_letters.jsonl");
+    final TagDeadLetterLog deadLetterLog = new TagDeadLetterLog(file, 1024 * 1024);
+
+    deadLetterLog.record("P1", "Rejected by WiseTime: bad request", new UpsertTagRequest().name("P1"));
+    deadLetterLog.record("P2", "Invalid tag_metadata: nested value", new TagSyncRecord().setTagName("P2"));
+
+    final List<String> lines = Files.readAllLines(file);
+    assertThat(lines).hasSize(2);
+    final JsonObject first = gson.fromJson(lines.get(0), JsonObject.class);
+    assertThat(first.get("tagName").getAsString()).isEqualTo("P1");
+    assertThat(first.get("reason").getAsString()).isEqualTo("Rejected by WiseTime: bad request");
+    assertThat(first.getAsJsonObject("row").get("name").getAsString()).isEqualTo("P1");
+    assertThat(first.has("time")).isTrue();
+    assertThat(gson.fromJson(lines.get(1), JsonObject.class).getAsJsonObject("row").get("tagName").getAsString())
+        .isEqualTo("P2");
+  }
+
+  @Test
+  void record_moves_full_file_aside(@TempDir Path tempDir) throws Exception {
+    final Path file = tempDir.resolve("dead_letters.jsonl");
+    final TagDeadLetterLog deadLetterLog = new TagDeadLetterLog(file, 10);
+
+    deadLetterLog.record("P1", "rejected", null);
+    deadLetterLog.record("P2", "rejected", null);
+
+    assertThat(Files.readAllLines(file)).hasSize(1).allMatch(line -> line.contains("P2"));
+    assertThat(Files.readAllLines(tempDir.resolve("dead_letters.jsonl.1")))
+        .hasSize(1)
+        .allMatch(line -> line.contains("P1"));
+  }
+
+  @Test
+  void logOnly_does_not_fail() {
+    TagDeadLetterLog.logOnly().record("P1", "rejected", null);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.wisetime.connector.sql.sync.TagMetadataDecoder.InvalidTagMetadataException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TagMetadataDecoderTest {
+
+  private final TagMetadataDecoder decoder = new TagMetadataDecoder(3, 10);
+
+  @Test
+  void decode_flat_object() {
+    assertThat(decoder.decode("{\"Country\": \"Australia\", \"Count\": 12, \"Granted\": true}"))
+        .containsExactly(Map.entry("Country", "Australia"), Map.entry("Count", "12"), Map.entry("Granted", "true"));
+  }
+
+  @Test
+  void decode_null_values() {
+    final Map<String, String> expected = new HashMap<>();
+    expected.put("Country", null);
+    assertThat(decoder.decode("{\"Country\": null}")).isEqualTo(expected);
+  }
+
+  @Test
+  void decode_missing_metadata() {
+    assertThat(decoder.decode(null)).isNull();
+    assertThat(decoder.decode(" ")).isNull();
+    assertThat(decoder.decode("null")).isNull();
+  }
+
+  @Test
+  void decode_malformed_json() {
+    assertThatThrownBy(() -> decoder.decode("{\"Country\": \"Australia\""))
+        .isInstanceOf(InvalidTagMetadataException.class);
+    assertThatThrownBy(() -> decoder.decode("{\"Country\": \"Australia\"} trailing"))
+        .isInstanceOf(InvalidTagMetadataException.class);
+    assertThatThrownBy(() -> decoder.decode("[\"Australia\"]"))
+        .isInstanceOf(InvalidTagMetadataException.class);
+  }
+
+  @Test
+  void decode_nested_values() {
+    assertThatThrownBy(() -> decoder.decode("{\"Country\": {\"Name\": \"Australia\"}}"))
+        .isInstanceOf(InvalidTagMetadataException.class)
+        .hasMessageContaining("Country");
+  }
+
+  @Test
+  void decode_limits() {
+    assertThatThrownBy(() -> decoder.decode("{\"a\": \"1\", \"b\": \"2\", \"c\": \"3\", \"d\": \"4\"}"))
+        .isInstanceOf(InvalidTagMetadataException.class)
+        .hasMessageContaining("more than 3 keys");
+    assertThatThrownBy(() -> decoder.decode("{\"a\": \"12345678901\"}"))
+        .isInstanceOf(InvalidTagMetadataException.class)
+        .hasMessageContaining("longer than 10 characters");
+  }
+
+  @Test
+  void decode_with_metadata_columns() {
+    assertThat(decoder.decode("{\"Country\": \"Germany\", \"Type\": \"Patent\"}", Map.of("Country", "Australia")))
+        .as("Metadata columns are added over the tag_metadata")
+        .containsExactly(Map.entry("Country", "Australia"), Map.entry("Type", "Patent"));
+    assertThat(decoder.decode(null, Map.of("Country", "Australia")))
+        .containsExactly(Map.entry("Country", "Australia"));
+    assertThat(decoder.decode(null, null)).isNull();
+  }
+
+  @Test
+  void decode_with_metadata_columns_limits() {
+    assertThatThrownBy(() -> decoder.decode("{\"a\": \"1\", \"b\": \"2\"}", Map.of("c", "3", "d", "4")))
+        .isInstanceOf(InvalidTagMetadataException.class)
+        .hasMessageContaining("more than 3 keys");
+    assertThatThrownBy(() -> decoder.decode("{}", Map.of("a", "12345678901")))
+        .isInstanceOf(InvalidTagMetadataException.class)
+        .hasMessageContaining("longer than 10 characters");
+  }
+}
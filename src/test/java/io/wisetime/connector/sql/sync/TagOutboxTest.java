@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.wisetime.connector.sql.sync.ApiRateLimiter.Lane;
+import io.wisetime.connector.sql.sync.TagOutbox.Batch;
+import io.wisetime.generated.connect.UpsertTagRequest;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TagOutboxTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void batches_are_returned_in_order_until_committed() throws Exception {
+    final TagOutbox outbox = new TagOutbox(tempDir.resolve("outbox.log"), 64 * 1024);
+    assertThat(outbox.next(Duration.ZERO)).isEmpty();
+
+    outbox.append(Lane.TAG_DRAIN, List.of(request("P1")));
+    outbox.append(Lane.TAG_DRAIN, List.of(request("P2"), request("P3")));
+
+    assertThat(outbox.next(Duration.ZERO).map(Batch::getRequests)).contains(List.of(request("P1")));
+    assertThat(outbox.next(Duration.ZERO).map(Batch::getRequests))
+        .as("Not committed yet")
+        .contains(List.of(request("P1")));
+    outbox.commit();
+    assertThat(outbox.next(Duration.ZERO).map(Batch::getRequests)).contains(List.of(request("P2"), request("P3")));
+    outbox.commit();
+    assertThat(outbox.isEmpty()).isTrue();
+    assertThat(outbox.next(Duration.ZERO)).isEmpty();
+  }
+
+  @Test
+  void pending_batches_survive_restart() throws Exception {
+    final Path file = tempDir.resolve("outbox.log");
+    final TagOutbox outbox = new TagOutbox(file, 64 * 1024);
+    outbox.append(Lane.TAG_DRAIN, List.of(request("P1")));
+    outbox.append(Lane.TAG_DRAIN, List.of(request("P2")));
+    outbox.commit();
+    outbox.close();
+
+    final TagOutbox reopened = new TagOutbox(file, 64 * 1024);
+
+    assertThat(reopened.next(Duration.ZERO).map(Batch::getRequests)).contains(List.of(request("P2")));
+    reopened.commit();
+    assertThat(reopened.isEmpty()).isTrue();
+  }
+
+  @Test
+  void batches_keep_their_lane() throws Exception {
+    final Path file = tempDir.resolve("outbox.log");
+    final TagOutbox outbox = new TagOutbox(file, 64 * 1024);
+    outbox.append(Lane.TAG_REFRESH, List.of(request("P1")));
+    outbox.close();
+
+    final TagOutbox reopened = new TagOutbox(file, 64 * 1024);
+
+    assertThat(reopened.next(Duration.ZERO))
+        .contains(new Batch(Lane.TAG_REFRESH, List.of(request("P1"))));
+  }
+
+  @Test
+  void corrupt_batch_is_not_recovered() throws Exception {
+    final Path file = tempDir.resolve("outbox.log");
+    final TagOutbox outbox = new TagOutbox(file, 64 * 1024);
+    outbox.append(Lane.TAG_DRAIN, List.of(request("P1")));
+    final int secondBatchOffset = Long.BYTES + outbox.pendingBytes();
+    outbox.append(Lane.TAG_DRAIN, List.of(request("P2")));
+    outbox.close();
+
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      // Flip a byte of the second batch's content
+      raf.seek(secondBatchOffset + 2 * Integer.BYTES + 3);
+      final int b = raf.read();
+      raf.seek(secondBatchOffset + 2 * Integer.BYTES + 3);
+      raf.write(b ^ 0xFF);
+    }
+
+    final TagOutbox reopened = new TagOutbox(file, 64 * 1024);
+    assertThat(reopened.next(Duration.ZERO).map(Batch::getRequests)).contains(List.of(request("P1")));
+    reopened.commit();
+    assertThat(reopened.isEmpty()).isTrue();
+  }
+
+  @Test
+  void append_fails_when_full() {
+    final TagOutbox outbox = new TagOutbox(tempDir.resolve("outbox.log"), 1024);
+    outbox.append(Lane.TAG_DRAIN, List.of(request("x".repeat(600))));
+
+    assertThatThrownBy(() -> outbox.append(Lane.TAG_DRAIN, List.of(request("y".repeat(600)))))
+        .isInstanceOf(RuntimeException.class)
+        .hasMessageContaining("is full");
+  }
+
+  @Test
+  void posted_batches_make_room() throws Exception {
+    final TagOutbox outbox = new TagOutbox(tempDir.resolve("outbox.log"), 2048);
+    outbox.append(Lane.TAG_DRAIN, List.of(request("a".repeat(500))));
+    outbox.append(Lane.TAG_DRAIN, List.of(request("b".repeat(500))));
+    outbox.append(Lane.TAG_DRAIN, List.of(request("c".repeat(500))));
+    outbox.commit();
+    outbox.commit();
+
+    // Only fits once the pending batch is moved to the start of the file
+    outbox.append(Lane.TAG_DRAIN, List.of(request("d".repeat(500))));
+
+    assertThat(outbox.next(Duration.ZERO).map(Batch::getRequests)).contains(List.of(request("c".repeat(500))));
+    outbox.commit();
+    assertThat(outbox.next(Duration.ZERO).map(Batch::getRequests)).contains(List.of(request("d".repeat(500))));
+  }
+
+  private UpsertTagRequest request(final String name) {
+    return new UpsertTagRequest()
+        .name(name)
+        .path("/Connector/");
+  }
+}
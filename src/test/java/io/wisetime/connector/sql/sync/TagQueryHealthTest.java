@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+class TagQueryHealthTest {
+
+  private final Clock mockClock = mock(Clock.class);
+  private final Instant now = Instant.now();
+  private final TagQueryHealth health =
+      new TagQueryHealth(Duration.ofSeconds(30), Duration.ofMinutes(2), Duration.ofMinutes(10), mockClock);
+  private final TagQuery keywords = randomTagQuery("keywords");
+  private final TagQuery cases = randomTagQuery("cases");
+
+  @BeforeEach
+  void setUp() {
+    when(mockClock.instant()).thenReturn(now);
+  }
+
+  @Test
+  void first_failure_is_retried_on_next_run() {
+    health.recordFailure(keywords, new RuntimeException("broken"));
+
+    assertThat(health.shouldRun(keywords)).isTrue();
+    assertThat(health.getConsecutiveFailures(keywords)).contains(1);
+  }
+
+  @Test
+  void repeated_failures_pause_the_query() {
+    health.recordFailure(keywords, new RuntimeException("broken"));
+    health.recordFailure(keywords, new RuntimeException("broken"));
+
+    assertThat(health.shouldRun(keywords)).isFalse();
+    assertThat(health.shouldRun(cases))
+        .as("Other queries are not affected")
+        .isTrue();
+
+    when(mockClock.instant()).thenReturn(now.plusSeconds(30));
+    assertThat(health.shouldRun(keywords)).isTrue();
+  }
+
+  @Test
+  void success_resets_failures() {
+    health.recordFailure(keywords, new RuntimeException("broken"));
+    health.recordFailure(keywords, new RuntimeException("broken"));
+    health.recordSuccess(keywords);
+
+    assertThat(health.shouldRun(keywords)).isTrue();
+    assertThat(health.getConsecutiveFailures(keywords)).isEmpty();
+  }
+
+  @Test
+  void backoff() {
+    assertThat(health.backoff(1)).isEqualTo(Duration.ZERO);
+    assertThat(health.backoff(2)).isEqualTo(Duration.ofSeconds(30));
+    assertThat(health.backoff(3)).isEqualTo(Duration.ofMinutes(1));
+    assertThat(health.backoff(4)).isEqualTo(Duration.ofMinutes(2));
+    assertThat(health.backoff(100))
+        .as("Backoff is capped")
+        .isEqualTo(Duration.ofMinutes(2));
+  }
+
+  @Test
+  void query_failing_for_too_long_is_unhealthy() {
+    health.recordFailure(keywords, new RuntimeException("broken"));
+    assertThat(health.isHealthy()).isTrue();
+
+    when(mockClock.instant()).thenReturn(now.plus(Duration.ofMinutes(10)));
+    health.recordFailure(keywords, new RuntimeException("still broken"));
+
+    assertThat(health.isHealthy()).isFalse();
+    assertThat(health.getUnhealthyQueries())
+        .containsOnlyKeys("keywords")
+        .hasValueSatisfying(lastError -> assertThat(lastError).contains("still broken"));
+  }
+
+  @Test
+  void unhealthy_query_is_logged_once() {
+    final Logger logger = (Logger) LoggerFactory.getLogger(TagQueryHealth.class);
+    final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    appender.start();
+    logger.addAppender(appender);
+    try {
+      when(mockClock.instant()).thenReturn(now.minus(Duration.ofHours(1)));
+      health.recordFailure(keywords, new RuntimeException("broken"));
+      when(mockClock.instant()).thenReturn(now);
+
+      assertThat(health.isHealthy()).isFalse();
+      assertThat(health.isHealthy()).isFalse();
+
+      assertThat(appender.list)
+          .filteredOn(event -> event.getLevel() == Level.WARN)
+          .hasSize(1);
+    } finally {
+      logger.detachAppender(appender);
+    }
+  }
+
+  @Test
+  void retainQueries_forgets_removed_queries() {
+    when(mockClock.instant()).thenReturn(now.minus(Duration.ofHours(1)));
+    health.recordFailure(keywords, new RuntimeException("broken"));
+    when(mockClock.instant()).thenReturn(now);
+    assertThat(health.isHealthy()).isFalse();
+
+    health.retainQueries(List.of(cases));
+
+    assertThat(health.isHealthy()).isTrue();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import org.junit.jupiter.api.Test;
+
+class TagRowTemplateTest {
+
+  @Test
+  void render() throws Exception {
+    final ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.getString("prj_id")).thenReturn("1234");
+    when(resultSet.getString("client")).thenReturn("ACME");
+
+    assertThat(TagRowTemplate.parse("https://projects.example.com/{client}/{prj_id}?view").render(resultSet))
+        .isEqualTo("https://projects.example.com/ACME/1234?view");
+    assertThat(TagRowTemplate.parse("FID{prj_id}").render(resultSet)).isEqualTo("FID1234");
+    assertThat(TagRowTemplate.parse("{prj_id}").render(resultSet)).isEqualTo("1234");
+    assertThat(TagRowTemplate.parse("static").render(resultSet)).isEqualTo("static");
+  }
+
+  @Test
+  void render_url_encodes_values() throws Exception {
+    final ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.getString("prj_id")).thenReturn("12/34 #5?a=b&c");
+    when(resultSet.getString("client")).thenReturn("Smith & Sons");
+
+    assertThat(TagRowTemplate.parseUrl("https://projects.example.com/{client}/{prj_id}?view").render(resultSet))
+        .isEqualTo("https://projects.example.com/Smith%20%26%20Sons/12%2F34%20%235%3Fa%3Db%26c?view");
+    assertThat(TagRowTemplate.parse("{client}/{prj_id}").render(resultSet))
+        .as("Values of other templates are rendered as they are")
+        .isEqualTo("Smith & Sons/12/34 #5?a=b&c");
+  }
+
+  @Test
+  void render_null_value() throws Exception {
+    final ResultSet resultSet = mock(ResultSet.class);
+    assertThat(TagRowTemplate.parse("FID{prj_id}").render(resultSet)).isEqualTo("FID");
+  }
+
+  @Test
+  void getColumns() {
+    assertThat(TagRowTemplate.parse("{Client}/{prj_id}/{prj_id}").getColumns())
+        .containsExactly("client", "prj_id");
+  }
+
+  @Test
+  void invalid_placeholders() {
+    assertThatThrownBy(() -> TagRowTemplate.parse("FID{prj_id"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TagRowTemplate.parse("FID prj_id}"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TagRowTemplate.parse("FID{prj id}"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(TagRowTemplate.isValid("FID{prj_id}")).isTrue();
+    assertThat(TagRowTemplate.isValid("FID{}")).isFalse();
+  }
+}
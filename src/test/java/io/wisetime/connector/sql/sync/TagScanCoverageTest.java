@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TagScanCoverageTest {
+
+  private final Clock mockClock = mock(Clock.class);
+  private final Instant now = Instant.now();
+  private final TagQuery query = randomTagQuery("cases");
+  private TagScanCoverage coverage;
+
+  @BeforeEach
+  void setUp() {
+    when(mockClock.instant()).thenReturn(now);
+    coverage = new TagScanCoverage(Duration.ofHours(1), mockClock);
+  }
+
+  @Test
+  void coveredFrom_nothing_drained() {
+    assertThat(coverage.coveredFrom(query, position("1"))).isEmpty();
+  }
+
+  @Test
+  void coveredFrom_consecutive_pages() {
+    coverage.recordDrainedPage(query, position("1"), position("10", "a"));
+    coverage.recordDrainedPage(query, position("10", "a"), position("20", "b", "c"));
+
+    assertThat(coverage.coveredFrom(query, position("1")))
+        .as("Refresh starting at the initial marker can skip both pages")
+        .contains(position("20", "b", "c"));
+    assertThat(coverage.coveredFrom(query, position("15", "x")))
+        .contains(position("20", "b", "c"));
+    assertThat(coverage.coveredFrom(query, position("20", "b", "c")))
+        .as("Refresh already at the end of the drained range")
+        .isEmpty();
+    assertThat(coverage.coveredFrom(query, position("30")))
+        .as("Refresh ahead of the drain")
+        .isEmpty();
+  }
+
+  @Test
+  void coveredFrom_not_before_drained_range() {
+    coverage.recordDrainedPage(query, position("10", "a", "b"), position("20"));
+
+    assertThat(coverage.coveredFrom(query, position("5"))).isEmpty();
+    assertThat(coverage.coveredFrom(query, position("10", "a")))
+        .as("Row b at marker 10 was not read by the drain")
+        .isEmpty();
+    assertThat(coverage.coveredFrom(query, position("10", "a", "b", "c"))).contains(position("20"));
+  }
+
+  @Test
+  void coveredFrom_gap_starts_new_segment() {
+    coverage.recordDrainedPage(query, position("1"), position("10"));
+    coverage.recordDrainedPage(query, position("15"), position("20"));
+
+    assertThat(coverage.coveredFrom(query, position("1"))).isEmpty();
+    assertThat(coverage.coveredFrom(query, position("15"))).contains(position("20"));
+  }
+
+  @Test
+  void coveredFrom_stale_segment() {
+    coverage.recordDrainedPage(query, position("1"), position("10"));
+    when(mockClock.instant()).thenReturn(now.plus(Duration.ofMinutes(61)));
+
+    assertThat(coverage.coveredFrom(query, position("1"))).isEmpty();
+  }
+
+  @Test
+  void retainQueries_forgets_removed_queries() {
+    coverage.recordDrainedPage(query, position("1"), position("10"));
+    coverage.retainQueries(List.of(randomTagQuery("projects")));
+
+    assertThat(coverage.coveredFrom(query, position("1"))).isEmpty();
+  }
+
+  private SyncPosition position(String syncMarker, String... lastSyncedIds) {
+    return new SyncPosition(syncMarker, List.of(lastSyncedIds));
+  }
+}
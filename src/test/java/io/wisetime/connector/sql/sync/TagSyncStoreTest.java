@@ -9,7 +9,10 @@ import static io.wisetime.connector.sql.RandomEntities.fixedTimeMinusMinutes;
 import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
 import static io.wisetime.connector.sql.RandomEntities.randomTagSyncRecord;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -21,8 +24,14 @@ import com.google.common.collect.ImmutableList;
 import io.wisetime.connector.datastore.ConnectorStore;
 import io.wisetime.connector.sql.RandomEntities;
 import io.wisetime.connector.sql.queries.TagQuery;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -47,13 +56,13 @@ class TagSyncStoreTest {
 
     TagQuery cases = RandomEntities.randomTagQuery("cases");
     syncStore.markSyncPosition(cases, tagSyncRecords);
-    verify(mockConnectorStore).putString(cases.hashCode() + "_sync_marker", tagSyncRecord.getSyncMarker());
-    verify(mockConnectorStore).putString(cases.hashCode() + "_last_synced_ids", tagSyncRecord.getId());
+    verify(mockConnectorStore).putString(cases.stateKey() + "_sync_marker", tagSyncRecord.getSyncMarker());
+    verify(mockConnectorStore).putString(cases.stateKey() + "_last_synced_ids", tagSyncRecord.getId());
 
     TagQuery projects = RandomEntities.randomTagQuery("projects");
     syncStore.markSyncPosition(projects, tagSyncRecords);
-    verify(mockConnectorStore).putString(projects.hashCode() + "_sync_marker", tagSyncRecord.getSyncMarker());
-    verify(mockConnectorStore).putString(projects.hashCode() + "_last_synced_ids", tagSyncRecord.getId());
+    verify(mockConnectorStore).putString(projects.stateKey() + "_sync_marker", tagSyncRecord.getSyncMarker());
+    verify(mockConnectorStore).putString(projects.stateKey() + "_last_synced_ids", tagSyncRecord.getId());
   }
 
   @Test
@@ -70,9 +79,9 @@ class TagSyncStoreTest {
 
     // The default key space should not be changed without due consideration for backwards compatibility
     verify(mockConnectorStore)
-        .putString(defaultKeySpace + cases.hashCode() + "_sync_marker", tagSyncRecord.getSyncMarker());
+        .putString(defaultKeySpace + cases.stateKey() + "_sync_marker", tagSyncRecord.getSyncMarker());
     verify(mockConnectorStore)
-        .putString(defaultKeySpace + cases.hashCode() + "_last_synced_ids", tagSyncRecord.getId());
+        .putString(defaultKeySpace + cases.stateKey() + "_last_synced_ids", tagSyncRecord.getId());
   }
 
   @Test
@@ -87,30 +96,30 @@ class TagSyncStoreTest {
 
     syncStore1.markSyncPosition(query, tagSyncRecords);
     verify(mockConnectorStore)
-        .putString("1" + query.hashCode() + "_sync_marker", tagSyncRecord.getSyncMarker());
+        .putString("1" + query.stateKey() + "_sync_marker", tagSyncRecord.getSyncMarker());
 
     reset(mockConnectorStore);
     syncStore1.getSyncMarker(query);
-    verify(mockConnectorStore).getString("1" + query.hashCode() + "_sync_marker");
+    verify(mockConnectorStore).getString("1" + query.stateKey() + "_sync_marker");
 
     reset(mockConnectorStore);
     syncStore1.getLastSyncedIds(query);
-    verify(mockConnectorStore).getString("1" + query.hashCode() + "_last_synced_ids");
+    verify(mockConnectorStore).getString("1" + query.stateKey() + "_last_synced_ids");
 
     // Store 2, same query
     final TagSyncStore syncStore2 = new TagSyncStore(mockConnectorStore, "2");
 
     syncStore2.markSyncPosition(query, tagSyncRecords);
     verify(mockConnectorStore)
-        .putString("2" + query.hashCode() + "_sync_marker", tagSyncRecord.getSyncMarker());
+        .putString("2" + query.stateKey() + "_sync_marker", tagSyncRecord.getSyncMarker());
 
     reset(mockConnectorStore);
     syncStore2.getSyncMarker(query);
-    verify(mockConnectorStore).getString("2" + query.hashCode() + "_sync_marker");
+    verify(mockConnectorStore).getString("2" + query.stateKey() + "_sync_marker");
 
     reset(mockConnectorStore);
     syncStore2.getLastSyncedIds(query);
-    verify(mockConnectorStore).getString("2" + query.hashCode() + "_last_synced_ids");
+    verify(mockConnectorStore).getString("2" + query.stateKey() + "_last_synced_ids");
   }
 
   @Test
@@ -134,11 +143,11 @@ class TagSyncStoreTest {
 
     // Verify that the persisted sync marker is the last ID
     verify(mockConnectorStore, times(1))
-        .putString(tagQuery.hashCode() + "_sync_marker", "2");
+        .putString(tagQuery.stateKey() + "_sync_marker", "2");
 
     // Verify that the persisted ID is the one with the largest marker value
     verify(mockConnectorStore, times(1))
-        .putString(tagQuery.hashCode() + "_last_synced_ids", tagSyncRecords.get(3).getId());
+        .putString(tagQuery.stateKey() + "_last_synced_ids", tagSyncRecords.get(3).getId());
   }
 
   @Test
@@ -154,12 +163,12 @@ class TagSyncStoreTest {
 
     // Verify that the persisted sync marker is the most recent time
     verify(mockConnectorStore, times(1))
-        .putString(tagQuery.hashCode() + "_sync_marker", fixedTime());
+        .putString(tagQuery.stateKey() + "_sync_marker", fixedTime());
 
     // Verify that the persisted ids are the two most recent with the same sync marker
     final String persistedIds = tagSyncRecords.get(2).getId() + "@@@" + tagSyncRecords.get(1).getId();
     verify(mockConnectorStore, times(1))
-        .putString(tagQuery.hashCode() + "_last_synced_ids", persistedIds);
+        .putString(tagQuery.stateKey() + "_last_synced_ids", persistedIds);
   }
 
   @Test
@@ -173,10 +182,10 @@ class TagSyncStoreTest {
     tagSyncRecordsBatch1.add(randomTagSyncRecord(fixedTime()));
     syncStore.markSyncPosition(tagQuery, tagSyncRecordsBatch1);
 
-    when(mockConnectorStore.getString(tagQuery.hashCode() + "_sync_marker"))
+    when(mockConnectorStore.getString(tagQuery.stateKey() + "_sync_marker"))
         .thenReturn(Optional.of(fixedTime()));
 
-    when(mockConnectorStore.getString(tagQuery.hashCode() + "_last_synced_ids"))
+    when(mockConnectorStore.getString(tagQuery.stateKey() + "_last_synced_ids"))
         .thenReturn(Optional.of(tagSyncRecordsBatch1.get(2).getId() + "@@@" + tagSyncRecordsBatch1.get(1).getId()));
 
     final LinkedList<TagSyncRecord> tagSyncRecordsBatch2 = new LinkedList<>();
@@ -191,7 +200,7 @@ class TagSyncStoreTest {
 
     // Verify that the current synced IDs are appended to previous list
     verify(mockConnectorStore, times(1))
-        .putString(tagQuery.hashCode() + "_last_synced_ids", persistedIds);
+        .putString(tagQuery.stateKey() + "_last_synced_ids", persistedIds);
   }
 
   @Test
@@ -201,9 +210,9 @@ class TagSyncStoreTest {
     syncStore.resetSyncPosition(tagQuery);
 
     verify(mockConnectorStore, times(1))
-        .putString(tagQuery.hashCode() + "_sync_marker", tagQuery.getInitialSyncMarker());
+        .putString(tagQuery.stateKey() + "_sync_marker", tagQuery.getInitialSyncMarker());
     verify(mockConnectorStore, times(1))
-        .putString(tagQuery.hashCode() + "_last_synced_ids", "");
+        .putString(tagQuery.stateKey() + "_last_synced_ids", "");
   }
 
   @Test
@@ -237,4 +246,211 @@ class TagSyncStoreTest {
         .as("Pass on sync marker from the store")
         .isEqualTo(ImmutableList.of("1", "2"));
   }
+
+  @Test
+  void stageSyncPosition_is_read_back_until_committed() {
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore);
+    final TagQuery cases = RandomEntities.randomTagQuery("cases");
+    final TagSyncRecord tagSyncRecord = randomTagSyncRecord();
+    final LinkedList<TagSyncRecord> tagSyncRecords = new LinkedList<>();
+    tagSyncRecords.add(tagSyncRecord);
+
+    syncStore.stageSyncPosition(cases, tagSyncRecords, 0);
+
+    verify(mockConnectorStore, never()).putString(anyString(), anyString());
+    assertThat(syncStore.getSyncMarker(cases)).isEqualTo(tagSyncRecord.getSyncMarker());
+    assertThat(syncStore.getLastSyncedIds(cases)).containsExactly(tagSyncRecord.getId());
+
+    syncStore.commitStaged(Set.of(cases));
+
+    verify(mockConnectorStore).putString(cases.stateKey() + "_sync_marker", tagSyncRecord.getSyncMarker());
+    verify(mockConnectorStore).putString(cases.stateKey() + "_last_synced_ids", tagSyncRecord.getId());
+  }
+
+  @Test
+  void discardStaged_falls_back_to_persisted_position() {
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore);
+    final TagQuery cases = RandomEntities.randomTagQuery("cases");
+    when(mockConnectorStore.getString(cases.stateKey() + "_sync_marker")).thenReturn(Optional.of("persisted"));
+    final LinkedList<TagSyncRecord> tagSyncRecords = new LinkedList<>();
+    tagSyncRecords.add(randomTagSyncRecord());
+    syncStore.stageSyncPosition(cases, tagSyncRecords, 0);
+
+    syncStore.discardStaged(Set.of(cases));
+    syncStore.commitStaged(Set.of(cases));
+
+    assertThat(syncStore.getSyncMarker(cases)).isEqualTo("persisted");
+    verify(mockConnectorStore, never()).putString(anyString(), anyString());
+  }
+
+  @Test
+  void discardStaged_only_affects_given_queries() {
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore);
+    final TagQuery cases = RandomEntities.randomTagQuery("cases");
+    final TagQuery projects = RandomEntities.randomTagQuery("projects");
+    final TagSyncRecord tagSyncRecord = randomTagSyncRecord();
+    final LinkedList<TagSyncRecord> tagSyncRecords = new LinkedList<>();
+    tagSyncRecords.add(tagSyncRecord);
+    syncStore.stageSyncPosition(cases, tagSyncRecords, 0);
+    syncStore.stageSyncPosition(projects, tagSyncRecords, 0);
+
+    syncStore.discardStaged(Set.of(cases));
+
+    assertThat(syncStore.getSyncMarker(projects)).isEqualTo(tagSyncRecord.getSyncMarker());
+    assertThat(syncStore.discardEpoch(cases)).isEqualTo(1);
+    assertThat(syncStore.discardEpoch(projects)).isZero();
+    assertThatThrownBy(() -> syncStore.stageSyncPosition(cases, tagSyncRecords, 0))
+        .as("The page was read after the discarded position")
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void markSyncPosition_appends_many_ids_at_same_marker_in_chunks() {
+    final Map<String, String> persisted = new HashMap<>();
+    when(mockConnectorStore.getString(anyString()))
+        .thenAnswer(invocation -> Optional.ofNullable(persisted.get(invocation.<String>getArgument(0))));
+    doAnswer(invocation -> persisted.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(mockConnectorStore).putString(anyString(), anyString());
+    final TagQuery tagQuery = randomTagQuery("cases");
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore);
+
+    final Set<String> syncedIds = new HashSet<>();
+    for (int batch = 0; batch < 3; batch++) {
+      final LinkedList<TagSyncRecord> tagSyncRecords = new LinkedList<>();
+      for (int i = 0; i < 500; i++) {
+        final String id = String.valueOf(batch * 1000 + i);
+        tagSyncRecords.add(randomTagSyncRecord(fixedTime()).setId(id));
+        syncedIds.add(id);
+      }
+      syncStore.markSyncPosition(tagQuery, tagSyncRecords);
+    }
+
+    assertThat(syncStore.getLastSyncedIds(tagQuery)).containsExactlyInAnyOrderElementsOf(syncedIds);
+    assertThat(persisted.get(tagQuery.stateKey() + "_last_synced_ids"))
+        .as("The first chunk holds the chunk count")
+        .startsWith("~2;~n:");
+    assertThat(persisted).containsKey(tagQuery.stateKey() + "_last_synced_ids_1");
+
+    // A new store reads the chunks back from the connector store
+    assertThat(new TagSyncStore(mockConnectorStore).getLastSyncedIds(tagQuery))
+        .containsExactlyInAnyOrderElementsOf(syncedIds);
+  }
+
+  @Test
+  void markSyncPosition_same_marker_only_rewrites_last_chunk() {
+    final Map<String, String> persisted = new HashMap<>();
+    when(mockConnectorStore.getString(anyString()))
+        .thenAnswer(invocation -> Optional.ofNullable(persisted.get(invocation.<String>getArgument(0))));
+    doAnswer(invocation -> persisted.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(mockConnectorStore).putString(anyString(), anyString());
+    final TagQuery tagQuery = randomTagQuery("cases");
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore);
+    final LinkedList<TagSyncRecord> firstBatch = new LinkedList<>();
+    for (int i = 0; i < 1500; i++) {
+      firstBatch.add(randomTagSyncRecord(fixedTime()).setId("id" + i));
+    }
+    syncStore.markSyncPosition(tagQuery, firstBatch);
+    reset(mockConnectorStore);
+    when(mockConnectorStore.getString(tagQuery.stateKey() + "_sync_marker")).thenReturn(Optional.of(fixedTime()));
+
+    final LinkedList<TagSyncRecord> secondBatch = new LinkedList<>();
+    secondBatch.add(randomTagSyncRecord(fixedTime()).setId("id-last"));
+    syncStore.markSyncPosition(tagQuery, secondBatch);
+
+    verify(mockConnectorStore, never()).putString(eq(tagQuery.stateKey() + "_last_synced_ids"), anyString());
+    verify(mockConnectorStore).putString(eq(tagQuery.stateKey() + "_last_synced_ids_1"), anyString());
+    assertThat(syncStore.getLastSyncedIds(tagQuery)).hasSize(1501).contains("id0", "id1499", "id-last");
+  }
+
+  @Test
+  void markSyncPosition_new_marker_clears_chunks_beyond_new_count() {
+    final Map<String, String> persisted = new HashMap<>();
+    final List<String> putKeys = new ArrayList<>();
+    when(mockConnectorStore.getString(anyString()))
+        .thenAnswer(invocation -> Optional.ofNullable(persisted.get(invocation.<String>getArgument(0))));
+    doAnswer(invocation -> {
+      putKeys.add(invocation.getArgument(0));
+      return persisted.put(invocation.getArgument(0), invocation.getArgument(1));
+    }).when(mockConnectorStore).putString(anyString(), anyString());
+    final TagQuery tagQuery = randomTagQuery("cases");
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore);
+    final LinkedList<TagSyncRecord> firstBatch = new LinkedList<>();
+    for (int i = 0; i < 2500; i++) {
+      firstBatch.add(randomTagSyncRecord(fixedTimeMinusMinutes(1)).setId("id" + i));
+    }
+    syncStore.markSyncPosition(tagQuery, firstBatch);
+    assertThat(putKeys)
+        .as("The first chunk holds the chunk count and is written after the other chunks")
+        .endsWith(tagQuery.stateKey() + "_last_synced_ids_1", tagQuery.stateKey() + "_last_synced_ids_2",
+            tagQuery.stateKey() + "_last_synced_ids");
+    putKeys.clear();
+
+    final LinkedList<TagSyncRecord> secondBatch = new LinkedList<>();
+    secondBatch.add(randomTagSyncRecord(fixedTime()).setId("id-new"));
+    syncStore.markSyncPosition(tagQuery, secondBatch);
+
+    assertThat(putKeys)
+        .as("Chunks beyond the new chunk count are cleared before the first chunk is written")
+        .endsWith(tagQuery.stateKey() + "_last_synced_ids_1", tagQuery.stateKey() + "_last_synced_ids_2",
+            tagQuery.stateKey() + "_last_synced_ids");
+    assertThat(persisted)
+        .containsEntry(tagQuery.stateKey() + "_last_synced_ids_1", "")
+        .containsEntry(tagQuery.stateKey() + "_last_synced_ids_2", "");
+    assertThat(new TagSyncStore(mockConnectorStore).getLastSyncedIds(tagQuery)).containsExactly("id-new");
+  }
+
+  @Test
+  void sync_position_is_kept_when_sql_is_edited() {
+    final Map<String, String> persisted = new HashMap<>();
+    when(mockConnectorStore.getString(anyString()))
+        .thenAnswer(invocation -> Optional.ofNullable(persisted.get(invocation.<String>getArgument(0))));
+    doAnswer(invocation -> persisted.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(mockConnectorStore).putString(anyString(), anyString());
+    final TagQuery tagQuery = randomTagQuery("cases");
+    final TagSyncRecord tagSyncRecord = randomTagSyncRecord();
+    final LinkedList<TagSyncRecord> tagSyncRecords = new LinkedList<>();
+    tagSyncRecords.add(tagSyncRecord);
+    new TagSyncStore(mockConnectorStore).markSyncPosition(tagQuery, tagSyncRecords);
+
+    tagQuery.setSql(tagQuery.getSql() + "\n  ");
+    tagQuery.setSkippedIds(ImmutableList.of("sentinel", "another"));
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore);
+    assertThat(syncStore.getSyncMarker(tagQuery)).isEqualTo(tagSyncRecord.getSyncMarker());
+    assertThat(syncStore.getLastSyncedIds(tagQuery)).containsExactly(tagSyncRecord.getId());
+
+    tagQuery.setSyncVersion(2);
+    assertThat(syncStore.getSyncMarker(tagQuery))
+        .as("Bumping the sync version starts the sync over")
+        .isEqualTo(tagQuery.getInitialSyncMarker());
+    assertThat(syncStore.getLastSyncedIds(tagQuery)).isEmpty();
+  }
+
+  @Test
+  void sync_position_under_hash_code_is_migrated() {
+    final TagQuery tagQuery = randomTagQuery("cases");
+    final Map<String, String> persisted = new HashMap<>();
+    persisted.put("refresh" + tagQuery.hashCode() + "_sync_marker", "100");
+    persisted.put("refresh" + tagQuery.hashCode() + "_last_synced_ids", "~2;1@@@2");
+    persisted.put("refresh" + tagQuery.hashCode() + "_last_synced_ids_1", "3");
+    // Left over from an earlier sync position under the state key
+    persisted.put("refresh" + tagQuery.stateKey() + "_last_synced_ids", "~3;");
+    persisted.put("refresh" + tagQuery.stateKey() + "_last_synced_ids_2", "stale");
+    when(mockConnectorStore.getString(anyString()))
+        .thenAnswer(invocation -> Optional.ofNullable(persisted.get(invocation.<String>getArgument(0))));
+    doAnswer(invocation -> persisted.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(mockConnectorStore).putString(anyString(), anyString());
+    final TagSyncStore syncStore = new TagSyncStore(mockConnectorStore, "refresh");
+
+    assertThat(syncStore.getSyncMarker(tagQuery)).isEqualTo("100");
+    assertThat(syncStore.getLastSyncedIds(tagQuery)).containsExactly("1", "2", "3");
+    assertThat(persisted)
+        .containsEntry("refresh" + tagQuery.stateKey() + "_sync_marker", "100")
+        .containsEntry("refresh" + tagQuery.stateKey() + "_last_synced_ids", "~2;1@@@2")
+        .containsEntry("refresh" + tagQuery.stateKey() + "_last_synced_ids_1", "3")
+        .containsEntry("refresh" + tagQuery.stateKey() + "_last_synced_ids_2", "");
+
+    // The migrated position is read from the new keys from now on, even once the query is edited
+    tagQuery.setSql(tagQuery.getSql() + " ");
+    assertThat(new TagSyncStore(mockConnectorStore, "refresh").getSyncMarker(tagQuery)).isEqualTo("100");
+  }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static io.wisetime.connector.sql.RandomEntities.randomTagQuery;
+import static io.wisetime.connector.sql.RandomEntities.randomTagSyncRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.wisetime.connector.sql.queries.TagQuery;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TagUpsertCoalescerTest {
+
+  private final Clock clock = mock(Clock.class);
+  private final TagQuery query = randomTagQuery("cases");
+  private final List<List<TagSyncRecord>> upserts = new ArrayList<>();
+  private final AtomicInteger staged = new AtomicInteger();
+  private final List<Set<TagQuery>> committed = new ArrayList<>();
+  private final List<Set<TagQuery>> discarded = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    when(clock.instant()).thenReturn(Instant.parse("2026-03-01T10:00:00Z"));
+  }
+
+  @Test
+  void merges_versions_of_each_tag() {
+    final TagUpsertCoalescer coalescer = coalescer(100);
+    final TagSyncRecord first = randomTagSyncRecord().setTagName("P1").setTagDescription("First version");
+    final TagSyncRecord other = randomTagSyncRecord().setTagName("P2");
+    final TagSyncRecord second = randomTagSyncRecord().setTagName("P1").setTagDescription("Second version");
+
+    coalescer.add(query, List.of(first, other), staged::incrementAndGet);
+    coalescer.add(query, List.of(second), staged::incrementAndGet);
+    assertThat(upserts).isEmpty();
+    assertThat(committed)
+        .as("Nothing is committed before the tags are upserted")
+        .isEmpty();
+
+    coalescer.flush();
+
+    assertThat(upserts).hasSize(1);
+    assertThat(upserts.get(0))
+        .as("The latest version of a tag moves it to the end")
+        .extracting(TagSyncRecord::getTagName)
+        .containsExactly("P2", "P1");
+    final TagSyncRecord merged = upserts.get(0).get(1);
+    assertThat(merged.getTagDescription()).isEqualTo("Second version");
+    assertThat(merged.getSyncMarker()).isEqualTo(second.getSyncMarker());
+    assertThat(merged.allAdditionalKeywords())
+        .containsExactly(first.getAdditionalKeyword(), second.getAdditionalKeyword());
+    assertThat(staged.get()).isEqualTo(2);
+    assertThat(committed).containsExactly(Set.of(query));
+    assertThat(coalescer.pendingSize()).isZero();
+  }
+
+  @Test
+  void keeps_fields_of_each_query_returning_the_same_tag() {
+    final TagUpsertCoalescer coalescer = coalescer(100);
+    final TagQuery keywordsQuery = randomTagQuery("keywords");
+    final TagSyncRecord caseTag = randomTagSyncRecord()
+        .setTagName("P1")
+        .setAdditionalKeyword("FID1")
+        .setTagDescription("Patent for a time machine")
+        .setUrl("https://cases.example.com/P1");
+    final TagSyncRecord keywordTag = randomTagSyncRecord()
+        .setTagName("P1")
+        .setAdditionalKeyword("Time machine")
+        .setTagDescription("")
+        .setUrl(null)
+        .setTagMetadata("{}");
+
+    coalescer.add(query, List.of(caseTag), staged::incrementAndGet);
+    coalescer.add(keywordsQuery, List.of(keywordTag), staged::incrementAndGet);
+    coalescer.flush();
+
+    assertThat(upserts).hasSize(1);
+    assertThat(upserts.get(0)).hasSize(1);
+    final TagSyncRecord merged = upserts.get(0).get(0);
+    assertThat(merged.allAdditionalKeywords())
+        .as("Each query adds its own keyword")
+        .containsExactly("FID1", "Time machine");
+    assertThat(merged.getTagDescription())
+        .as("An empty description doesn't overwrite the tag's description")
+        .isEqualTo("Patent for a time machine");
+    assertThat(merged.getUrl()).isEqualTo("https://cases.example.com/P1");
+    assertThat(merged.getTagMetadata()).isEqualTo(caseTag.getTagMetadata());
+    assertThat(committed).containsExactly(Set.of(query, keywordsQuery));
+  }
+
+  @Test
+  void flushes_when_full() {
+    final TagUpsertCoalescer coalescer = coalescer(2);
+    coalescer.add(query, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+    assertThat(upserts).isEmpty();
+
+    coalescer.add(query, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+
+    assertThat(upserts).hasSize(1);
+    assertThat(upserts.get(0)).hasSize(2);
+    assertThat(committed).containsExactly(Set.of(query));
+  }
+
+  @Test
+  void flushes_when_old_enough() {
+    final TagUpsertCoalescer coalescer = coalescer(100);
+    coalescer.add(query, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+    assertThat(upserts).isEmpty();
+
+    when(clock.instant()).thenReturn(Instant.parse("2026-03-01T10:01:00Z"));
+    coalescer.add(query, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+
+    assertThat(upserts).hasSize(1);
+    assertThat(upserts.get(0)).hasSize(2);
+  }
+
+  @Test
+  void failed_upsert_discards_staged_positions() {
+    final TagUpsertCoalescer coalescer = new TagUpsertCoalescer(100, Duration.ofMinutes(1), clock,
+        records -> {
+          throw new RuntimeException("API unavailable");
+        },
+        committed::add, discarded::add);
+    final TagQuery otherQuery = randomTagQuery("projects");
+    coalescer.add(query, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+    coalescer.add(otherQuery, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+
+    assertThatThrownBy(coalescer::flush).hasMessage("API unavailable");
+
+    assertThat(discarded).containsExactly(Set.of(query, otherQuery));
+    assertThat(committed).isEmpty();
+    assertThat(coalescer.pendingSize()).isZero();
+  }
+
+  @Test
+  void flush_only_commits_queries_added_since_previous_flush() {
+    final TagUpsertCoalescer coalescer = coalescer(100);
+    final TagQuery otherQuery = randomTagQuery("projects");
+    coalescer.add(query, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+    coalescer.flush();
+
+    coalescer.add(otherQuery, List.of(randomTagSyncRecord()), staged::incrementAndGet);
+    coalescer.flush();
+
+    assertThat(committed).containsExactly(Set.of(query), Set.of(otherQuery));
+  }
+
+  private TagUpsertCoalescer coalescer(final int maxSize) {
+    return new TagUpsertCoalescer(maxSize, Duration.ofMinutes(1), clock, upserts::add,
+        committed::add, discarded::add);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026 Practice Insight Pty Ltd. All Rights Reserved.
+ */
+
+package io.wisetime.connector.sql.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.wisetime.generated.connect.UpsertTagRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TagUpsertHashIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void isUnchanged_only_for_same_content() {
+    final TagUpsertHashIndex index = new TagUpsertHashIndex(tempDir.resolve("hashes.bin"), 0);
+    final UpsertTagRequest request = request("P1", "Patent one");
+    assertThat(index.isUnchanged(request))
+        .as("Tag was never upserted")
+        .isFalse();
+
+    index.recordUpserted(List.of(request));
+
+    assertThat(index.isUnchanged(request("P1", "Patent one"))).isTrue();
+    assertThat(index.isUnchanged(request("P1", "Patent one, renamed")))
+        .as("Content changed")
+        .isFalse();
+    assertThat(index.isUnchanged(request("P2", "Patent one")))
+        .as("Different tag")
+        .isFalse();
+  }
+
+  @Test
+  void isUnchanged_forced_resend() {
+    final TagUpsertHashIndex index = new TagUpsertHashIndex(tempDir.resolve("hashes.bin"), 1);
+    final UpsertTagRequest request = request("P1", "Patent one");
+    index.recordUpserted(List.of(request));
+
+    assertThat(index.isUnchanged(request))
+        .as("A forced resend ratio of 1 always resends")
+        .isFalse();
+  }
+
+  @Test
+  void disabled_never_skips() {
+    final TagUpsertHashIndex index = TagUpsertHashIndex.disabled();
+    final UpsertTagRequest request = request("P1", "Patent one");
+    index.recordUpserted(List.of(request));
+
+    assertThat(index.isUnchanged(request)).isFalse();
+  }
+
+  @Test
+  void hashes_survive_restart() {
+    final Path file = tempDir.resolve("hashes.bin");
+    new TagUpsertHashIndex(file, 0).recordUpserted(List.of(request("P1", "Patent one"), request("P2", "Patent two")));
+
+    final TagUpsertHashIndex reopened = new TagUpsertHashIndex(file, 0);
+
+    assertThat(reopened.size()).isEqualTo(2);
+    assertThat(reopened.isUnchanged(request("P1", "Patent one"))).isTrue();
+    assertThat(reopened.isUnchanged(request("P2", "Patent two"))).isTrue();
+  }
+
+  @Test
+  void partially_written_entry_is_dropped() throws Exception {
+    final Path file = tempDir.resolve("hashes.bin");
+    new TagUpsertHashIndex(file, 0).recordUpserted(List.of(request("P1", "Patent one")));
+    Files.write(file, new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+
+    final TagUpsertHashIndex reopened = new TagUpsertHashIndex(file, 0);
+
+    assertThat(Files.size(file)).isEqualTo(16);
+    assertThat(reopened.isUnchanged(request("P1", "Patent one"))).isTrue();
+  }
+
+  @Test
+  void superseded_entries_are_compacted_on_open() throws Exception {
+    final Path file = tempDir.resolve("hashes.bin");
+    final TagUpsertHashIndex index = new TagUpsertHashIndex(file, 0);
+    for (int i = 0; i < 5; i++) {
+      index.recordUpserted(List.of(request("P1", "Patent one, version " + i)));
+    }
+    assertThat(Files.size(file)).isEqualTo(5 * 16);
+
+    final TagUpsertHashIndex reopened = new TagUpsertHashIndex(file, 0);
+
+    assertThat(Files.size(file)).isEqualTo(16);
+    assertThat(reopened.isUnchanged(request("P1", "Patent one, version 4"))).isTrue();
+  }
+
+  @Test
+  void map_grows_beyond_initial_capacity() {
+    final TagUpsertHashIndex index = new TagUpsertHashIndex(tempDir.resolve("hashes.bin"), 0);
+    for (int i = 0; i < 5_000; i++) {
+      index.recordUpserted(List.of(request("P" + i, "Patent " + i)));
+    }
+
+    assertThat(index.size()).isEqualTo(5_000);
+    assertThat(index.isUnchanged(request("P0", "Patent 0"))).isTrue();
+    assertThat(index.isUnchanged(request("P4999", "Patent 4999"))).isTrue();
+  }
+
+  private UpsertTagRequest request(final String name, final String description) {
+    return new UpsertTagRequest()
+        .name(name)
+        .description(description)
+        .path("/Connector/");
+  }
+}
@@ -8,6 +8,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -188,15 +189,43 @@ class ActivityTypeSyncWithMarkerStoreTest {
         .isEqualTo(lastSyncedCodesKey(query));
   }
 
+  @Test
+  void sync_state_under_hash_code_is_migrated() {
+    final ActivityTypeQuery query = RandomEntities.randomActivityTypeQuery();
+    when(mockConnectorStore.getString(query.hashCode() + "_activity_type_sync_marker"))
+        .thenReturn(Optional.of("222"));
+    when(mockConnectorStore.getString(query.hashCode() + "_activity_type_last_sync_codes"))
+        .thenReturn(Optional.of("code1@@@code2"));
+    when(mockConnectorStore.getString(query.hashCode() + "_activity_type_sync_session"))
+        .thenReturn(Optional.of("session"));
+
+    activityTypeSyncStore.getSyncMarker(query);
+
+    verify(mockConnectorStore).putString(syncMarkerKey(query), "222");
+    verify(mockConnectorStore).putString(lastSyncedCodesKey(query), "code1@@@code2");
+    verify(mockConnectorStore).putString(syncSessionKey(query), "session");
+  }
+
+  @Test
+  void sync_state_under_hash_code_is_not_migrated_for_bumped_sync_version() {
+    final ActivityTypeQuery query = RandomEntities.randomActivityTypeQuery();
+    query.setSyncVersion(2);
+    when(mockConnectorStore.getString(query.hashCode() + "_activity_type_sync_marker"))
+        .thenReturn(Optional.of("222"));
+
+    assertThat(activityTypeSyncStore.getSyncMarker(query)).isEqualTo(query.getInitialSyncMarker());
+    verify(mockConnectorStore, never()).putString(anyString(), anyString());
+  }
+
   private String syncMarkerKey(final ActivityTypeQuery query) {
-    return query.hashCode() + "_activity_type_sync_marker";
+    return query.stateKey() + "_activity_type_sync_marker";
   }
 
   private String syncSessionKey(final ActivityTypeQuery query) {
-    return query.hashCode() + "_activity_type_sync_session";
+    return query.stateKey() + "_activity_type_sync_session";
   }
 
   private String lastSyncedCodesKey(final ActivityTypeQuery query) {
-    return query.hashCode() + "_activity_type_last_sync_codes";
+    return query.stateKey() + "_activity_type_last_sync_codes";
   }
 }
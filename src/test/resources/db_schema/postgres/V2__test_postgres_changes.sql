@@ -0,0 +1,13 @@
+DROP TABLE IF EXISTS TEST_CASE_CHANGES;
+CREATE TABLE TEST_CASE_CHANGES
+(
+    CHANGE_VERSION BIGINT PRIMARY KEY,
+    IRN            TEXT
+);
+
+INSERT INTO TEST_CASE_CHANGES (CHANGE_VERSION, IRN)
+VALUES (1, 'P0436021');
+INSERT INTO TEST_CASE_CHANGES (CHANGE_VERSION, IRN)
+VALUES (2, 'P0100973');
+INSERT INTO TEST_CASE_CHANGES (CHANGE_VERSION, IRN)
+VALUES (3, 'P0436021');